@@ -0,0 +1,90 @@
+package org.limitless.radix4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup cost on a tree whose nodes were scattered by removes and adds, before and after compaction.
+ */
+@State(Scope.Thread)
+@Fork(jvmArgs = "-server", value = 1)
+@Warmup(time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, batchSize = 25_000_000)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompactBenchmark extends BaseBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ChurnedTree extends BaseState {
+        RadixTree tree;
+    }
+
+    @State(Scope.Benchmark)
+    public static class CompactedTree extends ChurnedTree {
+    }
+
+    @Setup(Level.Trial)
+    public void setupChurnedTree(final ChurnedTree state) {
+        state.tree = churnedTree();
+        state.setup();
+    }
+
+    @Setup(Level.Trial)
+    public void setupCompactedTree(final CompactedTree state) {
+        state.tree = churnedTree();
+        state.tree.compact();
+        state.setup();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownChurnedTree(final ChurnedTree state) {
+        state.tearDown();
+        state.tree.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownCompactedTree(final CompactedTree state) {
+        state.tearDown();
+        state.tree.close();
+    }
+
+    @Benchmark
+    public boolean radixTreeContainsChurned(final ChurnedTree state) {
+        return state.updateStats(state.tree.contains(state.stringOffset, STRING_LENGTH, strings));
+    }
+
+    @Benchmark
+    public boolean radixTreeContainsCompacted(final CompactedTree state) {
+        return state.updateStats(state.tree.contains(state.stringOffset, STRING_LENGTH, strings));
+    }
+
+    @Benchmark
+    @Measurement(iterations = 5, batchSize = 1)
+    public int radixTreeCompact(final ChurnedTree state) {
+        state.tree.compact();
+        return state.tree.size();
+    }
+
+    /**
+     * Adds all strings, removes two thirds of them in a scattered order and adds them back, the freed blocks are
+     * reused in removal order which separates the children from their parents.
+     */
+    private static RadixTree churnedTree() {
+        final var tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+        for (int offset = 0; offset < strings.length; offset += STRING_LENGTH) {
+            tree.add(offset, STRING_LENGTH, strings);
+        }
+        for (int step = 1; step <= 2; ++step) {
+            for (int i = step; i < SIZE; i += 3) {
+                tree.remove(i * STRING_LENGTH, STRING_LENGTH, strings);
+            }
+        }
+        for (int i = SIZE - 1; i >= 0; --i) {
+            if (i % 3 != 0) {
+                tree.add(i * STRING_LENGTH, STRING_LENGTH, strings);
+            }
+        }
+        return tree;
+    }
+}
@@ -0,0 +1,173 @@
+package org.limitless.radix4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tree operations over the realistic datasets next to a hash set and a sorted set of byte arrays.
+ * <p>
+ * Adds and removes run in key order, lookups follow a Zipf distribution over the keys.
+ */
+@State(Scope.Thread)
+@Fork(jvmArgs = "-server", value = 1)
+@Warmup(iterations = 2, batchSize = DatasetBenchmark.SIZE)
+@Measurement(iterations = 5, batchSize = DatasetBenchmark.SIZE)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DatasetBenchmark {
+
+    static final int SIZE = 1_000_000;
+    static final double ZIPF_EXPONENT = 0.99;
+
+    @State(Scope.Benchmark)
+    public static class DatasetState {
+
+        @Param({ "URL", "EMAIL", "UUID", "UUID_V7", "IPV4", "IPV6", "WORD" })
+        Datasets.Kind kind;
+
+        Datasets dataset;
+        byte[][] keys;
+        String[] strings;
+        int[] lookups;
+        byte[] prefix;
+
+        RadixTree tree;
+        HashSet<String> hashSet;
+        TreeSet<byte[]> treeSet;
+        int index;
+
+        @Setup(Level.Trial)
+        public void setupDataset() {
+            dataset = Datasets.generate(kind, SIZE);
+            keys = new byte[SIZE][];
+            strings = new String[SIZE];
+            for (int i = 0; i < SIZE; ++i) {
+                keys[i] = dataset.key(i);
+                strings[i] = new String(keys[i]);
+            }
+            lookups = Datasets.zipf(SIZE, SIZE, ZIPF_EXPONENT, Datasets.DEFAULT_SEED);
+            prefix = dataset.prefix(SIZE / 2);
+        }
+
+        int next() {
+            final int i = index;
+            index = i + 1 == SIZE ? 0 : i + 1;
+            return i;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class EmptyState extends DatasetState {
+
+        @Setup(Level.Iteration)
+        public void setupEmpty() {
+            tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+            hashSet = new HashSet<>(SIZE * 2);
+            treeSet = new TreeSet<>(Arrays::compareUnsigned);
+            index = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownEmpty() {
+            tree.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FullState extends DatasetState {
+
+        @Setup(Level.Iteration)
+        public void setupFull() {
+            tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+            hashSet = new HashSet<>(SIZE * 2);
+            treeSet = new TreeSet<>(Arrays::compareUnsigned);
+            final byte[] bytes = dataset.strings();
+            for (int i = 0; i < SIZE; ++i) {
+                tree.add(dataset.offset(i), dataset.length(i), bytes);
+                hashSet.add(strings[i]);
+                treeSet.add(keys[i]);
+            }
+            index = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownFull() {
+            tree.close();
+        }
+    }
+
+    @Benchmark
+    public boolean radixTreeAdd(final EmptyState state) {
+        final int i = state.next();
+        return state.tree.add(state.dataset.offset(i), state.dataset.length(i), state.dataset.strings());
+    }
+
+    @Benchmark
+    public boolean radixTreeContains(final FullState state) {
+        final int i = state.lookups[state.next()];
+        return state.tree.contains(state.dataset.offset(i), state.dataset.length(i), state.dataset.strings());
+    }
+
+    @Benchmark
+    public boolean radixTreeRemove(final FullState state) {
+        final int i = state.next();
+        return state.tree.remove(state.dataset.offset(i), state.dataset.length(i), state.dataset.strings());
+    }
+
+    @Benchmark
+    @Warmup(iterations = 2, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public int radixTreePrefixForEach(final FullState state) {
+        final int[] result = { 0 };
+        state.tree.forEach(state.prefix.length, state.prefix, _ -> ++result[0]);
+        return result[0];
+    }
+
+    @Benchmark
+    public boolean hashSetAdd(final EmptyState state) {
+        return state.hashSet.add(state.strings[state.next()]);
+    }
+
+    @Benchmark
+    public boolean hashSetContains(final FullState state) {
+        return state.hashSet.contains(state.strings[state.lookups[state.next()]]);
+    }
+
+    @Benchmark
+    public boolean hashSetRemove(final FullState state) {
+        return state.hashSet.remove(state.strings[state.next()]);
+    }
+
+    @Benchmark
+    public boolean treeSetAdd(final EmptyState state) {
+        return state.treeSet.add(state.keys[state.next()]);
+    }
+
+    @Benchmark
+    public boolean treeSetContains(final FullState state) {
+        return state.treeSet.contains(state.keys[state.lookups[state.next()]]);
+    }
+
+    @Benchmark
+    public boolean treeSetRemove(final FullState state) {
+        return state.treeSet.remove(state.keys[state.next()]);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 2, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public int treeSetPrefixForEach(final FullState state) {
+        int result = 0;
+        for (byte[] key : state.treeSet.tailSet(state.prefix, true)) {
+            if (Arrays.mismatch(key, 0, Math.min(key.length, state.prefix.length), state.prefix, 0, state.prefix.length) != -1) {
+                break;
+            }
+            ++result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,279 @@
+package org.limitless.radix4j;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Seeded generators of realistic key sets, every call with the same arguments returns the same keys.
+ * <p>
+ * The keys of a dataset are unique and stored back to back in one byte array, key i starts at offset(i).
+ */
+public final class Datasets {
+
+    public static final long DEFAULT_SEED = 42;
+
+    /**
+     * Key families.
+     */
+    public enum Kind {
+        /** Web addresses sharing scheme, hosts and extensions. */
+        URL(12),
+        /** Email addresses, shared domains at the end. */
+        EMAIL(3),
+        /** Random version 4 UUIDs in canonical form. */
+        UUID(2),
+        /** Time ordered version 7 UUIDs in canonical form. */
+        UUID_V7(8),
+        /** Dotted quad IPv4 addresses. */
+        IPV4(4),
+        /** Full form IPv6 addresses from a few prefixes. */
+        IPV6(10),
+        /** English words and compounds. */
+        WORD(3);
+
+        private final int prefixLength;
+
+        Kind(final int prefixLength) {
+            this.prefixLength = prefixLength;
+        }
+
+        /**
+         * Length of a prefix matching a small share of the keys
+         * @return prefix length
+         */
+        public int prefixLength() {
+            return prefixLength;
+        }
+    }
+
+    private static final String[] WORDS = {
+        "time", "year", "people", "way", "day", "man", "thing", "woman", "life", "child", "world", "school",
+        "state", "family", "student", "group", "country", "problem", "hand", "part", "place", "case", "week",
+        "company", "system", "program", "question", "work", "government", "number", "night", "point", "home",
+        "water", "room", "mother", "area", "money", "story", "fact", "month", "lot", "right", "study", "book",
+        "eye", "job", "word", "business", "issue", "side", "kind", "head", "house", "service", "friend",
+        "father", "power", "hour", "game", "line", "end", "member", "law", "car", "city", "community", "name",
+        "president", "team", "minute", "idea", "kid", "body", "information", "back", "parent", "face", "others",
+        "level", "office", "door", "health", "person", "art", "war", "history", "party", "result", "change",
+        "morning", "reason", "research", "girl", "guy", "moment", "air", "teacher", "force", "education",
+        "foot", "boy", "age", "policy", "music", "market", "sense", "nation", "plan", "college", "interest",
+        "death", "experience", "effect", "use", "class", "control", "care", "field", "development", "role",
+        "effort", "rate", "heart", "drug", "show", "leader", "light", "voice", "wife", "police", "mind", "price",
+        "report", "decision", "son", "view", "relationship", "town", "road", "arm", "difference", "value",
+        "building", "action", "model", "season", "society", "tax", "director", "position", "player", "record",
+        "paper", "space", "ground", "form", "event", "official", "matter", "center", "couple", "site", "project",
+        "activity", "star", "table", "need", "court", "american", "oil", "situation", "cost", "industry",
+        "figure", "street", "image", "phone", "data", "picture", "practice", "piece", "land", "product",
+        "doctor", "wall", "patient", "worker", "news", "test", "movie", "north", "love", "support", "technology",
+        "step", "baby", "computer", "type", "attention", "film", "tree", "source", "organization", "hair",
+        "window", "evidence", "population", "network", "garden", "river", "bridge", "mountain",
+        "island", "forest", "ocean", "station", "engine", "signal", "pattern", "letter", "circle"
+    };
+    private static final String[] HOSTS = { "www", "news", "shop", "api", "cdn", "blog", "mail", "docs" };
+    private static final String[] DOMAINS = { "example", "limitless", "radix", "search", "archive", "travel" };
+    private static final String[] TLDS = { ".com", ".org", ".net", ".io", ".co.uk", ".de" };
+    private static final String[] TAILS = { ".html", "/index.html", ".php", "/", ".json" };
+    private static final String[] MAIL_DOMAINS = {
+        "@gmail.com", "@yahoo.com", "@outlook.com", "@example.org", "@limitless.org", "@company.co.uk"
+    };
+    private static final String[] IPV6_PREFIXES = { "2001:0db8:85a3:", "2001:0db8:0000:", "fd00:0000:0000:" };
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] strings;
+    private final int[] offsets;
+    private final int count;
+    private final Kind kind;
+
+    private Datasets(final Kind kind, final byte[] strings, final int[] offsets, final int count) {
+        this.kind = kind;
+        this.strings = strings;
+        this.offsets = offsets;
+        this.count = count;
+    }
+
+    /**
+     * Generates a dataset with the default seed
+     * @param kind key family
+     * @param count number of unique keys
+     * @return dataset
+     */
+    public static Datasets generate(final Kind kind, final int count) {
+        return generate(kind, count, DEFAULT_SEED);
+    }
+
+    /**
+     * Generates a dataset
+     * @param kind key family
+     * @param count number of unique keys
+     * @param seed random seed
+     * @return dataset
+     */
+    public static Datasets generate(final Kind kind, final int count, final long seed) {
+        if (kind == null || count < 1) {
+            throw new IllegalArgumentException("invalid dataset");
+        }
+        final Random random = new Random(seed);
+        final Set<String> unique = new HashSet<>(count * 2);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(count * 32);
+        final int[] offsets = new int[count + 1];
+        final StringBuilder builder = new StringBuilder();
+        long timestamp = 1_700_000_000_000L;
+        int size = 0;
+        while (size < count) {
+            builder.setLength(0);
+            switch (kind) {
+                case URL -> url(builder, random);
+                case EMAIL -> email(builder, random);
+                case UUID -> uuid(builder, random.nextLong(), random.nextLong(), 4);
+                case UUID_V7 -> {
+                    timestamp += random.nextInt(4);
+                    uuid(builder, (timestamp << 16) | random.nextInt(1 << 12), random.nextLong(), 7);
+                }
+                case IPV4 -> builder.append(random.nextInt(256)).append('.').append(random.nextInt(256)).append('.')
+                    .append(random.nextInt(256)).append('.').append(random.nextInt(256));
+                case IPV6 -> ipv6(builder, random);
+                case WORD -> word(builder, random, size);
+            }
+            final String key = builder.toString();
+            if (unique.add(key)) {
+                bytes.writeBytes(key.getBytes());
+                offsets[++size] = bytes.size();
+            }
+        }
+        return new Datasets(kind, bytes.toByteArray(), offsets, count);
+    }
+
+    /**
+     * Zipf distributed key indexes, index zero is the most frequent
+     * @param keys number of keys
+     * @param lookups number of indexes
+     * @param exponent skew, 1.0 is the classic distribution
+     * @param seed random seed
+     * @return indexes
+     */
+    public static int[] zipf(final int keys, final int lookups, final double exponent, final long seed) {
+        final double[] cumulative = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; ++i) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        final Random random = new Random(seed);
+        final int[] indexes = new int[lookups];
+        for (int i = 0; i < lookups; ++i) {
+            final double value = random.nextDouble() * sum;
+            int low = 0;
+            int high = keys - 1;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (cumulative[middle] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            indexes[i] = low;
+        }
+        return indexes;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public byte[] strings() {
+        return strings;
+    }
+
+    public int offset(final int index) {
+        return offsets[index];
+    }
+
+    public int length(final int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Copy of a key
+     * @param index key index
+     * @return key bytes
+     */
+    public byte[] key(final int index) {
+        final byte[] key = new byte[length(index)];
+        System.arraycopy(strings, offsets[index], key, 0, key.length);
+        return key;
+    }
+
+    /**
+     * Prefix of a key matching a small share of the keys
+     * @param index key index
+     * @return prefix bytes
+     */
+    public byte[] prefix(final int index) {
+        final byte[] prefix = new byte[Math.min(kind.prefixLength(), length(index))];
+        System.arraycopy(strings, offsets[index], prefix, 0, prefix.length);
+        return prefix;
+    }
+
+    private static void url(final StringBuilder builder, final Random random) {
+        builder.append("https://")
+            .append(HOSTS[random.nextInt(HOSTS.length)]).append('.')
+            .append(DOMAINS[random.nextInt(DOMAINS.length)])
+            .append(TLDS[random.nextInt(TLDS.length)]).append('/')
+            .append(WORDS[random.nextInt(WORDS.length)]).append('/')
+            .append(random.nextInt(1_000_000))
+            .append(TAILS[random.nextInt(TAILS.length)]);
+    }
+
+    private static void email(final StringBuilder builder, final Random random) {
+        builder.append(WORDS[random.nextInt(WORDS.length)]);
+        builder.append(random.nextBoolean() ? '.' : '_');
+        builder.append(WORDS[random.nextInt(WORDS.length)]);
+        if (random.nextBoolean()) {
+            builder.append(random.nextInt(10_000));
+        }
+        builder.append(MAIL_DOMAINS[random.nextInt(MAIL_DOMAINS.length)]);
+    }
+
+    private static void uuid(final StringBuilder builder, final long high, final long low, final int version) {
+        final long most = (high & ~0xf000L) | ((long) version << 12);
+        final long least = (low & 0x3fffffffffffffffL) | Long.MIN_VALUE;
+        hex(builder, most >>> 32, 8).append('-');
+        hex(builder, most >>> 16, 4).append('-');
+        hex(builder, most, 4).append('-');
+        hex(builder, least >>> 48, 4).append('-');
+        hex(builder, least, 12);
+    }
+
+    private static void ipv6(final StringBuilder builder, final Random random) {
+        builder.append(IPV6_PREFIXES[random.nextInt(IPV6_PREFIXES.length)]);
+        for (int i = 0; i < 5; ++i) {
+            hex(builder, random.nextInt(1 << 16), 4).append(':');
+        }
+        hex(builder, random.nextInt(1 << 16), 4);
+    }
+
+    private static void word(final StringBuilder builder, final Random random, final int index) {
+        if (index < WORDS.length) {
+            builder.append(WORDS[index]);
+            return;
+        }
+        final int parts = 2 + random.nextInt(2);
+        for (int i = 0; i < parts; ++i) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+
+    private static StringBuilder hex(final StringBuilder builder, final long value, final int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            builder.append(HEX[(int) ((value >>> shift) & 0xf)]);
+        }
+        return builder;
+    }
+}
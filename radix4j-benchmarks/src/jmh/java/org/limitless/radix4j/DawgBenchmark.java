@@ -0,0 +1,119 @@
+package org.limitless.radix4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.foreign.Arena;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory footprint and lookup cost of the frozen representations on URL like strings, which share long
+ * prefixes (scheme and host) as well as long suffixes (dates and extensions).
+ */
+@State(Scope.Thread)
+@Fork(jvmArgs = "-server", value = 1)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DawgBenchmark {
+
+    static final int URL_COUNT = 2_000_000;
+
+    private static final String[] HOSTS = {
+        "www", "news", "shop", "api", "cdn", "blog", "mail", "docs", "static", "images"
+    };
+    private static final String[] DOMAINS = {
+        "example", "limitless", "radix", "tree", "search", "archive", "market", "travel", "weather", "music"
+    };
+    private static final String[] TLDS = { ".com", ".org", ".net", ".io", ".co.uk", ".de", ".se" };
+    private static final String[] SECTIONS = {
+        "/articles/", "/products/", "/users/", "/posts/", "/category/", "/tags/", "/search/"
+    };
+    private static final String[] TAILS = {
+        ".html", "/index.html", ".php", "/", ".json", "/comments.html", "/print.html"
+    };
+
+    @State(Scope.Benchmark)
+    public static class UrlState {
+        Arena arena;
+        byte[] strings;
+        int[] offsets;
+        RadixTree tree;
+        SuccinctTree succinct;
+        Dawg dawg;
+        int index;
+    }
+
+    @Setup(Level.Trial)
+    public void setupUrls(final UrlState state) {
+        final var random = new Random(42);
+        final var builder = new StringBuilder();
+        final var bytes = new ByteArrayOutputStream();
+        state.offsets = new int[URL_COUNT + 1];
+        for (int i = 0; i < URL_COUNT; ++i) {
+            builder.setLength(0);
+            builder.append("https://")
+                .append(HOSTS[random.nextInt(HOSTS.length)]).append('.')
+                .append(DOMAINS[random.nextInt(DOMAINS.length)])
+                .append(TLDS[random.nextInt(TLDS.length)])
+                .append(SECTIONS[random.nextInt(SECTIONS.length)])
+                .append(2010 + random.nextInt(15)).append('/')
+                .append(1 + random.nextInt(12)).append('/')
+                .append(1 + random.nextInt(28)).append('/')
+                .append(random.nextInt(100_000))
+                .append(TAILS[random.nextInt(TAILS.length)]);
+            bytes.writeBytes(builder.toString().getBytes());
+            state.offsets[i + 1] = bytes.size();
+        }
+        state.strings = bytes.toByteArray();
+
+        state.arena = Arena.ofShared();
+        state.tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+        for (int i = 0; i < URL_COUNT; ++i) {
+            state.tree.add(state.offsets[i], state.offsets[i + 1] - state.offsets[i], state.strings);
+        }
+        state.succinct = state.tree.freezeSuccinct(state.arena);
+        state.dawg = state.tree.freezeDawg(state.arena);
+
+        final int size = state.tree.size();
+        final long treeBytes = (long) state.tree.allocatedBlocks() * Node.BYTES;
+        System.out.printf("%nstrings = %,d, string bytes = %,d%n", size, state.strings.length);
+        System.out.printf("radix tree    = %,15d bytes, %6.2f bytes per key%n", treeBytes, (double) treeBytes / size);
+        System.out.printf("succinct tree = %,15d bytes, %6.2f bytes per key%n", state.succinct.bytes(),
+            (double) state.succinct.bytes() / size);
+        System.out.printf("dawg          = %,15d bytes, %6.2f bytes per key, %,d states%n", state.dawg.bytes(),
+            (double) state.dawg.bytes() / size, state.dawg.states());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownUrls(final UrlState state) {
+        state.tree.close();
+        state.arena.close();
+    }
+
+    @Benchmark
+    public boolean radixTreeContains(final UrlState state) {
+        final int i = next(state);
+        return state.tree.contains(state.offsets[i], state.offsets[i + 1] - state.offsets[i], state.strings);
+    }
+
+    @Benchmark
+    public boolean succinctTreeContains(final UrlState state) {
+        final int i = next(state);
+        return state.succinct.contains(state.offsets[i], state.offsets[i + 1] - state.offsets[i], state.strings);
+    }
+
+    @Benchmark
+    public boolean dawgContains(final UrlState state) {
+        final int i = next(state);
+        return state.dawg.contains(state.offsets[i], state.offsets[i + 1] - state.offsets[i], state.strings);
+    }
+
+    private static int next(final UrlState state) {
+        final int i = state.index;
+        state.index = i + 1 == URL_COUNT ? 0 : i + 1;
+        return i;
+    }
+}
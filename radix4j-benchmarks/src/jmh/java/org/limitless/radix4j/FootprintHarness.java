@@ -0,0 +1,103 @@
+package org.limitless.radix4j;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/**
+ * Memory footprint per key of the tree and the usual alternatives for every dataset and size.
+ * <p>
+ * The tree is measured as its off-heap segments plus its on-heap object graph, the collections by walking
+ * their heap graphs. One line per measurement is printed as CSV or, with --json, as JSON lines.
+ * <pre>
+ * usage: FootprintHarness [--json] [size...]
+ * </pre>
+ */
+public final class FootprintHarness {
+
+    private static final int[] DEFAULT_SIZES = { 10_000, 100_000, 1_000_000 };
+
+    private final PrintStream out;
+    private final boolean json;
+
+    private FootprintHarness(final PrintStream out, final boolean json) {
+        this.out = out;
+        this.json = json;
+    }
+
+    public static void main(final String[] args) {
+        boolean json = false;
+        int[] sizes = new int[args.length];
+        int sizeCount = 0;
+        for (String arg : args) {
+            if (arg.equals("--json")) {
+                json = true;
+            } else {
+                sizes[sizeCount++] = Integer.parseInt(arg.replace("_", ""));
+            }
+        }
+        sizes = sizeCount == 0 ? DEFAULT_SIZES : Arrays.copyOf(sizes, sizeCount);
+
+        final FootprintHarness harness = new FootprintHarness(System.out, json);
+        if (!json) {
+            System.out.println("dataset,size,structure,off_heap_bytes,heap_bytes,bytes_per_key");
+        }
+        for (Datasets.Kind kind : Datasets.Kind.values()) {
+            for (int size : sizes) {
+                harness.measure(Datasets.generate(kind, size));
+            }
+        }
+    }
+
+    private void measure(final Datasets dataset) {
+        final int size = dataset.count();
+        final byte[] strings = dataset.strings();
+
+        final RadixTree tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+        for (int i = 0; i < size; ++i) {
+            tree.add(dataset.offset(i), dataset.length(i), strings);
+        }
+        final TreeStats stats = tree.stats();
+        final long offHeap = (long) stats.segmentsAllocated() * RadixTree.MAX_BLOCKS_PER_SEGMENT * Node.BYTES;
+        report(dataset, "RadixTree", offHeap, GraphLayout.parseInstance(tree).totalSize());
+        report(dataset, "RadixTreeLive", stats.nodes() * Node.BYTES, 0);
+        tree.close();
+
+        final HashSet<String> hashSet = new HashSet<>();
+        for (int i = 0; i < size; ++i) {
+            hashSet.add(new String(strings, dataset.offset(i), dataset.length(i)));
+        }
+        report(dataset, "HashSet<String>", 0, GraphLayout.parseInstance(hashSet).totalSize());
+
+        final TreeSet<byte[]> treeSet = new TreeSet<>(Arrays::compareUnsigned);
+        for (int i = 0; i < size; ++i) {
+            treeSet.add(dataset.key(i));
+        }
+        report(dataset, "TreeSet<byte[]>", 0, GraphLayout.parseInstance(treeSet).totalSize());
+
+        final byte[] sorted = new byte[strings.length];
+        final int[] offsets = new int[size + 1];
+        int index = 0;
+        for (byte[] key : treeSet) {
+            System.arraycopy(key, 0, sorted, offsets[index], key.length);
+            offsets[index + 1] = offsets[index] + key.length;
+            ++index;
+        }
+        report(dataset, "SortedArray", 0, GraphLayout.parseInstance(sorted, offsets).totalSize());
+    }
+
+    private void report(final Datasets dataset, final String structure, final long offHeap, final long heap) {
+        final double perKey = (double) (offHeap + heap) / dataset.count();
+        if (json) {
+            out.printf(Locale.ROOT,
+                "{\"dataset\":\"%s\",\"size\":%d,\"structure\":\"%s\",\"offHeapBytes\":%d,\"heapBytes\":%d,\"bytesPerKey\":%.2f}%n",
+                dataset.kind(), dataset.count(), structure, offHeap, heap, perKey);
+        } else {
+            out.printf(Locale.ROOT, "%s,%d,%s,%d,%d,%.2f%n", dataset.kind(), dataset.count(), structure, offHeap, heap, perKey);
+        }
+    }
+}
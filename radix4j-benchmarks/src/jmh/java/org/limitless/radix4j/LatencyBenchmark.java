@@ -0,0 +1,144 @@
+package org.limitless.radix4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of single operations on pre-filled trees of several sizes.
+ * <p>
+ * Adds cycle through a window of insert keys beyond the pre-filled range and removes through a window of delete
+ * keys inside it, so every measured call changes the tree. Once a window is used up, it is undone in an invocation
+ * setup outside of the measured call, and the rest is undone after every iteration, so all iterations sample the
+ * same tree. See {@link LoadGenerator} for an open-loop measurement.
+ */
+@State(Scope.Thread)
+@Fork(jvmArgs = "-server", value = 1)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LatencyBenchmark extends BaseBenchmark {
+
+    // the tree keeps at least 90% of its strings during a remove window
+    private static final int WINDOW_DIVISOR = 10;
+
+    @State(Scope.Benchmark)
+    public static class PrefilledTree {
+
+        @Param({ "100000", "1000000", "10000000" })
+        int size;
+
+        RadixTree tree;
+        int first;
+        int next;
+    }
+
+    @State(Scope.Benchmark)
+    public static class AddTree extends PrefilledTree {
+
+        @Setup(Level.Invocation)
+        public void cycle() {
+            if (next == first + size / WINDOW_DIVISOR) {
+                for (int i = first; i < next; ++i) {
+                    tree.remove(i * STRING_LENGTH, STRING_LENGTH, strings);
+                }
+                next = first;
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RemoveTree extends PrefilledTree {
+
+        @Setup(Level.Invocation)
+        public void cycle() {
+            if (next == first + size / WINDOW_DIVISOR) {
+                for (int i = first; i < next; ++i) {
+                    tree.add(i * STRING_LENGTH, STRING_LENGTH, strings);
+                }
+                next = first;
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setupPrefilledTree(final PrefilledTree state) {
+        prefill(state);
+    }
+
+    @Setup(Level.Trial)
+    public void setupAddTree(final AddTree state) {
+        prefill(state);
+    }
+
+    @Setup(Level.Trial)
+    public void setupRemoveTree(final RemoveTree state) {
+        prefill(state);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupAddIteration(final AddTree state) {
+        state.first = state.size;
+        state.next = state.size;
+    }
+
+    @Setup(Level.Iteration)
+    public void setupRemoveIteration(final RemoveTree state) {
+        state.first = 0;
+        state.next = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownAddIteration(final AddTree state) {
+        for (int i = state.first; i < state.next; ++i) {
+            state.tree.remove(i * STRING_LENGTH, STRING_LENGTH, strings);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownRemoveIteration(final RemoveTree state) {
+        for (int i = state.first; i < state.next; ++i) {
+            state.tree.add(i * STRING_LENGTH, STRING_LENGTH, strings);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownPrefilledTree(final PrefilledTree state) {
+        state.tree.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownAddTree(final AddTree state) {
+        state.tree.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownRemoveTree(final RemoveTree state) {
+        state.tree.close();
+    }
+
+    @Benchmark
+    public boolean radixTreeAdd(final AddTree state) {
+        return state.tree.add(state.next++ * STRING_LENGTH, STRING_LENGTH, strings);
+    }
+
+    @Benchmark
+    public boolean radixTreeContains(final PrefilledTree state) {
+        final int i = state.next;
+        state.next = i + 1 == state.size ? 0 : i + 1;
+        return state.tree.contains(i * STRING_LENGTH, STRING_LENGTH, strings);
+    }
+
+    @Benchmark
+    public boolean radixTreeRemove(final RemoveTree state) {
+        return state.tree.remove(state.next++ * STRING_LENGTH, STRING_LENGTH, strings);
+    }
+
+    private static void prefill(final PrefilledTree state) {
+        state.tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+        for (int i = 0; i < state.size; ++i) {
+            state.tree.add(i * STRING_LENGTH, STRING_LENGTH, strings);
+        }
+    }
+}
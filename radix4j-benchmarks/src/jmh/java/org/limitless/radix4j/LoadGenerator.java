@@ -0,0 +1,125 @@
+package org.limitless.radix4j;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator measuring the latency of one tree operation at a fixed request rate.
+ * <p>
+ * Operations are scheduled at fixed intervals and the latency of each is taken from its intended start, so a
+ * stall delays every operation queued behind it and shows up in the percentiles instead of being omitted. The
+ * service time, measured from the actual start, is recorded next to it for comparison.
+ * <pre>
+ * usage: LoadGenerator [add|contains|remove] [kind] [size] [rate per second] [seconds]
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private static final long HIGHEST_LATENCY = TimeUnit.SECONDS.toNanos(60);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final int WARMUP_SECONDS = 2;
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+    private enum Operation { ADD, CONTAINS, REMOVE }
+
+    private final Operation operation;
+    private final Datasets dataset;
+    private final int size;
+    private final long intervalNanos;
+    private final Histogram latency = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+    private final Histogram service = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+    private int[] lookups;
+    private long succeeded;
+
+    private LoadGenerator(final Operation operation, final Datasets dataset, final int size, final long rate) {
+        if (rate < 1 || rate > TimeUnit.SECONDS.toNanos(1)) {
+            throw new IllegalArgumentException("invalid rate");
+        }
+        this.operation = operation;
+        this.dataset = dataset;
+        this.size = size;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+    }
+
+    public static void main(final String[] args) {
+        final Operation operation = Operation.valueOf(arg(args, 0, "contains").toUpperCase(Locale.ROOT));
+        final Datasets.Kind kind = Datasets.Kind.valueOf(arg(args, 1, "URL").toUpperCase(Locale.ROOT));
+        final int size = Integer.parseInt(arg(args, 2, "1_000_000").replace("_", ""));
+        final long rate = Long.parseLong(arg(args, 3, "200_000").replace("_", ""));
+        final int seconds = Integer.parseInt(arg(args, 4, "10"));
+
+        final int operations = Math.toIntExact(rate * (WARMUP_SECONDS + seconds));
+        if (operation != Operation.CONTAINS && operations > size) {
+            throw new IllegalArgumentException("rate * (seconds + " + WARMUP_SECONDS + ") exceeds size");
+        }
+        final Datasets dataset = Datasets.generate(kind, operation == Operation.ADD ? size + operations : size);
+        final LoadGenerator generator = new LoadGenerator(operation, dataset, size, rate);
+        if (operation == Operation.CONTAINS) {
+            generator.lookups = Datasets.zipf(size, operations, DatasetBenchmark.ZIPF_EXPONENT, Datasets.DEFAULT_SEED);
+        }
+        generator.run(rate * WARMUP_SECONDS, rate * seconds);
+        generator.report(System.out, kind, size, rate);
+    }
+
+    private void run(final long warmupOperations, final long operations) {
+        final RadixTree tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+        final byte[] strings = dataset.strings();
+        for (int i = 0; i < size; ++i) {
+            tree.add(dataset.offset(i), dataset.length(i), strings);
+        }
+
+        final long total = warmupOperations + operations;
+        final long start = System.nanoTime();
+        for (int i = 0; i < total; ++i) {
+            if (i == warmupOperations) {
+                latency.reset();
+                service.reset();
+                succeeded = 0;
+            }
+            final long intended = start + i * intervalNanos;
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                if (intended - now > TimeUnit.MICROSECONDS.toNanos(50)) {
+                    LockSupport.parkNanos(intended - now - TimeUnit.MICROSECONDS.toNanos(50));
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+            final boolean result = switch (operation) {
+                case ADD -> tree.add(dataset.offset(size + i), dataset.length(size + i), strings);
+                case CONTAINS -> tree.contains(dataset.offset(lookups[i]), dataset.length(lookups[i]), strings);
+                case REMOVE -> tree.remove(dataset.offset(i), dataset.length(i), strings);
+            };
+            final long end = System.nanoTime();
+            if (result) {
+                ++succeeded;
+            }
+            latency.recordValue(Math.min(end - intended, HIGHEST_LATENCY));
+            service.recordValue(Math.min(end - now, HIGHEST_LATENCY));
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (elapsed > total * intervalNanos * 2) {
+            System.err.printf("rate not sustained, %d operations took %d ms%n", total, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        tree.close();
+    }
+
+    private void report(final PrintStream out, final Datasets.Kind kind, final int size, final long rate) {
+        out.printf(Locale.ROOT, "%s %s size=%d rate=%d/s operations=%d succeeded=%d%n",
+            operation.name().toLowerCase(Locale.ROOT), kind, size, rate, latency.getTotalCount(), succeeded);
+        out.println("percentile,latency_ns,service_ns");
+        for (double percentile : PERCENTILES) {
+            out.printf(Locale.ROOT, "%.2f,%d,%d%n",
+                percentile, latency.getValueAtPercentile(percentile), service.getValueAtPercentile(percentile));
+        }
+        out.printf(Locale.ROOT, "max,%d,%d%n", latency.getMaxValue(), service.getMaxValue());
+    }
+
+    private static String arg(final String[] args, final int index, final String defaultValue) {
+        return index < args.length ? args[index] : defaultValue;
+    }
+}
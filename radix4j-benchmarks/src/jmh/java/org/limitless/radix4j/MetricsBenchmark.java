@@ -0,0 +1,51 @@
+package org.limitless.radix4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the runtime counters, the disabled fork must match RadixTreeBenchmark.
+ */
+@State(Scope.Thread)
+@Warmup(time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, batchSize = 25_000_000)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetricsBenchmark extends BaseBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class FullTree extends BaseState {
+        RadixTree tree;
+    }
+
+    @Setup(Level.Iteration)
+    public void setupFullTree(final FullTree state) {
+        state.tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+        state.setup();
+        for (int offset = 0; offset < strings.length; offset += STRING_LENGTH) {
+            state.tree.add(offset, STRING_LENGTH, strings);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownFullTree(final FullTree state) {
+        state.tearDown();
+        if (state.tree.metrics() != null) {
+            System.out.println(state.tree.metrics());
+        }
+        state.tree.close();
+    }
+
+    @Benchmark
+    @Fork(jvmArgs = { "-server", "-Dradix4j.metrics=false" }, value = 1)
+    public boolean radixTreeContainsMetricsDisabled(final FullTree state) {
+        return state.updateStats(state.tree.contains(state.stringOffset, STRING_LENGTH, strings));
+    }
+
+    @Benchmark
+    @Fork(jvmArgs = { "-server", "-Dradix4j.metrics=true" }, value = 1)
+    public boolean radixTreeContainsMetricsEnabled(final FullTree state) {
+        return state.updateStats(state.tree.contains(state.stringOffset, STRING_LENGTH, strings));
+    }
+}
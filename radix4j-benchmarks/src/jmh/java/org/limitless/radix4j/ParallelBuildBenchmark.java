@@ -0,0 +1,51 @@
+package org.limitless.radix4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build time of a tree holding the whole dataset versus the number of builder threads, one thread adds the
+ * strings sequentially.
+ */
+@State(Scope.Benchmark)
+@Fork(jvmArgs = "-server", value = 1)
+@Warmup(iterations = 2, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelBuildBenchmark extends BaseBenchmark {
+
+    @Param({ "1", "2", "4", "8" })
+    int threads;
+
+    private ForkJoinPool executor;
+    private ParallelBuilder builder;
+    private RadixTree tree;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = new ForkJoinPool(threads);
+        builder = new ParallelBuilder(executor, RadixTree.MAX_BLOCKS_PER_SEGMENT);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        if (tree.size() != SIZE) {
+            System.out.println("size = " + tree.size());
+        }
+        tree.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int radixTreeBuild() {
+        tree = builder.build(strings, STRING_LENGTH, SIZE);
+        return tree.size();
+    }
+}
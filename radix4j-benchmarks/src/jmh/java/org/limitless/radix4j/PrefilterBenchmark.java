@@ -0,0 +1,64 @@
+package org.limitless.radix4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency with and without the negative lookup filter for a given ratio of hits.
+ * <p>
+ * The tree holds the first half of the dataset, misses are drawn from the second half.
+ */
+@State(Scope.Thread)
+@Fork(jvmArgs = "-server", value = 1)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PrefilterBenchmark extends BaseBenchmark {
+
+    private static final int TREE_SIZE = SIZE / 2;
+    private static final int LOOKUPS = 1 << 20;
+
+    @Param({ "0.05", "0.5", "1.0" })
+    double hitRatio;
+
+    @Param({ "false", "true" })
+    boolean prefilter;
+
+    private RadixTree tree;
+    private int[] lookups;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+        for (int i = 0; i < TREE_SIZE; ++i) {
+            tree.add(i * STRING_LENGTH, STRING_LENGTH, strings);
+        }
+        if (prefilter) {
+            tree.prefilter(TREE_SIZE);
+        }
+        final SplittableRandom random = new SplittableRandom(42);
+        lookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; ++i) {
+            final int index = random.nextDouble() < hitRatio ?
+                random.nextInt(TREE_SIZE) : TREE_SIZE + random.nextInt(SIZE - TREE_SIZE);
+            lookups[i] = index * STRING_LENGTH;
+        }
+        next = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tree.close();
+    }
+
+    @Benchmark
+    public boolean radixTreeContains() {
+        final int offset = lookups[next];
+        next = (next + 1) & (LOOKUPS - 1);
+        return tree.contains(offset, STRING_LENGTH, strings);
+    }
+}
@@ -0,0 +1,65 @@
+package org.limitless.radix4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.*;
+
+@State(Scope.Thread)
+@Fork(jvmArgs = "-server", value = 1)
+@Warmup(iterations = 2, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SnapshotBenchmark extends BaseBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SnapshotState extends BaseState {
+        Path file;
+    }
+
+    @Setup(Level.Trial)
+    public void setupSnapshot(final SnapshotState state) throws IOException {
+        final var tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+        for (int offset = 0; offset < strings.length; offset += STRING_LENGTH) {
+            tree.add(offset, STRING_LENGTH, strings);
+        }
+        state.file = Files.createTempFile("radix4j", ".snapshot");
+        try (var channel = FileChannel.open(state.file, WRITE, TRUNCATE_EXISTING)) {
+            tree.writeSnapshot(channel);
+        }
+        tree.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownSnapshot(final SnapshotState state) throws IOException {
+        Files.deleteIfExists(state.file);
+    }
+
+    @Benchmark
+    public int radixTreeReadSnapshot(final SnapshotState state) throws IOException {
+        try (var channel = FileChannel.open(state.file, READ)) {
+            final var tree = RadixTree.readSnapshot(channel, Arena.ofShared());
+            final int size = tree.size();
+            tree.close();
+            return size;
+        }
+    }
+
+    @Benchmark
+    public int radixTreeAddAll(final SnapshotState state) {
+        final var tree = new RadixTree(RadixTree.MAX_BLOCKS_PER_SEGMENT);
+        for (int offset = 0; offset < strings.length; offset += STRING_LENGTH) {
+            tree.add(offset, STRING_LENGTH, strings);
+        }
+        final int size = tree.size();
+        tree.close();
+        return size;
+    }
+}
@@ -0,0 +1,284 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Incremental checkpoints of a tree made of whole pool segments.
+ * <p>
+ * The tree marks the segment of every node it allocates or modifies in a dirty bitmap, through the same hooks that
+ * invalidate the subtree hashes. A full checkpoint writes every segment holding a live node, the next ones only
+ * the dirty segments, so their size follows the updates rather than the tree. A checkpoint carries its sequence
+ * number, the root offset and the size. A restore overlays the segments of a full checkpoint and of the following
+ * ones in sequence order, then copies the live nodes from the root into a new tree. Replacing the pool of the
+ * tree marks every segment, the next checkpoint is full again. Like snapshots, checkpoints do not keep the
+ * deadlines of the strings added with a time to live.
+ */
+final class Checkpoint {
+
+    static final int MAGIC = 0x52445843; // RDXC
+    static final int VERSION = 1;
+
+    // header byte layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = MAGIC_OFFSET + Integer.BYTES;
+    private static final int BLOCKS_PER_SEGMENT_OFFSET = VERSION_OFFSET + Integer.BYTES;
+    private static final int FULL_OFFSET = BLOCKS_PER_SEGMENT_OFFSET + Integer.BYTES;
+    private static final int SEQUENCE_OFFSET = FULL_OFFSET + Integer.BYTES;
+    private static final int ROOT_OFFSET = SEQUENCE_OFFSET + Long.BYTES;
+    private static final int SIZE_OFFSET = ROOT_OFFSET + Integer.BYTES;
+    private static final int SEGMENT_COUNT_OFFSET = SIZE_OFFSET + Integer.BYTES;
+    static final int HEADER_LENGTH = SEGMENT_COUNT_OFFSET + Integer.BYTES;
+
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    private long[] dirty = new long[1];
+    private boolean full = true;
+    private long sequence;
+
+    void mark(final int offset) {
+        final int segment = Address.segment(offset);
+        if (segment / Long.SIZE >= dirty.length) {
+            dirty = Arrays.copyOf(dirty, Math.max(dirty.length * 2, segment / Long.SIZE + 1));
+        }
+        dirty[segment / Long.SIZE] |= 1L << segment;
+    }
+
+    void markAll() {
+        full = true;
+    }
+
+    /**
+     * Writes the dirty segments, or every live segment for a full checkpoint, and clears the dirty bitmap.
+     * @param tree source
+     * @param channel destination
+     * @return number of segments written
+     * @throws IOException write failed
+     */
+    int write(final RadixTree tree, final FileChannel channel) throws IOException {
+        final boolean fullCheckpoint = full;
+        if (fullCheckpoint) {
+            Arrays.fill(dirty, 0);
+            markLive(tree);
+        }
+        int segments = 0;
+        for (final long word : dirty) {
+            segments += Long.bitCount(word);
+        }
+
+        final int blocksPerSegment = tree.store().blocksPerSegment();
+        final long segmentBytes = (long) blocksPerSegment * BYTES;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect((int) (Integer.BYTES + segmentBytes))
+            .order(ByteOrder.nativeOrder());
+        final MemorySegment memory = MemorySegment.ofBuffer(buffer);
+        buffer.putInt(MAGIC_OFFSET, MAGIC)
+            .putInt(VERSION_OFFSET, VERSION)
+            .putInt(BLOCKS_PER_SEGMENT_OFFSET, blocksPerSegment)
+            .putInt(FULL_OFFSET, fullCheckpoint ? 1 : 0)
+            .putLong(SEQUENCE_OFFSET, sequence + 1)
+            .putInt(ROOT_OFFSET, tree.rootOffset())
+            .putInt(SIZE_OFFSET, tree.size())
+            .putInt(SEGMENT_COUNT_OFFSET, segments);
+        buffer.limit(HEADER_LENGTH);
+        Snapshot.writeFully(buffer, channel);
+
+        final BlockPool<Node> pool = tree.nodePool();
+        final Node first = new Node();
+        final Node last = new Node();
+        for (int i = 0; i < dirty.length; ++i) {
+            long word = dirty[i];
+            while (word != 0) {
+                final int segment = i * Long.SIZE + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                buffer.putInt(0, segment);
+                pool.get(Address.fromOffset((int) Address.toOffset(segment, 0)), first);
+                pool.get(Address.fromOffset((int) Address.toOffset(segment, blocksPerSegment - 1)), last);
+                if (first.memorySegment() == last.memorySegment() &&
+                    last.fieldOffset(0) - first.fieldOffset(0) == segmentBytes - BYTES) {
+                    MemorySegment.copy(first.memorySegment(), first.fieldOffset(0), memory, Integer.BYTES,
+                        segmentBytes);
+                } else {
+                    for (int block = 0; block < blocksPerSegment; ++block) {
+                        pool.get(Address.fromOffset((int) Address.toOffset(segment, block)), first);
+                        MemorySegment.copy(first.memorySegment(), first.fieldOffset(0), memory,
+                            Integer.BYTES + (long) block * BYTES, BYTES);
+                    }
+                }
+                buffer.limit(buffer.capacity());
+                Snapshot.writeFully(buffer, channel);
+            }
+        }
+
+        Arrays.fill(dirty, 0);
+        full = false;
+        ++sequence;
+        return segments;
+    }
+
+    /**
+     * Restores a tree from a full checkpoint followed by the next checkpoints in sequence order.
+     * @param channels checkpoints
+     * @param arena memory arena of the new tree
+     * @return tree
+     * @throws IOException read failed, invalid or out of order checkpoint
+     */
+    static RadixTree read(final FileChannel[] channels, final Arena arena) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.nativeOrder());
+        MemorySegment[] segments = new MemorySegment[INITIAL_STACK_SIZE];
+        int blocksPerSegment = 0;
+        long sequence = 0;
+        int root = EMPTY_BLOCK;
+        int size = 0;
+        try (Arena image = Arena.ofConfined()) {
+            for (int c = 0; c < channels.length; ++c) {
+                final FileChannel channel = channels[c];
+                header.clear();
+                Snapshot.readFully(header, channel);
+                if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                    throw new IOException("invalid checkpoint header");
+                }
+                final long current = header.getLong(SEQUENCE_OFFSET);
+                if (c == 0 ? header.getInt(FULL_OFFSET) == 0 :
+                    current != sequence + 1 || header.getInt(BLOCKS_PER_SEGMENT_OFFSET) != blocksPerSegment) {
+                    throw new IOException("checkpoint out of order " + current);
+                }
+                blocksPerSegment = header.getInt(BLOCKS_PER_SEGMENT_OFFSET);
+                if (blocksPerSegment < 64 || blocksPerSegment > RadixTree.MAX_BLOCKS_PER_SEGMENT) {
+                    throw new IOException("invalid blocks per segment " + blocksPerSegment);
+                }
+                sequence = current;
+                root = header.getInt(ROOT_OFFSET);
+                size = header.getInt(SIZE_OFFSET);
+
+                final long segmentBytes = (long) blocksPerSegment * BYTES;
+                final ByteBuffer index = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.nativeOrder());
+                final int count = header.getInt(SEGMENT_COUNT_OFFSET);
+                for (int i = 0; i < count; ++i) {
+                    index.clear();
+                    Snapshot.readFully(index, channel);
+                    final int segment = index.getInt(0);
+                    if (segment < 0 || segment >= Address.MAX_SEGMENTS) {
+                        throw new IOException("invalid checkpoint segment " + segment);
+                    }
+                    if (segment >= segments.length) {
+                        segments = Arrays.copyOf(segments, Math.max(segments.length * 2, segment + 1));
+                    }
+                    if (segments[segment] == null) {
+                        segments[segment] = image.allocate(segmentBytes);
+                    }
+                    final ByteBuffer content = segments[segment].asByteBuffer();
+                    while (content.hasRemaining()) {
+                        if (channel.read(content) < 0) {
+                            throw new IOException("unexpected end of checkpoint");
+                        }
+                    }
+                }
+            }
+            if (channels.length == 0) {
+                throw new IOException("no checkpoint");
+            }
+            final RadixTree tree = new RadixTree(blocksPerSegment, arena);
+            try {
+                copy(segments, root, tree);
+            } catch (final IOException | RuntimeException e) {
+                tree.close();
+                throw e;
+            }
+            tree.restore(size);
+            return tree;
+        }
+    }
+
+    /**
+     * Copies the live nodes of an image of segments into an empty tree, depth first from the root
+     * @param segments image segments by index, null for a segment missing from the image
+     * @param root image offset of the root
+     * @param tree destination
+     * @throws IOException an offset out of the image or more nodes than the image holds
+     */
+    static void copy(final MemorySegment[] segments, final int root, final RadixTree tree) throws IOException {
+        final int blocksPerSegment = tree.blocksPerSegment();
+        final BlockPool<Node> pool = tree.nodePool();
+        final Node node = new Node();
+        final Node parent = new Node();
+        // image offset of the node, then offset and child position of its copied parent
+        int[] sources = new int[INITIAL_STACK_SIZE];
+        int[] parents = new int[INITIAL_STACK_SIZE];
+        int[] positions = new int[INITIAL_STACK_SIZE];
+        int stackCount = 0;
+        sources[stackCount] = root;
+        parents[stackCount++] = NOT_FOUND;
+        int nodes = 0;
+        while (stackCount >= 1) {
+            --stackCount;
+            final int source = sources[stackCount];
+            final int segment = Address.segment(source);
+            final int block = Address.block(source);
+            if (segment >= segments.length || segments[segment] == null || block >= blocksPerSegment ||
+                ++nodes > (long) segments.length * blocksPerSegment) {
+                throw new IOException("corrupt node image");
+            }
+            if (parents[stackCount] == NOT_FOUND) {
+                node.wrap(tree.rootNode());
+            } else {
+                tree.allocate(node);
+                pool.get(Address.fromOffset(parents[stackCount]), parent);
+                parent.child(positions[stackCount], node.offset());
+            }
+            MemorySegment.copy(segments[segment], (long) block * BYTES, node.memorySegment(), node.fieldOffset(0),
+                BYTES);
+
+            final int children = Header.children(node.header());
+            if (stackCount + children > sources.length) {
+                final int length = Math.max(sources.length * 2, stackCount + children);
+                sources = Arrays.copyOf(sources, length);
+                parents = Arrays.copyOf(parents, length);
+                positions = Arrays.copyOf(positions, length);
+            }
+            final int offset = node.offset();
+            for (int i = 0; i < children; ++i) {
+                final int child = node.child(i);
+                if (child != EMPTY_BLOCK) {
+                    sources[stackCount] = child;
+                    parents[stackCount] = offset;
+                    positions[stackCount++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the segments holding the live nodes of the tree
+     */
+    private void markLive(final RadixTree tree) {
+        final BlockPool<Node> pool = tree.nodePool();
+        final Node node = new Node();
+        int[] stack = new int[INITIAL_STACK_SIZE];
+        int stackCount = 0;
+        stack[stackCount++] = tree.rootOffset();
+        while (stackCount >= 1) {
+            final int offset = stack[--stackCount];
+            mark(offset);
+            pool.get(Address.fromOffset(offset), node);
+            final int children = Header.children(node.header());
+            if (stackCount + children > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, stackCount + children));
+            }
+            for (int i = 0; i < children; ++i) {
+                final int child = node.child(i);
+                if (child != EMPTY_BLOCK) {
+                    stack[stackCount++] = child;
+                }
+            }
+        }
+    }
+}
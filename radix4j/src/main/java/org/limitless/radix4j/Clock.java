@@ -0,0 +1,184 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.util.Arrays;
+
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * CLOCK eviction keeping a tree within a string count and a node budget.
+ * <p>
+ * The reference bits live in the pad byte of the nodes, one bit per node shared by the strings ending in it. The
+ * hand is the last string visited: it advances to the next string in sorted order and wraps around at the end. A
+ * string ending in a referenced node clears the bit and survives, a string ending in an unreferenced node is
+ * removed. A step either clears a bit or removes a string, and only lookups and inserts set bits again, so an
+ * insert costs an amortized constant number of steps, each step being one search from the root.
+ * <p>
+ * The policy approximates CLOCK per node rather than per string. A node ends up to twelve strings, its own string
+ * and one per key, and they share the bit: a hit on any of them protects all of them, and the hand passing a cold
+ * string clears the bit for its hot neighbours too, which the hand may then evict in the same sweep.
+ */
+final class Clock {
+
+    private static final int INITIAL_HAND_SIZE = 64;
+
+    final int maxStrings;
+    final int maxNodes;
+
+    private final RadixTree tree;
+    private final Node node = new Node();
+    private final long[] entries = new long[KeyCursor.MAX_LEVEL_ENTRIES];
+    private byte[] hand = new byte[INITIAL_HAND_SIZE];
+    private int handLength;
+    private long evictions;
+
+    Clock(final RadixTree tree, final int maxStrings, final int maxNodes, final long evictions) {
+        this.tree = tree;
+        this.maxStrings = maxStrings;
+        this.maxNodes = maxNodes;
+        this.evictions = evictions;
+    }
+
+    long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Removes cold strings until the tree is within its bounds
+     */
+    void evict() {
+        while (!tree.isEmpty() && (tree.size() > maxStrings || tree.allocatedBlocks() > maxNodes)) {
+            advance();
+            final Node terminal = tree.terminal(0, handLength, hand);
+            if (terminal != null && terminal.referenced()) {
+                terminal.referenced(false);
+            } else {
+                var _ = tree.remove(0, handLength, hand);
+                ++evictions;
+            }
+        }
+    }
+
+    /**
+     * Moves the hand to the smallest string greater than the hand, or to the first string after the last one.
+     */
+    private void advance() {
+        final BlockPool<Node> pool = tree.nodePool();
+        if (handLength == 0) {
+            first(pool, tree.rootOffset(), 0);
+            return;
+        }
+
+        // deepest key greater than the hand byte at its level, the smallest candidate when the walk fails
+        int nextLength = -1;
+        long nextEntry = 0;
+        int offset = tree.rootOffset();
+        int length = 0;
+        while (true) {
+            pool.get(Address.fromOffset(offset), node);
+            final int stringLength = Header.stringLength(node.header());
+            final int compared = Math.min(stringLength, handLength - length);
+            int i = 0;
+            while (i < compared && node.charAt(i) == hand[length + i]) {
+                ++i;
+            }
+            if (i < compared) {
+                if ((node.charAt(i) & 0xff) > (hand[length + i] & 0xff)) {
+                    first(pool, offset, length);
+                    return;
+                }
+                break;
+            }
+            if (handLength - length < stringLength) {
+                first(pool, offset, length);
+                return;
+            }
+
+            length += stringLength;
+            final int count = KeyCursor.level(pool, node, offset, entries, 0);
+            if (length == handLength) {
+                if (count >= 1) {
+                    take(pool, entries[0], length);
+                    return;
+                }
+                break;
+            }
+            final int next = hand[length] & 0xff;
+            long match = -1;
+            for (int e = 0; e < count; ++e) {
+                final int key = KeyCursor.entryKey(entries[e]) & 0xff;
+                if (key == next) {
+                    match = entries[e];
+                } else if (key > next) {
+                    nextLength = length;
+                    nextEntry = entries[e];
+                    break;
+                }
+            }
+            final int child = match == -1 ? EMPTY_BLOCK : KeyCursor.entryChild(match);
+            if (child == EMPTY_BLOCK) {
+                break;
+            }
+            ++length;
+            if (length == handLength) {
+                first(pool, child, length);
+                return;
+            }
+            offset = child;
+        }
+
+        if (nextLength >= 0) {
+            take(pool, nextEntry, nextLength);
+        } else {
+            first(pool, tree.rootOffset(), 0);
+        }
+    }
+
+    /**
+     * Moves the hand to the string of a level entry or to the smallest string below it
+     */
+    private void take(final BlockPool<Node> pool, final long entry, final int length) {
+        ensureHand(length + 1);
+        hand[length] = KeyCursor.entryKey(entry);
+        if (KeyCursor.entryContains(entry)) {
+            handLength = length + 1;
+        } else {
+            first(pool, KeyCursor.entryChild(entry), length + 1);
+        }
+    }
+
+    /**
+     * Moves the hand to the smallest string of a subtree, the hand holds the string leading to it
+     */
+    private void first(final BlockPool<Node> pool, int offset, int length) {
+        while (true) {
+            pool.get(Address.fromOffset(offset), node);
+            final byte header = node.header();
+            final int stringLength = Header.stringLength(header);
+            ensureHand(length + stringLength + 1);
+            if (stringLength >= 1) {
+                node.string(0, stringLength, hand, length);
+            }
+            length += stringLength;
+            if (stringLength >= 1 && Header.containsString(header)) {
+                break;
+            }
+            if (KeyCursor.level(pool, node, offset, entries, 0) == 0) {
+                break;
+            }
+            hand[length++] = KeyCursor.entryKey(entries[0]);
+            if (KeyCursor.entryContains(entries[0])) {
+                break;
+            }
+            offset = KeyCursor.entryChild(entries[0]);
+        }
+        handLength = length;
+    }
+
+    private void ensureHand(final int length) {
+        if (length > hand.length) {
+            hand = Arrays.copyOf(hand, Math.max(hand.length * 2, length));
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.util.Arrays;
+
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Walks two trees together by string prefix for the diff and the set operations.
+ * <p>
+ * The two trees may split the same strings into different nodes, so the walk keeps a cursor per tree: a node, a
+ * position in its string and whether the prefix itself is a string of the parent key. The next bytes of a cursor
+ * are the sorted keys of its node level, see KeyCursor.level, or the next byte of its node string, and the two
+ * sorted lists are merged. Only the branches an operation needs are followed, an intersection never enters a
+ * branch missing from either tree. When both trees maintain subtree hashes, a prefix with equal hashes on both
+ * sides is skipped by the diff, the difference and the subset test. The prefixes are visited in sorted order.
+ * <p>
+ * A set operation building a tree appends the strings to the result in sorted order, and a branch found in one
+ * tree only is copied node by node below its prefix instead of being walked.
+ */
+final class CoTraversal {
+
+    static final int DIFF = 0;
+    static final int UNION = 1;
+    static final int INTERSECT = 2;
+    static final int DIFFERENCE = 3;
+    static final int SUBSET = 4;
+
+    private static final int INITIAL_SIZE = 32;
+    private static final int POSITION_SHIFT = Integer.SIZE;
+    private static final long OFFSET_MASK = -1L >>> Integer.SIZE;
+    private static final long POSITION_MASK = 0xff;
+    private static final long OWN_KEY = 1L << (POSITION_SHIFT + Byte.SIZE);
+    private static final long EMPTY = 0;
+    // next byte entry, the byte above the cursor it leads to
+    private static final int KEY_SHIFT = 48;
+    private static final long CURSOR_MASK = (1L << KEY_SHIFT) - 1;
+
+    private final int operation;
+    private final RadixTree left;
+    private final RadixTree right;
+    private final boolean compareHashes;
+    private final RadixTree result;
+    private final Node node = new Node();
+    private final long[] leftEntries = new long[KeyCursor.MAX_LEVEL_ENTRIES];
+    private final long[] rightEntries = new long[KeyCursor.MAX_LEVEL_ENTRIES];
+    private byte[] prefix = new byte[INITIAL_SIZE];
+    // shortest prefix rewritten and length of the last string appended to the result
+    private int low = Integer.MAX_VALUE;
+    private int appended;
+
+    // pending prefixes, a cursor per tree and the prefix length and last byte
+    private long[] lefts = new long[INITIAL_SIZE];
+    private long[] rights = new long[INITIAL_SIZE];
+    private int[] frames = new int[INITIAL_SIZE];
+    private int count;
+
+    private CoTraversal(final int operation, final RadixTree left, final RadixTree right, final boolean compareHashes,
+                        final RadixTree result) {
+        this.operation = operation;
+        this.left = left;
+        this.right = right;
+        this.compareHashes = compareHashes;
+        this.result = result;
+    }
+
+    /**
+     * Reports the strings found in only one of the trees, both trees track their subtree hashes
+     * @param left tree
+     * @param right tree
+     * @param visitor differences
+     */
+    static void diff(final RadixTree left, final RadixTree right, final DiffVisitor visitor) {
+        var _ = new CoTraversal(DIFF, left, right, true, null).run(visitor, null);
+    }
+
+    /**
+     * Streams the strings of a set operation
+     * @param operation UNION, INTERSECT or DIFFERENCE
+     * @param left tree
+     * @param right tree
+     * @param visitor result strings
+     */
+    static void combine(final int operation, final RadixTree left, final RadixTree right, final KeyVisitor visitor) {
+        var _ = new CoTraversal(operation, left, right, left.tracksHashes() && right.tracksHashes(), null)
+            .run(null, visitor);
+    }
+
+    /**
+     * Builds the result of a set operation into an empty tree
+     * @param operation UNION, INTERSECT or DIFFERENCE
+     * @param left tree
+     * @param right tree
+     * @param result empty tree receiving the strings
+     */
+    static void build(final int operation, final RadixTree left, final RadixTree right, final RadixTree result) {
+        var _ = new CoTraversal(operation, left, right, left.tracksHashes() && right.tracksHashes(), result)
+            .run(null, null);
+    }
+
+    /**
+     * Checks that every string of the left tree is in the right tree
+     * @param left tree
+     * @param right tree
+     * @return true when left is a subset of right
+     */
+    static boolean isSubset(final RadixTree left, final RadixTree right) {
+        return new CoTraversal(SUBSET, left, right, left.tracksHashes() && right.tracksHashes(), null).run(null, null);
+    }
+
+    private boolean run(final DiffVisitor diffVisitor, final KeyVisitor visitor) {
+        final BlockPool<Node> leftPool = left.nodePool();
+        final BlockPool<Node> rightPool = right.nodePool();
+        push(cursor(left.rootOffset(), 0, false), cursor(right.rootOffset(), 0, false), 0, 0);
+        while (count >= 1) {
+            --count;
+            final long leftCursor = lefts[count];
+            final long rightCursor = rights[count];
+            final int length = frames[count] >>> Byte.SIZE;
+            if (length >= 1) {
+                prefix[length - 1] = (byte) frames[count];
+                low = Math.min(low, length - 1);
+            }
+            if (compareHashes && operation != UNION && operation != INTERSECT &&
+                hash(left, leftCursor, length) == hash(right, rightCursor, length)) {
+                continue;
+            }
+            if (result != null && (leftCursor == EMPTY || rightCursor == EMPTY)) {
+                final long cursor = leftCursor == EMPTY ? rightCursor : leftCursor;
+                if (offset(cursor) != EMPTY_BLOCK && position(cursor) == 0) {
+                    // a branch of one tree only, copied whole
+                    result.appendSubtree(prefix, length, Math.min(low, appended), leftCursor == EMPTY ? right : left,
+                        offset(cursor), (cursor & OWN_KEY) != 0);
+                    low = Integer.MAX_VALUE;
+                    appended = 0;
+                    continue;
+                }
+            }
+
+            final boolean inLeft = isString(leftPool, leftCursor);
+            final boolean inRight = isString(rightPool, rightCursor);
+            switch (operation) {
+                case DIFF -> {
+                    if (inLeft != inRight) {
+                        diffVisitor.visit(prefix, length, inLeft);
+                    }
+                }
+                case UNION -> {
+                    if (inLeft || inRight) {
+                        visit(visitor, length);
+                    }
+                }
+                case INTERSECT -> {
+                    if (inLeft && inRight) {
+                        visit(visitor, length);
+                    }
+                }
+                case DIFFERENCE -> {
+                    if (inLeft && !inRight) {
+                        visit(visitor, length);
+                    }
+                }
+                default -> {
+                    if (inLeft && !inRight) {
+                        return false;
+                    }
+                }
+            }
+
+            final int leftCount = entries(leftPool, leftCursor, leftEntries);
+            final int rightCount = entries(rightPool, rightCursor, rightEntries);
+            if (length + 1 > prefix.length) {
+                prefix = Arrays.copyOf(prefix, prefix.length * 2);
+            }
+            // merged from the highest byte, the lowest is visited first
+            int i = leftCount - 1;
+            int j = rightCount - 1;
+            while (i >= 0 || j >= 0) {
+                final int leftKey = i >= 0 ? key(leftEntries[i]) : -1;
+                final int rightKey = j >= 0 ? key(rightEntries[j]) : -1;
+                final int key = Math.max(leftKey, rightKey);
+                final long leftNext = leftKey == key ? leftEntries[i--] & CURSOR_MASK : EMPTY;
+                final long rightNext = rightKey == key ? rightEntries[j--] & CURSOR_MASK : EMPTY;
+                switch (operation) {
+                    case INTERSECT -> {
+                        if (leftNext != EMPTY && rightNext != EMPTY) {
+                            push(leftNext, rightNext, length + 1, key);
+                        }
+                    }
+                    case DIFFERENCE -> {
+                        if (leftNext != EMPTY) {
+                            push(leftNext, rightNext, length + 1, key);
+                        }
+                    }
+                    case SUBSET -> {
+                        if (leftNext != EMPTY && rightNext == EMPTY) {
+                            return false;
+                        }
+                        if (leftNext != EMPTY) {
+                            push(leftNext, rightNext, length + 1, key);
+                        }
+                    }
+                    default -> push(leftNext, rightNext, length + 1, key);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports a string of a set operation, a built result receives it with the length of the prefix it shares with
+     * the previous string at most
+     */
+    private void visit(final KeyVisitor visitor, final int length) {
+        if (result == null) {
+            visitor.visit(prefix, length);
+        } else {
+            var _ = result.append(prefix, length, Math.min(low, appended));
+            low = Integer.MAX_VALUE;
+            appended = length;
+        }
+    }
+
+    private long hash(final RadixTree tree, final long cursor, final int length) {
+        if (cursor == EMPTY) {
+            return 0;
+        }
+        final int offset = offset(cursor);
+        long hash = (cursor & OWN_KEY) != 0 ? SubtreeHashes.stringHash(prefix, length) : 0;
+        if (offset != EMPTY_BLOCK) {
+            hash += tree.subtreeHash(offset, prefix, length - position(cursor));
+        }
+        return hash;
+    }
+
+    private boolean isString(final BlockPool<Node> pool, final long cursor) {
+        if ((cursor & OWN_KEY) != 0) {
+            return true;
+        }
+        final int offset = offset(cursor);
+        if (offset == EMPTY_BLOCK) {
+            return false;
+        }
+        pool.get(Address.fromOffset(offset), node);
+        final byte header = node.header();
+        final int stringLength = Header.stringLength(header);
+        return stringLength >= 1 && position(cursor) == stringLength && Header.containsString(header);
+    }
+
+    /**
+     * Collects the bytes following a cursor with the cursors they lead to, sorted by byte
+     * @return number of entries
+     */
+    private int entries(final BlockPool<Node> pool, final long cursor, final long[] entries) {
+        final int offset = offset(cursor);
+        if (offset == EMPTY_BLOCK) {
+            return 0;
+        }
+        pool.get(Address.fromOffset(offset), node);
+        final int position = position(cursor);
+        if (position < Header.stringLength(node.header())) {
+            entries[0] = entry(node.charAt(position), cursor(offset, position + 1, false));
+            return 1;
+        }
+        final int count = KeyCursor.level(pool, node, offset, entries, 0);
+        for (int i = 0; i < count; ++i) {
+            final long level = entries[i];
+            entries[i] = entry(KeyCursor.entryKey(level),
+                cursor(KeyCursor.entryChild(level), 0, KeyCursor.entryContains(level)));
+        }
+        return count;
+    }
+
+    private static long entry(final byte key, final long cursor) {
+        return (long) (key & 0xff) << KEY_SHIFT | cursor;
+    }
+
+    private static int key(final long entry) {
+        return (int) (entry >>> KEY_SHIFT);
+    }
+
+    private void push(final long leftCursor, final long rightCursor, final int length, final int key) {
+        if (count == frames.length) {
+            lefts = Arrays.copyOf(lefts, count * 2);
+            rights = Arrays.copyOf(rights, count * 2);
+            frames = Arrays.copyOf(frames, count * 2);
+        }
+        lefts[count] = leftCursor;
+        rights[count] = rightCursor;
+        frames[count] = length << Byte.SIZE | key;
+        ++count;
+    }
+
+    private static long cursor(final int offset, final int position, final boolean ownKey) {
+        return (offset & OFFSET_MASK) | ((long) position << POSITION_SHIFT) | (ownKey ? OWN_KEY : 0);
+    }
+
+    private static int offset(final long cursor) {
+        return (int) (cursor & OFFSET_MASK);
+    }
+
+    private static int position(final long cursor) {
+        return (int) ((cursor >>> POSITION_SHIFT) & POSITION_MASK);
+    }
+}
@@ -0,0 +1,402 @@
+package org.limitless.radix4j;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * Immutable minimal acyclic automaton, a directed acyclic word graph sharing both prefixes and suffixes.
+ * <p>
+ * The automaton is compiled from the sorted strings of a tree: the states of the previous string below the
+ * shared prefix can no longer change, they are frozen bottom-up and replaced by an equivalent frozen state
+ * when one exists (hash-consing). A state is stored as an int with the final flag in the high bit and the index
+ * of its first edge, the edges as parallel arrays of targets and labels sorted by unsigned label.
+ * <p>
+ * The automaton is safe for concurrent readers.
+ */
+public final class Dawg {
+
+    private static final int FINAL_FLAG = 1 << 31;
+    private static final int EDGE_MASK = ~FINAL_FLAG;
+    private static final int INITIAL_STACK_SIZE = 16;
+    private static final int INITIAL_KEY_SIZE = 64;
+
+    private final MemorySegment memory;
+    private final int states;
+    private final int edges;
+    private final int root;
+    private final int size;
+    private final long targetsOffset;
+    private final long labelsOffset;
+
+    private Dawg(final Builder builder, final int root, final int size, final Arena arena) {
+        states = builder.stateCount;
+        edges = builder.edgeCount;
+        this.root = root;
+        this.size = size;
+        targetsOffset = (long) (states + 1) * Integer.BYTES;
+        labelsOffset = targetsOffset + (long) edges * Integer.BYTES;
+        memory = arena.allocate(labelsOffset + edges, Integer.BYTES);
+        MemorySegment.copy(builder.starts, 0, memory, JAVA_INT, 0, states + 1);
+        MemorySegment.copy(builder.targets, 0, memory, JAVA_INT, targetsOffset, edges);
+        MemorySegment.copy(builder.labels, 0, memory, JAVA_BYTE, labelsOffset, edges);
+    }
+
+    /**
+     * Compiles the strings of the tree.
+     * @param tree source
+     * @param arena memory arena
+     * @return automaton
+     */
+    static Dawg build(final RadixTree tree, final Arena arena) {
+        final Builder builder = new Builder();
+        final KeyCursor cursor = new KeyCursor(tree).reset();
+        while (cursor.next()) {
+            builder.add(cursor.key(), cursor.length(), cursor.shared());
+        }
+        return new Dawg(builder, builder.finish(), tree.size(), arena);
+    }
+
+    /**
+     * Check value presence
+     * @param string value
+     * @return true if the string is present
+     */
+    public boolean contains(final String string) {
+        if (string == null) {
+            return false;
+        }
+        final byte[] bytes = string.getBytes();
+        return contains(0, bytes.length, bytes);
+    }
+
+    /**
+     * Check value presence
+     * @param string value
+     * @return true if the string is present
+     */
+    public boolean contains(final byte[] string) {
+        if (string == null) {
+            return false;
+        }
+        return contains(0, string.length, string);
+    }
+
+    /**
+     * Check the value presence
+     * @param position value offset
+     * @param length value length
+     * @param string value
+     * @return true when string is present
+     */
+    public boolean contains(final int position, final int length, final byte[] string) {
+        if (position < 0 || length <= 0 || string == null || position + length > string.length) {
+            return false;
+        }
+        final int state = walk(position, length, string);
+        return state >= 0 && isFinal(state);
+    }
+
+    /**
+     * Visits the strings matching the prefix in sorted order.
+     * @param length prefix length, zero visits all strings
+     * @param prefix prefix
+     * @param visitor string visitor
+     * @throws IllegalArgumentException for null visitors
+     */
+    public void forEach(final int length, final byte[] prefix, final KeyVisitor visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("null visitor");
+        }
+        if (length < 0 || (length >= 1 && (prefix == null || length > prefix.length))) {
+            return;
+        }
+        final int state = walk(0, length, prefix);
+        if (state < 0) {
+            return;
+        }
+        byte[] key = new byte[Math.max(INITIAL_KEY_SIZE, length * 2)];
+        if (length >= 1) {
+            System.arraycopy(prefix, 0, key, 0, length);
+            if (isFinal(state)) {
+                visitor.visit(key, length);
+            }
+        }
+
+        int[] next = new int[INITIAL_STACK_SIZE];
+        int[] end = new int[INITIAL_STACK_SIZE];
+        int count = 0;
+        next[count] = first(state);
+        end[count++] = first(state + 1);
+        while (count >= 1) {
+            final int frame = count - 1;
+            if (next[frame] == end[frame]) {
+                --count;
+                continue;
+            }
+            final int edge = next[frame]++;
+            final int keyLength = length + frame;
+            if (keyLength == key.length) {
+                key = Arrays.copyOf(key, key.length * 2);
+            }
+            key[keyLength] = label(edge);
+            final int target = target(edge);
+            if (isFinal(target)) {
+                visitor.visit(key, keyLength + 1);
+            }
+            if (first(target) != first(target + 1)) {
+                if (count == next.length) {
+                    next = Arrays.copyOf(next, count * 2);
+                    end = Arrays.copyOf(end, count * 2);
+                }
+                next[count] = first(target);
+                end[count++] = first(target + 1);
+            }
+        }
+    }
+
+    /**
+     * Number of strings
+     * @return string count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check emptiness
+     * @return true if there are no strings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of states
+     * @return state count
+     */
+    public int states() {
+        return states;
+    }
+
+    /**
+     * Number of transitions
+     * @return edge count
+     */
+    public int edges() {
+        return edges;
+    }
+
+    /**
+     * Size of the off-heap encoding
+     * @return bytes
+     */
+    public long bytes() {
+        return memory.byteSize();
+    }
+
+    /**
+     * Returns a string representation of the object.
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return String.format("Dawg{ size = %,d, states = %,d, edges = %,d, bytes = %,d}", size, states, edges, bytes());
+    }
+
+    private int walk(final int position, final int length, final byte[] string) {
+        int state = root;
+        for (int i = 0; i < length; ++i) {
+            final int edge = find(first(state), first(state + 1), string[position + i]);
+            if (edge < 0) {
+                return -1;
+            }
+            state = target(edge);
+        }
+        return state;
+    }
+
+    private int find(final int start, final int end, final byte key) {
+        final int value = key & 0xff;
+        for (int edge = start; edge < end; ++edge) {
+            final int label = label(edge) & 0xff;
+            if (label == value) {
+                return edge;
+            }
+            if (label > value) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private int start(final int state) {
+        return memory.get(JAVA_INT, (long) state * Integer.BYTES);
+    }
+
+    private int first(final int state) {
+        return start(state) & EDGE_MASK;
+    }
+
+    private boolean isFinal(final int state) {
+        return (start(state) & FINAL_FLAG) != 0;
+    }
+
+    private int target(final int edge) {
+        return memory.get(JAVA_INT, targetsOffset + (long) edge * Integer.BYTES);
+    }
+
+    private byte label(final int edge) {
+        return memory.get(JAVA_BYTE, labelsOffset + edge);
+    }
+
+    /**
+     * Incremental construction from sorted strings with a register of the frozen states.
+     */
+    private static final class Builder {
+
+        private static final int INITIAL_STATES = 1024;
+        private static final int INITIAL_EDGES = 4 * 1024;
+        private static final int INITIAL_DEPTH = 64;
+        private static final int INITIAL_OPEN_EDGES = 4;
+
+        // frozen states
+        int[] starts = new int[INITIAL_STATES + 1];
+        int[] hashes = new int[INITIAL_STATES];
+        int[] targets = new int[INITIAL_EDGES];
+        byte[] labels = new byte[INITIAL_EDGES];
+        int stateCount;
+        int edgeCount;
+        int[] register = new int[2 * INITIAL_STATES];
+
+        // states of the last string, open state d + 1 hangs off open state d by label d
+        boolean[] openFinal = new boolean[INITIAL_DEPTH + 1];
+        byte[] openLabel = new byte[INITIAL_DEPTH];
+        byte[][] openLabels = new byte[INITIAL_DEPTH + 1][INITIAL_OPEN_EDGES];
+        int[][] openTargets = new int[INITIAL_DEPTH + 1][INITIAL_OPEN_EDGES];
+        int[] openCount = new int[INITIAL_DEPTH + 1];
+        int depth;
+
+        void add(final byte[] key, final int length, final int shared) {
+            if (length > openLabel.length) {
+                grow(length);
+            }
+            for (int d = depth; d > shared; --d) {
+                addEdge(d - 1, openLabel[d - 1], freeze(d));
+            }
+            for (int d = shared; d < length; ++d) {
+                openLabel[d] = key[d];
+                openFinal[d + 1] = false;
+                openCount[d + 1] = 0;
+            }
+            openFinal[length] = true;
+            depth = length;
+        }
+
+        int finish() {
+            for (int d = depth; d > 0; --d) {
+                addEdge(d - 1, openLabel[d - 1], freeze(d));
+            }
+            depth = 0;
+            return freeze(0);
+        }
+
+        private void addEdge(final int state, final byte label, final int target) {
+            final int count = openCount[state];
+            if (count == openLabels[state].length) {
+                openLabels[state] = Arrays.copyOf(openLabels[state], count * 2);
+                openTargets[state] = Arrays.copyOf(openTargets[state], count * 2);
+            }
+            openLabels[state][count] = label;
+            openTargets[state][count] = target;
+            openCount[state] = count + 1;
+        }
+
+        private int freeze(final int state) {
+            final int count = openCount[state];
+            final byte[] stateLabels = openLabels[state];
+            final int[] stateTargets = openTargets[state];
+            int hash = openFinal[state] ? 1 : 0;
+            for (int i = 0; i < count; ++i) {
+                hash = 31 * (31 * hash + stateLabels[i]) + stateTargets[i];
+            }
+            hash = mix(hash);
+
+            final int mask = register.length - 1;
+            int slot = hash & mask;
+            int entry;
+            while ((entry = register[slot]) != 0) {
+                if (hashes[entry - 1] == hash && equal(entry - 1, state)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (stateCount + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            if (edgeCount + count > targets.length) {
+                final int capacity = Math.max(targets.length * 2, edgeCount + count);
+                targets = Arrays.copyOf(targets, capacity);
+                labels = Arrays.copyOf(labels, capacity);
+            }
+            final int id = stateCount++;
+            starts[id] = edgeCount | (openFinal[state] ? FINAL_FLAG : 0);
+            System.arraycopy(stateLabels, 0, labels, edgeCount, count);
+            System.arraycopy(stateTargets, 0, targets, edgeCount, count);
+            edgeCount += count;
+            starts[stateCount] = edgeCount;
+            hashes[id] = hash;
+            register[slot] = id + 1;
+            if (2 * stateCount > register.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        private boolean equal(final int id, final int state) {
+            final int start = starts[id];
+            final int first = start & EDGE_MASK;
+            final int count = openCount[state];
+            if (((start & FINAL_FLAG) != 0) != openFinal[state] || (starts[id + 1] & EDGE_MASK) - first != count) {
+                return false;
+            }
+            return Arrays.equals(labels, first, first + count, openLabels[state], 0, count) &&
+                Arrays.equals(targets, first, first + count, openTargets[state], 0, count);
+        }
+
+        private void rehash() {
+            register = new int[register.length * 2];
+            final int mask = register.length - 1;
+            for (int id = 0; id < stateCount; ++id) {
+                int slot = hashes[id] & mask;
+                while (register[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                register[slot] = id + 1;
+            }
+        }
+
+        private void grow(final int length) {
+            final int capacity = Math.max(length, openLabel.length * 2);
+            final int states = openFinal.length;
+            openLabel = Arrays.copyOf(openLabel, capacity);
+            openFinal = Arrays.copyOf(openFinal, capacity + 1);
+            openCount = Arrays.copyOf(openCount, capacity + 1);
+            openLabels = Arrays.copyOf(openLabels, capacity + 1);
+            openTargets = Arrays.copyOf(openTargets, capacity + 1);
+            for (int i = states; i <= capacity; ++i) {
+                openLabels[i] = new byte[INITIAL_OPEN_EDGES];
+                openTargets[i] = new int[INITIAL_OPEN_EDGES];
+            }
+        }
+
+        private static int mix(final int hash) {
+            final int h = hash * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
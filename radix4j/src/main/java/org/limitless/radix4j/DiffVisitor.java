@@ -0,0 +1,16 @@
+package org.limitless.radix4j;
+
+/**
+ * Receives the strings that are in only one of two trees.
+ */
+@FunctionalInterface
+public interface DiffVisitor {
+
+    /**
+     * Visits a string, the buffer is reused and only valid during the call.
+     * @param key buffer
+     * @param length string length
+     * @param inThis true when the string is only in the tree the diff was called on, false when only in the other
+     */
+    void visit(byte[] key, int length, boolean inThis);
+}
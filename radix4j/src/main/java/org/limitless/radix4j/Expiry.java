@@ -0,0 +1,177 @@
+package org.limitless.radix4j;
+
+import java.util.Arrays;
+
+/**
+ * Deadlines of the strings added with a time to live, scheduled on a hierarchical timing wheel.
+ * <p>
+ * An entry is the terminal record of its string, see {@link Terminals}, so a wheel slot holds a compact reference
+ * to the node slot the string ends in and a lookup reads the deadline by record without hashing the string. The
+ * record follows its slot through the splits and compactions and releasing it drops the entry, including the
+ * strings of a subtree freed by a bulk remove. The wheel slots are intrusive doubly linked lists of records. Four
+ * levels of 64 slots cover 2^24 ticks of one millisecond, later deadlines wrap in the top level and are
+ * rescheduled when their slot is cascaded.
+ */
+final class Expiry {
+
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+    static final long TICK_NANOS = 1_000_000;
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int NONE = -1;
+    private static final int INITIAL_SIZE = 64;
+
+    // entries by terminal record, an entry that is not scheduled has a NONE slot
+    private long[] deadlines = new long[INITIAL_SIZE];
+    private int[] next = new int[INITIAL_SIZE];
+    private int[] previous = new int[INITIAL_SIZE];
+    private int[] slots = new int[INITIAL_SIZE];
+    private int size;
+
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private long tick;
+
+    Expiry(final long nowNanos) {
+        Arrays.fill(heads, NONE);
+        Arrays.fill(slots, NONE);
+        tick = Math.floorDiv(nowNanos, TICK_NANOS);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param record terminal record or Terminals.NONE
+     * @return deadline of the string, NO_DEADLINE when it has none
+     */
+    long deadline(final int record) {
+        return record >= 0 && record < slots.length && slots[record] != NONE ? deadlines[record] : NO_DEADLINE;
+    }
+
+    /**
+     * Sets or moves the deadline of a string
+     * @param record terminal record of the string
+     * @param deadline deadline in nanoseconds of System.nanoTime
+     */
+    void add(final int record, final long deadline) {
+        if (record >= slots.length) {
+            final int capacity = Math.max(slots.length * 2, record + 1);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            final int length = slots.length;
+            slots = Arrays.copyOf(slots, capacity);
+            Arrays.fill(slots, length, capacity, NONE);
+        }
+        if (slots[record] == NONE) {
+            ++size;
+        } else {
+            unlink(record);
+        }
+        deadlines[record] = deadline;
+        link(record);
+    }
+
+    /**
+     * Drops the deadline of a string, if any
+     * @param record terminal record of the string
+     */
+    void remove(final int record) {
+        if (record < slots.length && slots[record] != NONE) {
+            unlink(record);
+            slots[record] = NONE;
+            --size;
+        }
+    }
+
+    /**
+     * Removes the strings due at the given time from the tree, tick by tick up to the current one
+     * @param tree owner
+     * @param nowNanos current time
+     * @param maxStrings maximum number of strings to remove
+     * @return number of entries removed
+     */
+    int expire(final RadixTree tree, final long nowNanos, final int maxStrings) {
+        final long target = Math.floorDiv(nowNanos, TICK_NANOS);
+        int removed = 0;
+        while (removed < maxStrings) {
+            int entry = heads[(int) (tick & SLOT_MASK)];
+            while (entry != NONE && removed < maxStrings) {
+                final int following = next[entry];
+                if (deadlines[entry] <= nowNanos) {
+                    // dropped first, the removal of the string then releases the record
+                    remove(entry);
+                    if (tree.purge(entry)) {
+                        ++removed;
+                    }
+                }
+                entry = following;
+            }
+            if (removed == maxStrings || tick >= target) {
+                break;
+            }
+            if (size == 0) {
+                tick = target;
+            } else {
+                ++tick;
+                cascade();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Reschedules the entries of the upper level slots that the tick has reached, highest level first
+     */
+    private void cascade() {
+        int top = 0;
+        while (top < LEVELS - 1 && (tick & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+            ++top;
+        }
+        for (int level = top; level >= 1; --level) {
+            final int slot = level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            int entry = heads[slot];
+            heads[slot] = NONE;
+            while (entry != NONE) {
+                final int following = next[entry];
+                link(entry);
+                entry = following;
+            }
+        }
+    }
+
+    private void link(final int entry) {
+        final long deadlineTick = Math.max(Math.floorDiv(deadlines[entry], TICK_NANOS), tick);
+        final long delta = deadlineTick - tick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            ++level;
+        }
+        final int slot = level * SLOTS + (int) ((deadlineTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        final int head = heads[slot];
+        next[entry] = head;
+        previous[entry] = NONE;
+        if (head != NONE) {
+            previous[head] = entry;
+        }
+        heads[slot] = entry;
+        slots[entry] = slot;
+    }
+
+    private void unlink(final int entry) {
+        final int before = previous[entry];
+        final int after = next[entry];
+        if (before == NONE) {
+            heads[slots[entry]] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+}
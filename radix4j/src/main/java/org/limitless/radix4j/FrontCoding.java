@@ -0,0 +1,206 @@
+package org.limitless.radix4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Front coded export format for the strings of a tree.
+ * <p>
+ * The strings are written in sorted order as the length of the prefix shared with the previous string
+ * followed by the remaining bytes. Every block of strings starts with a restart point, a string with an empty
+ * shared prefix, and the trailer holds the block offsets so a reader can start at any block.
+ * <pre>
+ * file    : header block* end index trailer
+ * header  : int magic, int version, int strings per block, int reserved
+ * block   : int byte length, int string count, entry*
+ * entry   : varint shared length, varint suffix length, suffix
+ * end     : int 0, int 0
+ * index   : long block offset*
+ * trailer : long string count, int block count, int magic
+ * </pre>
+ */
+final class FrontCoding {
+
+    static final int MAGIC = 0x52445846; // RDXF
+    static final int VERSION = 1;
+    static final int DEFAULT_BLOCK_SIZE = 64;
+
+    private static final int HEADER_LENGTH = 4 * Integer.BYTES;
+    private static final int BLOCK_HEADER_LENGTH = 2 * Integer.BYTES;
+    private static final int TRAILER_LENGTH = Long.BYTES + 2 * Integer.BYTES;
+    private static final int MAX_VARINT_LENGTH = 5;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_INDEX_SIZE = 1024;
+
+    private FrontCoding() {
+    }
+
+    /**
+     * Writes the strings of the tree in sorted order.
+     * @param tree source
+     * @param channel destination
+     * @param blockSize strings per block
+     * @return number of strings written
+     * @throws IOException write failed
+     */
+    static long write(final RadixTree tree, final WritableByteChannel channel, final int blockSize) throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("invalid block size");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long[] index = new long[INITIAL_INDEX_SIZE];
+        int blockCount = 0;
+        long strings = 0;
+
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(blockSize).putInt(0);
+        long position = write(buffer, channel);
+
+        final KeyCursor cursor = new KeyCursor(tree).reset();
+        int blockStrings = 0;
+        buffer.position(BLOCK_HEADER_LENGTH);
+        while (cursor.next()) {
+            final int length = cursor.length();
+            final int shared = blockStrings == 0 ? 0 : cursor.shared();
+            final int suffix = length - shared;
+            if (buffer.remaining() < 2 * MAX_VARINT_LENGTH + suffix) {
+                final int capacity = Math.max(buffer.capacity() * 2, buffer.position() + 2 * MAX_VARINT_LENGTH + suffix);
+                buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN).put(buffer.flip());
+            }
+            putVarint(buffer, shared);
+            putVarint(buffer, suffix);
+            buffer.put(cursor.key(), shared, suffix);
+            ++strings;
+            if (++blockStrings == blockSize) {
+                if (blockCount == index.length) {
+                    index = Arrays.copyOf(index, blockCount * 2);
+                }
+                index[blockCount++] = position;
+                position += writeBlock(buffer, blockStrings, channel);
+                blockStrings = 0;
+            }
+        }
+        if (blockStrings >= 1) {
+            if (blockCount == index.length) {
+                index = Arrays.copyOf(index, blockCount * 2);
+            }
+            index[blockCount++] = position;
+            position += writeBlock(buffer, blockStrings, channel);
+        }
+
+        buffer.clear().putInt(0).putInt(0);
+        write(buffer, channel);
+        for (int i = 0; i < blockCount; ++i) {
+            if (buffer.remaining() < Long.BYTES) {
+                write(buffer, channel);
+            }
+            buffer.putLong(index[i]);
+        }
+        if (buffer.remaining() < TRAILER_LENGTH) {
+            write(buffer, channel);
+        }
+        buffer.putLong(strings).putInt(blockCount).putInt(MAGIC);
+        write(buffer, channel);
+        return strings;
+    }
+
+    /**
+     * Adds the strings of an export to the tree.
+     * @param channel source
+     * @param tree destination
+     * @return number of strings read
+     * @throws IOException read failed or invalid format
+     */
+    static long read(final ReadableByteChannel channel, final RadixTree tree) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.limit(HEADER_LENGTH);
+        readFully(buffer, channel);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("invalid export header");
+        }
+
+        byte[] key = new byte[256];
+        long strings = 0;
+        while (true) {
+            buffer.clear().limit(BLOCK_HEADER_LENGTH);
+            readFully(buffer, channel);
+            final int blockLength = buffer.getInt();
+            final int blockStrings = buffer.getInt();
+            if (blockStrings == 0) {
+                break;
+            }
+            if (blockLength < 0 || blockStrings < 0) {
+                throw new IOException("invalid export block");
+            }
+            if (buffer.capacity() < blockLength) {
+                buffer = ByteBuffer.allocate(blockLength).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            buffer.clear().limit(blockLength);
+            readFully(buffer, channel);
+
+            for (int i = 0; i < blockStrings; ++i) {
+                final int shared = getVarint(buffer);
+                final int suffix = getVarint(buffer);
+                final int length = shared + suffix;
+                if (length > key.length) {
+                    key = Arrays.copyOf(key, Math.max(length, key.length * 2));
+                }
+                buffer.get(key, shared, suffix);
+                var _ = tree.add(0, length, key);
+            }
+            strings += blockStrings;
+        }
+        return strings;
+    }
+
+    private static long writeBlock(final ByteBuffer buffer, final int strings, final WritableByteChannel channel)
+        throws IOException {
+        buffer.putInt(0, buffer.position() - BLOCK_HEADER_LENGTH);
+        buffer.putInt(Integer.BYTES, strings);
+        final long written = write(buffer, channel);
+        buffer.position(BLOCK_HEADER_LENGTH);
+        return written;
+    }
+
+    private static long write(final ByteBuffer buffer, final WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        final long length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return length;
+    }
+
+    private static void readFully(final ByteBuffer buffer, final ReadableByteChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("unexpected end of export");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void putVarint(final ByteBuffer buffer, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(final ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("invalid varint");
+    }
+}
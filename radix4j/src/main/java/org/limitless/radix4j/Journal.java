@@ -0,0 +1,277 @@
+package org.limitless.radix4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead journal of the tree operations.
+ * <p>
+ * Records are encoded into a reusable direct buffer and written as checksummed frames, one frame per group
+ * commit. A frame that is incomplete or fails the checksum marks the end of the journal, which makes a torn
+ * tail after a crash harmless. The journal is replayed on top of the last snapshot.
+ * <p>
+ * An add with a time to live records its deadline in wall clock milliseconds, the replay adds the string again
+ * with the time left until then, so a string whose deadline has passed reads as absent and is removed by the next
+ * expire. Snapshots and checkpoints do not keep deadlines, a string they load no longer expires unless the journal
+ * replayed on top of it adds it again with a time to live.
+ */
+public final class Journal implements AutoCloseable {
+
+    public static final int DEFAULT_GROUP_SIZE = 64;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * When the journal forces the committed frames to the storage device.
+     */
+    public enum Sync {
+        /** Leave the flushing to the operating system. */
+        NONE,
+        /** Force the channel after every group commit. */
+        COMMIT
+    }
+
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte REMOVE_STRINGS = 3;
+    static final byte ADD_TTL = 4;
+
+    /** Deadline of a string added without a time to live. */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    // frame byte layout
+    private static final int LENGTH_OFFSET = 0;
+    private static final int CHECKSUM_OFFSET = LENGTH_OFFSET + Integer.BYTES;
+    private static final int RECORDS_OFFSET = CHECKSUM_OFFSET + Integer.BYTES;
+    private static final int MAX_RECORD_HEADER = 1 + 5 + Long.BYTES;
+
+    private final FileChannel channel;
+    private final int groupSize;
+    private final Sync sync;
+    private final CRC32C checksum;
+    private ByteBuffer buffer;
+    private int records;
+
+    /**
+     * Constructs a journal with the default group size that forces every commit.
+     * @param channel journal file
+     */
+    public Journal(final FileChannel channel) {
+        this(channel, DEFAULT_GROUP_SIZE, Sync.COMMIT);
+    }
+
+    /**
+     * Constructs a journal appending to the current position of the channel.
+     * @param channel journal file
+     * @param groupSize records per group commit
+     * @param sync force policy
+     * @throws IllegalArgumentException null channel or policy, or invalid group size
+     */
+    public Journal(final FileChannel channel, final int groupSize, final Sync sync) {
+        if (channel == null || sync == null || groupSize < 1) {
+            throw new IllegalArgumentException("invalid journal configuration");
+        }
+        this.channel = channel;
+        this.groupSize = groupSize;
+        this.sync = sync;
+        checksum = new CRC32C();
+        buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(RECORDS_OFFSET);
+        records = 0;
+    }
+
+    /**
+     * Writes the pending records as one frame.
+     * @throws UncheckedIOException write failed
+     */
+    public void commit() {
+        if (records == 0) {
+            return;
+        }
+        final int end = buffer.position();
+        buffer.position(RECORDS_OFFSET).limit(end);
+        checksum.reset();
+        checksum.update(buffer);
+        buffer.putInt(LENGTH_OFFSET, end - RECORDS_OFFSET);
+        buffer.putInt(CHECKSUM_OFFSET, (int) checksum.getValue());
+        buffer.position(0).limit(end);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync == Sync.COMMIT) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.clear().position(RECORDS_OFFSET);
+            records = 0;
+        }
+    }
+
+    /**
+     * Commits the pending records and discards the journal, used after a snapshot has been written.
+     * @throws UncheckedIOException truncation failed
+     */
+    public void truncate() {
+        commit();
+        try {
+            channel.truncate(0);
+            channel.position(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Number of records waiting for the next commit
+     * @return record count
+     */
+    public int pending() {
+        return records;
+    }
+
+    /**
+     * Commits the pending records, the channel is left open.
+     */
+    @Override
+    public void close() {
+        commit();
+    }
+
+    void add(final int position, final int length, final byte[] string, final long deadlineMillis) {
+        append(deadlineMillis == NO_DEADLINE ? ADD : ADD_TTL, position, length, string, deadlineMillis);
+    }
+
+    void remove(final int position, final int length, final byte[] string) {
+        append(REMOVE, position, length, string, NO_DEADLINE);
+    }
+
+    void removeStrings(final int length, final byte[] prefix) {
+        append(REMOVE_STRINGS, 0, length, prefix, NO_DEADLINE);
+    }
+
+    private void append(final byte operation, final int position, final int length, final byte[] string,
+                        final long deadlineMillis) {
+        final int recordLength = MAX_RECORD_HEADER + length;
+        if (buffer.remaining() < recordLength) {
+            commit();
+            if (buffer.remaining() < recordLength) {
+                buffer = ByteBuffer.allocateDirect(RECORDS_OFFSET + recordLength).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.position(RECORDS_OFFSET);
+            }
+        }
+        buffer.put(operation);
+        putLength(length);
+        if (operation == ADD_TTL) {
+            buffer.putLong(deadlineMillis);
+        }
+        buffer.put(string, position, length);
+        if (++records >= groupSize) {
+            commit();
+        }
+    }
+
+    private void putLength(int length) {
+        while ((length & ~0x7f) != 0) {
+            buffer.put((byte) ((length & 0x7f) | 0x80));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+    }
+
+    /**
+     * Applies the journal to the tree, a torn or corrupt tail is cut off.
+     * <p>
+     * The tree must not have a journal attached while it is replayed. The channel is left positioned after
+     * the last valid frame, ready for new appends.
+     * @param channel journal file opened for reading and writing
+     * @param tree destination
+     * @return number of records applied
+     * @throws IOException read or truncation failed
+     */
+    public static long replay(final FileChannel channel, final RadixTree tree) throws IOException {
+        final CRC32C checksum = new CRC32C();
+        final ByteBuffer header = ByteBuffer.allocate(RECORDS_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer frame = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] string = new byte[256];
+        long applied = 0;
+        long valid = 0;
+        final long size = channel.size();
+        channel.position(0);
+        while (valid + RECORDS_OFFSET <= size) {
+            header.clear();
+            if (!read(channel, header)) {
+                break;
+            }
+            final int length = header.getInt(LENGTH_OFFSET);
+            if (length <= 0 || valid + RECORDS_OFFSET + length > size) {
+                break;
+            }
+            if (frame.capacity() < length) {
+                frame = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            frame.clear().limit(length);
+            if (!read(channel, frame)) {
+                break;
+            }
+            checksum.reset();
+            checksum.update(frame.array(), 0, length);
+            if ((int) checksum.getValue() != header.getInt(CHECKSUM_OFFSET)) {
+                break;
+            }
+
+            int position = 0;
+            while (position < length) {
+                final byte operation = frame.get(position++);
+                int stringLength = 0;
+                int shift = 0;
+                byte value;
+                do {
+                    value = frame.get(position++);
+                    stringLength |= (value & 0x7f) << shift;
+                    shift += 7;
+                } while ((value & 0x80) != 0);
+                long deadlineMillis = NO_DEADLINE;
+                if (operation == ADD_TTL) {
+                    deadlineMillis = frame.getLong(position);
+                    position += Long.BYTES;
+                }
+                if (string.length < stringLength) {
+                    string = new byte[Math.max(stringLength, string.length * 2)];
+                }
+                frame.get(position, string, 0, stringLength);
+                position += stringLength;
+                switch (operation) {
+                    case ADD -> tree.add(0, stringLength, string);
+                    case REMOVE -> tree.remove(0, stringLength, string);
+                    case REMOVE_STRINGS -> tree.removeStrings(stringLength, string);
+                    case ADD_TTL -> tree.add(0, stringLength, string, TimeUnit.MILLISECONDS.toNanos(
+                        Math.max(0, deadlineMillis - System.currentTimeMillis())));
+                    default -> throw new IOException("invalid journal operation " + operation);
+                }
+                ++applied;
+            }
+            valid += RECORDS_OFFSET + length;
+        }
+        if (size > valid) {
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+        return applied;
+    }
+
+    private static boolean read(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
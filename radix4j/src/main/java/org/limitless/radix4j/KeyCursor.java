@@ -0,0 +1,211 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.util.Arrays;
+
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Iterates over the strings of a tree in unsigned lexicographic order.
+ * <p>
+ * The current string is kept in a reusable buffer, only the bytes below the branching node are rewritten
+ * between two strings, so the length of the prefix shared with the previous string comes for free.
+ * The cursor is invalidated by updates to the tree and must be reset afterwards.
+ */
+final class KeyCursor {
+
+    private static final int INITIAL_KEY_SIZE = 64;
+    private static final int INITIAL_FRAMES = 16;
+    private static final int INITIAL_ENTRIES = 1024;
+    static final int MAX_LEVEL_ENTRIES = 256;
+
+    // entry bit layout
+    private static final int KEY_OFFSET = 40;
+    private static final long CONTAINS_FLAG = 1L << Integer.SIZE;
+    private static final long CHILD_MASK = -1L >>> (Long.SIZE - Integer.SIZE);
+
+    private final RadixTree tree;
+    private final Node node;
+
+    private byte[] key;
+    private int length;
+    private int shared;
+    private int low;
+
+    private int[] frameStart;
+    private int[] frameEnd;
+    private int[] frameNext;
+    private int[] frameLength;
+    private boolean[] framePending;
+    private int frameCount;
+
+    private long[] entries;
+    private int entryCount;
+
+    KeyCursor(final RadixTree tree) {
+        this.tree = tree;
+        node = new Node();
+        key = new byte[INITIAL_KEY_SIZE];
+        frameStart = new int[INITIAL_FRAMES];
+        frameEnd = new int[INITIAL_FRAMES];
+        frameNext = new int[INITIAL_FRAMES];
+        frameLength = new int[INITIAL_FRAMES];
+        framePending = new boolean[INITIAL_FRAMES];
+        entries = new long[INITIAL_ENTRIES];
+    }
+
+    /**
+     * Positions the cursor before the first string.
+     * @return this
+     */
+    KeyCursor reset() {
+        frameCount = 0;
+        entryCount = 0;
+        length = 0;
+        shared = 0;
+        low = 0;
+        if (!tree.isEmpty()) {
+            push(tree.rootOffset(), 0);
+        }
+        return this;
+    }
+
+    /**
+     * Advances to the next string.
+     * @return false when there are no more strings
+     */
+    boolean next() {
+        while (frameCount >= 1) {
+            final int frame = frameCount - 1;
+            if (framePending[frame]) {
+                framePending[frame] = false;
+                return emit(frameLength[frame]);
+            }
+            if (frameNext[frame] == frameEnd[frame]) {
+                entryCount = frameStart[frame];
+                --frameCount;
+                continue;
+            }
+            final long entry = entries[frameNext[frame]++];
+            final int keyLength = frameLength[frame];
+            key[keyLength] = entryKey(entry);
+            low = Math.min(low, keyLength);
+            final int childOffset = entryChild(entry);
+            if (childOffset != EMPTY_BLOCK) {
+                push(childOffset, keyLength + 1);
+            }
+            if (entryContains(entry)) {
+                return emit(keyLength + 1);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The current string, valid up to length()
+     * @return buffer
+     */
+    byte[] key() {
+        return key;
+    }
+
+    /**
+     * Length of the current string
+     * @return length
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Length of the prefix the current string shares with the previous string
+     * @return prefix length
+     */
+    int shared() {
+        return shared;
+    }
+
+    private boolean emit(final int keyLength) {
+        shared = Math.min(low, length);
+        length = keyLength;
+        low = Integer.MAX_VALUE;
+        return true;
+    }
+
+    private void push(final int offset, final int keyLength) {
+        final BlockPool<Node> pool = tree.nodePool();
+        pool.get(Address.fromOffset(offset), node);
+        final byte header = node.header();
+        final int stringLength = Header.stringLength(header);
+        if (key.length <= keyLength + stringLength) {
+            key = Arrays.copyOf(key, Math.max(key.length * 2, keyLength + stringLength + 1));
+        }
+        if (stringLength >= 1) {
+            node.string(0, stringLength, key, keyLength);
+            low = Math.min(low, keyLength);
+        }
+        if (frameCount == frameStart.length) {
+            final int frames = frameCount * 2;
+            frameStart = Arrays.copyOf(frameStart, frames);
+            frameEnd = Arrays.copyOf(frameEnd, frames);
+            frameNext = Arrays.copyOf(frameNext, frames);
+            frameLength = Arrays.copyOf(frameLength, frames);
+            framePending = Arrays.copyOf(framePending, frames);
+        }
+        final int frame = frameCount++;
+        frameStart[frame] = entryCount;
+        frameNext[frame] = entryCount;
+        frameLength[frame] = keyLength + stringLength;
+        framePending[frame] = stringLength >= 1 && Header.containsString(header);
+
+        if (entryCount + MAX_LEVEL_ENTRIES > entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entryCount += level(pool, node, offset, entries, entryCount);
+        frameEnd[frame] = entryCount;
+    }
+
+    /**
+     * Collects the keys of a node and its overflow chain as one sorted level.
+     * @param pool block pool
+     * @param node flyweight, wraps the last node of the chain on return
+     * @param offset node offset
+     * @param entries destination with room for MAX_LEVEL_ENTRIES entries
+     * @param from first destination position
+     * @return number of entries
+     */
+    static int level(final BlockPool<Node> pool, final Node node, final int offset, final long[] entries, final int from) {
+        int count = from;
+        int chain = offset;
+        while (chain != EMPTY_BLOCK) {
+            pool.get(Address.fromOffset(chain), node);
+            chain = EMPTY_BLOCK;
+            final int children = Header.children(node.header());
+            for (int i = 0; i < children; ++i) {
+                final byte childKey = node.key(i);
+                if (childKey == EMPTY_KEY) {
+                    chain = node.child(i);
+                } else {
+                    entries[count++] = ((long) (childKey & 0xff) << KEY_OFFSET) |
+                        (node.containsKey(i) ? CONTAINS_FLAG : 0) |
+                        (node.child(i) & CHILD_MASK);
+                }
+            }
+        }
+        Arrays.sort(entries, from, count);
+        return count - from;
+    }
+
+    static byte entryKey(final long entry) {
+        return (byte) (entry >>> KEY_OFFSET);
+    }
+
+    static boolean entryContains(final long entry) {
+        return (entry & CONTAINS_FLAG) != 0;
+    }
+
+    static int entryChild(final long entry) {
+        return (int) (entry & CHILD_MASK);
+    }
+}
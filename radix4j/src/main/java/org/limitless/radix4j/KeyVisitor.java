@@ -0,0 +1,15 @@
+package org.limitless.radix4j;
+
+/**
+ * Receives the strings of a traversal.
+ */
+@FunctionalInterface
+public interface KeyVisitor {
+
+    /**
+     * Visits a string, the buffer is reused and only valid during the call.
+     * @param key buffer
+     * @param length string length
+     */
+    void visit(byte[] key, int length);
+}
@@ -0,0 +1,193 @@
+package org.limitless.radix4j;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.lang.foreign.ValueLayout.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Arena allocating the segments of a block pool from a memory mapped file, readable by other processes.
+ * <p>
+ * The whole capacity is mapped once as a sparse file, so a segment allocated later is visible to a reader without
+ * remapping. The file starts with a header page and a directory of the pool segments by segment index, then the
+ * allocations themselves. The tree records each segment its pool opens, so the directory does not depend on
+ * the order or the sizes of the allocations. The header holds the sequence of a seqlock: the writer makes it odd before an update
+ * and even after it, together with the root offset and the size of the tree. A reader retries a lookup when the
+ * sequence was odd or changed while it walked the nodes. An update that fails halfway sets the failed flag and
+ * leaves the sequence odd, the half applied tree is never published.
+ */
+final class MappedArena implements Arena {
+
+    static final int MAGIC = 0x5244584d; // RDXM
+    static final int VERSION = 2;
+    static final int MAX_SEGMENTS = Node.Address.MAX_SEGMENTS;
+    static final int MAX_ALLOCATIONS = MAX_SEGMENTS;
+
+    // header byte layout
+    static final long MAGIC_OFFSET = 0;
+    static final long VERSION_OFFSET = MAGIC_OFFSET + Integer.BYTES;
+    static final long BLOCKS_PER_SEGMENT_OFFSET = VERSION_OFFSET + Integer.BYTES;
+    static final long SEGMENTS_OFFSET = BLOCKS_PER_SEGMENT_OFFSET + Integer.BYTES;
+    static final long SEQUENCE_OFFSET = SEGMENTS_OFFSET + Integer.BYTES;
+    static final long ROOT_OFFSET = SEQUENCE_OFFSET + Long.BYTES;
+    static final long SIZE_OFFSET = ROOT_OFFSET + Integer.BYTES;
+    static final long CAPACITY_OFFSET = SIZE_OFFSET + Integer.BYTES;
+    static final long FAILED_OFFSET = CAPACITY_OFFSET + Long.BYTES;
+    static final long DIRECTORY_OFFSET = 64;
+    static final long DIRECTORY_ENTRY_BYTES = 2 * Long.BYTES;
+    static final long PAGE_SIZE = 4096;
+    static final long DATA_OFFSET = align(DIRECTORY_OFFSET + MAX_SEGMENTS * DIRECTORY_ENTRY_BYTES, PAGE_SIZE);
+
+    static final VarHandle SEQUENCE = JAVA_LONG.varHandle();
+
+    private final Arena mapping;
+    private final FileChannel channel;
+    private final MemorySegment file;
+    private long used = DATA_OFFSET;
+    private int allocations;
+    private long alignment = Long.BYTES;
+    private long sequence;
+    private boolean closed;
+
+    private MappedArena(final Arena mapping, final FileChannel channel, final MemorySegment file) {
+        this.mapping = mapping;
+        this.channel = channel;
+        this.file = file;
+    }
+
+    /**
+     * Creates or truncates the file and maps it for writing
+     * @param path file, preferably under /dev/shm
+     * @param capacity file size in bytes
+     * @param blocksPerSegment segment size of the pool
+     * @return arena
+     * @throws IOException file cannot be created or mapped
+     * @throws IllegalArgumentException capacity without room for a segment
+     */
+    static MappedArena create(final Path path, final long capacity, final int blocksPerSegment) throws IOException {
+        if (capacity < DATA_OFFSET + (long) blocksPerSegment * Node.BYTES) {
+            throw new IllegalArgumentException("capacity too small " + capacity);
+        }
+        final FileChannel channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        final Arena mapping = Arena.ofShared();
+        try {
+            channel.truncate(0);
+            final MemorySegment file = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity, mapping);
+            file.set(JAVA_INT, VERSION_OFFSET, VERSION);
+            file.set(JAVA_INT, BLOCKS_PER_SEGMENT_OFFSET, blocksPerSegment);
+            file.set(JAVA_LONG, CAPACITY_OFFSET, capacity);
+            VarHandle.storeStoreFence();
+            file.set(JAVA_INT, MAGIC_OFFSET, MAGIC);
+            return new MappedArena(mapping, channel, file);
+        } catch (final IOException | RuntimeException e) {
+            mapping.close();
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Marks the start of an update, the readers retry until it ends
+     */
+    void beginWrite() {
+        SEQUENCE.setOpaque(file, SEQUENCE_OFFSET, ++sequence);
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * Publishes the root and the size of the tree and ends the update
+     * @param root root offset
+     * @param size string count
+     */
+    void endWrite(final int root, final int size) {
+        file.set(JAVA_INT, ROOT_OFFSET, root);
+        file.set(JAVA_INT, SIZE_OFFSET, size);
+        SEQUENCE.setRelease(file, SEQUENCE_OFFSET, ++sequence);
+    }
+
+    /**
+     * Marks the file failed after an update that did not complete, the readers stop with an error
+     */
+    void fail() {
+        file.set(JAVA_INT, FAILED_OFFSET, 1);
+        VarHandle.fullFence();
+    }
+
+    /**
+     * Checks that the given number of segments can still be allocated
+     * @param segments segment count
+     * @param segmentBytes segment size
+     * @return true when the file has room
+     */
+    boolean hasRoom(final int segments, final long segmentBytes) {
+        long end = used;
+        for (int i = 0; i < segments; ++i) {
+            end = align(end, alignment) + segmentBytes;
+        }
+        return allocations + segments <= MAX_ALLOCATIONS && end <= file.byteSize();
+    }
+
+    @Override
+    public MemorySegment allocate(final long byteSize, final long byteAlignment) {
+        alignment = Math.max(alignment, byteAlignment);
+        final long start = align(used, Math.max(byteAlignment, Long.BYTES));
+        if (allocations == MAX_ALLOCATIONS || start + byteSize > file.byteSize()) {
+            throw new IllegalStateException("mapped file full " + file.byteSize());
+        }
+        used = start + byteSize;
+        ++allocations;
+        return file.asSlice(start, byteSize);
+    }
+
+    /**
+     * Records the next segment of the pool in the directory, before the root of an update can point into it
+     * @param index segment index, the count of the recorded segments
+     * @param blocks memory of the segment blocks, a slice of this arena
+     * @param offset offset of the first block in the memory
+     * @throws IllegalArgumentException index out of order or memory outside of the file
+     */
+    void segment(final int index, final MemorySegment blocks, final long offset) {
+        final long start = blocks.address() + offset - file.address();
+        if (index != file.get(JAVA_INT, SEGMENTS_OFFSET) || index >= MAX_SEGMENTS || start < DATA_OFFSET ||
+            start >= used) {
+            throw new IllegalArgumentException("invalid segment " + index);
+        }
+        final long entry = DIRECTORY_OFFSET + index * DIRECTORY_ENTRY_BYTES;
+        file.set(JAVA_LONG, entry, index);
+        file.set(JAVA_LONG, entry + Long.BYTES, start);
+        // the count is read by the readers outside of the seqlock
+        VarHandle.storeStoreFence();
+        file.set(JAVA_INT, SEGMENTS_OFFSET, index + 1);
+    }
+
+    @Override
+    public MemorySegment.Scope scope() {
+        return mapping.scope();
+    }
+
+    /**
+     * Unmaps the file, the content stays for the readers until the file is deleted.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        mapping.close();
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            throw new IllegalStateException("close failed", e);
+        }
+    }
+
+    static long align(final long value, final long alignment) {
+        return (value + alignment - 1) & -alignment;
+    }
+}
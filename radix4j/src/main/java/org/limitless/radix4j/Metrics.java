@@ -0,0 +1,285 @@
+package org.limitless.radix4j;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in runtime counters and latency histograms of a tree.
+ * <p>
+ * The instrumentation is enabled with -Dradix4j.metrics=true. Every probe in the tree is guarded by the
+ * static final ENABLED flag, so a disabled build has no metrics object and the JIT removes the probes.
+ * Counters are striped LongAdders, latencies go to histograms with one bucket per power of two nanoseconds.
+ */
+public final class Metrics implements MetricsMXBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("radix4j.metrics");
+    public static final String DOMAIN = "org.limitless.radix4j";
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder filteredLookups = new LongAdder();
+    private final LongAdder nodesVisited = new LongAdder();
+    private final LongAdder adds = new LongAdder();
+    private final LongAdder removes = new LongAdder();
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder reparents = new LongAdder();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder frees = new LongAdder();
+    private final Histogram lookupLatency = new Histogram();
+    private final Histogram addLatency = new Histogram();
+    private final Histogram removeLatency = new Histogram();
+    private ObjectName objectName;
+
+    Metrics() {
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     * @param name tree name used in the object name
+     * @throws IllegalArgumentException null name
+     * @throws IllegalStateException registration failed
+     */
+    public synchronized void register(final String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("null name");
+        }
+        unregister();
+        try {
+            final ObjectName objectName = new ObjectName(DOMAIN + ":type=RadixTree,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register " + name, e);
+        }
+    }
+
+    /**
+     * Removes the registration, if any.
+     * @throws IllegalStateException unregistration failed
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to unregister " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    @Override
+    public long getFilteredLookups() {
+        return filteredLookups.sum();
+    }
+
+    @Override
+    public long getNodesVisited() {
+        return nodesVisited.sum();
+    }
+
+    @Override
+    public double getAverageNodesVisited() {
+        final long count = lookups.sum();
+        return count == 0 ? 0 : (double) nodesVisited.sum() / count;
+    }
+
+    @Override
+    public long getAdds() {
+        return adds.sum();
+    }
+
+    @Override
+    public long getRemoves() {
+        return removes.sum();
+    }
+
+    @Override
+    public long getSplits() {
+        return splits.sum();
+    }
+
+    @Override
+    public long getReparents() {
+        return reparents.sum();
+    }
+
+    @Override
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    @Override
+    public long getFrees() {
+        return frees.sum();
+    }
+
+    @Override
+    public long[] getLookupLatency() {
+        return lookupLatency.counts();
+    }
+
+    @Override
+    public long[] getAddLatency() {
+        return addLatency.counts();
+    }
+
+    @Override
+    public long[] getRemoveLatency() {
+        return removeLatency.counts();
+    }
+
+    @Override
+    public long getLookupLatencyP99() {
+        return lookupLatency.percentile(0.99);
+    }
+
+    @Override
+    public long getAddLatencyP99() {
+        return addLatency.percentile(0.99);
+    }
+
+    @Override
+    public long getRemoveLatencyP99() {
+        return removeLatency.percentile(0.99);
+    }
+
+    @Override
+    public void reset() {
+        lookups.reset();
+        filteredLookups.reset();
+        nodesVisited.reset();
+        adds.reset();
+        removes.reset();
+        splits.reset();
+        reparents.reset();
+        allocations.reset();
+        frees.reset();
+        lookupLatency.reset();
+        addLatency.reset();
+        removeLatency.reset();
+    }
+
+    /**
+     * Returns a string representation of the object.
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return String.format("Metrics{ lookups = %,d, filtered lookups = %,d, nodes visited = %.2f, adds = %,d, removes = %,d, splits = %,d, reparents = %,d, allocations = %,d, frees = %,d}",
+            getLookups(), getFilteredLookups(), getAverageNodesVisited(), getAdds(), getRemoves(), getSplits(), getReparents(),
+            getAllocations(), getFrees());
+    }
+
+    void lookup(final int visited, final long nanos) {
+        lookups.increment();
+        nodesVisited.add(visited);
+        lookupLatency.record(nanos);
+    }
+
+    void filteredLookup() {
+        filteredLookups.increment();
+    }
+
+    void add(final long nanos) {
+        adds.increment();
+        addLatency.record(nanos);
+    }
+
+    void remove(final long nanos) {
+        removes.increment();
+        removeLatency.record(nanos);
+    }
+
+    void split() {
+        splits.increment();
+    }
+
+    void reparent() {
+        reparents.increment();
+    }
+
+    void allocation() {
+        allocations.increment();
+    }
+
+    void free(final int nodes) {
+        frees.add(nodes);
+    }
+
+    /**
+     * Latency histogram with log2 buckets.
+     */
+    static final class Histogram {
+
+        private static final int BUCKETS = Long.SIZE;
+
+        private final LongAdder[] buckets;
+
+        Histogram() {
+            buckets = new LongAdder[BUCKETS];
+            for (int i = 0; i < BUCKETS; ++i) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(final long nanos) {
+            buckets[bucket(nanos)].increment();
+        }
+
+        long[] counts() {
+            final long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; ++i) {
+                counts[i] = buckets[i].sum();
+            }
+            return counts;
+        }
+
+        /**
+         * Upper bound of the bucket holding the percentile
+         * @param fraction percentile between zero and one
+         * @return nanoseconds
+         */
+        long percentile(final double fraction) {
+            final long[] counts = counts();
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            final long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+        }
+
+        static int bucket(final long nanos) {
+            return nanos <= 1 ? 0 : Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        }
+    }
+}
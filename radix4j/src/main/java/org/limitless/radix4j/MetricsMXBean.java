@@ -0,0 +1,53 @@
+package org.limitless.radix4j;
+
+/**
+ * Management view of the runtime counters of a tree.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Lookups walking the tree, the nodes visited and the lookup latency only cover these
+     * @return lookup count
+     */
+    long getLookups();
+
+    /**
+     * Lookups of absent strings answered by the prefilter without walking the tree
+     * @return lookup count
+     */
+    long getFilteredLookups();
+
+    long getNodesVisited();
+
+    double getAverageNodesVisited();
+
+    long getAdds();
+
+    long getRemoves();
+
+    long getSplits();
+
+    long getReparents();
+
+    long getAllocations();
+
+    long getFrees();
+
+    /**
+     * Lookup latency histogram, bucket i counts the operations taking [2^i, 2^(i+1)) nanoseconds
+     * @return bucket counts
+     */
+    long[] getLookupLatency();
+
+    long[] getAddLatency();
+
+    long[] getRemoveLatency();
+
+    long getLookupLatencyP99();
+
+    long getAddLatencyP99();
+
+    long getRemoveLatencyP99();
+
+    void reset();
+}
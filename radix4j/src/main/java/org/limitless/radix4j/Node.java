@@ -29,9 +29,15 @@ public class Node extends BlockFlyweight {
     protected static final int PAD_LENGTH = 1;
     protected static final int BYTES = PAD_OFFSET + PAD_LENGTH;
 
+    // pad byte bits
+    protected static final int REFERENCED = 1;
+
     private static final int KEY_MASK = 0xff;
     private static final int HEADER_MASK = 0xff;
 
+    // notified before a write to the block, set while the tree shares its segments with lazy copies
+    Barrier barrier;
+
     public int offset() {
         return (int) Address.toOffset(segment(), super.block());
     }
@@ -41,6 +47,27 @@ public class Node extends BlockFlyweight {
         return this;
     }
 
+    /**
+     * Wraps a block of segment memory that does not belong to a pool, such as a mapped file
+     * @param memory segment memory
+     * @param segment segment index
+     * @param block block index
+     * @return this
+     */
+    Node wrapBlock(final MemorySegment memory, final int segment, final int block) {
+        wrap(memory, segment, block);
+        return this;
+    }
+
+    /**
+     * Notifies the barrier of a write to the block, also called before the block is freed
+     */
+    void beforeWrite() {
+        if (barrier != null) {
+            barrier.write(this);
+        }
+    }
+
     @Override
     public int encodedLength() {
         return BYTES;
@@ -114,6 +141,7 @@ public class Node extends BlockFlyweight {
      * @param value new header value
      */
     public void header(final byte value) {
+        beforeWrite();
         nativeByte(HEADER_OFFSET, value);
     }
 
@@ -148,6 +176,7 @@ public class Node extends BlockFlyweight {
      * @param key key value
      */
     public void key(final int position, final byte key) {
+        beforeWrite();
         nativeByte(KEYS_OFFSET + position, key);
     }
 
@@ -166,6 +195,7 @@ public class Node extends BlockFlyweight {
      * @param included flag
      */
     public void containsKey(final int position, final boolean included) {
+        beforeWrite();
         final int index = position / Byte.SIZE;
         final byte flag = (byte) (1 << (position % Byte.SIZE));
         byte contains = nativeByte(CONTAINS_OFFSET + index);
@@ -177,6 +207,23 @@ public class Node extends BlockFlyweight {
         nativeByte(CONTAINS_OFFSET + index, contains);
     }
 
+    /**
+     * Check the reference bit kept in the pad byte for CLOCK eviction
+     * @return true when one of the strings ending in the node was used since the last sweep
+     */
+    public boolean referenced() {
+        return (nativeByte(PAD_OFFSET) & REFERENCED) != 0;
+    }
+
+    /**
+     * Set the reference bit, the write bypasses the barrier as the bit is only a hint for the sweep
+     * @param referenced flag
+     */
+    public void referenced(final boolean referenced) {
+        final byte pad = nativeByte(PAD_OFFSET);
+        nativeByte(PAD_OFFSET, (byte) (referenced ? pad | REFERENCED : pad & ~REFERENCED));
+    }
+
     public int containsStringCount() {
         return Header.containsStringCount(header()) + Integer.bitCount(nativeShort(CONTAINS_OFFSET));
     }
@@ -196,6 +243,7 @@ public class Node extends BlockFlyweight {
      * @param block index
      */
     public void child(final int position, final int block) {
+        beforeWrite();
         nativeInt(BLOCK_OFFSET + position * Integer.BYTES, block);
     }
 
@@ -241,6 +289,7 @@ public class Node extends BlockFlyweight {
     public void string(final byte[] string, final int offset, final int length) {
         final int nodeLength = Math.min(STRING_LENGTH, length);
         if (nodeLength >= 1) {
+            beforeWrite();
             nativeByteArray(offset, string, STRING_OFFSET, length);
         }
     }
@@ -283,6 +332,7 @@ public class Node extends BlockFlyweight {
      * @param ch character
      */
     public void charAt(final int position, final byte ch) {
+        beforeWrite();
         nativeByte(STRING_OFFSET + position, ch);
     }
 
@@ -292,6 +342,7 @@ public class Node extends BlockFlyweight {
      * @param length  string length
      */
     protected void removePrefix(final int position, final int length) {
+        beforeWrite();
         if (length >= 1) {
             final long stringOffset = fieldOffset(STRING_OFFSET);
             final MemorySegment memory = memorySegment();
@@ -306,6 +357,7 @@ public class Node extends BlockFlyweight {
      * @param source node
      */
     public void copy(final Node source) {
+        beforeWrite();
         MemorySegment.copy(source.memorySegment(), source.fieldOffset(0),
             this.memorySegment(), this.fieldOffset(0), BYTES);
     }
@@ -356,6 +408,17 @@ public class Node extends BlockFlyweight {
         return append(new StringBuilder(64)).toString();
     }
 
+    /**
+     * Receives the writes to the blocks of a tree before they happen, see RadixTree.copy(Arena, boolean)
+     */
+    interface Barrier {
+
+        /**
+         * @param node flyweight about to write its block
+         */
+        void write(Node node);
+    }
+
     protected static final class Address {
 
         // bit layout
@@ -379,6 +442,14 @@ public class Node extends BlockFlyweight {
         public static long toOffset(int segment, int block) {
             return ((long) (SEGMENT_MASK & segment) << SEGMENT_OFFSET_BITS) | ((BLOCK_MASK & block) << BLOCK_OFFSET_BITS);
         }
+
+        public static int segment(final int offset) {
+            return (offset >>> SEGMENT_OFFSET_BITS) & SEGMENT_MASK;
+        }
+
+        public static int block(final int offset) {
+            return (offset >>> BLOCK_OFFSET_BITS) & BLOCK_MASK;
+        }
     }
 
     protected static final class Header {
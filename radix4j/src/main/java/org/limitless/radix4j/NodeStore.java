@@ -0,0 +1,204 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.lang.foreign.Arena;
+
+import static org.limitless.radix4j.Node.Address;
+import static org.limitless.radix4j.Node.BYTES;
+
+/**
+ * Node memory shared by many small trees.
+ * <p>
+ * A tree created on a shared store owns only its root block, the segments and the scratch nodes used by the
+ * updates belong to the store. Closing a tree frees its nodes for the other trees, closing the store drops all
+ * trees at once. The store is not thread safe, trees sharing a store must be used by one thread at a time.
+ */
+public final class NodeStore implements AutoCloseable {
+
+    final Node parent;
+    final Node child;
+    final Node node;
+    final RadixTree.Search search;
+    BlockPool<Node> pool;
+
+    private final int blocksPerSegment;
+    private final boolean shared;
+    private int allocatedNodes;
+    private int peakNodes;
+    private int segments;
+    private int trees;
+
+    /**
+     * Constructs a store with the default segment size using a shared arena.
+     */
+    public NodeStore() {
+        this(RadixTree.DEFAULT_BLOCKS_PER_SEGMENT);
+    }
+
+    /**
+     * Constructs a store with the given segment size using a shared arena.
+     * @param blocksPerSegment segment size
+     * @throws IllegalArgumentException invalid blocks per segment
+     */
+    public NodeStore(final int blocksPerSegment) {
+        this(blocksPerSegment, Arena.ofShared());
+    }
+
+    /**
+     * Constructs a store with the given properties.
+     * @param blocksPerSegment blocks per segment
+     * @param arena memory arena
+     * @throws IllegalArgumentException invalid number of blocks per segment or null arena
+     */
+    public NodeStore(final int blocksPerSegment, final Arena arena) {
+        this(blocksPerSegment, arena, true);
+    }
+
+    NodeStore(final int blocksPerSegment, final Arena arena, final boolean shared) {
+        if (arena == null || blocksPerSegment < 64 || blocksPerSegment > RadixTree.MAX_BLOCKS_PER_SEGMENT) {
+            throw new IllegalArgumentException("invalid number of blocks per segment");
+        }
+        this.blocksPerSegment = blocksPerSegment;
+        this.shared = shared;
+        pool = new BlockPool.Builder<>(arena, Node.class).blocksPerSegment(blocksPerSegment).build();
+        parent = allocate(new Node());
+        child = allocate(new Node());
+        node = allocate(new Node());
+        search = new RadixTree.Search(allocate(new Node()));
+    }
+
+    /**
+     * Number of open trees allocating from this store
+     * @return tree count
+     */
+    public int trees() {
+        return trees;
+    }
+
+    /**
+     * Number of blocks in use, including the scratch blocks of the store
+     * @return block count
+     */
+    public int allocatedNodes() {
+        return allocatedNodes;
+    }
+
+    /**
+     * Returns the segment size
+     * @return blocks per segment
+     */
+    public int blocksPerSegment() {
+        return blocksPerSegment;
+    }
+
+    /**
+     * Releases the memory of every tree allocating from this store, the trees must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        trees = 0;
+        allocatedNodes = 0;
+        segments = 0;
+        pool.close();
+    }
+
+    /**
+     * Returns a string representation of the object.
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return String.format("NodeStore{ trees = %,d, nodes = %,d, %s}", trees, allocatedNodes, pool);
+    }
+
+    boolean shared() {
+        return shared;
+    }
+
+    int peakNodes() {
+        return peakNodes;
+    }
+
+    /**
+     * Number of segments opened by the pool, one past the highest segment an allocated block was taken from
+     * @return segment count
+     */
+    int segments() {
+        return segments;
+    }
+
+    void attach() {
+        ++trees;
+    }
+
+    void detach() {
+        --trees;
+    }
+
+    Node allocate(final Node node) {
+        if (++allocatedNodes > peakNodes) {
+            peakNodes = allocatedNodes;
+        }
+        final TreeEvents.SegmentAllocation event = new TreeEvents.SegmentAllocation();
+        event.begin();
+        pool.allocate(node);
+        event.end();
+        // the pool reuses the freed blocks first, a block past the open segments comes from a new one
+        final int segment = node.segment();
+        if (segment >= segments) {
+            if (segment >= Address.MAX_SEGMENTS) {
+                free(node);
+                throw new IllegalStateException("out of segments " + segment);
+            }
+            segments = segment + 1;
+            if (event.shouldCommit()) {
+                event.blocksPerSegment = blocksPerSegment;
+                event.bytes = (long) blocksPerSegment * BYTES;
+                event.allocatedNodes = allocatedNodes;
+                event.commit();
+            }
+        }
+        node.header((byte) 0);
+        return node;
+    }
+
+    void free(final Node node) {
+        --allocatedNodes;
+        node.beforeWrite();
+        pool.free(node);
+    }
+
+    /**
+     * Sets the barrier notified of the writes through the scratch nodes, null for none
+     * @param barrier write barrier
+     */
+    void barrier(final Node.Barrier barrier) {
+        parent.barrier = barrier;
+        child.barrier = barrier;
+        node.barrier = barrier;
+        search.parent.barrier = barrier;
+    }
+
+    void freed(final int nodes) {
+        allocatedNodes -= nodes;
+    }
+
+    void allocated(final int nodes) {
+        allocatedNodes += nodes;
+        peakNodes = Math.max(peakNodes, allocatedNodes);
+    }
+
+    /**
+     * Switches to the pool of a completed migration, the caller closes the old pool.
+     * @param pool new pool
+     * @param nodes blocks in use in the new pool
+     * @param segments segments opened by the new pool
+     */
+    void replace(final BlockPool<Node> pool, final int nodes, final int segments) {
+        this.pool = pool;
+        allocatedNodes = nodes;
+        peakNodes = nodes;
+        this.segments = segments;
+    }
+}
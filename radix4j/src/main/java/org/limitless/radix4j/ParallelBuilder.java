@@ -0,0 +1,293 @@
+package org.limitless.radix4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Builds a tree from many strings on a fork join pool.
+ * <p>
+ * The strings are partitioned by the one or two bytes following their longest common prefix, the stub of a
+ * partition is the common prefix and these bytes. Every task builds the suffixes of a range of partitions into
+ * trees sharing a node store of its own, so the threads never touch the same memory. The stubs are then added to
+ * the result tree and each partition is grafted below its stub. Node offsets are relative to a pool, so the nodes
+ * of the partitions are copied into the result pool: the blocks of every partition are allocated in one sequential
+ * pass, the block pool is not thread safe, then the same tasks copy their partitions into their own blocks in
+ * parallel before the partitions are grafted.
+ */
+public final class ParallelBuilder {
+
+    public static final int PARTITIONS_PER_THREAD = 4;
+
+    private static final int MAX_STUB_BYTES = 2;
+
+    private final ForkJoinPool executor;
+    private final int blocksPerSegment;
+
+    /**
+     * Constructs a builder on the common pool producing trees with the default segment size.
+     */
+    public ParallelBuilder() {
+        this(ForkJoinPool.commonPool(), RadixTree.DEFAULT_BLOCKS_PER_SEGMENT);
+    }
+
+    /**
+     * Constructs a builder with the given properties.
+     * @param executor fork join pool running the partitions
+     * @param blocksPerSegment segment size of the trees
+     * @throws IllegalArgumentException null executor or invalid blocks per segment
+     */
+    public ParallelBuilder(final ForkJoinPool executor, final int blocksPerSegment) {
+        if (executor == null) {
+            throw new IllegalArgumentException("null executor");
+        }
+        if (blocksPerSegment < 64 || blocksPerSegment > RadixTree.MAX_BLOCKS_PER_SEGMENT) {
+            throw new IllegalArgumentException("invalid number of blocks per segment");
+        }
+        this.executor = executor;
+        this.blocksPerSegment = blocksPerSegment;
+    }
+
+    /**
+     * Builds a tree of fixed length strings stored back to back.
+     * @param strings string bytes
+     * @param stringLength length of every string
+     * @param count string count
+     * @return tree
+     * @throws IllegalArgumentException invalid lengths
+     */
+    public RadixTree build(final byte[] strings, final int stringLength, final int count) {
+        if (stringLength < 1 || count < 0 || (long) stringLength * count > strings.length) {
+            throw new IllegalArgumentException("invalid string length or count");
+        }
+        final int[] offsets = new int[count + 1];
+        for (int i = 1; i <= count; ++i) {
+            offsets[i] = offsets[i - 1] + stringLength;
+        }
+        return build(strings, offsets, count);
+    }
+
+    /**
+     * Builds a tree, the string i is stored from offsets[i] to offsets[i + 1].
+     * @param strings string bytes
+     * @param offsets string offsets, count + 1 ascending values
+     * @param count string count
+     * @return tree
+     * @throws IllegalArgumentException invalid offsets
+     * @throws IllegalStateException a partition failed
+     */
+    public RadixTree build(final byte[] strings, final int[] offsets, final int count) {
+        if (count < 0 || offsets.length < count + 1 || (count >= 1 && offsets[count] > strings.length)) {
+            throw new IllegalArgumentException("invalid offsets");
+        }
+        final RadixTree tree = new RadixTree(blocksPerSegment);
+        if (count == 0) {
+            return tree;
+        }
+
+        final int prefix = commonPrefix(strings, offsets, count);
+        final int target = executor.getParallelism() * PARTITIONS_PER_THREAD;
+        int stubBytes = 1;
+        int[] counts = stubCounts(strings, offsets, count, prefix, stubBytes);
+        if (partitions(counts) < target) {
+            stubBytes = MAX_STUB_BYTES;
+            counts = stubCounts(strings, offsets, count, prefix, stubBytes);
+        }
+        final int stubLength = prefix + stubBytes;
+        if (executor.getParallelism() == 1 || partitions(counts) < 2) {
+            for (int i = 0; i < count; ++i) {
+                add(tree, strings, offsets[i], offsets[i + 1] - offsets[i]);
+            }
+            return tree;
+        }
+
+        // group the strings by stub, the shorter strings go straight to the result
+        final int[] starts = new int[counts.length + 1];
+        for (int i = 0; i < counts.length; ++i) {
+            starts[i + 1] = starts[i] + counts[i];
+        }
+        final int[] order = new int[starts[counts.length]];
+        final int[] fill = Arrays.copyOf(starts, counts.length);
+        for (int i = 0; i < count; ++i) {
+            final int offset = offsets[i];
+            final int length = offsets[i + 1] - offset;
+            if (length >= stubLength) {
+                order[fill[stub(strings, offset + prefix, stubBytes)]++] = i;
+            } else {
+                add(tree, strings, offset, length);
+            }
+        }
+
+        final RadixTree[] parts = new RadixTree[counts.length];
+        final int[] nodes = new int[counts.length];
+        final boolean[] containsStub = new boolean[counts.length];
+        final int[][] blocks = new int[counts.length][];
+        final int[] roots = new int[counts.length];
+        final List<Callable<NodeStore>> tasks = new ArrayList<>();
+        final List<Callable<Integer>> copies = new ArrayList<>();
+        final int perTask = Math.max(1, order.length / target);
+        int from = 0;
+        while (from < counts.length) {
+            int to = from;
+            int grouped = 0;
+            while (to < counts.length && grouped < perTask) {
+                grouped += counts[to++];
+            }
+            final int first = from;
+            final int last = to;
+            tasks.add(() -> buildParts(strings, offsets, order, starts, first, last, stubLength,
+                parts, nodes, containsStub));
+            copies.add(() -> copyParts(tree, parts, blocks, roots, first, last));
+            from = to;
+        }
+
+        List<Future<NodeStore>> futures = List.of();
+        try {
+            futures = executor.invokeAll(tasks);
+            for (Future<NodeStore> future : futures) {
+                var _ = future.get();
+            }
+
+            int size = tree.size();
+            final byte[] stub = Arrays.copyOfRange(strings, offsets[0], offsets[0] + stubLength);
+            for (int i = 0; i < counts.length; ++i) {
+                if (counts[i] >= 1) {
+                    stubBytes(stub, prefix, i, stubBytes);
+                    var _ = tree.add(0, stubLength, stub);
+                }
+            }
+            for (int i = 0; i < counts.length; ++i) {
+                if (counts[i] >= 1 && !parts[i].isEmpty()) {
+                    blocks[i] = tree.reserveNodes(nodes[i]);
+                }
+            }
+            for (Future<Integer> future : executor.invokeAll(copies)) {
+                var _ = future.get();
+            }
+            for (int i = 0; i < counts.length; ++i) {
+                if (counts[i] >= 1) {
+                    stubBytes(stub, prefix, i, stubBytes);
+                    tree.graft(stub, stubLength, roots[i], containsStub[i]);
+                    size += parts[i].size() + (containsStub[i] ? 1 : 0);
+                }
+            }
+            tree.restore(size);
+            return tree;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tree.close();
+            throw new IllegalStateException("interrupted", e);
+        } catch (ExecutionException e) {
+            tree.close();
+            throw new IllegalStateException("partition failed", e.getCause());
+        } finally {
+            for (Future<NodeStore> future : futures) {
+                if (future.state() == Future.State.SUCCESS) {
+                    future.resultNow().close();
+                }
+            }
+        }
+    }
+
+    private NodeStore buildParts(final byte[] strings, final int[] offsets, final int[] order, final int[] starts,
+                                 final int from, final int to, final int stubLength, final RadixTree[] parts,
+                                 final int[] nodes, final boolean[] containsStub) {
+        final NodeStore store = new NodeStore(blocksPerSegment);
+        for (int bucket = from; bucket < to; ++bucket) {
+            if (starts[bucket] == starts[bucket + 1]) {
+                continue;
+            }
+            // the parts of the store are built one after the other and only add, the difference is the part
+            final int allocated = store.allocatedNodes();
+            final RadixTree part = new RadixTree(store);
+            for (int i = starts[bucket]; i < starts[bucket + 1]; ++i) {
+                final int offset = offsets[order[i]];
+                final int length = offsets[order[i] + 1] - offset;
+                if (length == stubLength) {
+                    containsStub[bucket] = true;
+                } else {
+                    var _ = part.add(offset + stubLength, length - stubLength, strings);
+                }
+            }
+            nodes[bucket] = store.allocatedNodes() - allocated;
+            parts[bucket] = part;
+        }
+        return store;
+    }
+
+    /**
+     * Copies the parts of a task into the blocks reserved for them in the result tree
+     * @return number of parts copied
+     */
+    private static int copyParts(final RadixTree tree, final RadixTree[] parts, final int[][] blocks,
+                                 final int[] roots, final int from, final int to) {
+        int copied = 0;
+        for (int bucket = from; bucket < to; ++bucket) {
+            if (blocks[bucket] == null) {
+                roots[bucket] = Node.EMPTY_BLOCK;
+            } else {
+                roots[bucket] = tree.copyNodes(parts[bucket], blocks[bucket]);
+                blocks[bucket] = null;
+                ++copied;
+            }
+        }
+        return copied;
+    }
+
+    private static void add(final RadixTree tree, final byte[] strings, final int offset, final int length) {
+        if (length >= 1) {
+            var _ = tree.add(offset, length, strings);
+        }
+    }
+
+    private static int commonPrefix(final byte[] strings, final int[] offsets, final int count) {
+        final int first = offsets[0];
+        int prefix = offsets[1] - first;
+        for (int i = 1; i < count && prefix >= 1; ++i) {
+            final int offset = offsets[i];
+            final int length = Math.min(prefix, offsets[i + 1] - offset);
+            final int mismatch = Arrays.mismatch(strings, first, first + length, strings, offset, offset + length);
+            prefix = mismatch == -1 ? length : mismatch;
+        }
+        return prefix;
+    }
+
+    private static int[] stubCounts(final byte[] strings, final int[] offsets, final int count,
+                                    final int prefix, final int stubBytes) {
+        final int[] counts = new int[1 << (Byte.SIZE * stubBytes)];
+        for (int i = 0; i < count; ++i) {
+            if (offsets[i + 1] - offsets[i] >= prefix + stubBytes) {
+                ++counts[stub(strings, offsets[i] + prefix, stubBytes)];
+            }
+        }
+        return counts;
+    }
+
+    private static int partitions(final int[] counts) {
+        int partitions = 0;
+        for (int count : counts) {
+            if (count >= 1) {
+                ++partitions;
+            }
+        }
+        return partitions;
+    }
+
+    private static int stub(final byte[] strings, final int offset, final int stubBytes) {
+        int stub = 0;
+        for (int i = 0; i < stubBytes; ++i) {
+            stub = stub << Byte.SIZE | (strings[offset + i] & 0xff);
+        }
+        return stub;
+    }
+
+    private static void stubBytes(final byte[] stub, final int prefix, final int value, final int stubBytes) {
+        for (int i = 0; i < stubBytes; ++i) {
+            stub[prefix + i] = (byte) (value >>> (Byte.SIZE * (stubBytes - 1 - i)));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.limitless.radix4j;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+/**
+ * Counting Bloom filter answering most lookups of absent strings before the tree walk.
+ * <p>
+ * The filter is blocked by cache line: a string maps to one 64 byte block and to four 4-bit counters in it, so a
+ * query touches a single line instead of one line per hash. Counters make removes possible, a counter reaching 15
+ * saturates and is never decremented again, which can only add false positives. Strings dropped by a bulk remove
+ * are not decremented either, they are counted as stale and the owner rebuilds the filter when they dominate.
+ */
+final class Prefilter implements AutoCloseable {
+
+    static final int COUNTERS_PER_STRING = 12;
+
+    private static final int BLOCK_BYTES = 64;
+    private static final int COUNTERS_PER_BLOCK = BLOCK_BYTES * 2;
+    private static final int HASHES = 4;
+    private static final int COUNTER_BITS = 7;
+    private static final int COUNTER_MASK = COUNTERS_PER_BLOCK - 1;
+    private static final int SATURATED = 0xf;
+
+    private final Arena arena;
+    private final MemorySegment memory;
+    private final long blocks;
+    private final int capacity;
+    private int stale;
+
+    /**
+     * Allocates an empty filter.
+     * @param capacity expected number of strings
+     */
+    Prefilter(final int capacity) {
+        this.capacity = Math.max(1, capacity);
+        blocks = ((long) this.capacity * COUNTERS_PER_STRING + COUNTERS_PER_BLOCK - 1) / COUNTERS_PER_BLOCK;
+        arena = Arena.ofShared();
+        memory = arena.allocate(blocks * BLOCK_BYTES, BLOCK_BYTES);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int stale() {
+        return stale;
+    }
+
+    void stale(final int strings) {
+        stale += strings;
+    }
+
+    long bytes() {
+        return memory.byteSize();
+    }
+
+    void add(final int position, final int length, final byte[] string) {
+        final long hash = SubtreeHashes.stringHash(string, position, length);
+        final long block = block(hash);
+        for (int i = 0; i < HASHES; ++i) {
+            final int counter = counter(hash, i);
+            final int value = get(block, counter);
+            if (value != SATURATED) {
+                set(block, counter, value + 1);
+            }
+        }
+    }
+
+    void remove(final int position, final int length, final byte[] string) {
+        final long hash = SubtreeHashes.stringHash(string, position, length);
+        final long block = block(hash);
+        for (int i = 0; i < HASHES; ++i) {
+            final int counter = counter(hash, i);
+            final int value = get(block, counter);
+            if (value != SATURATED && value >= 1) {
+                set(block, counter, value - 1);
+            }
+        }
+    }
+
+    /**
+     * Checks a string against the filter
+     * @param position string offset
+     * @param length string length
+     * @param string bytes
+     * @return false when the string is certainly absent
+     */
+    boolean mightContain(final int position, final int length, final byte[] string) {
+        final long hash = SubtreeHashes.stringHash(string, position, length);
+        final long block = block(hash);
+        for (int i = 0; i < HASHES; ++i) {
+            if (get(block, counter(hash, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private long block(final long hash) {
+        return ((hash >>> Integer.SIZE) * blocks) >>> Integer.SIZE;
+    }
+
+    private static int counter(final long hash, final int i) {
+        return (int) (hash >>> (i * COUNTER_BITS)) & COUNTER_MASK;
+    }
+
+    private int get(final long block, final int counter) {
+        final byte value = memory.get(JAVA_BYTE, block * BLOCK_BYTES + (counter >>> 1));
+        return (value >>> ((counter & 1) * 4)) & SATURATED;
+    }
+
+    private void set(final long block, final int counter, final int value) {
+        final long offset = block * BLOCK_BYTES + (counter >>> 1);
+        final int shift = (counter & 1) * 4;
+        final byte current = memory.get(JAVA_BYTE, offset);
+        memory.set(JAVA_BYTE, offset, (byte) ((current & ~(SATURATED << shift)) | (value << shift)));
+    }
+}
@@ -2,8 +2,14 @@ package org.limitless.radix4j;
 
 import org.limitless.fsmp4j.BlockPool;
 
+import java.io.IOException;
 import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static org.limitless.radix4j.Node.*;
@@ -12,18 +18,56 @@ public class RadixTree {
 
     public static final int DEFAULT_BLOCKS_PER_SEGMENT = 256;
     public static final int MAX_BLOCKS_PER_SEGMENT = Address.MAX_BLOCKS;
+    public static final int NO_ID = -1;
     private static final int INITIAL_PATH_SIZE = 32;
+    private static final int DEFRAGMENT_FILL_PERCENT = 50;
+    private static final int MIN_BOUND_NODES = 64;
 
-    private final BlockPool<Node> nodePool;
-    private final Node node;
+    private NodeStore store;
+    private Node node;
     private final Node root;
-    private final Node child;
-    private final Node parent;
-    private final Search search;
+    private Node child;
+    private Node parent;
+    private Search search;
 
-    private final int blocksPerSegment;
     private int size;
-    private int allocatedNodes;
+    private Migration migration;
+    private Journal journal;
+    private final Metrics metrics;
+    private RadixTree lazySource;
+    private Arena lazyArena;
+    // segments of a lazy copy copied before the source wrote them, by segment index, null while shared
+    private MemorySegment[] copiedSegments;
+    private RadixTree[] clones;
+    private int cloneCount;
+    // segments of this tree still shared by one of its lazy copies, by segment index
+    private long[] sharedSegments;
+    private Node sharedNode;
+    private final Node.Barrier barrier = this::share;
+    private SubtreeHashes hashes;
+    private Prefilter prefilter;
+    private SubtreeScores scores;
+    private TopK topK;
+    private Clock clock;
+    private Expiry expiry;
+    private Checkpoint checkpoint;
+    private Terminals terminals;
+    private byte[] keyBuffer;
+    // terminal record of the last string added with an id
+    private int addedId = Terminals.NONE;
+    // depth and offset of the nodes on the path of the last appended string, see append
+    private long[] appendPath;
+    private int appendCount;
+    private Node appendNode;
+    private final Search.Nodes nodes = (offset, node) -> {
+        final int segment = Address.segment(offset);
+        if (copiedSegments != null && segment < copiedSegments.length && copiedSegments[segment] != null) {
+            node.wrapBlock(copiedSegments[segment], segment, Address.block(offset));
+        } else {
+            store.pool.get(Address.fromOffset(offset), node);
+        }
+        return true;
+    };
 
     /**
      * Constructs an empty tree with the default segment size using a shared arena.
@@ -48,18 +92,47 @@ public class RadixTree {
      * @throws IllegalArgumentException invalid number of blocks or segments or null arena
      */
     public RadixTree(final int blocksPerSegment, final Arena arena) {
-        if (arena == null || blocksPerSegment < 64 || blocksPerSegment > MAX_BLOCKS_PER_SEGMENT) {
-            throw new IllegalArgumentException("invalid number of blocks per segment");
+        this(new NodeStore(blocksPerSegment, arena, false));
+    }
+
+    /**
+     * Constructs an empty tree allocating its nodes from a shared store, the tree itself owns only its root.
+     * @param store node store
+     * @throws IllegalArgumentException null store
+     */
+    public RadixTree(final NodeStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("null store");
         }
-        this.blocksPerSegment = blocksPerSegment;
+        this.store = store;
         size = 0;
-        allocatedNodes = 0;
-        nodePool = new BlockPool.Builder<>(arena, Node.class).blocksPerSegment(blocksPerSegment).build();
-        parent = allocate(new Node());
+        metrics = Metrics.ENABLED ? new Metrics() : null;
+        parent = store.parent;
+        child = store.child;
+        node = store.node;
+        search = store.search;
         root = allocate(new Node());
-        child = allocate(new Node());
-        node = allocate(new Node());
-        search = new Search(allocate(new Node()));
+        store.attach();
+    }
+
+    private RadixTree(final RadixTree source, final Arena arena) {
+        store = source.store;
+        size = source.size;
+        metrics = Metrics.ENABLED ? new Metrics() : null;
+        parent = store.parent;
+        child = store.child;
+        node = store.node;
+        search = store.search;
+        root = new Node().wrap(source.root);
+        if (source.lazySource == null) {
+            lazySource = source;
+            copiedSegments = new MemorySegment[store.segments()];
+        } else {
+            // a copy of a lazy copy sees the same segments
+            lazySource = source.lazySource;
+            copiedSegments = source.copiedSegments.clone();
+        }
+        lazyArena = arena;
     }
 
     /**
@@ -121,7 +194,7 @@ public class RadixTree {
             return false;
         }
         final byte[] bytes = string.getBytes();
-        return search.contains(0, bytes.length, bytes, node.wrap(root), nodePool);
+        return findString(0, bytes.length, bytes);
     }
 
     /**
@@ -133,7 +206,7 @@ public class RadixTree {
         if (string == null || isEmpty()) {
             return false;
         }
-        return search.contains(0, string.length, string, node.wrap(root), nodePool);
+        return findString(0, string.length, string);
     }
 
     /**
@@ -150,7 +223,7 @@ public class RadixTree {
         if (position < 0 || length <= 0 || string == null || position + length > string.length) {
             return false;
         }
-        return search.contains(position, length, string, node.wrap(root), nodePool);
+        return findString(position, length, string);
     }
 
     /**
@@ -164,7 +237,7 @@ public class RadixTree {
         }
 
         final byte[] bytes = string.getBytes();
-        return removeString(0, bytes.length, bytes, true);
+        return deleteString(0, bytes.length, bytes);
     }
 
     /**
@@ -176,7 +249,7 @@ public class RadixTree {
         if (string == null) {
             return false;
         }
-        return removeString(0, string.length, string, true);
+        return deleteString(0, string.length, string);
     }
 
     /**
@@ -190,7 +263,79 @@ public class RadixTree {
         if (position < 0 || length <= 0 || string == null || position + length > string.length) {
             return false;
         }
-        return removeString(position, length, string, true);
+        return deleteString(position, length, string);
+    }
+
+    /**
+     * Add a string that expires after the given time to live, adding a present string sets its deadline again.
+     * An expired string reads as absent to lookups, it keeps counting in the size and showing in the traversals
+     * until expire removes it.
+     * @param string value
+     * @param ttlNanos time to live in nanoseconds of System.nanoTime
+     * @return true when value is inserted
+     * @throws IllegalArgumentException negative time to live
+     */
+    public boolean add(final String string, final long ttlNanos) {
+        if (string == null) {
+            return false;
+        }
+        final byte[] bytes = string.getBytes();
+        return add(0, bytes.length, bytes, ttlNanos);
+    }
+
+    /**
+     * Add a string that expires after the given time to live, adding a present string sets its deadline again.
+     * @param position string offset
+     * @param length string length
+     * @param string value
+     * @param ttlNanos time to live in nanoseconds of System.nanoTime
+     * @return true when value is inserted
+     * @throws IllegalArgumentException negative time to live
+     */
+    public boolean add(final int position, final int length, final byte[] string, final long ttlNanos) {
+        if (ttlNanos < 0) {
+            throw new IllegalArgumentException("negative time to live " + ttlNanos);
+        }
+        if (position < 0 || length <= 0 || string == null || position + length > string.length) {
+            return false;
+        }
+        final long now = System.nanoTime();
+        final long nowMillis = System.currentTimeMillis();
+        final long ttlMillis = TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+        final long deadlineMillis = ttlMillis >= Journal.NO_DEADLINE - nowMillis ?
+            Journal.NO_DEADLINE - 1 : nowMillis + ttlMillis;
+        prepareUpdate();
+        if (expiry == null) {
+            expiry = new Expiry(now);
+            terminals().trackParents(store.pool, root.offset());
+        }
+        final long deadline = now + ttlNanos;
+        return addString(position, length, string, deadlineMillis, deadline < now ? Expiry.NO_DEADLINE - 1 : deadline,
+            false);
+    }
+
+    /**
+     * Removes the strings whose deadline has passed
+     * @param nowNanos current System.nanoTime
+     * @return number of strings removed
+     */
+    public int expire(final long nowNanos) {
+        return expire(nowNanos, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most the given number of strings whose deadline has passed, the remaining ones are removed by
+     * the next calls. Bounds the pause of a large batch of deadlines.
+     * @param nowNanos current System.nanoTime
+     * @param maxStrings maximum number of strings to remove
+     * @return number of strings removed
+     * @throws IllegalArgumentException negative maximum
+     */
+    public int expire(final long nowNanos, final int maxStrings) {
+        if (maxStrings < 0) {
+            throw new IllegalArgumentException("negative maximum " + maxStrings);
+        }
+        return expiry == null ? 0 : expiry.expire(this, nowNanos, maxStrings);
     }
 
     /**
@@ -210,350 +355,2064 @@ public class RadixTree {
     }
 
     /**
-     * Destroys the backing memory store.
+     * Attaches a write-ahead journal that records every successful update, null detaches it.
+     * @param journal journal or null
+     */
+    public void journal(final Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Returns the attached journal
+     * @return journal or null
+     */
+    public Journal journal() {
+        return journal;
+    }
+
+    /**
+     * Returns the runtime counters, only available when Metrics.ENABLED is set
+     * @return metrics or null
+     */
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the store the nodes are allocated from
+     * @return node store
+     */
+    public NodeStore store() {
+        return store;
+    }
+
+    /**
+     * Destroys the backing memory store, a tree on a shared store returns its nodes to the store instead.
      */
     public void close() {
         size = 0;
-        nodePool.close();
+        if (lazySource != null) {
+            lazySource.removeClone(this);
+            lazySource = null;
+            return;
+        }
+        detachClones();
+        abortMigration();
+        closePrefilter();
+        scores = null;
+        if (terminals != null) {
+            terminals.close();
+            terminals = null;
+        }
+        if (store.shared()) {
+            freeNodes();
+            store.detach();
+        } else {
+            store.close();
+        }
     }
 
     /**
-     * Returns a string representation of the object.
-     * @return string
+     * Writes a snapshot of the live nodes to the channel. The deadlines of the strings added with a time to live
+     * are not saved, see {@link Journal}.
+     * @param channel destination
+     * @throws IOException write failed
      */
-    @Override
-    public String toString() {
-        return String.format("RadixTree{ size = %,d, %s}", size, nodePool);
+    public void writeSnapshot(final FileChannel channel) throws IOException {
+        final TreeEvents.Snapshot event = new TreeEvents.Snapshot();
+        event.begin();
+        final long nodes = Snapshot.write(this, channel);
+        event.end();
+        if (event.shouldCommit()) {
+            event.load = false;
+            event.nodes = nodes;
+            event.strings = size;
+            event.commit();
+        }
     }
 
     /**
-     * Returns the number of allocated blocks
-     * @return block count
+     * Loads a tree from a snapshot without adding the strings again.
+     * @param channel source
+     * @param arena memory arena
+     * @return tree
+     * @throws IOException read failed or invalid snapshot
      */
-    protected int allocatedBlocks() {
-        return allocatedNodes;
+    public static RadixTree readSnapshot(final FileChannel channel, final Arena arena) throws IOException {
+        final TreeEvents.Snapshot event = new TreeEvents.Snapshot();
+        event.begin();
+        final RadixTree tree = Snapshot.read(channel, arena);
+        event.end();
+        if (event.shouldCommit()) {
+            event.load = true;
+            event.nodes = tree.store.allocatedNodes();
+            event.strings = tree.size;
+            event.commit();
+        }
+        return tree;
     }
 
     /**
-     * Iterates over the nodes in the tree
-     * @param consumer node consumer
-     * @throws IllegalArgumentException for null consumers
+     * Writes an incremental checkpoint. The first checkpoint holds every segment with live nodes and starts the
+     * tracking of the modified segments, the next ones only hold the segments modified since the previous one.
+     * A checkpoint after a compaction is full again. The scores, deadlines and filters are not included.
+     * @param channel destination
+     * @return number of segments written
+     * @throws IOException write failed
      */
-    protected void forEach(final Consumer<Node> consumer) {
-        if (consumer == null) {
-            throw new IllegalArgumentException("null consumer");
+    public int writeCheckpoint(final FileChannel channel) throws IOException {
+        if (lazySource != null) {
+            materialize();
         }
-        if (!isEmpty()) {
-            var _ = search.contains(0, 0, null, node.wrap(root), nodePool);
-            search.forEach(node, nodePool, consumer);
+        if (checkpoint == null) {
+            checkpoint = new Checkpoint();
         }
+        return checkpoint.write(this, channel);
     }
 
     /**
-     * Remove all string matching the prefix
-     * @param length prefix length
-     * @param prefix prefix
-     * @param consumer node consumer
-     * @throws IllegalArgumentException for null consumers
+     * Loads a tree from a full checkpoint and the checkpoints written after it, in order.
+     * @param arena memory arena
+     * @param channels checkpoints, the first one is full
+     * @return tree
+     * @throws IOException read failed, invalid or out of order checkpoint
      */
-    protected void forEach(final int length, final byte[] prefix, final Consumer<Node> consumer) {
-        if (consumer == null) {
-            throw new IllegalArgumentException("null consumer");
+    public static RadixTree readCheckpoints(final Arena arena, final FileChannel... channels) throws IOException {
+        if (arena == null || channels == null) {
+            throw new IllegalArgumentException("null arena or channels");
         }
-        if (isEmpty()) {
-            return;
+        return Checkpoint.read(channels, arena);
+    }
+
+    /**
+     * Exports the strings in sorted order with front coding.
+     * @param channel destination
+     * @return number of strings written
+     * @throws IOException write failed
+     */
+    public long exportSorted(final WritableByteChannel channel) throws IOException {
+        return exportSorted(channel, FrontCoding.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Exports the strings in sorted order with front coding.
+     * @param channel destination
+     * @param blockSize strings between two restart points
+     * @return number of strings written
+     * @throws IOException write failed
+     * @throws IllegalArgumentException invalid block size
+     */
+    public long exportSorted(final WritableByteChannel channel, final int blockSize) throws IOException {
+        return FrontCoding.write(this, channel, blockSize);
+    }
+
+    /**
+     * Adds the strings of a sorted export to the tree.
+     * @param channel source
+     * @return number of strings read
+     * @throws IOException read failed or invalid export
+     */
+    public long importSorted(final ReadableByteChannel channel) throws IOException {
+        return FrontCoding.read(channel, this);
+    }
+
+    /**
+     * Creates an immutable succinct copy of the strings.
+     * @param arena memory arena owned by the caller, the copy is valid until it is closed
+     * @return succinct tree
+     */
+    public SuccinctTree freezeSuccinct(final Arena arena) {
+        if (arena == null) {
+            throw new IllegalArgumentException("null arena");
+        }
+        return SuccinctTree.build(this, arena);
+    }
+
+    /**
+     * Compiles the strings into an immutable minimal automaton, equal suffixes are stored once.
+     * @param arena memory arena owned by the caller, the automaton is valid until it is closed
+     * @return automaton
+     */
+    public Dawg freezeDawg(final Arena arena) {
+        if (arena == null) {
+            throw new IllegalArgumentException("null arena");
         }
+        return Dawg.build(this, arena);
+    }
 
-        var _ = search.contains(0, length, prefix, node.wrap(root), nodePool);
-        search.forEach(node, nodePool, consumer);
+    /**
+     * Creates an independent copy of the tree in a shared arena, see copy(Arena, boolean).
+     * @return copy
+     */
+    public RadixTree copy() {
+        return copy(Arena.ofShared(), false);
     }
 
     /**
-     * Remove the subtree matching the prefix
-     * @param length prefix length
-     * @param prefix prefix
-     * @return matched
+     * Creates an independent copy of the tree.
+     * <p>
+     * The segments holding live nodes are copied in bulk, so the copy has the node layout of this tree, and the
+     * blocks that are free in this tree are released in the copy. The cost is still proportional to the number of
+     * nodes: the live nodes are found by a walk from the root and the blocks up to the last live one are allocated
+     * and the free ones released one at a time, the block pool has no bulk allocation. Only the node contents are
+     * copied in bulk. A tree on a shared node store is copied node by node into a private store.
+     * <p>
+     * A lazy copy shares the segments of this tree. An update of this tree first copies each segment it writes
+     * for the lazy copies still sharing it, so they only hold the segments written since they were taken. An
+     * update of a lazy copy, or a read walking its nodes other than a lookup, makes its full private copy first,
+     * and so does a compaction of this tree. The ids, scores, deadlines, prefilter and bound are not copied: a tree
+     * holding any of them refuses to be copied, and enabling one on a lazy copy makes its private copy first.
+     * @param arena memory arena of the copy
+     * @param lazy true to defer the copy until the first update
+     * @return copy
+     * @throws IllegalArgumentException null arena
+     * @throws IllegalStateException the tree has ids, scores, deadlines, a prefilter or a bound
      */
-    protected boolean removeStrings(final int length, final byte[] prefix) {
-        if (isEmpty()) {
-            return false;
+    public RadixTree copy(final Arena arena, final boolean lazy) {
+        if (arena == null) {
+            throw new IllegalArgumentException("null arena");
+        }
+        // the ids and the deadlines track the parents of their terminal records
+        if ((terminals != null && terminals.tracksParents()) || scoredStrings() >= 1 || prefilter != null ||
+            clock != null) {
+            throw new IllegalStateException("ids, scores, deadlines, prefilter or bound not copied");
+        }
+        if (!lazy) {
+            return copyTree(arena);
+        }
+        final RadixTree clone = new RadixTree(this, arena);
+        final RadixTree source = clone.lazySource;
+        if (source.clones == null) {
+            source.clones = new RadixTree[4];
+        } else if (source.cloneCount == source.clones.length) {
+            source.clones = Arrays.copyOf(source.clones, source.cloneCount * 2);
+        }
+        source.clones[source.cloneCount++] = clone;
+        source.shareSegments(clone.copiedSegments);
+        return clone;
+    }
+
+    /**
+     * Copies the nodes only, used to write a snapshot of a tree on a shared node store
+     * @param arena memory arena of the copy
+     * @return copy
+     */
+    RadixTree copyNodes(final Arena arena) {
+        return copyTree(arena);
+    }
+
+    /**
+     * Adds a string and returns its id, see addAndGetId(int, int, byte[]).
+     * @param string value
+     * @return id of the string, NO_ID for a null string
+     */
+    public int addAndGetId(final String string) {
+        if (string == null) {
+            return NO_ID;
         }
+        final byte[] bytes = string.getBytes();
+        return addAndGetId(0, bytes.length, bytes);
+    }
 
-        var _ = search.mismatch(0, length, prefix, node.wrap(root), nodePool);
-        if (search.found) {
-             var _ = removeString(0, length, prefix, false);
-         } else {
-             final int treeOffset = search.removeStrings(prefix[length - 1] == search.key, node, nodePool);
-             size -= search.removedStrings;
-             allocatedNodes -= search.removedNodes;
-             if (treeOffset == root.offset()) {
-                 root.clear();
-                 size = 0;
-             }
+    /**
+     * Adds a string and returns its id. The ids are dense ints, an id stays valid until its string is removed from
+     * the tree and is then reused by a later string. Only the strings added through this method have an id.
+     * <p>
+     * The id is the terminal record of the string, see {@link Terminals}, taken on the insert path. The record
+     * follows the terminal slot of the string as nodes are split and compacted, and key(id) rebuilds the string
+     * from the slot through the parent links. The ids share the records of the scored and expiring strings.
+     * @param position string offset
+     * @param length string length
+     * @param string value
+     * @return id of the string, NO_ID for an invalid range or a string evicted by the bound
+     */
+    public int addAndGetId(final int position, final int length, final byte[] string) {
+        if (position < 0 || length <= 0 || string == null || position + length > string.length) {
+            return NO_ID;
         }
-        return true;
+        // a lazy copy takes its private nodes before its records
+        prepareUpdate();
+        terminals().trackParents(store.pool, root.offset());
+        var _ = addString(position, length, string, Journal.NO_DEADLINE, Expiry.NO_DEADLINE, true);
+        return terminals.identified(addedId) ? addedId : NO_ID;
     }
 
-    private boolean addString(int position, int length, final byte[] string) {
-        final byte rootHeader = root.header();
-        if (Header.stringLength(rootHeader) == 0 && Header.children(rootHeader) == 0) {
-            addString(position, length, string, node.wrap(root));
-            ++size;
-            return true;
+    /**
+     * Returns the id of a string
+     * @param string value
+     * @return id, NO_ID for a string without an id
+     */
+    public int id(final String string) {
+        if (string == null) {
+            return NO_ID;
+        }
+        final byte[] bytes = string.getBytes();
+        return id(0, bytes.length, bytes);
+    }
+
+    /**
+     * Returns the id of a string
+     * @param position string offset
+     * @param length string length
+     * @param string value
+     * @return id, NO_ID for a string without an id
+     */
+    public int id(final int position, final int length, final byte[] string) {
+        if (terminals == null || isEmpty() || position < 0 || length <= 0 || string == null ||
+            position + length > string.length) {
+            return NO_ID;
+        }
+        if (!search.contains(position, length, string, node.wrap(root), nodes) ||
+            (expiry != null && expired(node.offset(), search.slot))) {
+            return NO_ID;
+        }
+        final int record = terminals.record(node.offset(), search.slot);
+        return terminals.identified(record) ? record : NO_ID;
+    }
+
+    /**
+     * Copies the string of an id to the start of the buffer
+     * @param id string id
+     * @param buffer destination
+     * @return string length
+     * @throws IllegalArgumentException unknown id or buffer too small
+     */
+    public int key(final int id, final byte[] buffer) {
+        final int length = keyLength(id);
+        if (buffer == null || buffer.length < length) {
+            throw new IllegalArgumentException("buffer too small for " + length + " bytes");
+        }
+        return terminals.key(id, store.pool, buffer, length);
+    }
+
+    /**
+     * Returns the string of an id
+     * @param id string id
+     * @return string
+     * @throws IllegalArgumentException unknown id
+     */
+    public String key(final int id) {
+        final byte[] buffer = new byte[keyLength(id)];
+        var _ = terminals.key(id, store.pool, buffer, buffer.length);
+        return new String(buffer);
+    }
+
+    /**
+     * Maintains the subtree content hashes used by diff. Enabling hashes the whole tree once, afterwards only the
+     * nodes on the path of an update are hashed again, on the next diff.
+     * @param enable true to maintain the hashes, false drops them
+     */
+    public void trackHashes(final boolean enable) {
+        if (!enable) {
+            hashes = null;
+        } else if (hashes == null) {
+            hashes = new SubtreeHashes(store.blocksPerSegment());
+            var _ = hashes.hash(nodePool(), root.offset(), null, 0);
         }
-        if (!search.mismatch(position, length, string, node.wrap(root), nodePool)) {
+    }
+
+    /**
+     * Sets the score of a string, used by topK. Raising a score updates the subtree maxima on the path of the
+     * string, lowering it invalidates them. A string added again after a remove starts with a score of 0.
+     * @param string value
+     * @param score new score
+     * @return false when the string is not in the tree
+     */
+    public boolean score(final String string, final long score) {
+        if (string == null) {
             return false;
         }
-        length -= search.position;
-        position += search.position;
-        ++size;
+        final byte[] bytes = string.getBytes();
+        return score(0, bytes.length, bytes, score);
+    }
 
-        final byte header = node.header();
-        final int stringLength = Header.stringLength(header);
-        final int remaining = stringLength - search.mismatch;
-        int consumed = 0;
-        final byte key = length >= 1 ? string[position] : search.key;
-        if (search.reuseKeyNodeOffset != EMPTY_BLOCK) {
-            nodePool.get(Address.fromOffset(search.reuseKeyNodeOffset), node);
+    /**
+     * Sets the score of a string, used by topK.
+     * @param position string offset
+     * @param length string length
+     * @param string value
+     * @param score new score
+     * @return false when the string is not in the tree
+     */
+    public boolean score(final int position, final int length, final byte[] string, final long score) {
+        if (isEmpty() || position < 0 || length <= 0 || string == null || position + length > string.length) {
+            return false;
         }
-        switch (search.mismatchType) {
-            case Search.COMMON_PREFIX:
-                consumed = splitNode(remaining, length, key, search.keyPos, search.mismatch, node);
-                break;
-            case Search.NO_COMMON_PREFIX:
-                addParent(remaining, key, search.keyPos, length, node,
-                    allocate(parent), search.parent);
-                consumed = 1;
-                break;
-            case Search.SUBSTRING:
-                node.header(Header.containsString(header, true));
-                break;
-            case Search.MISSING_KEY:
-                consumed = addKey(length, key, search.keyPos, node);
-                break;
-            case Search.COMMON_PREFIX_AND_KEY:
-                addChild(search.key, search.keyPos, node);
-                break;
-            default:
-                break;
+        prepareUpdate();
+        if (search.mismatch(position, length, string, node.wrap(root), store.pool)) {
+            return false;
         }
-        if (length - consumed >= 1) {
-            addString(position + consumed, length - consumed, string, node);
+        final int record = terminals().add(node.offset(), search.slot);
+        if (scores == null) {
+            scores = new SubtreeScores(store.blocksPerSegment(), terminals);
+        }
+        final long previous = scores.score(record);
+        scores.score(record, score);
+        for (int i = 0; i < search.pathCount; ++i) {
+            final int offset = Path.offset(search.path[i]);
+            if (score >= previous) {
+                scores.raise(offset, score);
+            } else {
+                scores.invalidate(offset);
+            }
         }
         return true;
     }
 
-    private boolean removeString(final int position, final int length, final byte[] string, final boolean find) {
-        if (find) {
-            if (isEmpty()) {
-                return false;
-            }
-            if (search.mismatch(position, length, string, node.wrap(root), nodePool)) {
-                return false;
-            }
+    /**
+     * Returns the score of a string
+     * @param string value
+     * @return score, 0 for a string without a score or not in the tree
+     */
+    public long score(final String string) {
+        if (string == null || scores == null || !contains(string)) {
+            return 0;
         }
-        --size;
+        return scores.score(node.offset(), search.slot);
+    }
 
-        byte header = node.header();
-        if (search.key == EMPTY_KEY) {
-            node.header(Header.containsString(header, false));
-        } else {
-            node.containsKey(search.keyPos, false);
-            if (node.child(search.keyPos) == EMPTY_BLOCK) {
-                node.removeChild(search.keyPos);
+    /**
+     * Visits the k highest scored strings starting with the prefix, highest score first. The search is best-first
+     * on the subtree maxima, a string without a score counts as 0.
+     * @param prefix string prefix, empty for the whole tree
+     * @param k maximum number of strings
+     * @param visitor receives the strings
+     * @return number of strings visited
+     * @throws IllegalArgumentException null prefix or visitor or negative k
+     */
+    public int topK(final String prefix, final int k, final ScoreVisitor visitor) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("null prefix");
+        }
+        final byte[] bytes = prefix.getBytes();
+        return topK(bytes.length, bytes, k, visitor);
+    }
+
+    /**
+     * Visits the k highest scored strings starting with the prefix, highest score first.
+     * @param length prefix length
+     * @param prefix prefix bytes
+     * @param k maximum number of strings
+     * @param visitor receives the strings
+     * @return number of strings visited
+     * @throws IllegalArgumentException invalid prefix, null visitor or negative k
+     */
+    public int topK(final int length, final byte[] prefix, final int k, final ScoreVisitor visitor) {
+        if (visitor == null || k < 0 || length < 0 || (length >= 1 && (prefix == null || length > prefix.length))) {
+            throw new IllegalArgumentException("invalid prefix, k or visitor");
+        }
+        if (isEmpty() || k == 0) {
+            return 0;
+        }
+        resolve();
+        if (scores == null) {
+            scores = new SubtreeScores(store.blocksPerSegment(), terminals());
+        }
+        if (topK == null) {
+            topK = new TopK();
+        }
+        return topK.run(store.pool, scores, root.offset(), length, prefix, k, visitor);
+    }
+
+    /**
+     * Bounds the tree, an insert beyond a bound evicts cold strings with the CLOCK policy. A lookup hit sets the
+     * reference bit of the node the string ends in, the strings of a referenced node survive one sweep of the
+     * hand. The node budget is checked after each insert, an insert may exceed it by the nodes of one string.
+     * @param maxStrings maximum number of strings, 0 for no limit
+     * @param maxBytes maximum node memory including the scratch blocks, 0 for no limit
+     * @throws IllegalArgumentException negative bound or byte budget below 64 nodes
+     * @throws IllegalStateException byte budget for a tree on a shared node store, whose nodes are not counted
+     * per tree
+     */
+    public void bound(final int maxStrings, final long maxBytes) {
+        if (maxStrings < 0 || maxBytes < 0 || (maxBytes >= 1 && maxBytes < (long) MIN_BOUND_NODES * BYTES)) {
+            throw new IllegalArgumentException("invalid bound " + maxStrings + " strings " + maxBytes + " bytes");
+        }
+        if (maxBytes >= 1 && store.shared()) {
+            throw new IllegalStateException("shared node store");
+        }
+        if (maxStrings == 0 && maxBytes == 0) {
+            clock = null;
+            return;
+        }
+        // the reference bits of a lazy copy are set on its private nodes
+        prepareUpdate();
+        final long evictions = clock == null ? 0 : clock.evictions();
+        clock = new Clock(this,
+            maxStrings == 0 ? Integer.MAX_VALUE : maxStrings,
+            maxBytes == 0 ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, maxBytes / BYTES),
+            evictions);
+        clock.evict();
+    }
+
+    /**
+     * Number of strings evicted by the bound
+     * @return eviction count
+     */
+    public long evictions() {
+        return clock == null ? 0 : clock.evictions();
+    }
+
+    /**
+     * Maintains an off-heap counting Bloom filter consulted by contains before the tree walk, most lookups of
+     * absent strings then cost a single cache line. The filter is rebuilt from the strings of the tree, and again
+     * when the tree outgrows it or after bulk removes.
+     * @param expectedStrings filter capacity, 0 drops the filter
+     * @throws IllegalArgumentException negative capacity
+     */
+    public void prefilter(final int expectedStrings) {
+        if (expectedStrings < 0) {
+            throw new IllegalArgumentException("negative capacity " + expectedStrings);
+        }
+        if (expectedStrings == 0) {
+            closePrefilter();
+        } else {
+            prepareUpdate();
+            rebuildPrefilter(expectedStrings);
+        }
+    }
+
+    /**
+     * Hash of the strings in the tree, equal sets of strings have equal hashes whatever their node layout. A tree
+     * that does not track its hashes is hashed in full on every call.
+     * @return content hash
+     */
+    public long contentHash() {
+        if (hashes == null) {
+            return new SubtreeHashes(store.blocksPerSegment()).hash(nodePool(), root.offset(), null, 0);
+        }
+        return subtreeHash(root.offset(), null, 0);
+    }
+
+    /**
+     * Reports the strings that are in only one of the two trees.
+     * <p>
+     * Prefixes whose subtrees have equal content hashes are skipped, so the cost follows the number of differences
+     * rather than the size of the trees. Both trees must track their hashes, see trackHashes.
+     * @param other tree to compare with
+     * @param visitor receives the differences in sorted order
+     * @throws IllegalArgumentException null tree or visitor
+     * @throws IllegalStateException either tree does not track its hashes
+     */
+    public void diff(final RadixTree other, final DiffVisitor visitor) {
+        if (other == null || visitor == null) {
+            throw new IllegalArgumentException("null tree or visitor");
+        }
+        if (hashes == null || other.hashes == null) {
+            throw new IllegalStateException("hashes not tracked");
+        }
+        CoTraversal.diff(this, other, visitor);
+    }
+
+    /**
+     * Streams the strings in either tree in sorted order.
+     * @param other tree
+     * @param visitor receives the strings
+     * @throws IllegalArgumentException null tree or visitor
+     */
+    public void union(final RadixTree other, final KeyVisitor visitor) {
+        combine(CoTraversal.UNION, other, visitor);
+    }
+
+    /**
+     * Builds a tree of the strings in either tree.
+     * @param other tree
+     * @return new tree
+     * @throws IllegalArgumentException null tree
+     */
+    public RadixTree union(final RadixTree other) {
+        return combine(CoTraversal.UNION, other);
+    }
+
+    /**
+     * Streams the strings in both trees in sorted order, only the branches present in both trees are visited.
+     * @param other tree
+     * @param visitor receives the strings
+     * @throws IllegalArgumentException null tree or visitor
+     */
+    public void intersect(final RadixTree other, final KeyVisitor visitor) {
+        combine(CoTraversal.INTERSECT, other, visitor);
+    }
+
+    /**
+     * Builds a tree of the strings in both trees.
+     * @param other tree
+     * @return new tree
+     * @throws IllegalArgumentException null tree
+     */
+    public RadixTree intersect(final RadixTree other) {
+        return combine(CoTraversal.INTERSECT, other);
+    }
+
+    /**
+     * Streams the strings in this tree and not in the other tree in sorted order.
+     * @param other tree
+     * @param visitor receives the strings
+     * @throws IllegalArgumentException null tree or visitor
+     */
+    public void difference(final RadixTree other, final KeyVisitor visitor) {
+        combine(CoTraversal.DIFFERENCE, other, visitor);
+    }
+
+    /**
+     * Builds a tree of the strings in this tree and not in the other tree.
+     * @param other tree
+     * @return new tree
+     * @throws IllegalArgumentException null tree
+     */
+    public RadixTree difference(final RadixTree other) {
+        return combine(CoTraversal.DIFFERENCE, other);
+    }
+
+    /**
+     * Checks that every string in this tree is in the other tree, stops at the first missing string.
+     * @param other tree
+     * @return true when this tree is a subset of the other tree
+     * @throws IllegalArgumentException null tree
+     */
+    public boolean isSubsetOf(final RadixTree other) {
+        if (other == null) {
+            throw new IllegalArgumentException("null tree");
+        }
+        return size <= other.size && CoTraversal.isSubset(this, other);
+    }
+
+    /**
+     * Rewrites the live nodes into fresh segments of a shared arena, see compact(Arena).
+     */
+    public void compact() {
+        compact(Arena.ofShared());
+    }
+
+    /**
+     * Rewrites the live nodes into fresh segments in depth first order and releases the old segments.
+     * <p>
+     * A child is placed next to its parent, which keeps a search within a few segments after a long series of
+     * adds and removes has scattered the nodes. The old arena is closed when it supports closing.
+     * @param arena memory arena for the new segments
+     * @throws IllegalArgumentException null arena
+     * @throws IllegalStateException the tree is on a shared node store
+     */
+    public void compact(final Arena arena) {
+        if (arena == null) {
+            throw new IllegalArgumentException("null arena");
+        }
+        if (store.shared()) {
+            throw new IllegalStateException("shared node store");
+        }
+        prepareUpdate();
+        // the old segments are released
+        detachClones();
+        final TreeEvents.Compaction event = new TreeEvents.Compaction();
+        event.begin();
+        final int nodesBefore = store.allocatedNodes();
+        abortMigration();
+        final Migration compaction = new Migration(arena, store.blocksPerSegment(), false);
+        var _ = compaction.copy(nodes, root.offset(), Integer.MAX_VALUE);
+        swap(compaction, compaction.root(root.offset()));
+        event.end();
+        if (event.shouldCommit()) {
+            event.incremental = false;
+            event.nodesBefore = nodesBefore;
+            event.nodesAfter = store.allocatedNodes();
+            event.commit();
+        }
+    }
+
+    /**
+     * Runs one bounded step of an online defragmentation.
+     * <p>
+     * A defragmentation starts when less than half of the blocks ever allocated are in use, for example after a
+     * bulk removal. Each step migrates at most maxNodes live nodes into fresh segments of a shared arena, and the
+     * last step switches the tree over and releases the old segments. The migration keeps the source offset of
+     * every migrated node, an update between two steps marks the migrated nodes it changes and the next step
+     * copies them again, so steady updates do not restart it. A prefix removal or a graft restarts it.
+     * @param maxNodes maximum number of nodes migrated by this step
+     * @return true while the defragmentation is in progress
+     * @throws IllegalArgumentException invalid number of nodes
+     * @throws IllegalStateException the tree is on a shared node store
+     */
+    public boolean defragment(final int maxNodes) {
+        if (maxNodes < 1) {
+            throw new IllegalArgumentException("invalid number of nodes");
+        }
+        if (store.shared()) {
+            throw new IllegalStateException("shared node store");
+        }
+        final int allocatedNodes = store.allocatedNodes();
+        if (migration == null) {
+            final int peakNodes = store.peakNodes();
+            if (peakNodes <= store.blocksPerSegment() || (long) allocatedNodes * 100 >= (long) peakNodes * DEFRAGMENT_FILL_PERCENT) {
+                return false;
+            }
+            prepareUpdate();
+            migration = new Migration(Arena.ofShared(), store.blocksPerSegment(), true);
+        } else {
+            prepareUpdate();
+        }
+        detachClones();
+        final TreeEvents.Compaction event = new TreeEvents.Compaction();
+        event.begin();
+        migration.update(nodes, root.offset());
+        if (!migration.copy(nodes, root.offset(), maxNodes)) {
+            return true;
+        }
+        final Migration completed = migration;
+        migration = null;
+        swap(completed, completed.root(root.offset()));
+        event.end();
+        if (event.shouldCommit()) {
+            event.incremental = true;
+            event.nodesBefore = allocatedNodes;
+            event.nodesAfter = store.allocatedNodes();
+            event.commit();
+        }
+        return false;
+    }
+
+    /**
+     * Walks the live nodes and collects the structural statistics.
+     * @return new statistics
+     */
+    public TreeStats stats() {
+        return stats(new TreeStats());
+    }
+
+    /**
+     * Walks the live nodes and collects the structural statistics into a reused object.
+     * @param stats destination
+     * @return stats
+     * @throws IllegalArgumentException null stats
+     */
+    public TreeStats stats(final TreeStats stats) {
+        if (stats == null) {
+            throw new IllegalArgumentException("null stats");
+        }
+        return stats.collect(this);
+    }
+
+    /**
+     * Returns a string representation of the object.
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return String.format("RadixTree{ size = %,d, %s}", size, store.pool);
+    }
+
+    /**
+     * Returns the number of allocated blocks in the node store
+     * @return block count
+     */
+    protected int allocatedBlocks() {
+        return store.allocatedNodes();
+    }
+
+    int peakNodes() {
+        return store.peakNodes();
+    }
+
+    int blocksPerSegment() {
+        return store.blocksPerSegment();
+    }
+
+    int scoredStrings() {
+        return scores == null ? 0 : scores.size();
+    }
+
+    BlockPool<Node> nodePool() {
+        resolve();
+        return store.pool;
+    }
+
+    Node rootNode() {
+        return root;
+    }
+
+    int rootOffset() {
+        resolve();
+        return root.offset();
+    }
+
+    void restore(final int size) {
+        this.size = size;
+    }
+
+    /**
+     * Hangs the strings of a part below a stub string of this tree, used by the parallel builder. The stub has been
+     * added to this tree and no other string of this tree starts with it.
+     * @param stub stub bytes
+     * @param length stub length
+     * @param partRoot root of the part copied by copyNodes, EMPTY_BLOCK for an empty part
+     * @param containsStub true when the stub itself is a string
+     */
+    void graft(final byte[] stub, final int length, final int partRoot, final boolean containsStub) {
+        // the copied nodes bypass allocate
+        invalidateAll();
+        var _ = search.contains(0, length, stub, node.wrap(root), nodes);
+        final boolean keySlot = search.position == length;
+        final int keyPos = search.keyPos;
+        if (keySlot) {
+            node.child(keyPos, partRoot);
+            node.containsKey(keyPos, containsStub);
+            linkPart();
+            return;
+        }
+
+        // the stub ends with the string of a leaf
+        final int stringLength = Header.stringLength(node.header());
+        node.header(stringLength, containsStub, 0);
+        if (partRoot == EMPTY_BLOCK) {
+            return;
+        }
+        store.pool.get(Address.fromOffset(partRoot), child);
+        final byte partHeader = child.header();
+        final int partLength = Header.stringLength(partHeader);
+        final int partChildren = Header.children(partHeader);
+        if (partLength == 0) {
+            node.header(stringLength, containsStub, partChildren);
+            for (int i = 0; i < partChildren; ++i) {
+                node.child(i, child.key(i), child.child(i), child.containsKey(i));
+            }
+            freeNode(child);
+        } else {
+            final byte key = child.charAt(0);
+            final boolean containsKey = Header.containsString(partHeader) && partLength == 1;
+            final int block = partLength == 1 && partChildren == 0 ? EMPTY_BLOCK : partRoot;
+            child.removePrefix(1, partLength - 1);
+            if (partLength == 1) {
+                child.header(Header.containsString(child.header(), false));
+            }
+            if (block == EMPTY_BLOCK) {
+                freeNode(child);
+            }
+            node.addChild(key, block, containsKey);
+        }
+        linkPart();
+    }
+
+    /**
+     * Sets the parents of a part grafted below the node flyweight
+     */
+    private void linkPart() {
+        if (terminals != null) {
+            terminals.linkSubtree(store.pool, node.offset());
+        }
+    }
+
+    /**
+     * Adds a string greater than every string of the tree, used to build a tree in sorted order. The search starts
+     * at the deepest node of the path of the previous appended string that the shared prefix covers, not the root.
+     * @param string bytes
+     * @param length string length
+     * @param shared length of the prefix shared with the previous appended string at most, 0 for the first one
+     * @return true when the string is inserted
+     */
+    boolean append(final byte[] string, final int length, final int shared) {
+        if (appendPath == null) {
+            appendPath = new long[INITIAL_PATH_SIZE];
+            appendNode = new Node();
+        }
+        while (appendCount >= 1 && (int) (appendPath[appendCount - 1] >>> Integer.SIZE) >= shared) {
+            --appendCount;
+        }
+        final boolean fromRoot = appendCount == 0;
+        int depth = 0;
+        if (fromRoot) {
+            appendNode.wrap(root);
+        } else {
+            final long start = appendPath[--appendCount];
+            depth = (int) (start >>> Integer.SIZE);
+            store.pool.get(Address.fromOffset((int) start), appendNode);
+        }
+        final boolean inserted = insertString(depth, length - depth, string, appendNode);
+
+        // the path of the string, the root changes when a parent is added above it
+        int offset = fromRoot ? root.offset() : appendNode.offset();
+        while (true) {
+            store.pool.get(Address.fromOffset(offset), appendNode);
+            final byte header = appendNode.header();
+            if (appendCount == appendPath.length) {
+                appendPath = Arrays.copyOf(appendPath, appendCount * 2);
+            }
+            appendPath[appendCount++] = (long) depth << Integer.SIZE | (offset & 0xffffffffL);
+            depth += Header.stringLength(header);
+            if (depth >= length) {
+                break;
+            }
+            final int keyPos = appendNode.keyPosition(Header.children(header), string[depth]);
+            if (keyPos == NOT_FOUND || appendNode.child(keyPos) == EMPTY_BLOCK) {
+                break;
+            }
+            offset = appendNode.child(keyPos);
+            if (appendNode.key(keyPos) != EMPTY_KEY) {
+                ++depth;
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Appends a stub string and copies the subtree of a node of another tree below it, see append and graft
+     * @param stub stub bytes
+     * @param length stub length
+     * @param shared length of the prefix shared with the previous appended string at most
+     * @param source tree of the subtree
+     * @param offset subtree root in the source tree, its string follows the stub
+     * @param containsStub true when the stub itself is a string
+     */
+    void appendSubtree(final byte[] stub, final int length, final int shared, final RadixTree source,
+                       final int offset, final boolean containsStub) {
+        var _ = append(stub, length, shared);
+        // the grafted nodes are not on the path
+        appendCount = 0;
+        final BlockPool<Node> sourcePool = source.nodePool();
+        int nodes = 0;
+        int strings = 0;
+        int[] stack = new int[INITIAL_PATH_SIZE];
+        int stackCount = 0;
+        stack[stackCount++] = offset;
+        while (stackCount >= 1) {
+            sourcePool.get(Address.fromOffset(stack[--stackCount]), appendNode);
+            ++nodes;
+            strings += appendNode.containsStringCount();
+            final int children = Header.children(appendNode.header());
+            if (stackCount + children > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            for (int i = 0; i < children; ++i) {
+                if (appendNode.child(i) != EMPTY_BLOCK) {
+                    stack[stackCount++] = appendNode.child(i);
+                }
+            }
+        }
+        graft(stub, length, copyNodes(sourcePool, offset, reserveNodes(nodes)), containsStub);
+        size += containsStub ? strings : strings - 1;
+    }
+
+    /**
+     * Finds the node a string ends in
+     * @return node flyweight, valid until the next update, or null when the string is absent
+     */
+    Node terminal(final int position, final int length, final byte[] string) {
+        return search.contains(position, length, string, node.wrap(root), nodes) ? node : null;
+    }
+
+    boolean tracksHashes() {
+        return hashes != null;
+    }
+
+    long subtreeHash(final int offset, final byte[] prefix, final int length) {
+        return hashes.hash(nodePool(), offset, prefix, length);
+    }
+
+    /**
+     * Iterates over the nodes in the tree
+     * @param consumer node consumer
+     * @throws IllegalArgumentException for null consumers
+     */
+    protected void forEach(final Consumer<Node> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("null consumer");
+        }
+        if (!isEmpty()) {
+            resolve();
+            var _ = search.contains(0, 0, null, node.wrap(root), nodes);
+            search.forEach(node, store.pool, consumer);
+        }
+    }
+
+    /**
+     * Remove all string matching the prefix
+     * @param length prefix length
+     * @param prefix prefix
+     * @param consumer node consumer
+     * @throws IllegalArgumentException for null consumers
+     */
+    protected void forEach(final int length, final byte[] prefix, final Consumer<Node> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("null consumer");
+        }
+        if (isEmpty()) {
+            return;
+        }
+
+        resolve();
+        final TreeEvents.PrefixScan event = new TreeEvents.PrefixScan();
+        event.begin();
+        var _ = search.contains(0, length, prefix, node.wrap(root), nodes);
+        search.forEach(node, store.pool, consumer);
+        event.end();
+        if (event.shouldCommit()) {
+            event.prefixLength = length;
+            event.visitedNodes = search.visited;
+            event.commit();
+        }
+    }
+
+    /**
+     * Remove the subtree matching the prefix
+     * @param length prefix length
+     * @param prefix prefix
+     * @return matched
+     */
+    protected boolean removeStrings(final int length, final byte[] prefix) {
+        if (isEmpty()) {
+            return false;
+        }
+        prepareUpdate();
+
+        final TreeEvents.BulkRemove event = new TreeEvents.BulkRemove();
+        event.begin();
+        final int sizeBefore = size;
+        final int nodesBefore = store.allocatedNodes();
+        var _ = search.mismatch(0, length, prefix, node.wrap(root), store.pool);
+        if (search.found) {
+             removeString();
+             if (prefilter != null) {
+                 prefilter.remove(0, length, prefix);
+             }
+         } else {
+             invalidatePath();
+             // the subtree is freed without visiting the migration
+             abortMigration();
+             final int treeOffset = search.removeStrings(prefix[length - 1] == search.key, node, store.pool,
+                 terminals);
+             size -= search.removedStrings;
+             store.freed(search.removedNodes);
+             if (Metrics.ENABLED) {
+                 metrics.free(search.removedNodes);
+             }
+             if (treeOffset == root.offset()) {
+                 root.clear();
+                 size = 0;
+             }
+             if (prefilter != null) {
+                 prefilter.stale(sizeBefore - size);
+                 if (prefilter.stale() > size) {
+                     rebuildPrefilter(prefilter.capacity());
+                 }
+             }
+        }
+        if (journal != null) {
+            journal.removeStrings(length, prefix);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.prefixLength = length;
+            event.removedStrings = sizeBefore - size;
+            event.removedNodes = nodesBefore - store.allocatedNodes();
+            event.commit();
+        }
+        return true;
+    }
+
+    private void combine(final int operation, final RadixTree other, final KeyVisitor visitor) {
+        if (other == null || visitor == null) {
+            throw new IllegalArgumentException("null tree or visitor");
+        }
+        CoTraversal.combine(operation, this, other, visitor);
+    }
+
+    private RadixTree combine(final int operation, final RadixTree other) {
+        if (other == null) {
+            throw new IllegalArgumentException("null tree");
+        }
+        final RadixTree result = new RadixTree(store.blocksPerSegment());
+        CoTraversal.build(operation, this, other, result);
+        return result;
+    }
+
+    private boolean findString(final int position, final int length, final byte[] string) {
+        if (prefilter != null && !prefilter.mightContain(position, length, string)) {
+            if (Metrics.ENABLED) {
+                metrics.filteredLookup();
+            }
+            return false;
+        }
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        final boolean found = search.contains(position, length, string, node.wrap(root), nodes);
+        if (Metrics.ENABLED) {
+            metrics.lookup(search.visited, System.nanoTime() - start);
+        }
+        if (!found || (expiry != null && expired(node.offset(), search.slot))) {
+            return false;
+        }
+        // a lazy copy has no clock, see bound, its lookups never write the shared nodes
+        if (clock != null) {
+            node.referenced(true);
+        }
+        return true;
+    }
+
+    private boolean addString(final int position, final int length, final byte[] string) {
+        return addString(position, length, string, Journal.NO_DEADLINE, Expiry.NO_DEADLINE, false);
+    }
+
+    /**
+     * Adds a string, a present string takes the deadline again and an expired one is added anew. The journal
+     * records the wall clock deadline of a string added with a time to live. An identified string keeps its
+     * terminal record in addedId.
+     */
+    private boolean addString(final int position, final int length, final byte[] string,
+                              final long deadlineMillis, final long deadline, final boolean identify) {
+        prepareUpdate();
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        boolean inserted = insertString(position, length, string);
+        if (!inserted && expiry != null && expired(node.offset(), search.slot)) {
+            var _ = purge(position, length, string);
+            inserted = insertString(position, length, string);
+        }
+        if (deadline != Expiry.NO_DEADLINE) {
+            expiry.add(terminals.add(node.offset(), search.slot), deadline);
+        }
+        if (identify) {
+            addedId = terminals.add(node.offset(), search.slot);
+            terminals.identify(addedId);
+        }
+        if (!inserted) {
+            if (deadline != Expiry.NO_DEADLINE && journal != null) {
+                journal.add(position, length, string, deadlineMillis);
+            }
+            return false;
+        }
+        if (clock != null) {
+            node.referenced(true);
+        }
+        if (Metrics.ENABLED) {
+            metrics.add(System.nanoTime() - start);
+        }
+        if (prefilter != null) {
+            prefilter.add(position, length, string);
+            if (size / 2 > prefilter.capacity()) {
+                rebuildPrefilter(size * 2);
+            }
+        }
+        if (journal != null) {
+            journal.add(position, length, string, deadlineMillis);
+        }
+        if (clock != null) {
+            clock.evict();
+        }
+        return true;
+    }
+
+    private boolean deleteString(final int position, final int length, final byte[] string) {
+        return purge(position, length, string, true);
+    }
+
+    /**
+     * Removes a string whatever its deadline
+     * @param position string offset
+     * @param length string length
+     * @param string value
+     * @return true if removed
+     */
+    boolean purge(final int position, final int length, final byte[] string) {
+        return purge(position, length, string, false);
+    }
+
+    /**
+     * Removes the string of a terminal record, the string is rebuilt from the parent links
+     * @param record terminal record
+     * @return true if removed
+     */
+    boolean purge(final int record) {
+        if (terminals == null || !terminals.live(record)) {
+            return false;
+        }
+        final int length = terminals.key(record, store.pool, null, 0);
+        if (keyBuffer == null || keyBuffer.length < length) {
+            keyBuffer = new byte[Math.max(length, INITIAL_PATH_SIZE)];
+        }
+        var _ = terminals.key(record, store.pool, keyBuffer, length);
+        return purge(0, length, keyBuffer);
+    }
+
+    /**
+     * Removes a string, the path cleanup of the removes and of the expiry
+     * @param live true when an expired string reads as absent
+     * @return true if removed and not expired for a live remove
+     */
+    private boolean purge(final int position, final int length, final byte[] string, final boolean live) {
+        prepareUpdate();
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        if (isEmpty() || search.mismatch(position, length, string, node.wrap(root), store.pool)) {
+            return false;
+        }
+        final boolean expired = live && expiry != null && expired(node.offset(), search.slot);
+        removeString();
+        if (Metrics.ENABLED) {
+            metrics.remove(System.nanoTime() - start);
+        }
+        if (prefilter != null) {
+            prefilter.remove(position, length, string);
+        }
+        if (journal != null) {
+            journal.remove(position, length, string);
+        }
+        return !expired;
+    }
+
+    /**
+     * @return true when the string ending in the terminal slot has a deadline that has passed
+     */
+    private boolean expired(final int offset, final int slot) {
+        final long deadline = expiry.deadline(terminals.record(offset, slot));
+        return deadline != Expiry.NO_DEADLINE && deadline <= System.nanoTime();
+    }
+
+    private boolean insertString(final int position, final int length, final byte[] string) {
+        return insertString(position, length, string, root);
+    }
+
+    /**
+     * Inserts a string below a node whose string the inserted string starts with, the node flyweight wraps the node
+     * the string ends in on return and the search holds its terminal slot, also for a present string
+     */
+    private boolean insertString(int position, int length, final byte[] string, final Node start) {
+        final byte rootHeader = root.header();
+        if (Header.stringLength(rootHeader) == 0 && Header.children(rootHeader) == 0) {
+            invalidate(root.offset());
+            search.slot = addString(position, length, string, node.wrap(root));
+            ++size;
+            return true;
+        }
+        if (!search.mismatch(position, length, string, node.wrap(start), store.pool)) {
+            return false;
+        }
+        invalidatePath();
+        length -= search.position;
+        position += search.position;
+        ++size;
+
+        final byte header = node.header();
+        final int stringLength = Header.stringLength(header);
+        final int remaining = stringLength - search.mismatch;
+        int consumed = 0;
+        final byte key = length >= 1 ? string[position] : search.key;
+        if (search.reuseKeyNodeOffset != EMPTY_BLOCK) {
+            store.pool.get(Address.fromOffset(search.reuseKeyNodeOffset), node);
+        }
+        switch (search.mismatchType) {
+            case Search.COMMON_PREFIX:
+                consumed = splitNode(remaining, length, key, search.keyPos, search.mismatch, node);
+                break;
+            case Search.NO_COMMON_PREFIX:
+                addParent(remaining, key, search.keyPos, length, node,
+                    allocate(parent), search.parent);
+                consumed = 1;
+                break;
+            case Search.SUBSTRING:
+                node.header(Header.containsString(header, true));
+                search.slot = Terminals.STRING;
+                break;
+            case Search.MISSING_KEY:
+                consumed = addKey(length, key, search.keyPos, node);
+                break;
+            case Search.COMMON_PREFIX_AND_KEY:
+                addChild(search.key, search.keyPos, node);
+                break;
+            default:
+                break;
+        }
+        if (length - consumed >= 1) {
+            search.slot = addString(position + consumed, length - consumed, string, node);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the string found by the last search, the node flyweight wraps the node the string ends in
+     */
+    private void removeString() {
+        invalidatePath();
+        --size;
+        if (terminals != null) {
+            terminals.release(node.offset(), search.slot);
+        }
+
+        byte header = node.header();
+        if (search.key == EMPTY_KEY) {
+            node.header(Header.containsString(header, false));
+        } else {
+            node.containsKey(search.keyPos, false);
+            if (node.child(search.keyPos) == EMPTY_BLOCK) {
+                removeChild(node, search.keyPos);
+            }
+        }
+
+        header = node.header();
+        if (Header.children(header) == 0 && !Header.containsString(header)) {
+            freeNode(node);
+
+            boolean freeNode = true;
+            for (int i = search.pathCount - 2; freeNode &&  i >= 0; --i) {
+                store.pool.get(Address.fromOffset(Path.offset(search.path[i])), node);
+                header = node.header();
+                final int keyPos = Path.position(search.path[i + 1]);
+                if (node.containsKey(keyPos)) {
+                    node.child(keyPos, EMPTY_BLOCK);
+                } else {
+                    removeChild(node, keyPos);
+                }
+                freeNode = Header.children(header) <= 1 && !Header.containsString(header) && !node.containsKey(keyPos);
+                if (freeNode) {
+                    freeNode(node);
+                }
+            }
+        }
+    }
+
+    private void addParent(final int remainingNode,
+                           final byte key,
+                           final int keyPos,
+                           final int remainingString,
+                           final Node current,
+                           final Node newParent,
+                           final Node currentParent) {
+        if (Metrics.ENABLED) {
+            metrics.reparent();
+        }
+        if (current.equals(root)) {
+            root.wrap(newParent);
+        }
+        if (keyPos != NOT_FOUND) {
+            currentParent.child(keyPos, newParent.offset());
+        }
+        link(keyPos != NOT_FOUND ? currentParent.offset() : EMPTY_BLOCK, newParent.offset());
+
+        final byte header = current.header();
+        final int block = remainingNode == 1 && Header.children(header) == 0 ? EMPTY_BLOCK : current.offset();
+        final int childBlock = remainingString >= 2 ? allocate(child).offset() : EMPTY_BLOCK;
+        if (remainingNode >= 1) {
+            final byte foundKey = current.charAt(0);
+            final boolean containsKey = Header.containsString(header) && Header.stringLength(header) == 1;
+            newParent
+                .header(0, false, 0)
+                .addChild(foundKey, block,  containsKey)
+                .addChild(key, childBlock, remainingString == 1);
+            link(newParent.offset(), block);
+            link(newParent.offset(), childBlock);
+        }
+        search.slot = 1;
+        if (terminals != null && remainingNode == 1) {
+            terminals.move(current.offset(), Terminals.STRING, newParent.offset(), 0);
+        }
+        if (block == EMPTY_BLOCK) {
+            freeNode(current);
+        } else {
+            current.removePrefix(1, remainingNode - 1);
+            if (remainingNode == 1) {
+                current.header(Header.containsString(current.header(), false));
+            }
+        }
+        current.wrap(childBlock != EMPTY_BLOCK ? child : newParent);
+    }
+
+    private int splitNode(final int remainingNode,
+                          final int remainingString,
+                          final byte key,
+                          final int keyPos,
+                          final int mismatch,
+                          final Node current) {
+        if (Metrics.ENABLED) {
+            metrics.split();
+        }
+        final byte header = current.header();
+        final int count = Header.children(header);
+        int block = EMPTY_BLOCK;
+        if ((remainingString >= 2 && remainingNode >= 2) || (count >= 1 && key != NOT_FOUND)) {
+            block = allocate(parent).offset();
+            parent.copy(current);
+            if (terminals != null) {
+                terminals.linkChildren(parent);
+            }
+        }
+        if (terminals != null) {
+            splitTerminals(remainingNode, count, block, current);
+        }
+        if (remainingNode >= 2) {
+            parent.removePrefix(mismatch + 1, remainingNode - 1);
+        } else {
+            if (count == 1) {
+                parent.header(1, true, 0);
+                parent.charAt(0, current.key(0));
+            } else {
+                final byte parentHeader = parent.header();
+                parent.header(Header.clearStringLength(parentHeader));
+            }
+        }
+        current
+            .header(mismatch, remainingString == 0, 1)
+            .child(0, current.charAt(mismatch), block, remainingNode <= 1 && count <= 1);
+        link(current.offset(), block);
+        final int consumed = addKey(remainingString, key, keyPos, current);
+        if (remainingString == 0) {
+            search.slot = Terminals.STRING;
+        }
+        return consumed;
+    }
+
+    /**
+     * Moves the terminal records of a node split by splitNode, the moved node keeps its slots and the tail of the
+     * node string becomes key 0 of the node
+     */
+    private void splitTerminals(final int remainingNode, final int count, final int block, final Node current) {
+        final int offset = current.offset();
+        if (block != EMPTY_BLOCK) {
+            terminals.moveNode(offset, block);
+            if (remainingNode <= 1 && count == 1) {
+                terminals.move(block, Terminals.STRING, offset, 0);
+                terminals.move(block, 0, block, Terminals.STRING);
+            }
+        } else {
+            for (int i = 0; i < count; ++i) {
+                terminals.release(offset, i);
+            }
+            if (remainingNode <= 1 && count <= 1) {
+                terminals.move(offset, Terminals.STRING, offset, 0);
+            } else {
+                terminals.release(offset, Terminals.STRING);
+            }
+        }
+    }
+
+    private void addChild(final byte key, final int keyPos, final Node current) {
+        final int block = allocate(child).offset();
+        child.header(0, false, 0);
+        current.child(keyPos, key, block, true);
+        link(current.offset(), block);
+        current.wrap(child);
+    }
+
+    private int addKey(final int remaining, final byte key, final int keyPos, final Node current) {
+        final int block = remaining >= 2 ? allocate(parent).offset() : 0;
+        final int consumed;
+        final int children = Header.children(current.header());
+        if (children < BLOCK_COUNT) {
+            if (remaining == 0) {
+                current.containsKey(keyPos, true);
+                search.slot = keyPos;
+                consumed = 0;
+            } else {
+                current.addChild(key, block, remaining == 1);
+                link(current.offset(), block);
+                search.slot = children;
+                consumed = 1;
+            }
+        } else {
+            final int last = BLOCK_COUNT - 1;
+            final int childBlock = allocate(child).offset();
+            child
+                .header(0, false, 0)
+                .addChild(current.key(last), current.child(last), current.containsKey(last))
+                .addChild(key, block, true);
+            link(childBlock, current.child(last));
+            link(childBlock, block);
+            current.child(last, EMPTY_KEY, childBlock, false);
+            link(current.offset(), childBlock);
+            if (terminals != null) {
+                terminals.move(current.offset(), last, childBlock, 0);
+            }
+            current.wrap(child);
+            search.slot = 1;
+            consumed = 1;
+        }
+        if (block != EMPTY_BLOCK) {
+            current.wrap(parent);
+        }
+        return consumed;
+    }
+
+    /**
+     * Writes a string into an empty node and a chain of new children
+     * @return terminal slot of the string in the last node
+     */
+    private int addString(final int offset, final int length, final byte[] string, final Node node) {
+        int remaining = length;
+        int position = offset;
+        int slot = Terminals.STRING;
+        while (remaining >= 1) {
+            final int stringLength = Math.min(STRING_LENGTH, remaining);
+            final byte header = node.header();
+            node
+                .header(stringLength, remaining == stringLength, Header.children(header))
+                .string(string, position, stringLength);
+            position += stringLength;
+            remaining -= stringLength;
+            if (remaining >= 1) {
+                final int childBlock = remaining == 1 ? 0 : allocate(child).offset();
+                node
+                    .header(stringLength, false, 1)
+                    .child(0, string[position], childBlock, remaining == 1);
+                if (childBlock != EMPTY_BLOCK) {
+                    link(node.offset(), childBlock);
+                    node.wrap(child);
+                } else {
+                    slot = 0;
+                }
+            }
+            --remaining;
+            ++position;
+        }
+        return slot;
+    }
+
+    Node allocate(final Node node) {
+        if (Metrics.ENABLED) {
+            metrics.allocation();
+        }
+        store.allocate(node);
+        invalidate(node.offset());
+        return node;
+    }
+
+    private void invalidatePath() {
+        if (hashes != null || scores != null || checkpoint != null || migration != null) {
+            for (int i = 0; i < search.pathCount; ++i) {
+                invalidate(Path.offset(search.path[i]));
+            }
+        }
+    }
+
+    private void invalidate(final int offset) {
+        if (hashes != null) {
+            hashes.invalidate(offset);
+        }
+        if (scores != null) {
+            scores.invalidate(offset);
+        }
+        if (checkpoint != null) {
+            checkpoint.mark(offset);
+        }
+        if (migration != null) {
+            migration.modified(offset);
+        }
+    }
+
+    private void invalidateAll() {
+        if (hashes != null) {
+            hashes.invalidateAll();
+        }
+        if (scores != null) {
+            scores.invalidateAll();
+        }
+        if (checkpoint != null) {
+            checkpoint.markAll();
+        }
+        abortMigration();
+    }
+
+    private void swap(final Migration migration, final int rootOffset) {
+        final BlockPool<Node> source = store.pool;
+        if (terminals != null) {
+            terminals.remap(source, root.offset(), migration.pool, rootOffset);
+        }
+        store.replace(migration.pool, migration.nodes, migration.segments);
+        invalidateAll();
+        store.pool.get(Address.fromOffset(migration.scratch[Migration.PARENT]), parent);
+        store.pool.get(Address.fromOffset(rootOffset), root);
+        store.pool.get(Address.fromOffset(migration.scratch[Migration.CHILD]), child);
+        store.pool.get(Address.fromOffset(migration.scratch[Migration.NODE]), node);
+        store.pool.get(Address.fromOffset(migration.scratch[Migration.SEARCH]), search.parent);
+        source.close();
+    }
+
+    /**
+     * Sets the parent of a node when the terminal records rebuild their strings
+     */
+    private void link(final int parent, final int child) {
+        if (terminals != null) {
+            terminals.link(parent, child);
+        }
+    }
+
+    /**
+     * @return length of the string of an id
+     * @throws IllegalArgumentException unknown id
+     */
+    private int keyLength(final int id) {
+        if (terminals == null || !terminals.identified(id)) {
+            throw new IllegalArgumentException("unknown id " + id);
+        }
+        return terminals.key(id, store.pool, null, 0);
+    }
+
+    private Terminals terminals() {
+        if (terminals == null) {
+            terminals = new Terminals(store.blocksPerSegment(), this::released);
+        }
+        return terminals;
+    }
+
+    /**
+     * Drops the per string data of a terminal record released by a remove or a freed node
+     */
+    private void released(final int record) {
+        if (scores != null) {
+            scores.release(record);
+        }
+        if (expiry != null) {
+            expiry.remove(record);
+        }
+    }
+
+    private void rebuildPrefilter(final int capacity) {
+        closePrefilter();
+        final Prefilter filter = new Prefilter(Math.max(capacity, size));
+        final KeyCursor cursor = new KeyCursor(this).reset();
+        while (cursor.next()) {
+            filter.add(0, cursor.length(), cursor.key());
+        }
+        prefilter = filter;
+    }
+
+    private void closePrefilter() {
+        if (prefilter != null) {
+            prefilter.close();
+            prefilter = null;
+        }
+    }
+
+    /**
+     * Allocates the blocks that copyNodes fills with the nodes of a part, before the parts are copied in parallel
+     * @param nodes node count of the part
+     * @return offsets of the blocks
+     */
+    int[] reserveNodes(final int nodes) {
+        final int[] offsets = new int[nodes];
+        for (int i = 0; i < nodes; ++i) {
+            offsets[i] = store.allocate(child).offset();
+        }
+        return offsets;
+    }
+
+    /**
+     * Copies the nodes of a part depth first into blocks allocated by reserveNodes and relinks their children. The
+     * pools are only read with flyweights of the call, so parts with their own blocks are copied concurrently as
+     * long as nothing is allocated meanwhile.
+     * @param part source
+     * @param offsets blocks, as many as the live nodes of the part
+     * @return offset of the copied root
+     * @throws IllegalArgumentException the part has more nodes than blocks
+     */
+    int copyNodes(final RadixTree part, final int[] offsets) {
+        return copyNodes(part.store.pool, part.root.offset(), offsets);
+    }
+
+    /**
+     * Copies the subtree of a node of another pool, see copyNodes(RadixTree, int[])
+     * @param sourcePool pool of the subtree
+     * @param sourceRoot subtree root
+     * @param offsets blocks, as many as the nodes of the subtree
+     * @return offset of the copied root
+     */
+    private int copyNodes(final BlockPool<Node> sourcePool, final int sourceRoot, final int[] offsets) {
+        final BlockPool<Node> pool = store.pool;
+        final Node source = new Node();
+        final Node target = new Node();
+        // part offset of the node, then offset and child position of its copied parent
+        int[] sources = new int[INITIAL_PATH_SIZE];
+        int[] parents = new int[INITIAL_PATH_SIZE];
+        int[] positions = new int[INITIAL_PATH_SIZE];
+        int stackCount = 0;
+        sources[stackCount] = sourceRoot;
+        parents[stackCount++] = NOT_FOUND;
+        int copied = 0;
+        while (stackCount >= 1) {
+            --stackCount;
+            if (copied == offsets.length) {
+                throw new IllegalArgumentException("more nodes than blocks " + offsets.length);
+            }
+            final int offset = offsets[copied++];
+            if (parents[stackCount] != NOT_FOUND) {
+                pool.get(Address.fromOffset(parents[stackCount]), target);
+                target.child(positions[stackCount], offset);
+            }
+            sourcePool.get(Address.fromOffset(sources[stackCount]), source);
+            pool.get(Address.fromOffset(offset), target);
+            MemorySegment.copy(source.memorySegment(), source.fieldOffset(0), target.memorySegment(),
+                target.fieldOffset(0), BYTES);
+
+            final int children = Header.children(source.header());
+            if (stackCount + children > sources.length) {
+                final int length = Math.max(sources.length * 2, stackCount + children);
+                sources = Arrays.copyOf(sources, length);
+                parents = Arrays.copyOf(parents, length);
+                positions = Arrays.copyOf(positions, length);
+            }
+            for (int i = 0; i < children; ++i) {
+                final int childBlock = source.child(i);
+                if (childBlock != EMPTY_BLOCK) {
+                    sources[stackCount] = childBlock;
+                    parents[stackCount] = offset;
+                    positions[stackCount++] = i;
+                }
+            }
+        }
+        return offsets[0];
+    }
+
+    private RadixTree copyTree(final Arena arena) {
+        final RadixTree copy = new RadixTree(store.blocksPerSegment(), arena);
+        copy.size = size;
+        if (store.shared() || !copy.copySegments(this)) {
+            final Migration copied = new Migration(copy.store.pool, copy.root.offset(), copy.store.segments());
+            var _ = copied.copy(nodes, root.offset(), Integer.MAX_VALUE);
+            copy.store.replace(copy.store.pool, copied.nodes, copied.segments);
+        }
+        return copy;
+    }
+
+    /**
+     * Copies the segments of a private store into this empty tree and releases the blocks that are not live. The
+     * nodes of a lazy copy are read from the segments it copied before its source wrote them.
+     * @param source source tree
+     * @return false when the pools do not have the same block layout, nothing is copied
+     */
+    private boolean copySegments(final RadixTree source) {
+        final int blocksPerSegment = store.blocksPerSegment();
+        final BlockPool<Node> sourcePool = source.store.pool;
+        final BlockPool<Node> pool = store.pool;
+        final int first = store.allocatedNodes();
+
+        // live blocks by index, the scratch blocks are always live
+        long[] live = new long[(Math.max(source.store.peakNodes(), first) + Long.SIZE - 1) / Long.SIZE];
+        int blocks = first;
+        live[0] = (1L << (first - 1)) - 1;
+        int[] stack = new int[INITIAL_PATH_SIZE];
+        int stackCount = 0;
+        stack[stackCount++] = source.root.offset();
+        while (stackCount >= 1) {
+            final int offset = stack[--stackCount];
+            final int index = Address.segment(offset) * blocksPerSegment + Address.block(offset);
+            if (index >= live.length * Long.SIZE) {
+                live = Arrays.copyOf(live, Math.max(live.length * 2, index / Long.SIZE + 1));
+            }
+            live[index / Long.SIZE] |= 1L << index;
+            blocks = Math.max(blocks, index + 1);
+            var _ = source.nodes.read(offset, node);
+            final int children = Header.children(node.header());
+            if (stackCount + children > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            for (int i = 0; i < children; ++i) {
+                final int childBlock = node.child(i);
+                if (childBlock != EMPTY_BLOCK) {
+                    stack[stackCount++] = childBlock;
+                }
+            }
+        }
+
+        final int segments = (blocks + blocksPerSegment - 1) / blocksPerSegment;
+        if (!contiguous(sourcePool, blocks, segments) || !reserveBlocks(blocks)) {
+            return false;
+        }
+        for (int segment = 0; segment < segments; ++segment) {
+            final int count = Math.min(blocksPerSegment, blocks - segment * blocksPerSegment);
+            var _ = source.nodes.read(offset(segment * blocksPerSegment, blocksPerSegment), child);
+            pool.get(Address.fromOffset(offset(segment * blocksPerSegment, blocksPerSegment)), parent);
+            MemorySegment.copy(child.memorySegment(), child.fieldOffset(0), parent.memorySegment(), parent.fieldOffset(0),
+                (long) count * BYTES);
+        }
+        retainBlocks(source.root.offset(), live, blocks);
+        return true;
+    }
+
+    /**
+     * Allocates the blocks of this empty tree up to the given index, so the segments can be written in bulk
+     * @param blocks block count
+     * @return false when the blocks are not laid out in order in contiguous segments, nothing is allocated
+     */
+    boolean reserveBlocks(final int blocks) {
+        final int blocksPerSegment = store.blocksPerSegment();
+        final BlockPool<Node> pool = store.pool;
+        final int first = store.allocatedNodes();
+        final int segments = (blocks + blocksPerSegment - 1) / blocksPerSegment;
+        if (root.offset() != offset(first - 1, blocksPerSegment)) {
+            return false;
+        }
+        for (int i = first; i < blocks; ++i) {
+            if (store.allocate(node).offset() != offset(i, blocksPerSegment)) {
+                store.free(node);
+                for (int j = first; j < i; ++j) {
+                    pool.get(Address.fromOffset(offset(j, blocksPerSegment)), node);
+                    store.free(node);
+                }
+                return false;
+            }
+        }
+        if (!contiguous(pool, blocks, segments)) {
+            for (int i = first; i < blocks; ++i) {
+                pool.get(Address.fromOffset(offset(i, blocksPerSegment)), node);
+                store.free(node);
             }
+            return false;
         }
+        return true;
+    }
 
-        header = node.header();
-        if (Header.children(header) == 0 && !Header.containsString(header)) {
-            freeNode(node);
+    /**
+     * Points the root at a node of the segments written in bulk and frees the reserved blocks that are not live
+     * @param rootOffset root offset
+     * @param live live blocks by index, including the scratch blocks
+     * @param blocks block count
+     */
+    void retainBlocks(final int rootOffset, final long[] live, final int blocks) {
+        final int blocksPerSegment = store.blocksPerSegment();
+        final BlockPool<Node> pool = store.pool;
+        pool.get(Address.fromOffset(rootOffset), root);
+        for (int i = 0; i < blocks; ++i) {
+            if ((live[i / Long.SIZE] & (1L << i)) == 0) {
+                pool.get(Address.fromOffset(offset(i, blocksPerSegment)), node);
+                store.free(node);
+            }
+        }
+    }
 
-            boolean freeNode = true;
-            for (int i = search.pathCount - 2; freeNode &&  i >= 0; --i) {
-                nodePool.get(Address.fromOffset(Path.offset(search.path[i])), node);
-                header = node.header();
-                final int keyPos = Path.position(search.path[i + 1]);
-                if (node.containsKey(keyPos)) {
-                    node.child(keyPos, EMPTY_BLOCK);
-                } else {
-                    node.removeChild(keyPos);
-                }
-                freeNode = Header.children(header) <= 1 && !Header.containsString(header) && !node.containsKey(keyPos);
-                if (freeNode) {
-                    freeNode(node);
-                }
+    private boolean contiguous(final BlockPool<Node> pool, final int blocks, final int segments) {
+        final int blocksPerSegment = store.blocksPerSegment();
+        for (int segment = 0; segment < segments; ++segment) {
+            final int start = segment * blocksPerSegment;
+            final int last = Math.min(start + blocksPerSegment, blocks) - 1;
+            pool.get(Address.fromOffset(offset(start, blocksPerSegment)), child);
+            pool.get(Address.fromOffset(offset(last, blocksPerSegment)), parent);
+            if (child.memorySegment() != parent.memorySegment() ||
+                parent.fieldOffset(0) - child.fieldOffset(0) != (long) (last - start) * BYTES) {
+                return false;
             }
         }
         return true;
     }
 
-    private void addParent(final int remainingNode,
-                           final byte key,
-                           final int keyPos,
-                           final int remainingString,
-                           final Node current,
-                           final Node newParent,
-                           final Node currentParent) {
-        if (current.equals(root)) {
-            root.wrap(newParent);
+    private static int offset(final int index, final int blocksPerSegment) {
+        return (int) Address.toOffset(index / blocksPerSegment, index % blocksPerSegment);
+    }
+
+    private void prepareUpdate() {
+        if (lazySource != null) {
+            materialize();
         }
-        if (keyPos != NOT_FOUND) {
-            currentParent.child(keyPos, newParent.offset());
+        // the writes copy the segments shared by the lazy copies first
+        final Node.Barrier writes = cloneCount >= 1 ? barrier : null;
+        store.barrier(writes);
+        root.barrier = writes;
+    }
+
+    /**
+     * Makes the private copy of a lazy copy whose segments differ from the ones of its source, before a walk
+     * through the node pool
+     */
+    private void resolve() {
+        if (lazySource != null && copiedSegments() >= 1) {
+            materialize();
         }
+    }
 
-        final byte header = current.header();
-        final int block = remainingNode == 1 && Header.children(header) == 0 ? EMPTY_BLOCK : current.offset();
-        final int childBlock = remainingString >= 2 ? allocate(child).offset() : EMPTY_BLOCK;
-        if (remainingNode >= 1) {
-            final byte foundKey = current.charAt(0);
-            final boolean containsKey = Header.containsString(header) && Header.stringLength(header) == 1;
-            newParent
-                .header(0, false, 0)
-                .addChild(foundKey, block,  containsKey)
-                .addChild(key, childBlock, remainingString == 1);
+    private void materialize() {
+        final RadixTree copy = copyTree(lazyArena);
+        lazySource.removeClone(this);
+        lazySource = null;
+        lazyArena = null;
+        copiedSegments = null;
+        store = copy.store;
+        parent = copy.parent;
+        child = copy.child;
+        node = copy.node;
+        search = copy.search;
+        root.wrap(copy.root);
+        invalidateAll();
+    }
 
+    private void detachClones() {
+        while (cloneCount >= 1) {
+            clones[cloneCount - 1].materialize();
         }
-        if (block == EMPTY_BLOCK) {
-            freeNode(current);
-            current.wrap(newParent);
-        } else {
-            current.removePrefix(1, remainingNode - 1);
-            if (remainingNode == 1) {
-                current.header(Header.containsString(current.header(), false));
-            }
+    }
+
+    /**
+     * Marks the segments a new lazy copy shares with this tree
+     * @param copied segments of the lazy copy, null for the shared ones
+     */
+    private void shareSegments(final MemorySegment[] copied) {
+        if (sharedSegments == null || sharedSegments.length * Long.SIZE < copied.length) {
+            sharedSegments = sharedSegments == null ? new long[(copied.length + Long.SIZE - 1) / Long.SIZE] :
+                Arrays.copyOf(sharedSegments, (copied.length + Long.SIZE - 1) / Long.SIZE);
         }
-        if (childBlock != 0) {
-            current.wrap(child);
+        for (int segment = 0; segment < copied.length; ++segment) {
+            if (copied[segment] == null) {
+                sharedSegments[segment / Long.SIZE] |= 1L << segment;
+            }
         }
     }
 
-    private int splitNode(final int remainingNode,
-                          final int remainingString,
-                          final byte key,
-                          final int keyPos,
-                          final int mismatch,
-                          final Node current) {
-        final byte header = current.header();
-        final int count = Header.children(header);
-        int block = EMPTY_BLOCK;
-        if ((remainingString >= 2 && remainingNode >= 2) || (count >= 1 && key != NOT_FOUND)) {
-            block = allocate(parent).offset();
-            parent.copy(current);
+    /**
+     * Write barrier of a tree with lazy copies, the first write to a shared segment copies it for the lazy copies
+     * still reading it from the pool
+     * @param written flyweight about to write its block
+     */
+    private void share(final Node written) {
+        final int segment = written.segment();
+        if (sharedSegments == null || segment >= sharedSegments.length * Long.SIZE ||
+            (sharedSegments[segment / Long.SIZE] & (1L << segment)) == 0) {
+            return;
         }
-        if (remainingNode >= 2) {
-            parent.removePrefix(mismatch + 1, remainingNode - 1);
-        } else {
-            if (count == 1) {
-                parent.header(1, true, 0);
-                parent.charAt(0, current.key(0));
-            } else {
-                final byte parentHeader = parent.header();
-                parent.header(Header.clearStringLength(parentHeader));
+        sharedSegments[segment / Long.SIZE] &= ~(1L << segment);
+        MemorySegment copy = null;
+        for (int i = 0; i < cloneCount; ++i) {
+            final RadixTree clone = clones[i];
+            if (segment < clone.copiedSegments.length && clone.copiedSegments[segment] == null) {
+                if (copy == null) {
+                    copy = copySegment(segment);
+                }
+                clone.copiedSegments[segment] = copy;
+                if (clone.root.segment() == segment) {
+                    clone.root.wrapBlock(copy, segment, clone.root.block());
+                }
             }
         }
-        current
-            .header(mismatch, remainingString == 0, 1)
-            .child(0, current.charAt(mismatch), block, remainingNode <= 1 && count <= 1);
-        return addKey(remainingString, key, keyPos, current);
     }
 
-    private void addChild(final byte key, final int keyPos, final Node current) {
-        final int block = allocate(child).offset();
-        child.header(0, false, 0);
-        current.child(keyPos, key, block, true);
-        current.wrap(child);
+    /**
+     * Copies a segment of the pool into memory of an automatic arena, the lazy copies sharing the copy release it
+     * with their last reference
+     */
+    private MemorySegment copySegment(final int segment) {
+        final int blocksPerSegment = store.blocksPerSegment();
+        final MemorySegment copy = Arena.ofAuto().allocate((long) blocksPerSegment * BYTES, Long.BYTES);
+        if (sharedNode == null) {
+            sharedNode = new Node();
+        }
+        final BlockPool<Node> pool = store.pool;
+        final int first = segment * blocksPerSegment;
+        pool.get(Address.fromOffset(offset(first + blocksPerSegment - 1, blocksPerSegment)), sharedNode);
+        final MemorySegment memory = sharedNode.memorySegment();
+        final long lastOffset = sharedNode.fieldOffset(0);
+        pool.get(Address.fromOffset(offset(first, blocksPerSegment)), sharedNode);
+        if (sharedNode.memorySegment() == memory &&
+            lastOffset - sharedNode.fieldOffset(0) == (long) (blocksPerSegment - 1) * BYTES) {
+            MemorySegment.copy(memory, sharedNode.fieldOffset(0), copy, 0, (long) blocksPerSegment * BYTES);
+            return copy;
+        }
+        for (int block = 0; block < blocksPerSegment; ++block) {
+            pool.get(Address.fromOffset(offset(first + block, blocksPerSegment)), sharedNode);
+            MemorySegment.copy(sharedNode.memorySegment(), sharedNode.fieldOffset(0), copy, (long) block * BYTES,
+                BYTES);
+        }
+        return copy;
     }
 
-    private int addKey(final int remaining, final byte key, final int keyPos, final Node current) {
-        final int block = remaining >= 2 ? allocate(parent).offset() : 0;
-        final int consumed;
-        if (Header.children(current.header()) < BLOCK_COUNT) {
-            if (remaining == 0) {
-                current.containsKey(keyPos, true);
-                consumed = 0;
-            } else {
-                current.addChild(key, block, remaining == 1);
-                consumed = 1;
+    /**
+     * Number of segments a lazy copy holds in its own memory
+     * @return segment count
+     */
+    int copiedSegments() {
+        int count = 0;
+        if (copiedSegments != null) {
+            for (final MemorySegment segment : copiedSegments) {
+                if (segment != null) {
+                    ++count;
+                }
             }
-        } else {
-            final int last = BLOCK_COUNT - 1;
-            final int childBlock = allocate(child).offset();
-            child
-                .header(0, false, 0)
-                .addChild(current.key(last), current.child(last), current.containsKey(last))
-                .addChild(key, block, true);
-            current.child(last, EMPTY_KEY, childBlock, false);
-            current.wrap(child);
-            consumed = 1;
-        }
-        if (block != EMPTY_BLOCK) {
-            current.wrap(parent);
         }
-        return consumed;
+        return count;
     }
 
-    private void addString(final int offset, final int length, final byte[] string, final Node node) {
-        int remaining = length;
-        int position = offset;
-        while (remaining >= 1) {
-            final int stringLength = Math.min(STRING_LENGTH, remaining);
-            final byte header = node.header();
-            node
-                .header(stringLength, remaining == stringLength, Header.children(header))
-                .string(string, position, stringLength);
-            position += stringLength;
-            remaining -= stringLength;
-            if (remaining >= 1) {
-                final int childBlock = remaining == 1 ? 0 : allocate(child).offset();
-                node
-                    .header(stringLength, false, 1)
-                    .child(0, string[position], childBlock, remaining == 1);
-                node.wrap(child);
+    private void removeClone(final RadixTree clone) {
+        for (int i = 0; i < cloneCount; ++i) {
+            if (clones[i] == clone) {
+                clones[i] = clones[--cloneCount];
+                clones[cloneCount] = null;
+                if (cloneCount == 0) {
+                    sharedSegments = null;
+                }
+                return;
             }
-            --remaining;
-            ++position;
         }
     }
 
-    private Node allocate(final Node node) {
-        ++allocatedNodes;
-        final int segments = allocatedNodes / blocksPerSegment;
-        if (segments >= Address.MAX_SEGMENTS) {
-            throw new IllegalStateException("out of segments " + segments);
+    private void abortMigration() {
+        if (migration != null) {
+            migration.pool.close();
+            migration = null;
         }
-
-        nodePool.allocate(node);
-        node.header((byte) 0);
-        return node;
     }
 
     private void freeNode(final Node node) {
+        if (terminals != null) {
+            terminals.releaseNode(node.offset());
+        }
         if (root.address() == node.address()) {
             root.header(0, false, 0);
         } else {
-            --allocatedNodes;
-            nodePool.free(node);
+            if (migration != null) {
+                migration.freed(node.offset());
+            }
+            store.free(node);
+            if (Metrics.ENABLED) {
+                metrics.free(1);
+            }
+        }
+    }
+
+    /**
+     * Removes a key slot, the last slot of the node takes its place
+     */
+    private void removeChild(final Node node, final int position) {
+        final int last = Header.children(node.header()) - 1;
+        node.removeChild(position);
+        if (terminals != null) {
+            terminals.move(node.offset(), last, node.offset(), position);
+        }
+    }
+
+    private void freeNodes() {
+        int freed = 0;
+        search.pathCount = 0;
+        search.pushPath(Path.offset(Path.EMPTY, root.offset()));
+        while (search.pathCount >= 1) {
+            store.pool.get(Address.fromOffset(Path.offset(search.popPath())), node);
+            final int children = Header.children(node.header());
+            for (int i = 0; i < children; ++i) {
+                final int childBlock = node.child(i);
+                if (childBlock != EMPTY_BLOCK) {
+                    search.ensureCapacity();
+                    search.pushPath(Path.offset(Path.EMPTY, childBlock));
+                }
+            }
+            store.free(node);
+            ++freed;
+        }
+        if (Metrics.ENABLED) {
+            metrics.free(freed);
         }
     }
 
-    private static final class Search {
+    static final class Search {
         private static final int TYPE_NULL = 0;
         private static final int SUBSTRING = 1;
         private static final int COMMON_PREFIX = 2;
         private static final int COMMON_PREFIX_AND_KEY = 3;
         private static final int NO_COMMON_PREFIX = 4;
         private static final int MISSING_KEY = 5;
+        // overflow nodes chained by empty keys, 256 keys fill at most 26
+        private static final int MAX_CHAIN = 64;
 
         int mismatchType;
         int mismatch;
         int position;
         byte key;
         int keyPos;
+        // terminal slot of the string found, the key position or Terminals.STRING
+        int slot;
         int reuseKeyNodeOffset;
         boolean found;
+        boolean torn;
 
         int removedStrings;
         int removedNodes;
+        int visited;
 
         final Node parent;
 
@@ -564,6 +2423,19 @@ public class RadixTree {
             this.parent = parent;
         }
 
+        /**
+         * Reads the node at an offset into a flyweight
+         */
+        interface Nodes {
+
+            /**
+             * @param offset node offset
+             * @param node flyweight
+             * @return false when the offset is outside of the readable blocks
+             */
+            boolean read(int offset, Node node);
+        }
+
         /**
          * Find the insertion point for a new string
          * @param stringPosition string offset
@@ -595,6 +2467,7 @@ public class RadixTree {
                     mismatch = node.mismatch(position + stringPosition, length, string);
                     if (mismatch == EQUAL) {
                         key = EMPTY_KEY;
+                        slot = Terminals.STRING;
                         found = true;
                         return false;
                     }
@@ -618,6 +2491,7 @@ public class RadixTree {
                         --length;
                         ++position;
                         if (length == 0) {
+                            slot = keyPos;
                             found = node.containsKey(keyPos);
                             return !found;
                         }
@@ -644,30 +2518,36 @@ public class RadixTree {
         }
 
         /**
-         * Fast-path for contains operation
+         * Fast-path for contains operation, also walks the nodes of a SharedTreeReader
          * @param offset prefix offset
          * @param length prefix length
          * @param string buffer
          * @param current node
-         * @param pool block pool
-         * @return true when found
+         * @param nodes reads the children
+         * @return true when found, false with torn set when the nodes cannot be walked
          */
         boolean contains(final int offset,
                          int length,
                          final byte[] string,
                          final Node current,
-                         final BlockPool<Node> pool) {
+                         final Nodes nodes) {
             key = NOT_FOUND;
             keyPos = NOT_FOUND;
             position = 0;
             pathCount = 0;
             found = false;
+            torn = false;
+            if (Metrics.ENABLED) {
+                visited = 1;
+            }
+            int chain = 0;
             byte header = current.header();
             int nodeLength = Header.stringLength(header);
             while (length >= 1) {
                 if (nodeLength >= 1) {
                     final int matched = current.mismatch(position + offset, length, string);
                     if (matched == EQUAL) {
+                        slot = Terminals.STRING;
                         found = true;
                         return true;
                     }
@@ -675,27 +2555,42 @@ public class RadixTree {
                     length -= matched;
                 }
                 if (length >= 1) {
-                    keyPos = current.keyPosition(Header.children(header), string[position + offset]);
+                    final int children = Header.children(header);
+                    if (children > BLOCK_COUNT) {
+                        torn = true;
+                        return false;
+                    }
+                    keyPos = current.keyPosition(children, string[position + offset]);
                     if (keyPos == NOT_FOUND) {
                         return false;
                     }
                     key = current.key(keyPos);
                     if (key != EMPTY_KEY) {
+                        chain = 0;
                         ++position;
                         --length;
                         if (length == 0) {
+                            slot = keyPos;
                             found = current.containsKey(keyPos);
                             return found;
                         }
+                    } else if (++chain > MAX_CHAIN) {
+                        torn = true;
+                        return false;
                     }
                     final int childOffset = current.child(keyPos);
-                    if (childOffset != EMPTY_BLOCK) {
-                        pool.get(Address.fromOffset(childOffset), current);
-                        header = current.header();
-                        nodeLength = Header.stringLength(header);
-                    } else {
+                    if (childOffset == EMPTY_BLOCK) {
                         return false;
                     }
+                    if (!nodes.read(childOffset, current)) {
+                        torn = true;
+                        return false;
+                    }
+                    header = current.header();
+                    nodeLength = Header.stringLength(header);
+                    if (Metrics.ENABLED) {
+                        ++visited;
+                    }
                 }
             }
             return false;
@@ -709,11 +2604,13 @@ public class RadixTree {
          */
         void forEach(final Node node, final BlockPool<Node> pool, final Consumer<Node> consumer) {
             pathCount = 0;
+            visited = 0;
             pushPath(Path.offset(Path.EMPTY, node.offset()));
             while (pathCount >= 1) {
                 final int offset = Path.offset(popPath());
                 pool.get(Address.fromOffset(offset), node);
                 consumer.accept(node);
+                ++visited;
 
                 final int children = Header.children(node.header());
                 for (int i = 0; i < children; ++i) {
@@ -731,9 +2628,11 @@ public class RadixTree {
          * @param matchedKey the prefix matched a key
          * @param node       subtree root node
          * @param pool       memory pool
+         * @param terminals  terminal records released with the freed nodes, or null
          * @return subtree offset
          */
-        int removeStrings(final boolean matchedKey, final Node node, final BlockPool<Node> pool) {
+        int removeStrings(final boolean matchedKey, final Node node, final BlockPool<Node> pool,
+                          final Terminals terminals) {
             removedNodes = 0;
             removedStrings = 0;
 
@@ -759,6 +2658,10 @@ public class RadixTree {
                 }
                 ++removedNodes;
                 removedStrings += node.containsStringCount();
+                if (terminals != null) {
+                    terminals.releaseNode(node.offset());
+                }
+                node.beforeWrite();
                 pool.free(node);
             }
 
@@ -775,6 +2678,10 @@ public class RadixTree {
                 if (freeNode) {
                     ++removedNodes;
                     removedStrings += parent.containsStringCount();
+                    if (terminals != null) {
+                        terminals.releaseNode(offset);
+                    }
+                    parent.beforeWrite();
                     pool.free(parent);
                 }
             }
@@ -785,10 +2692,18 @@ public class RadixTree {
                     parent.child(keyPosition, EMPTY_BLOCK);
                 } else {
                     parent.removeChild(keyPosition);
+                    if (terminals != null) {
+                        terminals.move(parent.offset(), Header.children(parentHeader) - 1, parent.offset(),
+                            keyPosition);
+                    }
                 }
                 if (Header.children(parentHeader) == 0 && Header.stringLength(parentHeader) == 0) {
                     ++removedNodes;
                     removedStrings += parent.containsStringCount();
+                    if (terminals != null) {
+                        terminals.releaseNode(parent.offset());
+                    }
+                    parent.beforeWrite();
                     pool.free(parent);
                 }
             }
@@ -811,6 +2726,251 @@ public class RadixTree {
         }
     }
 
+    /**
+     * Resumable depth first copy of the live nodes into a new pool, the child offsets are patched as the nodes
+     * are placed so a child stays close to its parent.
+     * <p>
+     * An online migration forwards the source offset of every copied node to its copy. The tree reports the
+     * nodes it changes and frees between two steps, a changed copy is taken again from its source and the copy
+     * of a freed node is released, so the copy stays valid while the tree is updated.
+     */
+    private static final class Migration {
+
+        // scratch blocks of the node store followed by the root, in allocation order
+        static final int PARENT = 0;
+        static final int CHILD = 1;
+        static final int NODE = 2;
+        static final int SEARCH = 3;
+        static final int ROOT = 4;
+        private static final int SCRATCH_NODES = 5;
+
+        final BlockPool<Node> pool;
+        final int[] scratch;
+        int nodes;
+        // one past the highest segment a copy was placed in
+        int segments;
+
+        private final Node from;
+        private final Node to;
+        private final Node link;
+        private final int blocksPerSegment;
+        private long[] stack;
+        private int stackCount;
+        private boolean started;
+        // copy offsets by source block index, null when the source does not change during the copy
+        private int[] forward;
+        private int[] modified;
+        private int modifiedCount;
+
+        /**
+         * Copy into an existing pool whose scratch blocks are allocated
+         * @param pool destination pool
+         * @param root root offset in the destination pool
+         * @param segments segments opened by the destination pool
+         */
+        Migration(final BlockPool<Node> pool, final int root, final int segments) {
+            this.pool = pool;
+            this.segments = segments;
+            blocksPerSegment = 0;
+            from = new Node();
+            to = new Node();
+            link = new Node();
+            stack = new long[INITIAL_PATH_SIZE];
+            scratch = new int[SCRATCH_NODES];
+            scratch[ROOT] = root;
+            nodes = SCRATCH_NODES;
+        }
+
+        /**
+         * Copy into a new pool
+         * @param arena memory arena of the new pool
+         * @param blocksPerSegment segment size
+         * @param online true when the source is updated between the steps of the copy
+         */
+        Migration(final Arena arena, final int blocksPerSegment, final boolean online) {
+            this.blocksPerSegment = blocksPerSegment;
+            pool = new BlockPool.Builder<>(arena, Node.class).blocksPerSegment(blocksPerSegment).build();
+            from = new Node();
+            to = new Node();
+            link = new Node();
+            stack = new long[INITIAL_PATH_SIZE];
+            scratch = new int[SCRATCH_NODES];
+            for (int i = 0; i < SCRATCH_NODES; ++i) {
+                allocate();
+                to.header((byte) 0);
+                scratch[i] = to.offset();
+            }
+            if (online) {
+                forward = new int[blocksPerSegment];
+                modified = new int[INITIAL_PATH_SIZE];
+            }
+        }
+
+        /**
+         * Copies the next nodes
+         * @param source source nodes
+         * @param sourceRoot root offset in the source pool
+         * @param maxNodes maximum number of nodes to copy
+         * @return true when all nodes have been copied
+         */
+        boolean copy(final Search.Nodes source, final int sourceRoot, final int maxNodes) {
+            int copied = 0;
+            if (!started) {
+                var _ = source.read(sourceRoot, from);
+                pool.get(Address.fromOffset(scratch[ROOT]), to);
+                forward(sourceRoot, to.offset());
+                copyNode(false);
+                started = true;
+                ++copied;
+            }
+            while (stackCount >= 1 && copied < maxNodes) {
+                final long entry = stack[--stackCount];
+                final int slot = Path.position(entry);
+                pool.get(Address.fromOffset(Path.offset(entry)), link);
+                final int sourceOffset = link.child(slot);
+                var _ = source.read(sourceOffset, from);
+                allocate();
+                link.child(slot, to.offset());
+                forward(sourceOffset, to.offset());
+                copyNode(false);
+                ++copied;
+            }
+            return stackCount == 0;
+        }
+
+        /**
+         * Offset of the root copy
+         * @param sourceRoot root offset in the source pool
+         * @return root offset in the new pool
+         */
+        int root(final int sourceRoot) {
+            return forward == null ? scratch[ROOT] : forwarded(sourceRoot);
+        }
+
+        /**
+         * Records a source node changed by an update
+         * @param offset source offset
+         */
+        void modified(final int offset) {
+            if (forwarded(offset) == EMPTY_BLOCK) {
+                return;
+            }
+            if (modifiedCount == modified.length) {
+                modified = Arrays.copyOf(modified, modifiedCount * 2);
+            }
+            modified[modifiedCount++] = offset;
+        }
+
+        /**
+         * Releases the copy of a source node freed by an update
+         * @param offset source offset
+         */
+        void freed(final int offset) {
+            final int copy = forwarded(offset);
+            if (copy == EMPTY_BLOCK) {
+                return;
+            }
+            forward[index(offset)] = EMPTY_BLOCK;
+            removePending(copy);
+            pool.get(Address.fromOffset(copy), to);
+            pool.free(to);
+            --nodes;
+        }
+
+        /**
+         * Copies again the nodes changed since the last step, and the root when it moved below a new node
+         * @param source source nodes
+         * @param sourceRoot root offset in the source pool
+         */
+        void update(final Search.Nodes source, final int sourceRoot) {
+            for (int i = 0; i < modifiedCount; ++i) {
+                final int copy = forwarded(modified[i]);
+                if (copy != EMPTY_BLOCK) {
+                    var _ = source.read(modified[i], from);
+                    pool.get(Address.fromOffset(copy), to);
+                    copyNode(true);
+                }
+            }
+            modifiedCount = 0;
+            if (started && forwarded(sourceRoot) == EMPTY_BLOCK) {
+                var _ = source.read(sourceRoot, from);
+                allocate();
+                forward(sourceRoot, to.offset());
+                copyNode(false);
+            }
+        }
+
+        /**
+         * Copies the from node over the to node, the children already copied are linked to their copy and the
+         * others are pushed
+         * @param again true when the to node has been copied before, its pending children are replaced
+         */
+        private void copyNode(final boolean again) {
+            MemorySegment.copy(from.memorySegment(), from.fieldOffset(0), to.memorySegment(), to.fieldOffset(0), BYTES);
+            final int offset = to.offset();
+            if (again) {
+                removePending(offset);
+            }
+            final int children = Header.children(to.header());
+            if (stackCount + children > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            for (int i = 0; i < children; ++i) {
+                final int childBlock = to.child(i);
+                if (childBlock != EMPTY_BLOCK) {
+                    final int copy = forwarded(childBlock);
+                    if (copy != EMPTY_BLOCK) {
+                        to.child(i, copy);
+                    } else {
+                        stack[stackCount++] = Path.position(Path.offset(Path.EMPTY, offset), i);
+                    }
+                }
+            }
+        }
+
+        private void allocate() {
+            pool.allocate(to);
+            ++nodes;
+            segments = Math.max(segments, to.segment() + 1);
+        }
+
+        /**
+         * Drops the pending children of a copy, the stack stays in depth first order
+         */
+        private void removePending(final int offset) {
+            int count = 0;
+            for (int i = 0; i < stackCount; ++i) {
+                if (Path.offset(stack[i]) != offset) {
+                    stack[count++] = stack[i];
+                }
+            }
+            stackCount = count;
+        }
+
+        private void forward(final int offset, final int copy) {
+            if (forward == null) {
+                return;
+            }
+            final int index = index(offset);
+            if (index >= forward.length) {
+                forward = Arrays.copyOf(forward, Math.max(forward.length * 2, index + 1));
+            }
+            forward[index] = copy;
+        }
+
+        private int forwarded(final int offset) {
+            if (forward == null) {
+                return EMPTY_BLOCK;
+            }
+            final int index = index(offset);
+            return index < forward.length ? forward[index] : EMPTY_BLOCK;
+        }
+
+        private int index(final int offset) {
+            return Address.segment(offset) * blocksPerSegment + Address.block(offset);
+        }
+    }
+
     private static final class Path {
 
         private static final int BLOCK_OFFSET = 0;
@@ -0,0 +1,16 @@
+package org.limitless.radix4j;
+
+/**
+ * Receives the strings of a top k query, highest score first.
+ */
+@FunctionalInterface
+public interface ScoreVisitor {
+
+    /**
+     * Visits a string, the buffer is reused and only valid during the call.
+     * @param key buffer
+     * @param length string length
+     * @param score string score
+     */
+    void visit(byte[] key, int length, long score);
+}
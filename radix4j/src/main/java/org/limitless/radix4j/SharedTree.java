@@ -0,0 +1,221 @@
+package org.limitless.radix4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.limitless.radix4j.Node.Address;
+
+/**
+ * Tree whose nodes live in a memory mapped file, updated by one writer process and read by any number of
+ * processes of the same host through {@link SharedTreeReader}.
+ * <p>
+ * The segments of the block pool are allocated from the file, every update is wrapped in a seqlock and publishes
+ * the root offset and the size. The file is mapped once at its full capacity, the unused part stays sparse. An
+ * add checks that the file has room for the nodes it may allocate before changing anything, an update failing
+ * anyway marks the file failed instead of publishing a half applied tree. The writer is not thread safe.
+ */
+public final class SharedTree implements AutoCloseable {
+
+    // an insert allocates at most a node per string byte, a new parent and the split of a node
+    private static final int INSERT_NODES = 2;
+
+    private final MappedArena arena;
+    private final RadixTree tree;
+    private final Node node = new Node();
+    private int segments;
+    private boolean failed;
+
+    private SharedTree(final MappedArena arena, final int blocksPerSegment) {
+        this.arena = arena;
+        this.tree = new RadixTree(blocksPerSegment, arena);
+        arena.beginWrite();
+        endWrite();
+    }
+
+    /**
+     * Creates the file of a tree with the default segment size, an existing file is truncated.
+     * @param path file, preferably under /dev/shm
+     * @param capacity file size in bytes, bounds the node memory
+     * @return writer
+     * @throws IOException file cannot be created or mapped
+     * @throws IllegalArgumentException capacity without room for a segment
+     */
+    public static SharedTree create(final Path path, final long capacity) throws IOException {
+        return create(path, capacity, RadixTree.DEFAULT_BLOCKS_PER_SEGMENT);
+    }
+
+    /**
+     * Creates the file of a tree, an existing file is truncated.
+     * @param path file, preferably under /dev/shm
+     * @param capacity file size in bytes, bounds the node memory
+     * @param blocksPerSegment segment size
+     * @return writer
+     * @throws IOException file cannot be created or mapped
+     * @throws IllegalArgumentException invalid blocks per segment or capacity without room for a segment
+     */
+    public static SharedTree create(final Path path, final long capacity, final int blocksPerSegment)
+        throws IOException {
+        if (path == null || blocksPerSegment < 64 || blocksPerSegment > RadixTree.MAX_BLOCKS_PER_SEGMENT) {
+            throw new IllegalArgumentException("invalid number of blocks per segment");
+        }
+        final MappedArena arena = MappedArena.create(path, capacity, blocksPerSegment);
+        try {
+            return new SharedTree(arena, blocksPerSegment);
+        } catch (final RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Add a string to the tree
+     * @param string value
+     * @return true when value is inserted
+     * @throws IllegalStateException the file is full or failed
+     */
+    public boolean add(final String string) {
+        if (string == null) {
+            return false;
+        }
+        final byte[] bytes = string.getBytes();
+        return add(0, bytes.length, bytes);
+    }
+
+    /**
+     * Add string to the tree.
+     * @param position string offset
+     * @param length string length
+     * @param string value
+     * @return true when value is inserted
+     * @throws IllegalStateException the file is full or failed
+     */
+    public boolean add(final int position, final int length, final byte[] string) {
+        if (position < 0 || length <= 0 || string == null || position + length > string.length) {
+            return false;
+        }
+        ensureRoom(length + INSERT_NODES);
+        beginWrite();
+        final boolean added;
+        try {
+            added = tree.add(position, length, string);
+        } catch (final RuntimeException | Error e) {
+            fail();
+            throw e;
+        }
+        endWrite();
+        return added;
+    }
+
+    /**
+     * Remove string form collection
+     * @param string value
+     * @return true if removed
+     * @throws IllegalStateException the file is failed
+     */
+    public boolean remove(final String string) {
+        if (string == null) {
+            return false;
+        }
+        final byte[] bytes = string.getBytes();
+        return remove(0, bytes.length, bytes);
+    }
+
+    /**
+     * Remove string from tree
+     * @param position value offset
+     * @param length value length
+     * @param string value
+     * @return if removed
+     * @throws IllegalStateException the file is failed
+     */
+    public boolean remove(final int position, final int length, final byte[] string) {
+        if (position < 0 || length <= 0 || string == null || position + length > string.length) {
+            return false;
+        }
+        beginWrite();
+        final boolean removed;
+        try {
+            removed = tree.remove(position, length, string);
+        } catch (final RuntimeException | Error e) {
+            fail();
+            throw e;
+        }
+        endWrite();
+        return removed;
+    }
+
+    /**
+     * Check value presence
+     * @param string value
+     * @return true if the string is present
+     */
+    public boolean contains(final String string) {
+        return tree.contains(string);
+    }
+
+    /**
+     * Check the value presence
+     * @param position value offset
+     * @param length value length
+     * @param string value
+     * @return true when string is present
+     */
+    public boolean contains(final int position, final int length, final byte[] string) {
+        return tree.contains(position, length, string);
+    }
+
+    /**
+     * Number of elements in the collection
+     * @return the current number of elements
+     */
+    public int size() {
+        return tree.size();
+    }
+
+    private void beginWrite() {
+        if (failed) {
+            throw new IllegalStateException("failed shared tree");
+        }
+        arena.beginWrite();
+    }
+
+    /**
+     * Records the segments opened by the update in the directory and publishes the tree
+     */
+    private void endWrite() {
+        final NodeStore store = tree.store();
+        for (; segments < store.segments(); ++segments) {
+            store.pool.get(Address.fromOffset((int) Address.toOffset(segments, 0)), node);
+            arena.segment(segments, node.memorySegment(), node.fieldOffset(0));
+        }
+        arena.endWrite(tree.rootOffset(), tree.size());
+    }
+
+    private void fail() {
+        failed = true;
+        arena.fail();
+    }
+
+    /**
+     * Throws before any node changes when the segments needed by the given number of new nodes do not fit
+     */
+    private void ensureRoom(final int nodes) {
+        final NodeStore store = tree.store();
+        final int blocksPerSegment = store.blocksPerSegment();
+        final long blocks = (long) store.segments() * blocksPerSegment;
+        final long missing = store.allocatedNodes() + (long) nodes - blocks;
+        final int segments = missing <= 0 ? 0 : (int) ((missing + blocksPerSegment - 1) / blocksPerSegment);
+        if (!arena.hasRoom(segments, (long) blocksPerSegment * Node.BYTES)) {
+            throw new IllegalStateException("mapped file full");
+        }
+    }
+
+    /**
+     * Unmaps the file, the readers keep their own mapping and the file stays until it is deleted.
+     */
+    @Override
+    public void close() {
+        tree.close();
+        arena.close();
+    }
+}
@@ -0,0 +1,231 @@
+package org.limitless.radix4j;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.lang.foreign.ValueLayout.*;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.limitless.radix4j.MappedArena.*;
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Read-only view of a {@link SharedTree} mapped from its file, usable from another process.
+ * <p>
+ * A lookup reads the sequence, walks the nodes without locking and reads the sequence again, it is retried when
+ * the writer was updating the tree meanwhile. The walk is the one of the tree, every offset is checked against
+ * the mapped segments, so a walk over half written nodes fails and retries instead of faulting. A reader gives up
+ * when the file is marked failed or when an update does not end within a second, for example after the writer
+ * process died in the middle of it. The reader is not thread safe, each thread opens its own reader.
+ */
+public final class SharedTreeReader implements AutoCloseable {
+
+    private static final int ABSENT = 0;
+    private static final int FOUND = 1;
+    private static final int TORN = 2;
+    private static final int INITIAL_SEGMENTS = 16;
+    private static final long MAX_WAIT_NANOS = 1_000_000_000L;
+
+    private final Arena mapping;
+    private final MemorySegment file;
+    private final int blocksPerSegment;
+    private final long segmentBytes;
+    private final Node node = new Node();
+    private final RadixTree.Search search = new RadixTree.Search(new Node());
+    private final RadixTree.Search.Nodes nodes = this::read;
+    private MemorySegment[] segments = new MemorySegment[INITIAL_SEGMENTS];
+    private int segmentCount;
+    private long retries;
+
+    private SharedTreeReader(final Arena mapping, final MemorySegment file, final int blocksPerSegment) {
+        this.mapping = mapping;
+        this.file = file;
+        this.blocksPerSegment = blocksPerSegment;
+        this.segmentBytes = (long) blocksPerSegment * BYTES;
+    }
+
+    /**
+     * Maps the file of a shared tree read-only
+     * @param path file written by a SharedTree
+     * @return reader
+     * @throws IOException file cannot be read or mapped
+     * @throws IllegalArgumentException not a shared tree file
+     */
+    public static SharedTreeReader open(final Path path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("null path");
+        }
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            final ByteBuffer header = ByteBuffer.allocate((int) DIRECTORY_OFFSET).order(ByteOrder.nativeOrder());
+            Snapshot.readFully(header, channel);
+            if (header.getInt((int) MAGIC_OFFSET) != MAGIC || header.getInt((int) VERSION_OFFSET) != VERSION) {
+                throw new IllegalArgumentException("not a shared tree " + path);
+            }
+            final int blocksPerSegment = header.getInt((int) BLOCKS_PER_SEGMENT_OFFSET);
+            final long capacity = header.getLong((int) CAPACITY_OFFSET);
+            if (capacity > channel.size()) {
+                throw new IllegalArgumentException("truncated shared tree " + path);
+            }
+            final Arena mapping = Arena.ofShared();
+            try {
+                final MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, 0, capacity, mapping);
+                return new SharedTreeReader(mapping, file, blocksPerSegment);
+            } catch (final IOException | RuntimeException e) {
+                mapping.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Check value presence
+     * @param string value
+     * @return true if the string is present
+     */
+    public boolean contains(final String string) {
+        if (string == null) {
+            return false;
+        }
+        final byte[] bytes = string.getBytes();
+        return contains(0, bytes.length, bytes);
+    }
+
+    /**
+     * Check the value presence in the last complete version of the tree
+     * @param position value offset
+     * @param length value length
+     * @param string value
+     * @return true when string is present
+     * @throws IllegalStateException the nodes are corrupted, the file is failed or the writer is stalled
+     */
+    public boolean contains(final int position, final int length, final byte[] string) {
+        if (position < 0 || length <= 0 || string == null || position + length > string.length) {
+            return false;
+        }
+        long start = 0;
+        while (true) {
+            final long sequence = (long) SEQUENCE.getAcquire(file, SEQUENCE_OFFSET);
+            if ((sequence & 1) == 0) {
+                final int result = find(position, length, string);
+                VarHandle.loadLoadFence();
+                if ((long) SEQUENCE.getOpaque(file, SEQUENCE_OFFSET) == sequence) {
+                    if (result == TORN) {
+                        throw new IllegalStateException("corrupted shared tree");
+                    }
+                    return result == FOUND;
+                }
+            }
+            start = retry(start);
+        }
+    }
+
+    /**
+     * Number of elements in the last complete version of the tree
+     * @return string count
+     * @throws IllegalStateException the file is failed or the writer is stalled
+     */
+    public int size() {
+        long start = 0;
+        while (true) {
+            final long sequence = (long) SEQUENCE.getAcquire(file, SEQUENCE_OFFSET);
+            if ((sequence & 1) == 0) {
+                final int size = file.get(JAVA_INT, SIZE_OFFSET);
+                VarHandle.loadLoadFence();
+                if ((long) SEQUENCE.getOpaque(file, SEQUENCE_OFFSET) == sequence) {
+                    return size;
+                }
+            }
+            start = retry(start);
+        }
+    }
+
+    /**
+     * Number of reads retried because the writer was updating the tree
+     * @return retry count
+     */
+    public long retries() {
+        return retries;
+    }
+
+    /**
+     * Unmaps the file.
+     */
+    @Override
+    public void close() {
+        mapping.close();
+    }
+
+    /**
+     * Counts a retry and throws when the file is failed or the same attempt keeps failing for too long
+     * @param start time of the first retry, 0 before it
+     * @return time of the first retry
+     */
+    private long retry(final long start) {
+        ++retries;
+        if (file.get(JAVA_INT, FAILED_OFFSET) != 0) {
+            throw new IllegalStateException("failed shared tree");
+        }
+        final long now = System.nanoTime();
+        if (start == 0) {
+            return now;
+        }
+        if (now - start > MAX_WAIT_NANOS) {
+            throw new IllegalStateException("shared tree writer stalled");
+        }
+        Thread.onSpinWait();
+        return start;
+    }
+
+    private int find(final int position, final int length, final byte[] string) {
+        if (!read(file.get(JAVA_INT, ROOT_OFFSET), node)) {
+            return TORN;
+        }
+        final boolean found = search.contains(position, length, string, node, nodes);
+        return search.torn ? TORN : found ? FOUND : ABSENT;
+    }
+
+    /**
+     * Wraps the node at an offset, false for an offset outside of the mapped segments
+     */
+    private boolean read(final int offset, final Node node) {
+        final int segment = Address.segment(offset);
+        final int block = Address.block(offset);
+        if (block >= blocksPerSegment) {
+            return false;
+        }
+        if (segment >= segmentCount) {
+            refreshSegments();
+            if (segment >= segmentCount) {
+                return false;
+            }
+        }
+        node.wrapBlock(segments[segment], segment, block);
+        return true;
+    }
+
+    /**
+     * Maps the segments recorded since the last refresh, the directory entries are written before the count
+     */
+    private void refreshSegments() {
+        final int count = Math.min(file.get(JAVA_INT, SEGMENTS_OFFSET), MAX_SEGMENTS);
+        VarHandle.loadLoadFence();
+        for (; segmentCount < count; ++segmentCount) {
+            final long entry = DIRECTORY_OFFSET + segmentCount * DIRECTORY_ENTRY_BYTES;
+            final long index = file.get(JAVA_LONG, entry);
+            final long start = file.get(JAVA_LONG, entry + Long.BYTES);
+            if (index != segmentCount || start < DATA_OFFSET || start + segmentBytes > file.byteSize()) {
+                return;
+            }
+            if (segmentCount == segments.length) {
+                segments = Arrays.copyOf(segments, segmentCount * 2);
+            }
+            segments[segmentCount] = file.asSlice(start, segmentBytes);
+        }
+    }
+}
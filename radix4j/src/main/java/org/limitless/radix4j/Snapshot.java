@@ -0,0 +1,267 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Binary image of the segments holding the live nodes of a tree.
+ * <p>
+ * The segments are written verbatim up to the last live block, with the root offset, so a reload copies them back
+ * in bulk into a new tree with the same layout and releases the blocks that are not live. No offsets are patched
+ * and no strings are parsed. A tree on a shared node store is compacted into a private copy first. The deadlines
+ * of the strings added with a time to live are not saved, a loaded string does not expire.
+ */
+final class Snapshot {
+
+    static final int MAGIC = 0x52445853; // RDXS
+    static final int VERSION = 2;
+
+    // header byte layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = MAGIC_OFFSET + Integer.BYTES;
+    private static final int BLOCKS_PER_SEGMENT_OFFSET = VERSION_OFFSET + Integer.BYTES;
+    private static final int SIZE_OFFSET = BLOCKS_PER_SEGMENT_OFFSET + Integer.BYTES;
+    private static final int NODE_COUNT_OFFSET = SIZE_OFFSET + Integer.BYTES;
+    private static final int ROOT_OFFSET = NODE_COUNT_OFFSET + Long.BYTES;
+    private static final int BLOCK_COUNT_OFFSET = ROOT_OFFSET + Integer.BYTES;
+    static final int HEADER_LENGTH = BLOCK_COUNT_OFFSET + Integer.BYTES;
+
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Writes the segments holding the live nodes of the tree to the channel.
+     * @param tree source
+     * @param channel destination
+     * @return number of live nodes written
+     * @throws IOException write failed
+     */
+    static long write(final RadixTree tree, final FileChannel channel) throws IOException {
+        if (tree.store().shared()) {
+            try (Arena arena = Arena.ofConfined()) {
+                final RadixTree copy = tree.copyNodes(arena);
+                try {
+                    return write(copy, channel);
+                } finally {
+                    copy.close();
+                }
+            }
+        }
+
+        final int blocksPerSegment = tree.blocksPerSegment();
+        final BlockPool<Node> pool = tree.nodePool();
+        final Node node = new Node();
+        long nodes = 0;
+        int blocks = 0;
+        if (!tree.isEmpty()) {
+            int[] stack = new int[INITIAL_STACK_SIZE];
+            int stackCount = 0;
+            stack[stackCount++] = tree.rootOffset();
+            while (stackCount >= 1) {
+                final int offset = stack[--stackCount];
+                blocks = Math.max(blocks, index(offset, blocksPerSegment) + 1);
+                ++nodes;
+                pool.get(Address.fromOffset(offset), node);
+                final int children = Header.children(node.header());
+                if (stackCount + children > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                for (int i = 0; i < children; ++i) {
+                    final int childBlock = node.child(i);
+                    if (childBlock != EMPTY_BLOCK) {
+                        stack[stackCount++] = childBlock;
+                    }
+                }
+            }
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.nativeOrder());
+        header.putInt(MAGIC_OFFSET, MAGIC)
+            .putInt(VERSION_OFFSET, VERSION)
+            .putInt(BLOCKS_PER_SEGMENT_OFFSET, blocksPerSegment)
+            .putInt(SIZE_OFFSET, tree.size())
+            .putLong(NODE_COUNT_OFFSET, nodes)
+            .putInt(ROOT_OFFSET, tree.rootOffset())
+            .putInt(BLOCK_COUNT_OFFSET, blocks);
+        writeFully(header, channel);
+
+        final long segmentBytes = (long) blocksPerSegment * BYTES;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect((int) segmentBytes).order(ByteOrder.nativeOrder());
+        final MemorySegment memory = MemorySegment.ofBuffer(buffer);
+        final Node last = new Node();
+        for (int segment = 0; segment * blocksPerSegment < blocks; ++segment) {
+            final int count = Math.min(blocksPerSegment, blocks - segment * blocksPerSegment);
+            pool.get(Address.fromOffset((int) Address.toOffset(segment, 0)), node);
+            pool.get(Address.fromOffset((int) Address.toOffset(segment, count - 1)), last);
+            if (node.memorySegment() == last.memorySegment() &&
+                last.fieldOffset(0) - node.fieldOffset(0) == (long) (count - 1) * BYTES) {
+                MemorySegment.copy(node.memorySegment(), node.fieldOffset(0), memory, 0, (long) count * BYTES);
+            } else {
+                for (int block = 0; block < count; ++block) {
+                    pool.get(Address.fromOffset((int) Address.toOffset(segment, block)), node);
+                    MemorySegment.copy(node.memorySegment(), node.fieldOffset(0), memory, (long) block * BYTES,
+                        BYTES);
+                }
+            }
+            buffer.limit(count * BYTES);
+            writeFully(buffer, channel);
+        }
+        return nodes;
+    }
+
+    /**
+     * Loads a tree from the channel.
+     * @param channel source
+     * @param arena memory arena
+     * @return tree
+     * @throws IOException read failed or invalid snapshot
+     */
+    static RadixTree read(final FileChannel channel, final Arena arena) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.nativeOrder());
+        readFully(header, channel);
+        if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("invalid snapshot header");
+        }
+        final int blocksPerSegment = header.getInt(BLOCKS_PER_SEGMENT_OFFSET);
+        if (blocksPerSegment < 64 || blocksPerSegment > RadixTree.MAX_BLOCKS_PER_SEGMENT) {
+            throw new IOException("invalid blocks per segment " + blocksPerSegment);
+        }
+        final int size = header.getInt(SIZE_OFFSET);
+        final long nodeCount = header.getLong(NODE_COUNT_OFFSET);
+        final int root = header.getInt(ROOT_OFFSET);
+        final int blocks = header.getInt(BLOCK_COUNT_OFFSET);
+        if (size < 0 || nodeCount < 0 || nodeCount > blocks ||
+            blocks > (long) Address.MAX_SEGMENTS * blocksPerSegment || (nodeCount == 0) != (blocks == 0)) {
+            throw new IOException("invalid snapshot header");
+        }
+
+        final RadixTree tree = new RadixTree(blocksPerSegment, arena);
+        try {
+            if (nodeCount >= 1) {
+                final int first = tree.store().allocatedNodes();
+                if (tree.reserveBlocks(blocks)) {
+                    readSegments(tree, channel, blocks);
+                    tree.retainBlocks(root, live(tree, first, root, blocks, nodeCount), blocks);
+                } else {
+                    readImage(tree, channel, root, blocks);
+                }
+            }
+            tree.restore(size);
+            return tree;
+        } catch (final IOException | RuntimeException e) {
+            tree.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the segments straight into the reserved blocks of the tree
+     */
+    private static void readSegments(final RadixTree tree, final FileChannel channel, final int blocks)
+        throws IOException {
+        final int blocksPerSegment = tree.blocksPerSegment();
+        final BlockPool<Node> pool = tree.nodePool();
+        final Node node = new Node();
+        for (int segment = 0; segment * blocksPerSegment < blocks; ++segment) {
+            final int count = Math.min(blocksPerSegment, blocks - segment * blocksPerSegment);
+            pool.get(Address.fromOffset((int) Address.toOffset(segment, 0)), node);
+            readFully(node.memorySegment().asSlice(node.fieldOffset(0), (long) count * BYTES).asByteBuffer(),
+                channel);
+        }
+    }
+
+    /**
+     * Reads the segments into a temporary image and copies the live nodes one by one, for a pool whose blocks
+     * cannot be reserved in order
+     */
+    private static void readImage(final RadixTree tree, final FileChannel channel, final int root, final int blocks)
+        throws IOException {
+        final int blocksPerSegment = tree.blocksPerSegment();
+        final MemorySegment[] segments = new MemorySegment[(blocks + blocksPerSegment - 1) / blocksPerSegment];
+        try (Arena image = Arena.ofConfined()) {
+            for (int segment = 0; segment < segments.length; ++segment) {
+                final int count = Math.min(blocksPerSegment, blocks - segment * blocksPerSegment);
+                segments[segment] = image.allocate((long) blocksPerSegment * BYTES);
+                readFully(segments[segment].asSlice(0, (long) count * BYTES).asByteBuffer(), channel);
+            }
+            Checkpoint.copy(segments, root, tree);
+        }
+    }
+
+    /**
+     * Bitmap of the blocks reached from the root, the scratch blocks below the first root are always live
+     * @throws IOException an offset out of the snapshot, a block reached twice or a node count mismatch
+     */
+    private static long[] live(final RadixTree tree, final int first, final int root, final int blocks,
+                               final long nodeCount) throws IOException {
+        final int blocksPerSegment = tree.blocksPerSegment();
+        final BlockPool<Node> pool = tree.nodePool();
+        final Node node = new Node();
+        final long[] live = new long[(blocks + Long.SIZE - 1) / Long.SIZE];
+        live[0] = (1L << (first - 1)) - 1;
+        int[] stack = new int[INITIAL_STACK_SIZE];
+        int stackCount = 0;
+        stack[stackCount++] = root;
+        long nodes = 0;
+        while (stackCount >= 1) {
+            final int offset = stack[--stackCount];
+            final int index = index(offset, blocksPerSegment);
+            if (Address.block(offset) >= blocksPerSegment || index < first - 1 || index >= blocks ||
+                (live[index / Long.SIZE] & (1L << index)) != 0 || ++nodes > nodeCount) {
+                throw new IOException("corrupt snapshot");
+            }
+            live[index / Long.SIZE] |= 1L << index;
+            pool.get(Address.fromOffset(offset), node);
+            final int children = Header.children(node.header());
+            if (children > BLOCK_COUNT) {
+                throw new IOException("corrupt snapshot");
+            }
+            if (stackCount + children > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            for (int i = 0; i < children; ++i) {
+                final int childBlock = node.child(i);
+                if (childBlock != EMPTY_BLOCK) {
+                    stack[stackCount++] = childBlock;
+                }
+            }
+        }
+        if (nodes != nodeCount) {
+            throw new IOException("truncated snapshot");
+        }
+        return live;
+    }
+
+    private static int index(final int offset, final int blocksPerSegment) {
+        return Address.segment(offset) * blocksPerSegment + Address.block(offset);
+    }
+
+    static void writeFully(final ByteBuffer buffer, final FileChannel channel) throws IOException {
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static void readFully(final ByteBuffer buffer, final FileChannel channel) throws IOException {
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("unexpected end of snapshot");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,202 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.util.Arrays;
+
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Content hashes of the subtrees of a tree, indexed by block.
+ * <p>
+ * The hash of a subtree is the sum of the mixed hashes of its full strings, so it depends only on the strings and
+ * not on how they are split into nodes. Updates invalidate the nodes on their path and the new nodes, the hashes
+ * are recomputed on demand and only for the invalid nodes.
+ */
+final class SubtreeHashes {
+
+    private static final int INITIAL_SIZE = 32;
+    private static final int UNVISITED = -1;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int blocksPerSegment;
+    private final Node node = new Node();
+    private long[] hashes = new long[INITIAL_SIZE * Long.SIZE];
+    private long[] valid = new long[INITIAL_SIZE];
+    private byte[] prefix = new byte[INITIAL_SIZE];
+
+    // traversal frames
+    private int[] offsets = new int[INITIAL_SIZE];
+    private int[] lengths = new int[INITIAL_SIZE];
+    private int[] positions = new int[INITIAL_SIZE];
+    private long[] sums = new long[INITIAL_SIZE];
+    private int count;
+
+    SubtreeHashes(final int blocksPerSegment) {
+        this.blocksPerSegment = blocksPerSegment;
+    }
+
+    /**
+     * Hash of one string
+     * @param string bytes
+     * @param length string length
+     * @return hash
+     */
+    static long stringHash(final byte[] string, final int length) {
+        return stringHash(string, 0, length);
+    }
+
+    /**
+     * Hash of one string
+     * @param string bytes
+     * @param position string offset
+     * @param length string length
+     * @return hash
+     */
+    static long stringHash(final byte[] string, final int position, final int length) {
+        long hash = FNV_OFFSET;
+        for (int i = position; i < position + length; ++i) {
+            hash ^= string[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    void invalidate(final int offset) {
+        final int index = index(offset);
+        if (index / Long.SIZE < valid.length) {
+            valid[index / Long.SIZE] &= ~(1L << index);
+        }
+    }
+
+    void invalidateAll() {
+        Arrays.fill(valid, 0);
+    }
+
+    /**
+     * Hash of the subtree at the node, computed for the invalid nodes below it
+     * @param pool node pool
+     * @param offset node offset
+     * @param entry string leading to the node
+     * @param entryLength length of the leading string
+     * @return hash
+     */
+    long hash(final BlockPool<Node> pool, final int offset, final byte[] entry, final int entryLength) {
+        ensurePrefix(entryLength + 1);
+        if (entryLength >= 1) {
+            System.arraycopy(entry, 0, prefix, 0, entryLength);
+        }
+        count = 0;
+        push(offset, entryLength);
+        long result = 0;
+        while (count >= 1) {
+            final int top = count - 1;
+            final int current = offsets[top];
+            final int index = index(current);
+            if (positions[top] == UNVISITED) {
+                if (isValid(index)) {
+                    --count;
+                    result = complete(hashes[index]);
+                    continue;
+                }
+                pool.get(Address.fromOffset(current), node);
+                final byte header = node.header();
+                final int start = lengths[top];
+                final int stringLength = Header.stringLength(header);
+                ensurePrefix(start + stringLength + 1);
+                for (int i = 0; i < stringLength; ++i) {
+                    prefix[start + i] = node.charAt(i);
+                }
+                sums[top] = Header.containsString(header) ? stringHash(prefix, start + stringLength) : 0;
+                lengths[top] = start + stringLength;
+                positions[top] = 0;
+            } else {
+                pool.get(Address.fromOffset(current), node);
+            }
+
+            final int end = lengths[top];
+            final int children = Header.children(node.header());
+            int position = positions[top];
+            boolean descend = false;
+            while (position < children && !descend) {
+                final byte key = node.key(position);
+                final int child = node.child(position);
+                if (key == EMPTY_KEY) {
+                    descend = child != EMPTY_BLOCK;
+                    if (descend) {
+                        push(child, end);
+                    }
+                } else {
+                    prefix[end] = key;
+                    if (node.containsKey(position)) {
+                        sums[top] += stringHash(prefix, end + 1);
+                    }
+                    descend = child != EMPTY_BLOCK;
+                    if (descend) {
+                        push(child, end + 1);
+                    }
+                }
+                ++position;
+            }
+            positions[top] = position;
+            if (!descend) {
+                final long hash = sums[top];
+                store(index, hash);
+                --count;
+                result = complete(hash);
+            }
+        }
+        return result;
+    }
+
+    private long complete(final long hash) {
+        if (count >= 1) {
+            sums[count - 1] += hash;
+        }
+        return hash;
+    }
+
+    private void push(final int offset, final int length) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+            positions = Arrays.copyOf(positions, count * 2);
+            sums = Arrays.copyOf(sums, count * 2);
+        }
+        offsets[count] = offset;
+        lengths[count] = length;
+        positions[count] = UNVISITED;
+        sums[count] = 0;
+        ++count;
+        ensurePrefix(length + Node.STRING_LENGTH + 1);
+    }
+
+    private void store(final int index, final long hash) {
+        if (index >= hashes.length) {
+            final int size = Math.max(hashes.length * 2, (index / Long.SIZE + 1) * Long.SIZE);
+            hashes = Arrays.copyOf(hashes, size);
+            valid = Arrays.copyOf(valid, size / Long.SIZE);
+        }
+        hashes[index] = hash;
+        valid[index / Long.SIZE] |= 1L << index;
+    }
+
+    private boolean isValid(final int index) {
+        return index / Long.SIZE < valid.length && (valid[index / Long.SIZE] & (1L << index)) != 0;
+    }
+
+    private void ensurePrefix(final int length) {
+        if (length > prefix.length) {
+            prefix = Arrays.copyOf(prefix, Math.max(prefix.length * 2, length));
+        }
+    }
+
+    private int index(final int offset) {
+        return Address.segment(offset) * blocksPerSegment + Address.block(offset);
+    }
+}
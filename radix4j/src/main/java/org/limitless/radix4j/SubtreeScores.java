@@ -0,0 +1,201 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.util.Arrays;
+
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Scores of the strings of a tree by terminal record and the maximum score of every subtree, indexed by block.
+ * <p>
+ * The score of a string belongs to the record of the terminal slot it ends in, a string without a record counts
+ * as 0. The record moves with its slot and is released with the string, including the strings of a freed subtree,
+ * so the scores follow the tree without a lookup by string. The subtree maxima are a cache: raising a score raises
+ * the maxima on its path, lowering a score and the structural updates invalidate the path, the invalid maxima are
+ * recomputed on demand.
+ */
+final class SubtreeScores {
+
+    static final long NO_SCORE = Long.MIN_VALUE;
+
+    private static final int INITIAL_SIZE = 32;
+    private static final int UNVISITED = -1;
+
+    private final int blocksPerSegment;
+    private final Terminals terminals;
+    private final Node node = new Node();
+    private long[] scores = new long[INITIAL_SIZE];
+    private long[] scored = new long[INITIAL_SIZE];
+    private int size;
+    private long[] maxima = new long[INITIAL_SIZE * Long.SIZE];
+    private long[] valid = new long[INITIAL_SIZE];
+
+    // traversal frames
+    private int[] offsets = new int[INITIAL_SIZE];
+    private int[] positions = new int[INITIAL_SIZE];
+    private long[] results = new long[INITIAL_SIZE];
+    private int count;
+
+    SubtreeScores(final int blocksPerSegment, final Terminals terminals) {
+        this.blocksPerSegment = blocksPerSegment;
+        this.terminals = terminals;
+    }
+
+    /**
+     * Score of the string ending in a terminal slot
+     * @param offset node offset
+     * @param slot key position or Terminals.STRING
+     * @return score, 0 without a score
+     */
+    long score(final int offset, final int slot) {
+        return score(terminals.record(offset, slot));
+    }
+
+    long score(final int record) {
+        return isScored(record) ? scores[record] : 0;
+    }
+
+    void score(final int record, final long score) {
+        if (record >= scores.length) {
+            final int length = Math.max(scores.length * 2, (record / Long.SIZE + 1) * Long.SIZE);
+            scores = Arrays.copyOf(scores, length);
+            scored = Arrays.copyOf(scored, Math.max(scored.length, length / Long.SIZE));
+        }
+        if (!isScored(record)) {
+            scored[record / Long.SIZE] |= 1L << record;
+            ++size;
+        }
+        scores[record] = score;
+    }
+
+    /**
+     * Forgets the score of a released record
+     * @param record terminal record
+     */
+    void release(final int record) {
+        if (isScored(record)) {
+            scored[record / Long.SIZE] &= ~(1L << record);
+            --size;
+        }
+    }
+
+    /**
+     * Number of strings with a score
+     * @return score count
+     */
+    int size() {
+        return size;
+    }
+
+    void raise(final int offset, final long score) {
+        final int index = index(offset);
+        if (isValid(index) && maxima[index] < score) {
+            maxima[index] = score;
+        }
+    }
+
+    void invalidate(final int offset) {
+        final int index = index(offset);
+        if (index / Long.SIZE < valid.length) {
+            valid[index / Long.SIZE] &= ~(1L << index);
+        }
+    }
+
+    void invalidateAll() {
+        Arrays.fill(valid, 0);
+    }
+
+    /**
+     * Maximum score in the subtree at the node, computed for the invalid nodes below it
+     * @param pool node pool
+     * @param offset node offset
+     * @return maximum score
+     */
+    long max(final BlockPool<Node> pool, final int offset) {
+        count = 0;
+        push(offset);
+        long result = NO_SCORE;
+        while (count >= 1) {
+            final int top = count - 1;
+            final int current = offsets[top];
+            final int index = index(current);
+            if (positions[top] == UNVISITED) {
+                if (isValid(index)) {
+                    --count;
+                    result = complete(maxima[index]);
+                    continue;
+                }
+                pool.get(Address.fromOffset(current), node);
+                results[top] = Header.containsString(node.header()) ? score(current, Terminals.STRING) : NO_SCORE;
+                positions[top] = 0;
+            } else {
+                pool.get(Address.fromOffset(current), node);
+            }
+
+            final int children = Header.children(node.header());
+            int position = positions[top];
+            boolean descend = false;
+            while (position < children && !descend) {
+                final int child = node.child(position);
+                if (node.key(position) != EMPTY_KEY && node.containsKey(position)) {
+                    results[top] = Math.max(results[top], score(current, position));
+                }
+                descend = child != EMPTY_BLOCK;
+                if (descend) {
+                    push(child);
+                }
+                ++position;
+            }
+            positions[top] = position;
+            if (!descend) {
+                final long max = results[top];
+                store(index, max);
+                --count;
+                result = complete(max);
+            }
+        }
+        return result;
+    }
+
+    private long complete(final long max) {
+        if (count >= 1) {
+            results[count - 1] = Math.max(results[count - 1], max);
+        }
+        return max;
+    }
+
+    private void push(final int offset) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            positions = Arrays.copyOf(positions, count * 2);
+            results = Arrays.copyOf(results, count * 2);
+        }
+        offsets[count] = offset;
+        positions[count] = UNVISITED;
+        results[count] = NO_SCORE;
+        ++count;
+    }
+
+    private void store(final int index, final long max) {
+        if (index >= maxima.length) {
+            final int size = Math.max(maxima.length * 2, (index / Long.SIZE + 1) * Long.SIZE);
+            maxima = Arrays.copyOf(maxima, size);
+            valid = Arrays.copyOf(valid, size / Long.SIZE);
+        }
+        maxima[index] = max;
+        valid[index / Long.SIZE] |= 1L << index;
+    }
+
+    private boolean isValid(final int index) {
+        return index / Long.SIZE < valid.length && (valid[index / Long.SIZE] & (1L << index)) != 0;
+    }
+
+    private boolean isScored(final int record) {
+        return record >= 0 && record / Long.SIZE < scored.length && (scored[record / Long.SIZE] & (1L << record)) != 0;
+    }
+
+    private int index(final int offset) {
+        return Address.segment(offset) * blocksPerSegment + Address.block(offset);
+    }
+}
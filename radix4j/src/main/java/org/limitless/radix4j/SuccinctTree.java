@@ -0,0 +1,485 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+
+import static java.lang.foreign.ValueLayout.*;
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Immutable byte trie in LOUDS-Sparse encoding.
+ * <p>
+ * Every edge of the trie is stored as an 8-bit label plus three bits: the first edge of a node (louds),
+ * an edge leading to a child node (has child) and an edge completing a string (terminal). The nodes are
+ * numbered in breadth first order, the edges of node n start at select(louds, n) and the child of edge e is
+ * node rank(has child, e) + 1. The labels, bit vectors and rank directories share one off-heap segment.
+ * <p>
+ * The tree is safe for concurrent readers.
+ */
+public final class SuccinctTree {
+
+    private static final int NOT_FOUND = -1;
+    private static final int WORD_SHIFT = 6;
+    private static final int WORDS_PER_BLOCK = 8;
+    private static final int BLOCK_SHIFT = 9;
+    private static final int INITIAL_EDGES = 1024;
+    private static final int INITIAL_QUEUE_SIZE = 1024;
+    private static final int INITIAL_STACK_SIZE = 16;
+    private static final int INITIAL_KEY_SIZE = 64;
+
+    private final MemorySegment memory;
+    private final int edges;
+    private final int nodes;
+    private final int size;
+    private final int words;
+    private final int blocks;
+    private final long hasChildOffset;
+    private final long loudsOffset;
+    private final long terminalOffset;
+    private final long hasChildRankOffset;
+    private final long loudsRankOffset;
+
+    private SuccinctTree(final Edges edges, final int nodes, final int size, final Arena arena) {
+        this.edges = edges.count;
+        this.nodes = nodes;
+        this.size = size;
+        words = (this.edges + Long.SIZE - 1) >>> WORD_SHIFT;
+        blocks = words / WORDS_PER_BLOCK + 1;
+        hasChildOffset = (this.edges + Long.BYTES - 1) & -Long.BYTES;
+        loudsOffset = hasChildOffset + (long) words * Long.BYTES;
+        terminalOffset = loudsOffset + (long) words * Long.BYTES;
+        hasChildRankOffset = terminalOffset + (long) words * Long.BYTES;
+        loudsRankOffset = hasChildRankOffset + (long) blocks * Integer.BYTES;
+        memory = arena.allocate(loudsRankOffset + (long) blocks * Integer.BYTES, Long.BYTES);
+
+        MemorySegment.copy(edges.labels, 0, memory, JAVA_BYTE, 0, this.edges);
+        MemorySegment.copy(edges.hasChild, 0, memory, JAVA_LONG, hasChildOffset, words);
+        MemorySegment.copy(edges.louds, 0, memory, JAVA_LONG, loudsOffset, words);
+        MemorySegment.copy(edges.terminal, 0, memory, JAVA_LONG, terminalOffset, words);
+        rankDirectory(edges.hasChild, hasChildRankOffset);
+        rankDirectory(edges.louds, loudsRankOffset);
+    }
+
+    /**
+     * Encodes the strings of the tree.
+     * @param tree source
+     * @param arena memory arena
+     * @return succinct tree
+     */
+    static SuccinctTree build(final RadixTree tree, final Arena arena) {
+        final Edges edges = new Edges();
+        final BlockPool<Node> pool = tree.nodePool();
+        final Node node = new Node();
+        final Node child = new Node();
+        final long[] level = new long[KeyCursor.MAX_LEVEL_ENTRIES];
+        long[] queue = new long[INITIAL_QUEUE_SIZE];
+        int head = 0;
+        int tail = 0;
+        int nodes = 0;
+        if (!tree.isEmpty()) {
+            queue[tail++] = TriePosition.position(tree.rootOffset(), 0);
+            ++nodes;
+        }
+        while (head < tail) {
+            final long position = queue[head++];
+            final int offset = TriePosition.offset(position);
+            final int index = TriePosition.index(position);
+            if (tail + KeyCursor.MAX_LEVEL_ENTRIES > queue.length) {
+                if (head >= queue.length / 2) {
+                    System.arraycopy(queue, head, queue, 0, tail - head);
+                    tail -= head;
+                    head = 0;
+                } else {
+                    queue = Arrays.copyOf(queue, queue.length * 2);
+                }
+            }
+
+            pool.get(Address.fromOffset(offset), node);
+            final byte header = node.header();
+            final int stringLength = Header.stringLength(header);
+            if (index < stringLength) {
+                final boolean last = index == stringLength - 1;
+                final boolean hasChild = !last || Header.children(header) >= 1;
+                edges.add(node.charAt(index), true, hasChild, last && Header.containsString(header));
+                if (hasChild) {
+                    queue[tail++] = TriePosition.position(offset, index + 1);
+                    ++nodes;
+                }
+            } else {
+                final int count = KeyCursor.level(pool, node, offset, level, 0);
+                for (int i = 0; i < count; ++i) {
+                    final long entry = level[i];
+                    final int childOffset = KeyCursor.entryChild(entry);
+                    boolean hasChild = false;
+                    if (childOffset != EMPTY_BLOCK) {
+                        pool.get(Address.fromOffset(childOffset), child);
+                        final byte childHeader = child.header();
+                        hasChild = Header.stringLength(childHeader) >= 1 || Header.children(childHeader) >= 1;
+                    }
+                    edges.add(KeyCursor.entryKey(entry), i == 0, hasChild, KeyCursor.entryContains(entry));
+                    if (hasChild) {
+                        queue[tail++] = TriePosition.position(childOffset, 0);
+                        ++nodes;
+                    }
+                }
+            }
+        }
+        return new SuccinctTree(edges, nodes, tree.size(), arena);
+    }
+
+    /**
+     * Check value presence
+     * @param string value
+     * @return true if the string is present
+     */
+    public boolean contains(final String string) {
+        if (string == null) {
+            return false;
+        }
+        final byte[] bytes = string.getBytes();
+        return contains(0, bytes.length, bytes);
+    }
+
+    /**
+     * Check value presence
+     * @param string value
+     * @return true if the string is present
+     */
+    public boolean contains(final byte[] string) {
+        if (string == null) {
+            return false;
+        }
+        return contains(0, string.length, string);
+    }
+
+    /**
+     * Check the value presence
+     * @param position value offset
+     * @param length value length
+     * @param string value
+     * @return true when string is present
+     */
+    public boolean contains(final int position, final int length, final byte[] string) {
+        if (edges == 0 || position < 0 || length <= 0 || string == null || position + length > string.length) {
+            return false;
+        }
+        int node = 0;
+        for (int i = 0; ; ++i) {
+            final int start = select(loudsOffset, loudsRankOffset, node);
+            final int edge = find(start, nextOne(loudsOffset, start + 1), string[position + i]);
+            if (edge == NOT_FOUND) {
+                return false;
+            }
+            if (i == length - 1) {
+                return bit(terminalOffset, edge);
+            }
+            if (!bit(hasChildOffset, edge)) {
+                return false;
+            }
+            node = rank(hasChildOffset, hasChildRankOffset, edge) + 1;
+        }
+    }
+
+    /**
+     * Finds the longest string in the tree that is a prefix of the value.
+     * @param position value offset
+     * @param length value length
+     * @param string value
+     * @return length of the longest matching string or -1 when there is none
+     */
+    public int longestPrefix(final int position, final int length, final byte[] string) {
+        if (edges == 0 || position < 0 || length <= 0 || string == null || position + length > string.length) {
+            return NOT_FOUND;
+        }
+        int matched = NOT_FOUND;
+        int node = 0;
+        for (int i = 0; i < length; ++i) {
+            final int start = select(loudsOffset, loudsRankOffset, node);
+            final int edge = find(start, nextOne(loudsOffset, start + 1), string[position + i]);
+            if (edge == NOT_FOUND) {
+                break;
+            }
+            if (bit(terminalOffset, edge)) {
+                matched = i + 1;
+            }
+            if (!bit(hasChildOffset, edge)) {
+                break;
+            }
+            node = rank(hasChildOffset, hasChildRankOffset, edge) + 1;
+        }
+        return matched;
+    }
+
+    /**
+     * Visits the strings matching the prefix in sorted order.
+     * @param length prefix length, zero visits all strings
+     * @param prefix prefix
+     * @param visitor string visitor
+     * @throws IllegalArgumentException for null visitors
+     */
+    public void forEach(final int length, final byte[] prefix, final KeyVisitor visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("null visitor");
+        }
+        if (edges == 0 || length < 0 || (length >= 1 && (prefix == null || length > prefix.length))) {
+            return;
+        }
+        byte[] key = new byte[Math.max(INITIAL_KEY_SIZE, length * 2)];
+        int node = 0;
+        for (int i = 0; i < length; ++i) {
+            final int start = select(loudsOffset, loudsRankOffset, node);
+            final int edge = find(start, nextOne(loudsOffset, start + 1), prefix[i]);
+            if (edge == NOT_FOUND) {
+                return;
+            }
+            key[i] = prefix[i];
+            if (i == length - 1 && bit(terminalOffset, edge)) {
+                visitor.visit(key, length);
+            }
+            if (!bit(hasChildOffset, edge)) {
+                return;
+            }
+            node = rank(hasChildOffset, hasChildRankOffset, edge) + 1;
+        }
+
+        int[] next = new int[INITIAL_STACK_SIZE];
+        int[] end = new int[INITIAL_STACK_SIZE];
+        int[] depth = new int[INITIAL_STACK_SIZE];
+        int count = 0;
+        next[count] = select(loudsOffset, loudsRankOffset, node);
+        end[count] = nextOne(loudsOffset, next[count] + 1);
+        depth[count++] = length;
+        while (count >= 1) {
+            final int frame = count - 1;
+            if (next[frame] == end[frame]) {
+                --count;
+                continue;
+            }
+            final int edge = next[frame]++;
+            final int keyLength = depth[frame];
+            if (keyLength == key.length) {
+                key = Arrays.copyOf(key, key.length * 2);
+            }
+            key[keyLength] = label(edge);
+            if (bit(terminalOffset, edge)) {
+                visitor.visit(key, keyLength + 1);
+            }
+            if (bit(hasChildOffset, edge)) {
+                if (count == next.length) {
+                    next = Arrays.copyOf(next, count * 2);
+                    end = Arrays.copyOf(end, count * 2);
+                    depth = Arrays.copyOf(depth, count * 2);
+                }
+                final int start = select(loudsOffset, loudsRankOffset, rank(hasChildOffset, hasChildRankOffset, edge) + 1);
+                next[count] = start;
+                end[count] = nextOne(loudsOffset, start + 1);
+                depth[count++] = keyLength + 1;
+            }
+        }
+    }
+
+    /**
+     * Number of strings
+     * @return string count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check emptiness
+     * @return true if there are no strings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of trie edges, one per stored byte
+     * @return edge count
+     */
+    public int edges() {
+        return edges;
+    }
+
+    /**
+     * Number of trie nodes
+     * @return node count
+     */
+    public int nodes() {
+        return nodes;
+    }
+
+    /**
+     * Size of the off-heap encoding
+     * @return bytes
+     */
+    public long bytes() {
+        return memory.byteSize();
+    }
+
+    /**
+     * Returns a string representation of the object.
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return String.format("SuccinctTree{ size = %,d, edges = %,d, nodes = %,d, bytes = %,d}", size, edges, nodes, bytes());
+    }
+
+    private byte label(final int edge) {
+        return memory.get(JAVA_BYTE, edge);
+    }
+
+    private int find(final int start, final int end, final byte key) {
+        final int value = key & 0xff;
+        for (int edge = start; edge < end; ++edge) {
+            final int label = label(edge) & 0xff;
+            if (label == value) {
+                return edge;
+            }
+            if (label > value) {
+                break;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private long word(final long offset, final int index) {
+        return memory.get(JAVA_LONG, offset + (long) index * Long.BYTES);
+    }
+
+    private boolean bit(final long offset, final int position) {
+        return (word(offset, position >>> WORD_SHIFT) & (1L << position)) != 0;
+    }
+
+    private int rankAt(final long offset, final int block) {
+        return memory.get(JAVA_INT, offset + (long) block * Integer.BYTES);
+    }
+
+    /**
+     * Number of ones before the position
+     */
+    private int rank(final long offset, final long rankOffset, final int position) {
+        final int block = position >>> BLOCK_SHIFT;
+        int rank = rankAt(rankOffset, block);
+        final int word = position >>> WORD_SHIFT;
+        for (int i = block * WORDS_PER_BLOCK; i < word; ++i) {
+            rank += Long.bitCount(word(offset, i));
+        }
+        final int bits = position & (Long.SIZE - 1);
+        if (bits != 0) {
+            rank += Long.bitCount(word(offset, word) & ((1L << bits) - 1));
+        }
+        return rank;
+    }
+
+    /**
+     * Position of the one with the given zero based rank
+     */
+    private int select(final long offset, final long rankOffset, final int rank) {
+        int low = 0;
+        int high = blocks - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (rankAt(rankOffset, middle) <= rank) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int remaining = rank - rankAt(rankOffset, low);
+        for (int i = low * WORDS_PER_BLOCK; i < words; ++i) {
+            long value = word(offset, i);
+            final int ones = Long.bitCount(value);
+            if (remaining < ones) {
+                for (; remaining > 0; --remaining) {
+                    value &= value - 1;
+                }
+                return (i << WORD_SHIFT) + Long.numberOfTrailingZeros(value);
+            }
+            remaining -= ones;
+        }
+        return edges;
+    }
+
+    private int nextOne(final long offset, final int position) {
+        if (position >= edges) {
+            return edges;
+        }
+        int index = position >>> WORD_SHIFT;
+        long value = word(offset, index) & (-1L << position);
+        while (value == 0) {
+            if (++index >= words) {
+                return edges;
+            }
+            value = word(offset, index);
+        }
+        return Math.min(edges, (index << WORD_SHIFT) + Long.numberOfTrailingZeros(value));
+    }
+
+    private void rankDirectory(final long[] bits, final long offset) {
+        int rank = 0;
+        for (int block = 0; block < blocks; ++block) {
+            memory.set(JAVA_INT, offset + (long) block * Integer.BYTES, rank);
+            final int end = Math.min(words, (block + 1) * WORDS_PER_BLOCK);
+            for (int i = block * WORDS_PER_BLOCK; i < end; ++i) {
+                rank += Long.bitCount(bits[i]);
+            }
+        }
+    }
+
+    /**
+     * Trie node position inside a tree node, the node offset and the number of string bytes consumed.
+     */
+    static final class TriePosition {
+
+        private static final long OFFSET_MASK = -1L >>> (Long.SIZE - Integer.SIZE);
+        private static final long INDEX_MASK = -1L >>> (Long.SIZE - Byte.SIZE);
+
+        static long position(final int offset, final int index) {
+            return ((offset & OFFSET_MASK) << Byte.SIZE) | (index & INDEX_MASK);
+        }
+
+        static int offset(final long position) {
+            return (int) ((position >>> Byte.SIZE) & OFFSET_MASK);
+        }
+
+        static int index(final long position) {
+            return (int) (position & INDEX_MASK);
+        }
+    }
+
+    private static final class Edges {
+        byte[] labels = new byte[INITIAL_EDGES];
+        long[] hasChild = new long[INITIAL_EDGES / Long.SIZE];
+        long[] louds = new long[INITIAL_EDGES / Long.SIZE];
+        long[] terminal = new long[INITIAL_EDGES / Long.SIZE];
+        int count;
+
+        void add(final byte label, final boolean first, final boolean child, final boolean key) {
+            if (count == labels.length) {
+                labels = Arrays.copyOf(labels, count * 2);
+                hasChild = Arrays.copyOf(hasChild, hasChild.length * 2);
+                louds = Arrays.copyOf(louds, louds.length * 2);
+                terminal = Arrays.copyOf(terminal, terminal.length * 2);
+            }
+            final int word = count >>> WORD_SHIFT;
+            final long bit = 1L << count;
+            labels[count] = label;
+            if (first) {
+                louds[word] |= bit;
+            }
+            if (child) {
+                hasChild[word] |= bit;
+            }
+            if (key) {
+                terminal[word] |= bit;
+            }
+            ++count;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Records of the strings of a tree that carry per string data, addressed by the terminal slot the string ends in.
+ * <p>
+ * A string ends in the header string of a node or in one of its key slots. The twelve terminal slots of a block
+ * hold a record number plus one in an off-heap table indexed by block, and a record holds the offset and slot it
+ * belongs to, so both directions cost one read. The tree moves a record with its slot when a node is split or
+ * copied, a key overflows or a key slot is compacted, and releases it when its string is removed or its node is
+ * freed, the owners of the per string data are told through a callback. The released records are reused first.
+ * <p>
+ * Once parents are tracked the table also holds the parent offset of every block, kept by the tree as it links
+ * nodes, and the string of a record is rebuilt by walking from its node up to the root. The record of a string
+ * added with an id is flagged and its number is the id, the records are the id to leaf table.
+ */
+final class Terminals implements AutoCloseable {
+
+    static final int NONE = -1;
+    // terminal slot of the header string, after the key slots
+    static final int STRING = BLOCK_COUNT;
+
+    private static final int SLOTS = BLOCK_COUNT + 1;
+    private static final int INITIAL_SIZE = 64;
+    private static final int EMPTY = 0;
+
+    // record int layout, a free record has a NONE slot and chains the next free record in its offset
+    private static final int OFFSET = 0;
+    private static final int SLOT = 1;
+    private static final int FLAGS = 2;
+    private static final int RECORD_INTS = 3;
+    private static final int ID = 1;
+
+    private final int blocksPerSegment;
+    private final IntConsumer released;
+    private final Node from = new Node();
+    private final Node to = new Node();
+    private Arena arena;
+    private MemorySegment slots;
+    private int blocks;
+    private MemorySegment parents;
+    private boolean tracking;
+    private MemorySegment records;
+    private int capacity;
+    private int limit;
+    private int free = NONE;
+    private int size;
+
+    /**
+     * @param blocksPerSegment segment size of the tree
+     * @param released receives the records released by the tree
+     */
+    Terminals(final int blocksPerSegment, final IntConsumer released) {
+        this.blocksPerSegment = blocksPerSegment;
+        this.released = released;
+        resize(INITIAL_SIZE, INITIAL_SIZE);
+    }
+
+    /**
+     * Number of live records
+     * @return record count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Record of a terminal slot
+     * @param offset node offset
+     * @param slot key position or STRING
+     * @return record or NONE
+     */
+    int record(final int offset, final int slot) {
+        final int index = index(offset);
+        return index < blocks ? slots.getAtIndex(JAVA_INT, (long) index * SLOTS + slot) - 1 : NONE;
+    }
+
+    /**
+     * Record of a terminal slot, allocated when the slot has none
+     * @param offset node offset
+     * @param slot key position or STRING
+     * @return record
+     */
+    int add(final int offset, final int slot) {
+        final int existing = record(offset, slot);
+        if (existing != NONE) {
+            return existing;
+        }
+        final int record;
+        if (free != NONE) {
+            record = free;
+            free = records.getAtIndex(JAVA_INT, (long) record * RECORD_INTS + OFFSET);
+        } else {
+            if (limit == capacity) {
+                resize(blocks, capacity * 2);
+            }
+            record = limit++;
+        }
+        ++size;
+        set(offset, slot, record);
+        records.setAtIndex(JAVA_INT, (long) record * RECORD_INTS + FLAGS, 0);
+        return record;
+    }
+
+    /**
+     * @param record live record
+     * @return offset of the node holding the slot of the record
+     */
+    int offset(final int record) {
+        return records.getAtIndex(JAVA_INT, (long) record * RECORD_INTS + OFFSET);
+    }
+
+    /**
+     * @param record live record
+     * @return slot of the record
+     */
+    int slot(final int record) {
+        return records.getAtIndex(JAVA_INT, (long) record * RECORD_INTS + SLOT);
+    }
+
+    /**
+     * @param record record number
+     * @return true when the record belongs to a string of the tree
+     */
+    boolean live(final int record) {
+        return record >= 0 && record < limit && slot(record) != NONE;
+    }
+
+    /**
+     * Flags the record of a string added with an id
+     * @param record live record
+     */
+    void identify(final int record) {
+        final long index = (long) record * RECORD_INTS + FLAGS;
+        records.setAtIndex(JAVA_INT, index, records.getAtIndex(JAVA_INT, index) | ID);
+    }
+
+    /**
+     * @param record record number
+     * @return true when the record belongs to a string of the tree added with an id
+     */
+    boolean identified(final int record) {
+        return live(record) && (records.getAtIndex(JAVA_INT, (long) record * RECORD_INTS + FLAGS) & ID) != 0;
+    }
+
+    /**
+     * Moves the record of a slot to another slot, a record already there is released
+     * @param fromOffset source node offset
+     * @param fromSlot source slot
+     * @param toOffset destination node offset
+     * @param toSlot destination slot
+     */
+    void move(final int fromOffset, final int fromSlot, final int toOffset, final int toSlot) {
+        if (size == 0 || (fromOffset == toOffset && fromSlot == toSlot)) {
+            return;
+        }
+        final int record = record(fromOffset, fromSlot);
+        release(toOffset, toSlot);
+        if (record != NONE) {
+            slots.setAtIndex(JAVA_INT, (long) index(fromOffset) * SLOTS + fromSlot, EMPTY);
+            set(toOffset, toSlot, record);
+        }
+    }
+
+    /**
+     * Moves the records of every slot of a node copied to another block
+     * @param fromOffset source node offset
+     * @param toOffset destination node offset
+     */
+    void moveNode(final int fromOffset, final int toOffset) {
+        for (int slot = 0; slot < SLOTS && size >= 1; ++slot) {
+            move(fromOffset, slot, toOffset, slot);
+        }
+    }
+
+    /**
+     * Releases the record of a slot
+     * @param offset node offset
+     * @param slot key position or STRING
+     */
+    void release(final int offset, final int slot) {
+        if (size == 0) {
+            return;
+        }
+        final int record = record(offset, slot);
+        if (record == NONE) {
+            return;
+        }
+        slots.setAtIndex(JAVA_INT, (long) index(offset) * SLOTS + slot, EMPTY);
+        records.setAtIndex(JAVA_INT, (long) record * RECORD_INTS + OFFSET, free);
+        records.setAtIndex(JAVA_INT, (long) record * RECORD_INTS + SLOT, NONE);
+        free = record;
+        --size;
+        released.accept(record);
+    }
+
+    /**
+     * Releases the records of every slot of a freed node
+     * @param offset node offset
+     */
+    void releaseNode(final int offset) {
+        for (int slot = 0; slot < SLOTS && size >= 1; ++slot) {
+            release(offset, slot);
+        }
+    }
+
+    /**
+     * Keeps the parent of every node from now on
+     * @param pool node pool of the tree
+     * @param root root offset
+     */
+    void trackParents(final BlockPool<Node> pool, final int root) {
+        if (!tracking) {
+            tracking = true;
+            link(EMPTY_BLOCK, root);
+            linkSubtree(pool, root);
+        }
+    }
+
+    /**
+     * @return true when the parent links are kept
+     */
+    boolean tracksParents() {
+        return tracking;
+    }
+
+    /**
+     * Sets the parent of a node, ignored until the parents are tracked
+     * @param parent parent offset, EMPTY_BLOCK for the root
+     * @param child child offset
+     */
+    void link(final int parent, final int child) {
+        if (tracking && child != EMPTY_BLOCK) {
+            final int index = index(child);
+            if (index >= blocks) {
+                resize(Math.max(blocks * 2, index + 1), capacity);
+            }
+            parents.setAtIndex(JAVA_INT, index, parent);
+        }
+    }
+
+    /**
+     * Sets the node as the parent of its children
+     * @param node parent
+     */
+    void linkChildren(final Node node) {
+        if (tracking) {
+            final int children = Header.children(node.header());
+            for (int i = 0; i < children; ++i) {
+                link(node.offset(), node.child(i));
+            }
+        }
+    }
+
+    /**
+     * Sets the parents of the nodes below a node, such as a part grafted without the tree linking its nodes
+     * @param pool node pool of the tree
+     * @param offset subtree root offset
+     */
+    void linkSubtree(final BlockPool<Node> pool, final int offset) {
+        if (!tracking) {
+            return;
+        }
+        int[] stack = new int[INITIAL_SIZE];
+        int stackCount = 0;
+        stack[stackCount++] = offset;
+        while (stackCount >= 1) {
+            pool.get(Address.fromOffset(stack[--stackCount]), from);
+            final int children = Header.children(from.header());
+            if (stackCount + children > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            for (int i = 0; i < children; ++i) {
+                final int child = from.child(i);
+                if (child != EMPTY_BLOCK) {
+                    link(from.offset(), child);
+                    stack[stackCount++] = child;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the string of a record from the parent links, the string ends at the given buffer position
+     * @param record live record
+     * @param pool node pool of the tree
+     * @param buffer destination, null to only measure the string
+     * @param end end of the string in the buffer
+     * @return string length
+     * @throws IllegalStateException parents not tracked
+     */
+    int key(final int record, final BlockPool<Node> pool, final byte[] buffer, final int end) {
+        if (!tracking) {
+            throw new IllegalStateException("parents not tracked");
+        }
+        int offset = offset(record);
+        final int slot = slot(record);
+        int length = 0;
+        pool.get(Address.fromOffset(offset), from);
+        if (slot != STRING) {
+            if (buffer != null) {
+                buffer[end - 1] = from.key(slot);
+            }
+            ++length;
+        }
+        while (true) {
+            final int stringLength = Header.stringLength(from.header());
+            length += stringLength;
+            if (buffer != null && stringLength >= 1) {
+                from.string(0, stringLength, buffer, end - length);
+            }
+            final int parent = parents.getAtIndex(JAVA_INT, index(offset));
+            if (parent == EMPTY_BLOCK) {
+                return length;
+            }
+            pool.get(Address.fromOffset(parent), from);
+            final int children = Header.children(from.header());
+            int position = 0;
+            while (position < children && from.child(position) != offset) {
+                ++position;
+            }
+            final byte key = from.key(position);
+            // an overflow node hangs from an empty key
+            if (key != EMPTY_KEY) {
+                ++length;
+                if (buffer != null) {
+                    buffer[end - length] = key;
+                }
+            }
+            offset = parent;
+        }
+    }
+
+    /**
+     * Moves the records to the blocks of a copy of the tree with the same shape, such as a compaction. Both trees
+     * are walked in lockstep and the slot table and the parent links are rebuilt for the copy.
+     * @param source pool of the tree
+     * @param sourceRoot root offset in the tree
+     * @param target pool of the copy
+     * @param targetRoot root offset in the copy
+     */
+    void remap(final BlockPool<Node> source, final int sourceRoot, final BlockPool<Node> target,
+               final int targetRoot) {
+        final MemorySegment oldSlots = slots;
+        final int oldBlocks = blocks;
+        final Arena oldArena = arena;
+        arena = null;
+        resize(INITIAL_SIZE, capacity);
+        link(EMPTY_BLOCK, targetRoot);
+        if (size == 0 && !tracking) {
+            oldArena.close();
+            return;
+        }
+        long[] stack = new long[INITIAL_SIZE];
+        int stackCount = 0;
+        stack[stackCount++] = (long) sourceRoot << Integer.SIZE | (targetRoot & 0xffffffffL);
+        while (stackCount >= 1) {
+            final long pair = stack[--stackCount];
+            final int fromOffset = (int) (pair >>> Integer.SIZE);
+            final int toOffset = (int) pair;
+            final int index = index(fromOffset);
+            for (int slot = 0; slot < SLOTS && index < oldBlocks; ++slot) {
+                final int record = oldSlots.getAtIndex(JAVA_INT, (long) index * SLOTS + slot) - 1;
+                if (record != NONE) {
+                    set(toOffset, slot, record);
+                }
+            }
+            source.get(Address.fromOffset(fromOffset), from);
+            target.get(Address.fromOffset(toOffset), to);
+            final int children = Header.children(from.header());
+            if (stackCount + children > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            for (int i = 0; i < children; ++i) {
+                final int child = from.child(i);
+                if (child != EMPTY_BLOCK) {
+                    link(toOffset, to.child(i));
+                    stack[stackCount++] = (long) child << Integer.SIZE | (to.child(i) & 0xffffffffL);
+                }
+            }
+        }
+        oldArena.close();
+    }
+
+    @Override
+    public void close() {
+        size = 0;
+        limit = 0;
+        free = NONE;
+        arena.close();
+    }
+
+    private void set(final int offset, final int slot, final int record) {
+        final int index = index(offset);
+        if (index >= blocks) {
+            resize(Math.max(blocks * 2, index + 1), capacity);
+        }
+        slots.setAtIndex(JAVA_INT, (long) index * SLOTS + slot, record + 1);
+        records.setAtIndex(JAVA_INT, (long) record * RECORD_INTS + OFFSET, offset);
+        records.setAtIndex(JAVA_INT, (long) record * RECORD_INTS + SLOT, slot);
+    }
+
+    /**
+     * Moves the tables to new ones of the given sizes, the slots and parents of the new blocks are empty
+     */
+    private void resize(final int newBlocks, final int newCapacity) {
+        final Arena newArena = Arena.ofShared();
+        final MemorySegment newSlots = newArena.allocate((long) newBlocks * SLOTS * Integer.BYTES, Integer.BYTES);
+        final MemorySegment newParents = newArena.allocate((long) newBlocks * Integer.BYTES, Integer.BYTES);
+        final MemorySegment newRecords = newArena.allocate((long) newCapacity * RECORD_INTS * Integer.BYTES,
+            Integer.BYTES);
+        if (arena != null) {
+            MemorySegment.copy(slots, 0, newSlots, 0, (long) blocks * SLOTS * Integer.BYTES);
+            MemorySegment.copy(parents, 0, newParents, 0, (long) blocks * Integer.BYTES);
+        }
+        if (records != null) {
+            MemorySegment.copy(records, 0, newRecords, 0, (long) limit * RECORD_INTS * Integer.BYTES);
+        }
+        if (arena != null) {
+            arena.close();
+        }
+        arena = newArena;
+        slots = newSlots;
+        parents = newParents;
+        blocks = newBlocks;
+        records = newRecords;
+        capacity = newCapacity;
+    }
+
+    private int index(final int offset) {
+        return Address.segment(offset) * blocksPerSegment + Address.block(offset);
+    }
+}
@@ -0,0 +1,181 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.util.Arrays;
+
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Best-first search for the highest scored strings under a prefix.
+ * <p>
+ * The pending items are kept in a max heap, a subtree ranked by its maximum score and a string by its own score.
+ * A subtree is only expanded when its maximum beats every pending string, so branches that cannot reach the top
+ * k are never entered. The strings of the pending items are appended to a byte buffer that is reset per query,
+ * the buffers are reused and a warm search does not allocate.
+ */
+final class TopK {
+
+    private static final int INITIAL_SIZE = 64;
+
+    private final Node node = new Node();
+    private byte[] bytes = new byte[INITIAL_SIZE * INITIAL_SIZE];
+    private int used;
+    private byte[] key = new byte[INITIAL_SIZE];
+
+    // max heap of pending items: bound, node offset or EMPTY_BLOCK for a string, string start and length
+    private long[] bounds = new long[INITIAL_SIZE];
+    private int[] offsets = new int[INITIAL_SIZE];
+    private int[] starts = new int[INITIAL_SIZE];
+    private int[] lengths = new int[INITIAL_SIZE];
+    private int count;
+
+    /**
+     * Visits the k highest scored strings starting with the prefix
+     * @param pool node pool
+     * @param scores string scores and subtree maxima
+     * @param root root offset
+     * @param prefixLength prefix length
+     * @param prefix prefix bytes
+     * @param k maximum number of strings
+     * @param visitor receives the strings, highest score first
+     * @return number of strings visited
+     */
+    int run(final BlockPool<Node> pool, final SubtreeScores scores, final int root, final int prefixLength,
+            final byte[] prefix, final int k, final ScoreVisitor visitor) {
+        count = 0;
+        used = 0;
+        push(scores.max(pool, root), root, 0, 0);
+        int visited = 0;
+        while (count >= 1 && visited < k) {
+            final long bound = bounds[0];
+            final int offset = offsets[0];
+            final int start = starts[0];
+            final int length = lengths[0];
+            pop();
+            if (offset == EMPTY_BLOCK) {
+                if (length > key.length) {
+                    key = new byte[Math.max(key.length * 2, length)];
+                }
+                System.arraycopy(bytes, start, key, 0, length);
+                visitor.visit(key, length, bound);
+                ++visited;
+            } else {
+                expand(pool, scores, offset, start, length, prefixLength, prefix);
+            }
+        }
+        return visited;
+    }
+
+    private void expand(final BlockPool<Node> pool, final SubtreeScores scores, final int offset, final int start,
+                        final int length, final int prefixLength, final byte[] prefix) {
+        pool.get(Address.fromOffset(offset), node);
+        final byte header = node.header();
+        final int stringLength = Header.stringLength(header);
+        final int end = length + stringLength;
+        for (int i = length; i < Math.min(end, prefixLength); ++i) {
+            if (node.charAt(i - length) != prefix[i]) {
+                return;
+            }
+        }
+
+        final int base = reserve(end);
+        System.arraycopy(bytes, start, bytes, base, length);
+        for (int i = 0; i < stringLength; ++i) {
+            bytes[base + length + i] = node.charAt(i);
+        }
+        if (stringLength >= 1 && Header.containsString(header) && end >= prefixLength) {
+            push(scores.score(offset, Terminals.STRING), EMPTY_BLOCK, base, end);
+        }
+        final int children = Header.children(header);
+        for (int i = 0; i < children; ++i) {
+            final byte nodeKey = node.key(i);
+            final int child = node.child(i);
+            if (nodeKey == EMPTY_KEY) {
+                if (child != EMPTY_BLOCK) {
+                    push(scores.max(pool, child), child, base, end);
+                }
+            } else if (end >= prefixLength || nodeKey == prefix[end]) {
+                final int keyStart = reserve(end + 1);
+                System.arraycopy(bytes, base, bytes, keyStart, end);
+                bytes[keyStart + end] = nodeKey;
+                if (node.containsKey(i) && end + 1 >= prefixLength) {
+                    push(scores.score(offset, i), EMPTY_BLOCK, keyStart, end + 1);
+                }
+                if (child != EMPTY_BLOCK) {
+                    push(scores.max(pool, child), child, keyStart, end + 1);
+                }
+            }
+        }
+    }
+
+    private int reserve(final int length) {
+        if (used + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + length));
+        }
+        final int start = used;
+        used += length;
+        return start;
+    }
+
+    private void push(final long bound, final int offset, final int start, final int length) {
+        if (count == bounds.length) {
+            bounds = Arrays.copyOf(bounds, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+            starts = Arrays.copyOf(starts, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        int i = count++;
+        while (i >= 1) {
+            final int parent = (i - 1) >>> 1;
+            if (!greater(bound, offset, bounds[parent], offsets[parent])) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        set(i, bound, offset, start, length);
+    }
+
+    private void pop() {
+        --count;
+        final long bound = bounds[count];
+        final int offset = offsets[count];
+        final int start = starts[count];
+        final int length = lengths[count];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= count) {
+                break;
+            }
+            if (child + 1 < count && greater(bounds[child + 1], offsets[child + 1], bounds[child], offsets[child])) {
+                ++child;
+            }
+            if (!greater(bounds[child], offsets[child], bound, offset)) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        set(i, bound, offset, start, length);
+    }
+
+    /**
+     * Orders by bound, a string before a subtree of the same bound
+     */
+    private static boolean greater(final long bound, final int offset, final long otherBound, final int otherOffset) {
+        return bound > otherBound || (bound == otherBound && offset == EMPTY_BLOCK && otherOffset != EMPTY_BLOCK);
+    }
+
+    private void move(final int from, final int to) {
+        set(to, bounds[from], offsets[from], starts[from], lengths[from]);
+    }
+
+    private void set(final int i, final long bound, final int offset, final int start, final int length) {
+        bounds[i] = bound;
+        offsets[i] = offset;
+        starts[i] = start;
+        lengths[i] = length;
+    }
+}
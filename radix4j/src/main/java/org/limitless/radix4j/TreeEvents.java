@@ -0,0 +1,109 @@
+package org.limitless.radix4j;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder events of the slow tree operations.
+ * <p>
+ * Every event has a duration threshold so a continuous recording only keeps the slow occurrences, the
+ * thresholds can be lowered in the recording settings.
+ */
+final class TreeEvents {
+
+    static final String CATEGORY = "radix4j";
+
+    private TreeEvents() {
+    }
+
+    @Name("org.limitless.radix4j.SegmentAllocation")
+    @Label("Segment Allocation")
+    @Description("Block allocation that grew the node pool by a segment")
+    @Category(CATEGORY)
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class SegmentAllocation extends Event {
+
+        @Label("Blocks per Segment")
+        int blocksPerSegment;
+
+        @Label("Segment Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Allocated Nodes")
+        int allocatedNodes;
+    }
+
+    @Name("org.limitless.radix4j.BulkRemove")
+    @Label("Bulk Remove")
+    @Description("Removal of the strings matching a prefix")
+    @Category(CATEGORY)
+    @Threshold("10 ms")
+    static final class BulkRemove extends Event {
+
+        @Label("Prefix Length")
+        int prefixLength;
+
+        @Label("Removed Strings")
+        int removedStrings;
+
+        @Label("Removed Nodes")
+        int removedNodes;
+    }
+
+    @Name("org.limitless.radix4j.PrefixScan")
+    @Label("Prefix Scan")
+    @Description("Traversal of the nodes matching a prefix")
+    @Category(CATEGORY)
+    @Threshold("10 ms")
+    static final class PrefixScan extends Event {
+
+        @Label("Prefix Length")
+        int prefixLength;
+
+        @Label("Visited Nodes")
+        int visitedNodes;
+    }
+
+    @Name("org.limitless.radix4j.Snapshot")
+    @Label("Snapshot")
+    @Description("Snapshot written or loaded")
+    @Category(CATEGORY)
+    @Threshold("20 ms")
+    @StackTrace(false)
+    static final class Snapshot extends Event {
+
+        @Label("Load")
+        boolean load;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Strings")
+        int strings;
+    }
+
+    @Name("org.limitless.radix4j.Compaction")
+    @Label("Compaction")
+    @Description("Live nodes rewritten into fresh segments by compact or defragment")
+    @Category(CATEGORY)
+    @Threshold("20 ms")
+    static final class Compaction extends Event {
+
+        @Label("Incremental")
+        boolean incremental;
+
+        @Label("Nodes Before")
+        int nodesBefore;
+
+        @Label("Nodes After")
+        int nodesAfter;
+    }
+}
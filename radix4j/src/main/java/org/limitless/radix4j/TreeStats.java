@@ -0,0 +1,301 @@
+package org.limitless.radix4j;
+
+import org.limitless.fsmp4j.BlockPool;
+
+import java.util.Arrays;
+
+import static org.limitless.radix4j.Node.*;
+
+/**
+ * Structural statistics of a tree, filled by a walk over the live nodes.
+ * <p>
+ * The object is reusable, a new walk overwrites the previous figures without allocating unless the tree has
+ * grown deeper or uses more segments than before.
+ */
+public final class TreeStats {
+
+    private static final int INITIAL_DEPTH = 32;
+    private static final int INITIAL_CHAIN_LENGTH = 8;
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    private final long[] children = new long[BLOCK_COUNT + 1];
+    private final long[] stringLengths = new long[STRING_LENGTH + 1];
+    private long[] depths = new long[INITIAL_DEPTH];
+    private long[] chains = new long[INITIAL_CHAIN_LENGTH];
+    private long[] segmentBits = new long[1];
+    private long[] stack = new long[INITIAL_STACK_SIZE];
+    private final Node node = new Node();
+    private final Node chain = new Node();
+
+    private int maxDepth;
+    private int maxChainLength;
+    private long nodes;
+    private long keys;
+    private long leafKeys;
+    private int strings;
+    private int blocksPerSegment;
+    private int segmentsAllocated;
+    private int segmentsLive;
+
+    /**
+     * Walks the tree and replaces the current figures.
+     * @param tree source
+     * @return this
+     */
+    TreeStats collect(final RadixTree tree) {
+        reset();
+        strings = tree.size();
+        blocksPerSegment = tree.blocksPerSegment();
+        // a shared store opens segments for every tree, the segments of this tree are counted instead
+        final boolean shared = tree.store().shared();
+        if (!shared) {
+            segmentsAllocated = tree.store().segments();
+        }
+        if (tree.isEmpty()) {
+            return this;
+        }
+
+        final BlockPool<Node> pool = tree.nodePool();
+        int stackCount = 0;
+        stack[stackCount++] = entry(tree.rootOffset(), 0, false);
+        while (stackCount >= 1) {
+            final long entry = stack[--stackCount];
+            final int offset = (int) entry;
+            final int depth = (int) (entry >>> Integer.SIZE) & Integer.MAX_VALUE;
+            pool.get(Address.fromOffset(offset), node);
+            final byte header = node.header();
+            final int count = Header.children(header);
+            ++nodes;
+            ++children[count];
+            ++stringLengths[Header.stringLength(header)];
+            markSegment(offset);
+            if (entry >= 0) {
+                if (depth >= depths.length) {
+                    depths = Arrays.copyOf(depths, Math.max(depth + 1, depths.length * 2));
+                }
+                ++depths[depth];
+                maxDepth = Math.max(maxDepth, depth);
+                recordChain(pool, node);
+            }
+
+            if (stackCount + count > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            for (int i = 0; i < count; ++i) {
+                final int childOffset = node.child(i);
+                if (node.key(i) == EMPTY_KEY) {
+                    stack[stackCount++] = entry(childOffset, depth, true);
+                    continue;
+                }
+                if (node.containsKey(i)) {
+                    ++keys;
+                    if (childOffset == EMPTY_BLOCK) {
+                        ++leafKeys;
+                    }
+                }
+                if (childOffset != EMPTY_BLOCK) {
+                    stack[stackCount++] = entry(childOffset, depth + 1, false);
+                }
+            }
+        }
+        for (long bits : segmentBits) {
+            segmentsLive += Long.bitCount(bits);
+        }
+        if (shared) {
+            segmentsAllocated = segmentsLive;
+        }
+        return this;
+    }
+
+    /**
+     * Number of live nodes, overflow nodes included
+     * @return node count
+     */
+    public long nodes() {
+        return nodes;
+    }
+
+    /**
+     * Number of strings
+     * @return string count
+     */
+    public int strings() {
+        return strings;
+    }
+
+    /**
+     * Number of nodes with the given number of used child slots
+     * @param count slot count, 0 to 11
+     * @return node count
+     */
+    public long children(final int count) {
+        return count >= 0 && count < children.length ? children[count] : 0;
+    }
+
+    /**
+     * Number of nodes storing a string of the given length
+     * @param length string length, 0 to 5
+     * @return node count
+     */
+    public long stringLength(final int length) {
+        return length >= 0 && length < stringLengths.length ? stringLengths[length] : 0;
+    }
+
+    /**
+     * Number of nodes at the given depth, overflow nodes are counted with the node owning the chain
+     * @param depth node depth, the root is at depth zero
+     * @return node count
+     */
+    public long depth(final int depth) {
+        return depth >= 0 && depth <= maxDepth ? depths[depth] : 0;
+    }
+
+    /**
+     * Depth of the deepest node
+     * @return depth
+     */
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Number of overflow chains with the given number of chained nodes
+     * @param length chain length
+     * @return chain count
+     */
+    public long chains(final int length) {
+        return length >= 1 && length <= maxChainLength ? chains[length] : 0;
+    }
+
+    /**
+     * Length of the longest overflow chain
+     * @return chained node count
+     */
+    public int maxChainLength() {
+        return maxChainLength;
+    }
+
+    /**
+     * Number of strings ending in a child slot
+     * @return key count
+     */
+    public long keys() {
+        return keys;
+    }
+
+    /**
+     * Fraction of the strings stored as a key without a child node
+     * @return fraction between zero and one
+     */
+    public double leafKeyFraction() {
+        return strings == 0 ? 0 : (double) leafKeys / strings;
+    }
+
+    /**
+     * Number of segments allocated by the pool. On a node store shared with other trees, whose segments hold their
+     * nodes too, the number of segments holding a node of this tree, so the fill factor and the bytes per key only
+     * describe the segments this tree uses.
+     * @return segment count
+     */
+    public int segmentsAllocated() {
+        return segmentsAllocated;
+    }
+
+    /**
+     * Number of segments holding at least one live node
+     * @return segment count
+     */
+    public int segmentsLive() {
+        return segmentsLive;
+    }
+
+    /**
+     * Fraction of the allocated blocks holding a live node
+     * @return fraction between zero and one
+     */
+    public double fillFactor() {
+        return segmentsAllocated == 0 ? 0 : (double) nodes / ((long) segmentsAllocated * blocksPerSegment);
+    }
+
+    /**
+     * Allocated segment memory per string
+     * @return bytes per key
+     */
+    public double bytesPerKey() {
+        return strings == 0 ? 0 : (double) segmentsAllocated * blocksPerSegment * BYTES / strings;
+    }
+
+    /**
+     * Returns a string representation of the object.
+     * @return string
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format("TreeStats{ strings = %,d, nodes = %,d, segments = %,d/%,d, fill = %.2f, bytes per key = %.1f, leaf keys = %.2f",
+            strings, nodes, segmentsLive, segmentsAllocated, fillFactor(), bytesPerKey(), leafKeyFraction()));
+        builder.append(", children = ").append(Arrays.toString(children));
+        builder.append(", string lengths = ").append(Arrays.toString(stringLengths));
+        builder.append(", depths = ").append(Arrays.toString(Arrays.copyOf(depths, nodes == 0 ? 0 : maxDepth + 1)));
+        builder.append(", chains = ").append(Arrays.toString(Arrays.copyOfRange(chains, 1, maxChainLength + 1)));
+        return builder.append('}').toString();
+    }
+
+    private void reset() {
+        Arrays.fill(children, 0);
+        Arrays.fill(stringLengths, 0);
+        Arrays.fill(depths, 0);
+        Arrays.fill(chains, 0);
+        Arrays.fill(segmentBits, 0);
+        maxDepth = 0;
+        maxChainLength = 0;
+        nodes = 0;
+        keys = 0;
+        leafKeys = 0;
+        strings = 0;
+        segmentsAllocated = 0;
+        segmentsLive = 0;
+    }
+
+    private void recordChain(final BlockPool<Node> pool, final Node head) {
+        int length = 0;
+        chain.wrap(head);
+        boolean more = true;
+        while (more) {
+            more = false;
+            final int count = Header.children(chain.header());
+            for (int i = 0; i < count; ++i) {
+                if (chain.key(i) == EMPTY_KEY) {
+                    pool.get(Address.fromOffset(chain.child(i)), chain);
+                    ++length;
+                    more = true;
+                    break;
+                }
+            }
+        }
+        if (length >= 1) {
+            if (length >= chains.length) {
+                chains = Arrays.copyOf(chains, Math.max(length + 1, chains.length * 2));
+            }
+            ++chains[length];
+            maxChainLength = Math.max(maxChainLength, length);
+        }
+    }
+
+    private void markSegment(final int offset) {
+        final int segment = Address.segment(offset);
+        final int word = segment >>> 6;
+        if (word >= segmentBits.length) {
+            segmentBits = Arrays.copyOf(segmentBits, Math.max(word + 1, segmentBits.length * 2));
+        }
+        segmentBits[word] |= 1L << segment;
+    }
+
+    /**
+     * Stack entry, the sign bit marks an overflow node.
+     */
+    private static long entry(final int offset, final int depth, final boolean overflow) {
+        final long entry = ((long) depth << Integer.SIZE) | (offset & 0xffffffffL);
+        return overflow ? entry | Long.MIN_VALUE : entry;
+    }
+}
@@ -0,0 +1,143 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckpointTest {
+
+    private static final String PREFIX = "abcdefghij-";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void incremental() throws IOException {
+        final var tree = new RadixTree(1024);
+        final int count = 200_000;
+        for (int i = 0; i < count; ++i) {
+            assertTrue(tree.add(PREFIX + i));
+        }
+        final int full = write(tree, "0");
+        assertTrue(full >= 10, "segments " + full);
+
+        for (int i = 0; i < count; i += 10_000) {
+            assertTrue(tree.remove(PREFIX + i));
+        }
+        final int removes = write(tree, "1");
+        assertTrue(removes >= 1 && removes < full, "segments " + removes);
+        assertEquals(0, write(tree, "2"));
+        for (int i = count; i < count + 100; ++i) {
+            assertTrue(tree.add(PREFIX + i));
+        }
+        assertTrue(tree.add("other"));
+        final int adds = write(tree, "3");
+        assertTrue(adds >= 1 && adds < full, "segments " + adds);
+
+        final RadixTree copy = read("0", "1", "2", "3");
+        assertEquals(tree.size(), copy.size());
+        assertTrue(copy.contains("other"));
+        for (int i = 0; i < count + 100; ++i) {
+            assertEquals(tree.contains(PREFIX + i), copy.contains(PREFIX + i), PREFIX + i);
+        }
+        copy.close();
+
+        final RadixTree partial = read("0", "1");
+        assertEquals(count - count / 10_000, partial.size());
+        assertFalse(partial.contains("other"));
+        assertTrue(partial.contains(PREFIX + 1));
+        assertFalse(partial.contains(PREFIX + 0));
+        partial.close();
+        tree.close();
+    }
+
+    @Test
+    public void compactionWritesFull() throws IOException {
+        final var tree = new RadixTree(1024);
+        for (int i = 0; i < 50_000; ++i) {
+            assertTrue(tree.add(PREFIX + i));
+        }
+        final int full = write(tree, "0");
+        for (int i = 0; i < 50_000; i += 2) {
+            assertTrue(tree.remove(PREFIX + i));
+        }
+        tree.compact();
+        final int compacted = write(tree, "1");
+        assertTrue(compacted >= 1 && compacted <= full, "segments " + compacted);
+        assertTrue(tree.add("other"));
+        write(tree, "2");
+
+        final RadixTree copy = read("0", "1", "2");
+        assertEquals(tree.size(), copy.size());
+        assertTrue(copy.contains("other"));
+        for (int i = 0; i < 50_000; ++i) {
+            assertEquals(i % 2 == 1, copy.contains(PREFIX + i), PREFIX + i);
+        }
+        copy.close();
+        tree.close();
+    }
+
+    @Test
+    public void invalidSequence() throws IOException {
+        final var tree = new RadixTree(64);
+        assertTrue(tree.add("a"));
+        write(tree, "0");
+        assertTrue(tree.add("b"));
+        write(tree, "1");
+        assertTrue(tree.add("c"));
+        write(tree, "2");
+
+        assertThrows(IOException.class, () -> read("1", "2"));
+        assertThrows(IOException.class, () -> read("0", "2"));
+        assertThrows(IOException.class, () -> read("0", "1", "1"));
+        assertThrows(IOException.class, () -> read());
+
+        // a full checkpoint whose header has an invalid segment size
+        try (var channel = FileChannel.open(directory.resolve("0"), WRITE)) {
+            final ByteBuffer value = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.nativeOrder());
+            channel.write(value.putInt(0, 1), 2 * Integer.BYTES);
+        }
+        final IOException e = assertThrows(IOException.class, () -> read("0", "1", "2"));
+        assertEquals("invalid blocks per segment 1", e.getMessage());
+
+        final RadixTree empty = new RadixTree(64);
+        write(empty, "empty");
+        final RadixTree copy = read("empty");
+        assertTrue(copy.isEmpty());
+        assertTrue(copy.add("a"));
+        copy.close();
+        empty.close();
+        tree.close();
+    }
+
+    private int write(final RadixTree tree, final String name) throws IOException {
+        try (var channel = FileChannel.open(directory.resolve(name), CREATE, WRITE, TRUNCATE_EXISTING)) {
+            return tree.writeCheckpoint(channel);
+        }
+    }
+
+    private RadixTree read(final String... names) throws IOException {
+        final FileChannel[] channels = new FileChannel[names.length];
+        try {
+            for (int i = 0; i < names.length; ++i) {
+                channels[i] = FileChannel.open(directory.resolve(names[i]), READ);
+            }
+            return RadixTree.readCheckpoints(Arena.ofShared(), channels);
+        } finally {
+            for (final FileChannel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClockTest {
+
+    @Test
+    public void boundedStringCount() {
+        final var tree = new RadixTree(64);
+        tree.bound(1_000, 0);
+        for (int i = 0; i < 10_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+            assertTrue(tree.size() <= 1_000);
+            assertTrue(tree.contains("key-" + i));
+        }
+        assertEquals(1_000, tree.size());
+        assertEquals(9_000, tree.evictions());
+        assertEquals(1_000, tree.stats().strings());
+        tree.close();
+    }
+
+    @Test
+    public void insertedStringSurvivesItsEviction() {
+        final var tree = new RadixTree(64);
+        tree.bound(100, 0);
+        final Random random = new Random(7);
+        for (int i = 0; i < 20_000; ++i) {
+            // short strings over a small alphabet go through the splits, new parents and overflow keys
+            final byte[] string = new byte[1 + random.nextInt(12)];
+            for (int j = 0; j < string.length; ++j) {
+                string[j] = (byte) ('a' + random.nextInt(i % 2 == 0 ? 3 : 26));
+            }
+            var _ = tree.add(string);
+            assertTrue(tree.contains(string), new String(string));
+            assertTrue(tree.size() <= 100);
+        }
+        tree.close();
+    }
+
+    @Test
+    public void referencedStringsSurvive() {
+        final var tree = new RadixTree(64);
+        tree.bound(500, 0);
+        for (int i = 0; i < 500; ++i) {
+            assertTrue(tree.add("cold-" + i));
+        }
+        assertTrue(tree.add("hot"));
+        for (int i = 0; i < 2_000; ++i) {
+            assertTrue(tree.contains("hot"));
+            assertTrue(tree.add("new-" + i));
+        }
+        assertTrue(tree.contains("hot"));
+        for (int i = 0; i < 500; ++i) {
+            assertFalse(tree.contains("cold-" + i));
+        }
+        assertEquals(500, tree.size());
+        tree.close();
+    }
+
+    @Test
+    public void boundedBytes() {
+        final var tree = new RadixTree(64);
+        final long budget = 256L * Node.BYTES;
+        for (int i = 0; i < 5_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        tree.bound(0, budget);
+        assertTrue(tree.allocatedBlocks() * (long) Node.BYTES <= budget);
+        for (int i = 5_000; i < 20_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+            assertTrue(tree.allocatedBlocks() * (long) Node.BYTES <= budget);
+        }
+        assertTrue(tree.evictions() >= 1);
+
+        tree.bound(0, 0);
+        final int size = tree.size();
+        assertTrue(tree.add("unbounded"));
+        assertEquals(size + 1, tree.size());
+        assertThrows(IllegalArgumentException.class, () -> tree.bound(-1, 0));
+        assertThrows(IllegalArgumentException.class, () -> tree.bound(0, Node.BYTES));
+        tree.close();
+    }
+}
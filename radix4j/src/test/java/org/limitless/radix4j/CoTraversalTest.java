@@ -0,0 +1,198 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoTraversalTest {
+
+    @Test
+    public void equalContentDifferentLayout() {
+        final var forward = new RadixTree(64);
+        final var backward = new RadixTree(64);
+        final int count = 5_000;
+        for (int i = 0; i < count; ++i) {
+            assertTrue(forward.add("key-" + i));
+            assertTrue(backward.add("key-" + (count - 1 - i)));
+        }
+        assertEquals(forward.contentHash(), backward.contentHash());
+        // diff needs the hashes of both trees and does not enable them on the other tree
+        forward.trackHashes(true);
+        assertThrows(IllegalStateException.class, () -> diff(forward, backward));
+        assertThrows(IllegalStateException.class, () -> diff(backward, forward));
+        backward.trackHashes(true);
+        assertTrue(diff(forward, backward).isEmpty());
+        assertEquals(0, new RadixTree().contentHash());
+    }
+
+    @Test
+    public void reportDifferences() {
+        final var tree = new RadixTree(64);
+        final var other = new RadixTree(64);
+        tree.trackHashes(true);
+        other.trackHashes(true);
+        for (int i = 0; i < 10_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+            assertTrue(other.add("key-" + i));
+        }
+        assertTrue(diff(tree, other).isEmpty());
+
+        assertTrue(tree.add("key-10000"));
+        assertTrue(tree.remove("key-42"));
+        assertTrue(other.add("key-"));
+        assertTrue(other.remove("key-9999"));
+        assertTrue(other.add("zebra"));
+        assertEquals(List.of("-key-", "+key-10000", "-key-42", "+key-9999", "-zebra"), diff(tree, other));
+        assertEquals(List.of("+key-", "-key-10000", "+key-42", "-key-9999", "+zebra"), diff(other, tree));
+
+        assertTrue(tree.add("key-42"));
+        assertTrue(tree.add("key-"));
+        assertTrue(other.add("key-10000"));
+        assertTrue(other.add("key-9999"));
+        assertTrue(other.remove("zebra"));
+        assertTrue(diff(tree, other).isEmpty());
+        assertEquals(tree.contentHash(), other.contentHash());
+    }
+
+    @Test
+    public void hashesFollowUpdates() {
+        final var tree = new RadixTree(64);
+        tree.trackHashes(true);
+        for (int i = 0; i < 2_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        final long full = tree.contentHash();
+        assertTrue(tree.removeStrings(5, "key-1".getBytes()));
+        tree.compact();
+        for (int i = 0; i < 2_000; ++i) {
+            tree.add("key-" + i);
+        }
+        assertEquals(full, tree.contentHash());
+
+        final var rebuilt = new RadixTree(64);
+        for (int i = 1_999; i >= 0; --i) {
+            assertTrue(rebuilt.add("key-" + i));
+        }
+        assertEquals(full, rebuilt.contentHash());
+        assertThrows(IllegalArgumentException.class, () -> tree.diff(null, (_, _, _) -> { }));
+    }
+
+    @Test
+    public void setOperations() {
+        final var evens = new RadixTree(64);
+        final var threes = new RadixTree(64);
+        final TreeSet<String> evenSet = new TreeSet<>();
+        final TreeSet<String> threeSet = new TreeSet<>();
+        for (int i = 0; i < 3_000; ++i) {
+            if (i % 2 == 0) {
+                assertTrue(evens.add("key-" + i));
+                evenSet.add("key-" + i);
+            }
+            if (i % 3 == 0) {
+                assertTrue(threes.add("key-" + i));
+                threeSet.add("key-" + i);
+            }
+        }
+        assertTrue(evens.add("key"));
+        evenSet.add("key");
+
+        final TreeSet<String> union = new TreeSet<>(evenSet);
+        union.addAll(threeSet);
+        final TreeSet<String> intersection = new TreeSet<>(evenSet);
+        intersection.retainAll(threeSet);
+        final TreeSet<String> difference = new TreeSet<>(evenSet);
+        difference.removeAll(threeSet);
+
+        assertEquals(List.copyOf(union), strings(visitor -> evens.union(threes, visitor)));
+        assertEquals(List.copyOf(intersection), strings(visitor -> evens.intersect(threes, visitor)));
+        assertEquals(List.copyOf(difference), strings(visitor -> evens.difference(threes, visitor)));
+
+        final RadixTree built = evens.intersect(threes);
+        assertEquals(intersection.size(), built.size());
+        for (String string : intersection) {
+            assertTrue(built.contains(string));
+        }
+        assertTrue(built.isSubsetOf(evens));
+        assertTrue(built.isSubsetOf(threes));
+        assertFalse(evens.isSubsetOf(threes));
+        assertTrue(evens.isSubsetOf(evens.union(threes)));
+        assertTrue(new RadixTree().isSubsetOf(threes));
+        assertEquals(0, evens.difference(evens).size());
+
+        evens.trackHashes(true);
+        threes.trackHashes(true);
+        assertEquals(List.copyOf(difference), strings(visitor -> evens.difference(threes, visitor)));
+        assertTrue(built.isSubsetOf(evens));
+        assertEquals(List.copyOf(union), keys(evens.union(threes)));
+        assertEquals(List.copyOf(difference), keys(evens.difference(threes)));
+    }
+
+    @Test
+    public void builtTrees() {
+        // disjoint branches are copied below their prefix, the shared ones are appended in sorted order
+        final var tree = new RadixTree(64);
+        final var other = new RadixTree(64);
+        final TreeSet<String> treeSet = new TreeSet<>();
+        final TreeSet<String> otherSet = new TreeSet<>();
+        for (int i = 0; i < 2_000; ++i) {
+            treeSet.add("left-" + i);
+            treeSet.add("both-" + i);
+            otherSet.add("right-" + i);
+            otherSet.add("both-" + (i + 1_000));
+        }
+        treeSet.add("l");
+        otherSet.add("r");
+        treeSet.forEach(string -> assertTrue(tree.add(string)));
+        otherSet.forEach(string -> assertTrue(other.add(string)));
+
+        final TreeSet<String> union = new TreeSet<>(treeSet);
+        union.addAll(otherSet);
+        final TreeSet<String> intersection = new TreeSet<>(treeSet);
+        intersection.retainAll(otherSet);
+        final TreeSet<String> difference = new TreeSet<>(treeSet);
+        difference.removeAll(otherSet);
+
+        final RadixTree unionTree = tree.union(other);
+        assertEquals(List.copyOf(union), keys(unionTree));
+        assertEquals(union.size(), unionTree.size());
+        assertEquals(List.copyOf(intersection), keys(tree.intersect(other)));
+        final RadixTree differenceTree = tree.difference(other);
+        assertEquals(List.copyOf(difference), keys(differenceTree));
+        assertEquals(difference.size(), differenceTree.size());
+
+        // the built trees take updates
+        assertTrue(unionTree.add("zebra"));
+        assertTrue(unionTree.remove("right-7"));
+        assertTrue(unionTree.contains("right-1999"));
+        assertFalse(unionTree.contains("right-7"));
+        assertEquals(union.size(), unionTree.size());
+        assertTrue(tree.union(new RadixTree(64)).isSubsetOf(tree));
+        assertTrue(tree.isSubsetOf(tree.union(new RadixTree(64))));
+    }
+
+    private static List<String> keys(final RadixTree tree) {
+        final List<String> result = new ArrayList<>();
+        final KeyCursor cursor = new KeyCursor(tree).reset();
+        while (cursor.next()) {
+            result.add(new String(cursor.key(), 0, cursor.length()));
+        }
+        return result;
+    }
+
+    private static List<String> strings(final Consumer<KeyVisitor> operation) {
+        final List<String> result = new ArrayList<>();
+        operation.accept((key, length) -> result.add(new String(key, 0, length)));
+        return result;
+    }
+
+    private static List<String> diff(final RadixTree tree, final RadixTree other) {
+        final List<String> result = new ArrayList<>();
+        tree.diff(other, (key, length, inThis) -> result.add((inThis ? "+" : "-") + new String(key, 0, length)));
+        return result;
+    }
+}
@@ -0,0 +1,107 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DawgTest {
+
+    @Test
+    public void containsStrings() {
+        final var tree = new RadixTree();
+        final String[] strings = { "pin", "cat", "cow", "cats", "cabbage", "crow", "pig", "cabs", "c" };
+        for (String string : strings) {
+            assertTrue(tree.add(string));
+        }
+        try (var arena = Arena.ofConfined()) {
+            final Dawg dawg = tree.freezeDawg(arena);
+            assertEquals(strings.length, dawg.size());
+            for (String string : strings) {
+                assertTrue(dawg.contains(string), string);
+            }
+            for (String string : new String[] { "ca", "cabbages", "pi", "dog", "co", "" }) {
+                assertFalse(dawg.contains(string), string);
+            }
+            final String[] sorted = strings.clone();
+            Arrays.sort(sorted);
+            assertEquals(List.of(sorted), keys(dawg, ""));
+            assertEquals(List.of("cabbage", "cabs"), keys(dawg, "cab"));
+        }
+    }
+
+    @Test
+    public void sharedSuffixes() {
+        final var tree = new RadixTree();
+        final String[] hosts = { "alpha", "bravo", "charlie", "delta", "echo" };
+        final String[] paths = { "/index.html", "/about.html", "/2024/05/17.html" };
+        final List<String> expected = new ArrayList<>();
+        for (String host : hosts) {
+            for (String path : paths) {
+                assertTrue(tree.add(host + ".example.com" + path));
+                expected.add(host + ".example.com" + path);
+            }
+        }
+        try (var arena = Arena.ofConfined()) {
+            final Dawg dawg = tree.freezeDawg(arena);
+            for (String string : expected) {
+                assertTrue(dawg.contains(string), string);
+            }
+            assertFalse(dawg.contains("alpha.example.com/index.htm"));
+            assertTrue(2 * dawg.states() < tree.freezeSuccinct(arena).nodes(), dawg.toString());
+            assertEquals(List.of("delta.example.com/2024/05/17.html", "delta.example.com/about.html",
+                "delta.example.com/index.html"), keys(dawg, "delta"));
+        }
+    }
+
+    @Test
+    public void randomStrings() {
+        final var random = new Random(31);
+        final var tree = new RadixTree();
+        final List<byte[]> strings = new ArrayList<>();
+        for (int i = 0; i < 20_000; ++i) {
+            final byte[] string = new byte[1 + random.nextInt(12)];
+            for (int j = 0; j < string.length; ++j) {
+                string[j] = (byte) (1 + random.nextInt(255));
+            }
+            if (tree.add(string)) {
+                strings.add(string);
+            }
+        }
+        try (var arena = Arena.ofConfined()) {
+            final Dawg dawg = tree.freezeDawg(arena);
+            for (byte[] string : strings) {
+                assertTrue(dawg.contains(string));
+                final byte[] missing = Arrays.copyOf(string, string.length + 1);
+                assertEquals(tree.contains(missing), dawg.contains(missing));
+            }
+            final int[] count = { 0 };
+            dawg.forEach(0, null, (_, _) -> ++count[0]);
+            assertEquals(strings.size(), count[0]);
+        }
+    }
+
+    @Test
+    public void emptyTree() {
+        try (var arena = Arena.ofConfined()) {
+            final Dawg dawg = new RadixTree().freezeDawg(arena);
+            assertTrue(dawg.isEmpty());
+            assertEquals(0, dawg.edges());
+            assertFalse(dawg.contains("a"));
+            assertTrue(keys(dawg, "").isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> dawg.forEach(0, null, null));
+        }
+    }
+
+    private static List<String> keys(final Dawg dawg, final String prefix) {
+        final List<String> keys = new ArrayList<>();
+        final byte[] bytes = prefix.getBytes();
+        dawg.forEach(bytes.length, bytes, (key, length) -> keys.add(new String(key, 0, length)));
+        return keys;
+    }
+}
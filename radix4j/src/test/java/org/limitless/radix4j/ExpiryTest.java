@@ -0,0 +1,138 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpiryTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final long HOUR = 3_600 * SECOND;
+
+    @Test
+    public void wheelLevels() {
+        // ten second steps up to five and a half hours, past the range of the wheel
+        final int count = 2_000;
+        final var tree = new RadixTree(64);
+        final long before = System.nanoTime();
+        for (int i = 0; i < count; ++i) {
+            assertTrue(tree.add("key-" + i, i * 10 * SECOND));
+        }
+        final long after = System.nanoTime();
+
+        int expired = 0;
+        for (long now = after; now < after + 6 * HOUR; now += 7 * SECOND + 3_456_789) {
+            expired += tree.expire(now);
+            assertEquals(count - expired, tree.size());
+            for (int i = 0; i < count; i += 13) {
+                final long ttl = i * 10 * SECOND;
+                if (after + ttl <= now) {
+                    assertFalse(tree.contains("key-" + i), "key-" + i);
+                } else if (before + ttl > now) {
+                    assertTrue(tree.contains("key-" + i), "key-" + i);
+                }
+            }
+        }
+        assertEquals(count, expired);
+        assertTrue(tree.isEmpty());
+        tree.close();
+    }
+
+    @Test
+    public void expiredReadsAbsent() {
+        final var tree = new RadixTree(64);
+        assertTrue(tree.add("a", 0));
+        assertFalse(tree.contains("a"));
+        assertEquals(1, tree.size());
+        assertTrue(tree.add("a"));
+        assertTrue(tree.contains("a"));
+        assertEquals(1, tree.size());
+        assertEquals(0, tree.expire(System.nanoTime() + HOUR));
+        assertTrue(tree.contains("a"));
+
+        assertTrue(tree.add("b", HOUR));
+        assertTrue(tree.contains("b"));
+        assertTrue(tree.remove("b"));
+        assertFalse(tree.contains("b"));
+        assertTrue(tree.add("c", 0));
+        assertFalse(tree.remove("c"));
+        assertEquals(1, tree.size());
+
+        assertThrows(IllegalArgumentException.class, () -> tree.add("d", -1));
+        assertThrows(IllegalArgumentException.class, () -> tree.expire(0, -1));
+        tree.close();
+    }
+
+    @Test
+    public void batches() {
+        final var tree = new RadixTree(64);
+        for (int i = 0; i < 1_000; ++i) {
+            assertTrue(tree.add("key-" + i, 0));
+        }
+        for (int i = 0; i < 1_000; ++i) {
+            assertFalse(tree.contains("key-" + i));
+        }
+        final long now = System.nanoTime();
+        for (int batch = 0; batch < 10; ++batch) {
+            assertEquals(100, tree.expire(now, 100));
+            assertEquals(1_000 - (batch + 1) * 100, tree.size());
+        }
+        assertEquals(0, tree.expire(now));
+        assertTrue(tree.isEmpty());
+        tree.close();
+    }
+
+    @Test
+    public void deadlineUpdates() {
+        final var tree = new RadixTree(64);
+        assertTrue(tree.add("k", HOUR));
+        assertFalse(tree.add("k", 10 * HOUR));
+        final long now = System.nanoTime();
+        assertEquals(0, tree.expire(now + 2 * HOUR));
+        assertTrue(tree.contains("k"));
+        assertEquals(1, tree.expire(now + 11 * HOUR));
+        assertFalse(tree.contains("k"));
+
+        // a bulk remove drops the deadline with the subtree, the string added again has none
+        assertTrue(tree.add("p-1", HOUR));
+        assertTrue(tree.removeStrings(2, "p-".getBytes()));
+        assertTrue(tree.add("p-1"));
+        assertEquals(0, tree.expire(now + 2 * HOUR));
+        assertTrue(tree.contains("p-1"));
+
+        // the deadline of a string removed in bulk is dropped without counting
+        assertTrue(tree.add("q-1", HOUR));
+        assertTrue(tree.removeStrings(2, "q-".getBytes()));
+        assertEquals(0, tree.expire(now + 2 * HOUR));
+        assertEquals(1, tree.size());
+        tree.close();
+    }
+
+    @Test
+    public void deadlinesFollowMovedSlots() {
+        final var tree = new RadixTree(64);
+        assertTrue(tree.add("abcde", HOUR));
+        // splits the node, its string moves to a new node
+        assertTrue(tree.add("abxyz"));
+        // overflows the keys of the node, the last key moves to a new node
+        for (char c = 'd'; c <= 'w'; ++c) {
+            assertTrue(tree.add("ab" + c, c % 2 == 0 ? HOUR : 10 * HOUR));
+        }
+        // the last key takes the slot of a removed key
+        assertTrue(tree.remove("abd"));
+        tree.compact();
+
+        final long now = System.nanoTime();
+        assertEquals(10, tree.expire(now + 2 * HOUR));
+        assertEquals(11, tree.size());
+        assertFalse(tree.contains("abcde"));
+        assertTrue(tree.contains("abxyz"));
+        for (char c = 'e'; c <= 'w'; ++c) {
+            assertEquals(c % 2 == 1, tree.contains("ab" + c), "ab" + c);
+        }
+        assertEquals(10, tree.expire(now + 11 * HOUR));
+        assertEquals(1, tree.size());
+        assertTrue(tree.contains("abxyz"));
+        tree.close();
+    }
+}
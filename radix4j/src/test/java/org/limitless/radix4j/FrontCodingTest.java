@@ -0,0 +1,52 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrontCodingTest {
+
+    @Test
+    public void exportAndImport() throws IOException {
+        final var tree = new RadixTree();
+        final String prefix = "abcdefghij-";
+        final int count = 10_000;
+        for (int i = 0; i < count; ++i) {
+            assertTrue(tree.add(prefix + i));
+        }
+
+        final var output = new ByteArrayOutputStream();
+        assertEquals(count, tree.exportSorted(Channels.newChannel(output), 16));
+        assertTrue(output.size() < count * (prefix.length() + 5), "front coding");
+
+        final var copy = new RadixTree();
+        assertEquals(count, copy.importSorted(Channels.newChannel(new ByteArrayInputStream(output.toByteArray()))));
+        assertEquals(count, copy.size());
+        for (int i = 0; i < count; ++i) {
+            assertTrue(copy.contains(prefix + i), prefix + i);
+        }
+    }
+
+    @Test
+    public void emptyTree() throws IOException {
+        final var output = new ByteArrayOutputStream();
+        assertEquals(0, new RadixTree().exportSorted(Channels.newChannel(output)));
+        final var copy = new RadixTree();
+        assertEquals(0, copy.importSorted(Channels.newChannel(new ByteArrayInputStream(output.toByteArray()))));
+        assertTrue(copy.isEmpty());
+    }
+
+    @Test
+    public void errorHandling() {
+        final var tree = new RadixTree();
+        assertThrows(IllegalArgumentException.class,
+            () -> tree.exportSorted(Channels.newChannel(new ByteArrayOutputStream()), 0));
+        assertThrows(IOException.class,
+            () -> tree.importSorted(Channels.newChannel(new ByteArrayInputStream(new byte[16]))));
+    }
+}
@@ -0,0 +1,136 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void replayOperations() throws IOException {
+        final Path file = directory.resolve("tree.journal");
+        try (var channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+            final var tree = new RadixTree();
+            final var journal = new Journal(channel, 16, Journal.Sync.NONE);
+            tree.journal(journal);
+            check(tree, "cat", "cats", "cow", "cabbage", "crow", "pig", "pin", "cabs");
+            assertFalse(tree.add("cat"));
+            assertTrue(tree.remove("cow"));
+            assertFalse(tree.remove("horse"));
+            assertTrue(tree.removeStrings(2, "pi".getBytes()));
+            assertEquals(10, journal.pending());
+            journal.close();
+        }
+
+        try (var channel = FileChannel.open(file, READ, WRITE)) {
+            final var tree = new RadixTree();
+            assertEquals(10, Journal.replay(channel, tree));
+            assertEquals(5, tree.size());
+            assertTrue(tree.contains("cat"));
+            assertTrue(tree.contains("cabs"));
+            assertFalse(tree.contains("cow"));
+            assertFalse(tree.contains("pig"));
+            assertFalse(tree.contains("pin"));
+        }
+    }
+
+    @Test
+    public void timeToLive() throws IOException {
+        final long hour = 3_600_000_000_000L;
+        final Path file = directory.resolve("ttl.journal");
+        try (var channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+            final var tree = new RadixTree();
+            final var journal = new Journal(channel);
+            tree.journal(journal);
+            assertTrue(tree.add("short", 0));
+            assertTrue(tree.add("long", hour));
+            assertTrue(tree.add("plain"));
+            assertTrue(tree.add("reset", hour));
+            assertFalse(tree.add("reset", 0));
+            journal.close();
+        }
+
+        try (var channel = FileChannel.open(file, READ, WRITE)) {
+            final var tree = new RadixTree();
+            assertEquals(5, Journal.replay(channel, tree));
+            assertFalse(tree.contains("short"));
+            assertTrue(tree.contains("long"));
+            assertTrue(tree.contains("plain"));
+            assertFalse(tree.contains("reset"));
+            assertEquals(2, tree.expire(System.nanoTime()));
+            assertEquals(1, tree.expire(System.nanoTime() + 2 * hour));
+            assertEquals(1, tree.size());
+        }
+    }
+
+    @Test
+    public void tornTail() throws IOException {
+        final Path file = directory.resolve("torn.journal");
+        try (var channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+            final var tree = new RadixTree();
+            final var journal = new Journal(channel, 1, Journal.Sync.COMMIT);
+            tree.journal(journal);
+            assertTrue(tree.add("monkey"));
+            assertTrue(tree.add("money"));
+            final long end = channel.position();
+            channel.write(ByteBuffer.wrap(new byte[] { 20, 0, 0, 0, 1, 2, 3 }));
+
+            final var copy = new RadixTree();
+            assertEquals(2, Journal.replay(channel, copy));
+            assertEquals(end, channel.size());
+            assertTrue(copy.contains("monkey"));
+            assertTrue(copy.contains("money"));
+        }
+    }
+
+    @Test
+    public void snapshotAndJournal() throws IOException {
+        final Path snapshot = directory.resolve("tree.snapshot");
+        final Path file = directory.resolve("tree.journal");
+        try (var channel = FileChannel.open(file, CREATE, READ, WRITE);
+             var snapshotChannel = FileChannel.open(snapshot, CREATE, WRITE)) {
+            final var tree = new RadixTree();
+            final var journal = new Journal(channel);
+            tree.journal(journal);
+            assertTrue(tree.add("one"));
+            assertTrue(tree.add("two"));
+            tree.writeSnapshot(snapshotChannel);
+            journal.truncate();
+            assertTrue(tree.add("three"));
+            assertTrue(tree.remove("one"));
+            journal.close();
+        }
+
+        try (var channel = FileChannel.open(file, READ, WRITE);
+             var snapshotChannel = FileChannel.open(snapshot, READ)) {
+            final var tree = RadixTree.readSnapshot(snapshotChannel, Arena.ofShared());
+            assertEquals(2, Journal.replay(channel, tree));
+            assertEquals(2, tree.size());
+            assertFalse(tree.contains("one"));
+            assertTrue(tree.contains("two"));
+            assertTrue(tree.contains("three"));
+        }
+    }
+
+    @Test
+    public void errorHandling() {
+        assertThrows(IllegalArgumentException.class, () -> new Journal(null));
+    }
+
+    private static void check(final RadixTree tree, final String... strings) {
+        for (String string : strings) {
+            assertTrue(tree.add(string), string);
+        }
+    }
+}
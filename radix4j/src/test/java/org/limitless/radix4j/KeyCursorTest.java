@@ -0,0 +1,76 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyCursorTest {
+
+    @Test
+    public void sortedOrder() {
+        final var tree = new RadixTree();
+        final String[] strings = { "pin", "cat", "cow", "cats", "cabbage", "crow", "pig", "cabs", "c" };
+        for (String string : strings) {
+            assertTrue(tree.add(string));
+        }
+        final String[] sorted = strings.clone();
+        Arrays.sort(sorted);
+        assertEquals(List.of(sorted), keys(tree));
+    }
+
+    @Test
+    public void sharedPrefix() {
+        final var tree = new RadixTree();
+        for (String string : new String[] { "cat", "cats", "cabbage", "dog" }) {
+            assertTrue(tree.add(string));
+        }
+        final var cursor = new KeyCursor(tree).reset();
+        assertTrue(cursor.next());
+        assertEquals("cabbage", string(cursor));
+        assertEquals(0, cursor.shared());
+        assertTrue(cursor.next());
+        assertEquals("cat", string(cursor));
+        assertEquals(2, cursor.shared());
+        assertTrue(cursor.next());
+        assertEquals("cats", string(cursor));
+        assertEquals(3, cursor.shared());
+        assertTrue(cursor.next());
+        assertEquals("dog", string(cursor));
+        assertEquals(0, cursor.shared());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void overflowKeys() {
+        final var tree = new RadixTree();
+        final String prefix = "1234567890-";
+        final List<String> expected = new ArrayList<>();
+        for (char c = 'A'; c <= 'Z'; ++c) {
+            assertTrue(tree.add(prefix + c));
+            expected.add(prefix + c);
+        }
+        assertEquals(expected, keys(tree));
+    }
+
+    @Test
+    public void emptyTree() {
+        assertFalse(new KeyCursor(new RadixTree()).reset().next());
+    }
+
+    private static List<String> keys(final RadixTree tree) {
+        final List<String> keys = new ArrayList<>();
+        final var cursor = new KeyCursor(tree).reset();
+        while (cursor.next()) {
+            keys.add(string(cursor));
+        }
+        return keys;
+    }
+
+    private static String string(final KeyCursor cursor) {
+        return new String(cursor.key(), 0, cursor.length());
+    }
+}
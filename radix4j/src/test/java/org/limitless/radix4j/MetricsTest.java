@@ -0,0 +1,95 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    public void counters() {
+        final var metrics = new Metrics();
+        metrics.lookup(3, 100);
+        metrics.lookup(5, 200);
+        metrics.filteredLookup();
+        metrics.add(50);
+        metrics.remove(70);
+        metrics.split();
+        metrics.reparent();
+        metrics.allocation();
+        metrics.free(2);
+        assertEquals(2, metrics.getLookups());
+        assertEquals(1, metrics.getFilteredLookups());
+        assertEquals(8, metrics.getNodesVisited());
+        assertEquals(4.0, metrics.getAverageNodesVisited());
+        assertEquals(1, metrics.getAdds());
+        assertEquals(1, metrics.getRemoves());
+        assertEquals(1, metrics.getSplits());
+        assertEquals(1, metrics.getReparents());
+        assertEquals(1, metrics.getAllocations());
+        assertEquals(2, metrics.getFrees());
+        metrics.reset();
+        assertEquals(0, metrics.getLookups());
+        assertEquals(0, metrics.getFilteredLookups());
+        assertEquals(0, metrics.getLookupLatencyP99());
+    }
+
+    @Test
+    public void histogram() {
+        assertEquals(0, Metrics.Histogram.bucket(0));
+        assertEquals(0, Metrics.Histogram.bucket(1));
+        assertEquals(1, Metrics.Histogram.bucket(2));
+        assertEquals(1, Metrics.Histogram.bucket(3));
+        assertEquals(10, Metrics.Histogram.bucket(1024));
+        assertEquals(63, Metrics.Histogram.bucket(Long.MAX_VALUE));
+
+        final var histogram = new Metrics.Histogram();
+        for (int i = 0; i < 99; ++i) {
+            histogram.record(100);
+        }
+        histogram.record(5000);
+        assertEquals(99, histogram.counts()[6]);
+        assertEquals(127, histogram.percentile(0.5));
+        assertEquals(127, histogram.percentile(0.99));
+        assertEquals(8191, histogram.percentile(1.0));
+    }
+
+    @Test
+    public void register() throws Exception {
+        final var metrics = new Metrics();
+        metrics.register("test");
+        final var name = new ObjectName(Metrics.DOMAIN + ":type=RadixTree,name=" + ObjectName.quote("test"));
+        final var server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(server.isRegistered(name));
+        metrics.lookup(1, 10);
+        assertEquals(1L, server.getAttribute(name, "Lookups"));
+        metrics.unregister();
+        assertFalse(server.isRegistered(name));
+        assertThrows(IllegalArgumentException.class, () -> metrics.register(null));
+    }
+
+    @Test
+    public void treeProbes() {
+        final var tree = new RadixTree();
+        assertEquals(Metrics.ENABLED, tree.metrics() != null);
+        if (Metrics.ENABLED) {
+            assertTrue(tree.add("cat"));
+            assertTrue(tree.add("cow"));
+            assertTrue(tree.contains("cow"));
+            assertTrue(tree.metrics().getLookups() >= 1);
+            assertEquals(2, tree.metrics().getAdds());
+
+            // a miss answered by the prefilter counts apart from the tree walks
+            tree.prefilter(1_000);
+            final long lookups = tree.metrics().getLookups();
+            for (int i = 0; i < 100; ++i) {
+                assertFalse(tree.contains("horse-" + i));
+            }
+            assertTrue(tree.metrics().getFilteredLookups() >= 1);
+            assertEquals(100, tree.metrics().getLookups() - lookups + tree.metrics().getFilteredLookups());
+        }
+    }
+}
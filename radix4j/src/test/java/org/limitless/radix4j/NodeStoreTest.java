@@ -0,0 +1,103 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NodeStoreTest {
+
+    @Test
+    public void sharedTrees() {
+        try (var store = new NodeStore(64)) {
+            final int scratch = store.allocatedNodes();
+            final RadixTree[] trees = new RadixTree[1_000];
+            for (int i = 0; i < trees.length; ++i) {
+                trees[i] = new RadixTree(store);
+                for (int j = 0; j < 3; ++j) {
+                    assertTrue(trees[i].add("tenant-" + i + "-key-" + j));
+                }
+            }
+            assertEquals(trees.length, store.trees());
+            for (int i = 0; i < trees.length; ++i) {
+                assertEquals(3, trees[i].size());
+                assertTrue(trees[i].contains("tenant-" + i + "-key-2"));
+                assertFalse(trees[i].contains("tenant-" + (i + 1) % trees.length + "-key-2"));
+            }
+
+            assertTrue(trees[7].remove("tenant-7-key-1"));
+            assertFalse(trees[7].contains("tenant-7-key-1"));
+            assertTrue(trees[8].contains("tenant-8-key-1"));
+
+            for (int i = 0; i < trees.length; i += 2) {
+                trees[i].close();
+            }
+            assertEquals(trees.length / 2, store.trees());
+            for (int i = 1; i < trees.length; i += 2) {
+                assertTrue(trees[i].contains("tenant-" + i + "-key-0"));
+            }
+            for (int i = 1; i < trees.length; i += 2) {
+                trees[i].close();
+            }
+            assertEquals(0, store.trees());
+            assertEquals(scratch, store.allocatedNodes());
+        }
+    }
+
+    @Test
+    public void reuseFreedNodes() {
+        try (var store = new NodeStore(64)) {
+            final var first = new RadixTree(store);
+            for (int i = 0; i < 500; ++i) {
+                assertTrue(first.add("key-" + i));
+            }
+            final int peak = store.allocatedNodes();
+            first.close();
+
+            final var second = new RadixTree(store);
+            for (int i = 0; i < 500; ++i) {
+                assertTrue(second.add("key-" + i));
+            }
+            assertEquals(peak, store.allocatedNodes());
+            assertEquals(500, second.stats().strings());
+        }
+    }
+
+    @Test
+    public void countSegmentsAfterReuse() {
+        try (var store = new NodeStore(64)) {
+            final var tree = new RadixTree(store);
+            for (int i = 0; i < 500; ++i) {
+                assertTrue(tree.add("key-" + i));
+            }
+            assertEquals((store.peakNodes() + 63) / 64, store.segments());
+            for (int round = 0; round < 3; ++round) {
+                for (int i = 0; i < 500; i += 2) {
+                    assertTrue(tree.remove("key-" + i));
+                }
+                for (int i = 0; i < 500; i += 2) {
+                    assertTrue(tree.add("key-" + i));
+                }
+            }
+            // the freed blocks are reused before a segment is opened
+            assertEquals((store.peakNodes() + 63) / 64, store.segments());
+        }
+    }
+
+    @Test
+    public void maintenanceOnSharedStore() {
+        try (var store = new NodeStore()) {
+            final var tree = new RadixTree(store);
+            assertTrue(tree.add("key"));
+            assertThrows(IllegalStateException.class, tree::compact);
+            assertThrows(IllegalStateException.class, () -> tree.defragment(10));
+            assertThrows(IllegalStateException.class, () -> tree.bound(0, 1 << 20));
+            tree.bound(10, 0);
+            for (int i = 0; i < 100; ++i) {
+                var _ = tree.add("key-" + i);
+            }
+            assertEquals(10, tree.size());
+            assertThrows(IllegalArgumentException.class, () -> new RadixTree((NodeStore) null));
+            assertThrows(IllegalArgumentException.class, () -> new NodeStore(16));
+        }
+    }
+}
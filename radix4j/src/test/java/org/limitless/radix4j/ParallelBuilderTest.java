@@ -0,0 +1,98 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelBuilderTest {
+
+    @Test
+    public void fixedLengthStrings() {
+        final byte[] string = "ABCDEFGHI000000000".getBytes();
+        final int count = 200_000;
+        final byte[] strings = new byte[count * string.length];
+        final var expected = new RadixTree(64);
+        for (int i = 0; i < count; ++i) {
+            final int offset = i * string.length;
+            System.arraycopy(string, 0, strings, offset, string.length);
+            ByteUtils.intToChars(i, offset + string.length, strings);
+            assertTrue(expected.add(offset, string.length, strings));
+        }
+
+        final var pool = new ForkJoinPool(4);
+        try {
+            final var tree = new ParallelBuilder(pool, 64).build(strings, string.length, count);
+            assertEquals(count, tree.size());
+            assertEquals(count, tree.stats().strings());
+            assertSameStrings(expected, tree);
+            for (int i = 0; i < count; i += 997) {
+                assertTrue(tree.contains(i * string.length, string.length, strings));
+            }
+            assertFalse(tree.contains("ABCDEFGHI000200000"));
+            assertTrue(tree.remove("ABCDEFGHI000000042"));
+            assertTrue(tree.add("ABCDEFGHI000200000"));
+            assertEquals(count, tree.stats().strings());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void variableLengthStrings() {
+        final var bytes = new ByteArrayOutputStream();
+        final int count = 20_000;
+        final String[] extra = { "key-", "key-1", "key-9", "key-12", "key-x-a", "key-x-b", "key-yzw", "key-qrstuvw" };
+        final int[] offsets = new int[count + extra.length + 1];
+        int strings = 0;
+        final var expected = new RadixTree(64);
+        for (String string : extra) {
+            bytes.writeBytes(string.getBytes());
+            offsets[++strings] = bytes.size();
+            var _ = expected.add(string);
+        }
+        for (int i = 0; i < count; ++i) {
+            final String string = "key-" + (i * 7919 % count) + (i % 3 == 0 ? "-suffix" : "");
+            bytes.writeBytes(string.getBytes());
+            offsets[++strings] = bytes.size();
+            var _ = expected.add(string);
+        }
+
+        final var pool = new ForkJoinPool(3);
+        try {
+            final var tree = new ParallelBuilder(pool, 64).build(bytes.toByteArray(), offsets, strings);
+            assertEquals(expected.size(), tree.size());
+            assertEquals(expected.size(), tree.stats().strings());
+            assertSameStrings(expected, tree);
+            for (String string : extra) {
+                assertTrue(tree.contains(string), string);
+            }
+            assertFalse(tree.contains("key"));
+            assertFalse(tree.contains("key-x-"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sequentialFallback() {
+        final byte[] strings = "aaaaaa".getBytes();
+        final var tree = new ParallelBuilder().build(strings, new int[] { 0, 3, 6 }, 2);
+        assertEquals(1, tree.size());
+        assertTrue(tree.contains("aaa"));
+        assertEquals(0, new ParallelBuilder().build(strings, 3, 0).size());
+        assertThrows(IllegalArgumentException.class, () -> new ParallelBuilder(null, 64));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelBuilder().build(strings, 4, 2));
+    }
+
+    private static void assertSameStrings(final RadixTree expected, final RadixTree tree) {
+        final StringBuilder differences = new StringBuilder();
+        expected.trackHashes(true);
+        tree.trackHashes(true);
+        expected.diff(tree, (key, length, inThis) ->
+            differences.append(inThis ? '-' : '+').append(new String(key, 0, length)).append(' '));
+        assertEquals("", differences.toString());
+    }
+}
@@ -0,0 +1,81 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrefilterTest {
+
+    @Test
+    public void falsePositiveRate() {
+        final int count = 100_000;
+        final var filter = new Prefilter(count);
+        for (int i = 0; i < count; ++i) {
+            final byte[] string = ("key-" + i).getBytes();
+            filter.add(0, string.length, string);
+        }
+        int positives = 0;
+        for (int i = count; i < count * 2; ++i) {
+            final byte[] string = ("key-" + i).getBytes();
+            if (filter.mightContain(0, string.length, string)) {
+                ++positives;
+            }
+        }
+        assertTrue(positives < count / 25, "false positives " + positives);
+
+        for (int i = 0; i < count; ++i) {
+            final byte[] string = ("key-" + i).getBytes();
+            assertTrue(filter.mightContain(0, string.length, string));
+            filter.remove(0, string.length, string);
+        }
+        int remaining = 0;
+        for (int i = 0; i < count; ++i) {
+            final byte[] string = ("key-" + i).getBytes();
+            if (filter.mightContain(0, string.length, string)) {
+                ++remaining;
+            }
+        }
+        assertTrue(remaining < count / 100, "remaining " + remaining);
+        filter.close();
+    }
+
+    @Test
+    public void treeUpdates() {
+        final var tree = new RadixTree(64);
+        for (int i = 0; i < 1_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        tree.prefilter(100);
+        for (int i = 0; i < 1_000; ++i) {
+            assertTrue(tree.contains("key-" + i));
+            assertFalse(tree.contains("miss-" + i));
+        }
+
+        for (int i = 1_000; i < 10_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        for (int i = 0; i < 10_000; i += 2) {
+            assertTrue(tree.remove("key-" + i));
+        }
+        for (int i = 0; i < 10_000; ++i) {
+            assertEquals(i % 2 == 1, tree.contains("key-" + i));
+        }
+
+        assertTrue(tree.removeStrings(5, "key-2".getBytes()));
+        assertTrue(tree.removeStrings(5, "key-4".getBytes()));
+        for (int i = 0; i < 10_000; ++i) {
+            final String string = "key-" + i;
+            assertEquals(i % 2 == 1 && !string.startsWith("key-2") && !string.startsWith("key-4"),
+                tree.contains(string), string);
+        }
+        assertTrue(tree.removeStrings(4, "key-".getBytes()));
+        assertFalse(tree.contains("key-1"));
+        assertTrue(tree.add("key-1"));
+        assertTrue(tree.contains("key-1"));
+
+        tree.prefilter(0);
+        assertTrue(tree.contains("key-1"));
+        assertThrows(IllegalArgumentException.class, () -> tree.prefilter(-1));
+        tree.close();
+    }
+}
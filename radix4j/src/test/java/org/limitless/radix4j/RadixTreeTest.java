@@ -682,6 +682,293 @@ public class RadixTreeTest {
         assertEmpty(tree);
     }
 
+    @Test
+    public void compactChurnedTree() {
+        final var tree = new RadixTree(64);
+        final int count = 10_000;
+        for (int i = 0; i < count; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        for (int i = 0; i < count; i += 3) {
+            assertTrue(tree.remove("key-" + i));
+        }
+        final int size = tree.size();
+        final int blocks = tree.allocatedBlocks();
+        tree.compact(Arena.ofShared());
+        assertEquals(size, tree.size());
+        assertEquals(blocks, tree.allocatedBlocks());
+        for (int i = 0; i < count; ++i) {
+            assertEquals(i % 3 != 0, tree.contains("key-" + i), "key-" + i);
+        }
+        for (int i = 0; i < count; ++i) {
+            assertEquals(i % 3 == 0, tree.add("key-" + i), "key-" + i);
+        }
+        for (int i = 0; i < count; ++i) {
+            assertTrue(tree.remove("key-" + i), "key-" + i);
+        }
+        assertEmpty(tree);
+
+        tree.compact();
+        assertTrue(tree.add("cat"));
+        assertTrue(tree.contains("cat"));
+    }
+
+    @Test
+    public void defragmentAfterBulkRemove() {
+        final var tree = new RadixTree(64);
+        final int count = 5_000;
+        for (String prefix : new String[] { "a-", "b-", "c-" }) {
+            for (int i = 0; i < count; ++i) {
+                assertTrue(tree.add(prefix + i));
+            }
+        }
+        assertFalse(tree.defragment(100));
+        assertThrows(IllegalArgumentException.class, () -> tree.defragment(0));
+
+        assertTrue(tree.removeStrings(2, "a-".getBytes()));
+        assertTrue(tree.removeStrings(2, "b-".getBytes()));
+        assertTrue(tree.defragment(100));
+        assertTrue(tree.add("d-0"));
+        final int blocks = tree.allocatedBlocks();
+        int steps = 0;
+        while (tree.defragment(100)) {
+            ++steps;
+        }
+        assertTrue(steps >= 2);
+        assertEquals(blocks, tree.allocatedBlocks());
+        assertEquals(count + 1, tree.size());
+        assertTrue(tree.contains("d-0"));
+        for (int i = 0; i < count; ++i) {
+            assertFalse(tree.contains("a-" + i));
+            assertTrue(tree.contains("c-" + i));
+        }
+        assertFalse(tree.defragment(100));
+        assertTrue(tree.add("a-0"));
+        assertTrue(tree.remove("c-0"));
+    }
+
+    @Test
+    public void defragmentUnderUpdates() {
+        final var tree = new RadixTree(64);
+        final int count = 20_000;
+        for (int i = 0; i < count; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        for (int i = 0; i < count; ++i) {
+            if (i % 4 != 0) {
+                assertTrue(tree.remove("key-" + i));
+            }
+        }
+        // every step is followed by updates on copied and not yet copied nodes, the migration still ends
+        int steps = 0;
+        int next = count;
+        while (tree.defragment(50)) {
+            assertTrue(tree.add("key-" + next));
+            assertTrue(tree.add("new-" + steps));
+            assertTrue(tree.remove("key-" + (4 * steps)));
+            ++next;
+            ++steps;
+            assertTrue(steps < count, "defragmentation does not end");
+        }
+        assertTrue(steps >= 10, "steps " + steps);
+        assertEquals(count / 4 + steps, tree.size());
+        for (int i = 0; i < count; ++i) {
+            assertEquals(i % 4 == 0 && i >= 4 * steps, tree.contains("key-" + i), "key-" + i);
+        }
+        for (int i = count; i < next; ++i) {
+            assertTrue(tree.contains("key-" + i), "key-" + i);
+        }
+        for (int i = 0; i < steps; ++i) {
+            assertTrue(tree.contains("new-" + i), "new-" + i);
+        }
+        final int blocks = tree.allocatedBlocks();
+        final RadixTree copy = tree.copy();
+        assertEquals(blocks, copy.allocatedBlocks());
+        copy.close();
+
+        for (int i = count; i < next; ++i) {
+            assertTrue(tree.remove("key-" + i), "key-" + i);
+        }
+        for (int i = 0; i < steps; ++i) {
+            assertTrue(tree.remove("new-" + i), "new-" + i);
+        }
+        for (int i = 4 * steps; i < count; i += 4) {
+            assertTrue(tree.remove("key-" + i), "key-" + i);
+        }
+        assertEmpty(tree);
+    }
+
+    @Test
+    public void stringIds() {
+        final var tree = new RadixTree(64);
+        final int count = 10_000;
+        assertEquals(RadixTree.NO_ID, tree.id("key-0"));
+        assertThrows(IllegalArgumentException.class, () -> tree.key(0));
+        for (int i = 0; i < count; ++i) {
+            assertEquals(i, tree.addAndGetId("key-" + i));
+        }
+        assertEquals(0, tree.addAndGetId("key-0"));
+        assertTrue(tree.add("plain"));
+        assertEquals(RadixTree.NO_ID, tree.id("plain"));
+        assertEquals(count, tree.addAndGetId("plain"));
+        assertEquals(count + 1, tree.size());
+
+        final byte[] buffer = new byte[16];
+        for (int i = 0; i < count; ++i) {
+            assertEquals(i, tree.id("key-" + i));
+            assertEquals(("key-" + i).length(), tree.key(i, buffer));
+            assertEquals("key-" + i, new String(buffer, 0, ("key-" + i).length()));
+        }
+
+        assertTrue(tree.remove("key-7"));
+        assertEquals(RadixTree.NO_ID, tree.id("key-7"));
+        assertThrows(IllegalArgumentException.class, () -> tree.key(7));
+        assertEquals(7, tree.addAndGetId("other"));
+        assertEquals("other", tree.key(7));
+
+        final int first = tree.addAndGetId("pre-a");
+        final int second = tree.addAndGetId("pre-b");
+        assertEquals(count + 1, first);
+        assertEquals(count + 2, second);
+        assertTrue(tree.removeStrings(4, "pre-".getBytes()));
+        assertFalse(tree.contains("pre-a"));
+        assertEquals(RadixTree.NO_ID, tree.id("pre-a"));
+        assertEquals(RadixTree.NO_ID, tree.id("pre-b"));
+        assertThrows(IllegalArgumentException.class, () -> tree.key(first));
+        assertEquals(2, tree.id("key-2"));
+
+        // the ids follow their strings into the compacted nodes
+        tree.compact();
+        for (int i = 0; i < count; i += 97) {
+            assertEquals("key-" + i, tree.key(i));
+            assertEquals(i, tree.id(tree.key(i)));
+        }
+        assertEquals(count, tree.id("plain"));
+        tree.close();
+    }
+
+    @Test
+    public void copyTree() {
+        final var tree = new RadixTree(64);
+        final int count = 10_000;
+        for (int i = 0; i < count; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(tree.remove("key-" + i));
+        }
+        final var copy = tree.copy();
+        assertEquals(tree.size(), copy.size());
+        assertEquals(tree.allocatedBlocks(), copy.allocatedBlocks());
+        assertTrue(copy.add("key-0"));
+        assertTrue(tree.remove("key-1"));
+        assertFalse(tree.contains("key-0"));
+        assertTrue(copy.contains("key-1"));
+        for (int i = 2; i < count; ++i) {
+            assertEquals(i % 2 == 1, tree.contains("key-" + i), "key-" + i);
+            assertEquals(i % 2 == 1, copy.contains("key-" + i), "key-" + i);
+        }
+        tree.close();
+        for (int i = 1; i < count; i += 2) {
+            assertTrue(copy.remove("key-" + i), "key-" + i);
+        }
+        assertTrue(copy.remove("key-0"));
+        assertEmpty(copy);
+    }
+
+    @Test
+    public void lazyCopy() {
+        final var tree = new RadixTree(64);
+        for (int i = 0; i < 1_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        final int blocks = tree.allocatedBlocks();
+        final var first = tree.copy(Arena.ofShared(), true);
+        final var second = first.copy(Arena.ofShared(), true);
+        assertEquals(blocks, tree.allocatedBlocks());
+        assertTrue(first.contains("key-999"));
+
+        assertTrue(first.add("first"));
+        assertFalse(tree.contains("first"));
+        assertFalse(second.contains("first"));
+
+        assertTrue(tree.remove("key-0"));
+        assertTrue(first.contains("key-0"));
+        assertTrue(second.contains("key-0"));
+        assertFalse(tree.contains("key-0"));
+        assertEquals(1_000, second.size());
+
+        final var third = tree.copy(Arena.ofShared(), true);
+        third.close();
+        tree.close();
+        assertTrue(second.remove("key-1"));
+        assertTrue(first.contains("key-1"));
+        assertEquals(1_001, first.size());
+        assertThrows(IllegalArgumentException.class, () -> first.copy(null, false));
+    }
+
+    @Test
+    public void lazyCopySegments() {
+        final var tree = new RadixTree(64);
+        final int count = 10_000;
+        for (int i = 0; i < count; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        final var copy = tree.copy(Arena.ofShared(), true);
+        assertEquals(0, copy.copiedSegments());
+
+        // an update of the source copies the segments it writes, not the tree
+        assertTrue(tree.remove("key-5000"));
+        assertTrue(tree.add("other"));
+        final int copied = copy.copiedSegments();
+        assertTrue(copied >= 1 && copied < tree.store().segments(), copied + " segments");
+        assertTrue(copy.contains("key-5000"));
+        assertFalse(copy.contains("other"));
+
+        for (int i = 1; i < count; i += 2) {
+            assertTrue(tree.remove("key-" + i), "key-" + i);
+        }
+        for (int i = 0; i < count; ++i) {
+            assertTrue(copy.contains("key-" + i), "key-" + i);
+            assertEquals(i % 2 == 0 && i != 5000, tree.contains("key-" + i), "key-" + i);
+        }
+        assertEquals(count, copy.size());
+
+        // a walk makes the private copy
+        final KeyCursor cursor = new KeyCursor(copy).reset();
+        int keys = 0;
+        while (cursor.next()) {
+            ++keys;
+        }
+        assertEquals(count, keys);
+        assertEquals(0, copy.copiedSegments());
+        assertTrue(copy.add("copy"));
+        assertFalse(tree.contains("copy"));
+        tree.close();
+        assertTrue(copy.remove("key-1"));
+        assertEquals(count, copy.size());
+        copy.close();
+    }
+
+    @Test
+    public void lazyCopyState() {
+        final var tree = new RadixTree(64);
+        assertTrue(tree.add("a"));
+        final var copy = tree.copy(Arena.ofShared(), true);
+        assertTrue(tree.score("a", 1));
+        assertThrows(IllegalStateException.class, () -> tree.copy());
+
+        // the per string state of a lazy copy goes with its private nodes
+        assertTrue(copy.score("a", 2));
+        assertEquals(1, tree.score("a"));
+        assertEquals(2, copy.score("a"));
+        copy.bound(10, 0);
+        assertTrue(copy.contains("a"));
+        assertThrows(IllegalStateException.class, () -> copy.copy(Arena.ofShared(), true));
+        tree.close();
+        copy.close();
+    }
+
     private void check(RadixTree tree, String...strings) {
         check(tree, true, strings);
     }
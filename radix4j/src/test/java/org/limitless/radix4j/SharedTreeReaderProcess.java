@@ -0,0 +1,39 @@
+package org.limitless.radix4j;
+
+import java.nio.file.Path;
+
+/**
+ * Reader side of SharedTreeTest run in its own JVM: follows the writer until every string is visible, exits with
+ * 1 when a published string is missing or an absent one is found.
+ */
+public class SharedTreeReaderProcess {
+
+    private static final String PREFIX = "abcdefghij-";
+    private static final long TIMEOUT_NANOS = 30_000_000_000L;
+
+    public static void main(final String[] args) throws Exception {
+        final Path file = Path.of(args[0]);
+        final int count = Integer.parseInt(args[1]);
+        int failures = 0;
+        try (var reader = SharedTreeReader.open(file)) {
+            final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+            int size;
+            while ((size = reader.size()) < count && System.nanoTime() < deadline) {
+                if (size >= 1 && !reader.contains(PREFIX + (size - 1))) {
+                    ++failures;
+                }
+                if (reader.contains(PREFIX + count)) {
+                    ++failures;
+                }
+            }
+            for (int i = 0; i < count; ++i) {
+                if (!reader.contains(PREFIX + i)) {
+                    ++failures;
+                }
+            }
+            System.out.printf("reader process: %,d strings, %,d failures, %,d retries%n",
+                reader.size(), failures, reader.retries());
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
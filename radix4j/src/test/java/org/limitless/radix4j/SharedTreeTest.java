@@ -0,0 +1,197 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.limitless.fsmp4j.BlockPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharedTreeTest {
+
+    private static final long CAPACITY = 64L << 20;
+    private static final String PREFIX = "abcdefghij-";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void writeAndRead() throws IOException {
+        final Path file = directory.resolve("tree.shm");
+        final int count = 100_000;
+        try (var writer = SharedTree.create(file, CAPACITY, 1024);
+             var reader = SharedTreeReader.open(file)) {
+            assertEquals(0, reader.size());
+            assertFalse(reader.contains(PREFIX + 0));
+            for (int i = 0; i < count; ++i) {
+                assertTrue(writer.add(PREFIX + i));
+            }
+            assertEquals(count, reader.size());
+            for (int i = 0; i < count; ++i) {
+                assertTrue(reader.contains(PREFIX + i), PREFIX + i);
+                assertFalse(reader.contains("miss-" + i));
+            }
+            assertFalse(reader.contains(PREFIX));
+            assertFalse(reader.contains(PREFIX + count));
+
+            for (int i = 0; i < count; i += 3) {
+                assertTrue(writer.remove(PREFIX + i));
+            }
+            assertEquals(writer.size(), reader.size());
+            for (int i = 0; i < count; ++i) {
+                assertEquals(i % 3 != 0, reader.contains(PREFIX + i), PREFIX + i);
+            }
+        }
+    }
+
+    @Test
+    public void invalidFiles() throws IOException {
+        final Path file = directory.resolve("empty.shm");
+        Files.write(file, new byte[(int) MappedArena.DIRECTORY_OFFSET]);
+        assertThrows(IllegalArgumentException.class, () -> SharedTreeReader.open(file));
+        assertThrows(IllegalArgumentException.class, () -> SharedTree.create(file, 4096));
+        assertThrows(IllegalArgumentException.class, () -> SharedTree.create(file, CAPACITY, 1));
+
+        final Path small = directory.resolve("small.shm");
+        try (var writer = SharedTree.create(small, MappedArena.DATA_OFFSET + 2 * 64 * Node.BYTES, 64);
+             var reader = SharedTreeReader.open(small)) {
+            int added = 0;
+            try {
+                while (true) {
+                    assertTrue(writer.add(PREFIX + added));
+                    ++added;
+                }
+            } catch (final IllegalStateException e) {
+                assertEquals("mapped file full", e.getMessage());
+            }
+            // a full file rejects the add before any change, the tree stays published and usable
+            assertTrue(added >= 1);
+            assertEquals(added, writer.size());
+            assertEquals(added, reader.size());
+            for (int i = 0; i < added; ++i) {
+                assertTrue(reader.contains(PREFIX + i), PREFIX + i);
+            }
+            assertFalse(reader.contains(PREFIX + added));
+            assertTrue(writer.remove(PREFIX + 0));
+            assertFalse(reader.contains(PREFIX + 0));
+        }
+    }
+
+    @Test
+    public void segmentDirectory() throws IOException {
+        final Path file = directory.resolve("directory.shm");
+        try (var writer = SharedTree.create(file, CAPACITY, 64)) {
+            for (int i = 0; i < 10_000; ++i) {
+                assertTrue(writer.add(PREFIX + i));
+            }
+            final long sequence = header(file).getLong((int) MappedArena.SEQUENCE_OFFSET);
+            assertFalse(writer.remove(-1, 1, PREFIX.getBytes()));
+            assertFalse(writer.remove(0, 0, PREFIX.getBytes()));
+            assertFalse(writer.remove(null));
+            // an invalid remove does not start an update
+            assertEquals(sequence, header(file).getLong((int) MappedArena.SEQUENCE_OFFSET));
+
+            final ByteBuffer header = header(file);
+            final int segments = header.getInt((int) MappedArena.SEGMENTS_OFFSET);
+            assertTrue(segments >= 2);
+            for (int i = 0; i < segments; ++i) {
+                assertEquals(i, header.getLong((int) (MappedArena.DIRECTORY_OFFSET + i * MappedArena.DIRECTORY_ENTRY_BYTES)));
+            }
+        }
+    }
+
+    private static ByteBuffer header(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate((int) MappedArena.DATA_OFFSET).order(ByteOrder.nativeOrder());
+            Snapshot.readFully(header, channel);
+            return header;
+        }
+    }
+
+    @Test
+    public void stalledAndFailedWriter() throws IOException {
+        final Path file = directory.resolve("stalled.shm");
+        try (var arena = MappedArena.create(file, CAPACITY, 64);
+             var reader = SharedTreeReader.open(file)) {
+            arena.beginWrite();
+            final long start = System.nanoTime();
+            assertThrows(IllegalStateException.class, reader::size);
+            assertThrows(IllegalStateException.class, () -> reader.contains(PREFIX));
+            assertTrue(System.nanoTime() - start >= 1_000_000_000L);
+
+            arena.fail();
+            final IllegalStateException failed = assertThrows(IllegalStateException.class, reader::size);
+            assertEquals("failed shared tree", failed.getMessage());
+        }
+    }
+
+    @Test
+    public void concurrentReader() throws Exception {
+        final Path file = directory.resolve("concurrent.shm");
+        final int count = 200_000;
+        try (var writer = SharedTree.create(file, CAPACITY, 1024);
+             var reader = SharedTreeReader.open(file)) {
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < count; ++i) {
+                    writer.add(PREFIX + i);
+                }
+            });
+            thread.start();
+            int size;
+            while ((size = reader.size()) < count) {
+                if (size >= 1) {
+                    assertTrue(reader.contains(PREFIX + (size - 1)));
+                    assertTrue(reader.contains(PREFIX + (size / 2)));
+                }
+                assertFalse(reader.contains(PREFIX + count));
+            }
+            thread.join();
+            for (int i = 0; i < count; ++i) {
+                assertTrue(reader.contains(PREFIX + i), PREFIX + i);
+            }
+        }
+    }
+
+    @Test
+    public void readerProcess() throws Exception {
+        final Path file = directory.resolve("process.shm");
+        final int count = 200_000;
+        try (var writer = SharedTree.create(file, CAPACITY, 1024)) {
+            for (int i = 0; i < count / 2; ++i) {
+                assertTrue(writer.add(PREFIX + i));
+            }
+            final Process process = startReader(file, count);
+            for (int i = count / 2; i < count; ++i) {
+                assertTrue(writer.add(PREFIX + i));
+            }
+            assertTrue(process.waitFor(60, TimeUnit.SECONDS), "reader process timed out");
+            assertEquals(0, process.exitValue());
+        }
+    }
+
+    /**
+     * Runs SharedTreeReaderProcess in a new JVM on the classes of this test
+     */
+    private static Process startReader(final Path file, final int count) throws Exception {
+        final String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        final String classPath = String.join(File.pathSeparator,
+            location(SharedTreeReaderProcess.class), location(SharedTree.class), location(BlockPool.class));
+        return new ProcessBuilder(java, "-cp", classPath, SharedTreeReaderProcess.class.getName(),
+            file.toString(), Integer.toString(count))
+            .inheritIO()
+            .start();
+    }
+
+    private static String location(final Class<?> type) throws Exception {
+        return Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+}
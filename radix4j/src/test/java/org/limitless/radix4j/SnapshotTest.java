@@ -0,0 +1,118 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void writeAndRead() throws IOException {
+        final var tree = new RadixTree();
+        final String prefix = "abcdefghij-";
+        final int count = 100_000;
+        for (int i = 0; i < count; ++i) {
+            assertTrue(tree.add(prefix + i));
+        }
+        for (int i = 0; i < count; i += 3) {
+            assertTrue(tree.remove(prefix + i));
+        }
+
+        final Path file = directory.resolve("tree.snapshot");
+        try (var channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            tree.writeSnapshot(channel);
+        }
+        final RadixTree copy;
+        try (var channel = FileChannel.open(file, READ)) {
+            copy = RadixTree.readSnapshot(channel, Arena.ofShared());
+        }
+
+        assertEquals(tree.size(), copy.size());
+        for (int i = 0; i < count; ++i) {
+            assertEquals(i % 3 != 0, copy.contains(prefix + i), prefix + i);
+        }
+        assertTrue(copy.add(prefix + 0));
+        for (int i = 1; i < count; ++i) {
+            assertEquals(i % 3 != 0, copy.remove(prefix + i), prefix + i);
+        }
+        assertTrue(copy.remove(prefix + 0));
+        assertTrue(copy.isEmpty());
+    }
+
+    @Test
+    public void emptyTree() throws IOException {
+        final Path file = directory.resolve("empty.snapshot");
+        try (var channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            new RadixTree().writeSnapshot(channel);
+        }
+        try (var channel = FileChannel.open(file, READ)) {
+            final var tree = RadixTree.readSnapshot(channel, Arena.ofShared());
+            assertTrue(tree.isEmpty());
+            assertTrue(tree.add("cat"));
+            assertTrue(tree.contains("cat"));
+        }
+    }
+
+    @Test
+    public void sharedStore() throws IOException {
+        final Path file = directory.resolve("shared.snapshot");
+        try (var store = new NodeStore(64)) {
+            final var other = new RadixTree(store);
+            final var tree = new RadixTree(store);
+            for (int i = 0; i < 10_000; ++i) {
+                assertTrue(other.add("other-" + i));
+                assertTrue(tree.add("tree-" + i));
+            }
+            try (var channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                tree.writeSnapshot(channel);
+            }
+        }
+        try (var channel = FileChannel.open(file, READ)) {
+            final var copy = RadixTree.readSnapshot(channel, Arena.ofShared());
+            assertEquals(10_000, copy.size());
+            for (int i = 0; i < 10_000; ++i) {
+                assertTrue(copy.contains("tree-" + i));
+                assertFalse(copy.contains("other-" + i));
+            }
+            copy.close();
+        }
+    }
+
+    @Test
+    public void invalidSnapshot() throws IOException {
+        final Path file = directory.resolve("invalid.snapshot");
+        try (var channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(new byte[Snapshot.HEADER_LENGTH]));
+        }
+        try (var channel = FileChannel.open(file, READ)) {
+            assertThrows(IOException.class, () -> RadixTree.readSnapshot(channel, Arena.ofShared()));
+        }
+
+        // a snapshot whose header has an invalid segment size
+        final Path blocks = directory.resolve("blocks.snapshot");
+        try (var channel = FileChannel.open(blocks, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            final var tree = new RadixTree();
+            assertTrue(tree.add("cat"));
+            tree.writeSnapshot(channel);
+            final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.nativeOrder());
+            channel.write(header.putInt(0, 1), 2 * Integer.BYTES);
+        }
+        try (var channel = FileChannel.open(blocks, READ)) {
+            final IOException e = assertThrows(IOException.class,
+                () -> RadixTree.readSnapshot(channel, Arena.ofShared()));
+            assertEquals("invalid blocks per segment 1", e.getMessage());
+        }
+    }
+}
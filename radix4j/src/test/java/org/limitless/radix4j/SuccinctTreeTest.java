@@ -0,0 +1,120 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuccinctTreeTest {
+
+    @Test
+    public void containsStrings() {
+        final var tree = new RadixTree();
+        final String[] strings = { "pin", "cat", "cow", "cats", "cabbage", "crow", "pig", "cabs", "c" };
+        for (String string : strings) {
+            assertTrue(tree.add(string));
+        }
+        try (var arena = Arena.ofConfined()) {
+            final SuccinctTree succinct = tree.freezeSuccinct(arena);
+            assertEquals(strings.length, succinct.size());
+            for (String string : strings) {
+                assertTrue(succinct.contains(string), string);
+            }
+            for (String string : new String[] { "ca", "cabbages", "pi", "dog", "co", "" }) {
+                assertFalse(succinct.contains(string), string);
+            }
+        }
+    }
+
+    @Test
+    public void prefixScan() {
+        final var tree = new RadixTree();
+        final String prefix = "1234567890-";
+        for (char c = 'Z'; c >= 'A'; --c) {
+            assertTrue(tree.add(prefix + c));
+            assertTrue(tree.add(prefix + c + c));
+        }
+        assertTrue(tree.add("123"));
+        try (var arena = Arena.ofConfined()) {
+            final SuccinctTree succinct = tree.freezeSuccinct(arena);
+            final List<String> keys = keys(succinct, "1234567890-M");
+            assertEquals(List.of("1234567890-M", "1234567890-MM"), keys);
+            assertEquals(53, keys(succinct, "12").size());
+            assertEquals(53, keys(succinct, "").size());
+            assertEquals("123", keys(succinct, "").getFirst());
+            assertTrue(keys(succinct, "2").isEmpty());
+        }
+    }
+
+    @Test
+    public void longestPrefix() {
+        final var tree = new RadixTree();
+        for (String string : new String[] { "a", "abc", "abcdef" }) {
+            assertTrue(tree.add(string));
+        }
+        try (var arena = Arena.ofConfined()) {
+            final SuccinctTree succinct = tree.freezeSuccinct(arena);
+            assertEquals(3, longestPrefix(succinct, "abcde"));
+            assertEquals(6, longestPrefix(succinct, "abcdefgh"));
+            assertEquals(1, longestPrefix(succinct, "ab"));
+            assertEquals(-1, longestPrefix(succinct, "b"));
+        }
+    }
+
+    @Test
+    public void randomStrings() {
+        final var random = new Random(17);
+        final var tree = new RadixTree();
+        final List<byte[]> strings = new ArrayList<>();
+        for (int i = 0; i < 20_000; ++i) {
+            final byte[] string = new byte[1 + random.nextInt(12)];
+            for (int j = 0; j < string.length; ++j) {
+                string[j] = (byte) (1 + random.nextInt(255));
+            }
+            if (tree.add(string)) {
+                strings.add(string);
+            }
+        }
+        try (var arena = Arena.ofConfined()) {
+            final SuccinctTree succinct = tree.freezeSuccinct(arena);
+            assertEquals(tree.size(), succinct.size());
+            for (byte[] string : strings) {
+                assertTrue(succinct.contains(string));
+                final byte[] missing = Arrays.copyOf(string, string.length + 1);
+                assertEquals(tree.contains(missing), succinct.contains(missing));
+            }
+            final int[] count = { 0 };
+            succinct.forEach(0, null, (_, _) -> ++count[0]);
+            assertEquals(strings.size(), count[0]);
+        }
+    }
+
+    @Test
+    public void emptyTree() {
+        try (var arena = Arena.ofConfined()) {
+            final SuccinctTree succinct = new RadixTree().freezeSuccinct(arena);
+            assertTrue(succinct.isEmpty());
+            assertEquals(0, succinct.edges());
+            assertFalse(succinct.contains("a"));
+            assertTrue(keys(succinct, "").isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> succinct.forEach(0, null, null));
+        }
+    }
+
+    private static int longestPrefix(final SuccinctTree tree, final String string) {
+        final byte[] bytes = string.getBytes();
+        return tree.longestPrefix(0, bytes.length, bytes);
+    }
+
+    private static List<String> keys(final SuccinctTree tree, final String prefix) {
+        final List<String> keys = new ArrayList<>();
+        final byte[] bytes = prefix.getBytes();
+        tree.forEach(bytes.length, bytes, (key, length) -> keys.add(new String(key, 0, length)));
+        return keys;
+    }
+}
@@ -0,0 +1,121 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopKTest {
+
+    @Test
+    public void highestScoresUnderPrefix() {
+        final var tree = new RadixTree(64);
+        for (int i = 0; i < 5_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+            assertTrue(tree.score("key-" + i, i % 1_000));
+        }
+        final List<String> best = topK(tree, "key-", 5);
+        assertEquals(List.of("key-1999:999", "key-2999:999", "key-3999:999", "key-4999:999", "key-999:999"),
+            best.stream().sorted().toList());
+        assertEquals(List.of("key-4999:999", "key-4998:998", "key-4997:997"), topK(tree, "key-49", 3));
+        assertEquals(List.of("key-429:429", "key-428:428"), topK(tree, "key-42", 2));
+        assertEquals(List.of(), topK(tree, "zebra", 3));
+        assertEquals(List.of("key-1234:234"), topK(tree, "key-1234", 3));
+    }
+
+    @Test
+    public void updatedScores() {
+        final var tree = new RadixTree(64);
+        for (int i = 0; i < 2_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        assertEquals(3, topK(tree, "", 3).size());
+
+        assertTrue(tree.score("key-1500", 10));
+        assertTrue(tree.score("key-15", 20));
+        assertEquals(List.of("key-15:20", "key-1500:10"), topK(tree, "key-15", 2));
+        assertTrue(tree.score("key-15", 5));
+        assertEquals(List.of("key-1500:10", "key-15:5"), topK(tree, "key-15", 2));
+        assertEquals(5, tree.score("key-15"));
+
+        assertTrue(tree.remove("key-1500"));
+        assertEquals(List.of("key-15:5"), topK(tree, "key-15", 1));
+        assertTrue(tree.add("key-1500"));
+        assertEquals(0, tree.score("key-1500"));
+        assertTrue(tree.add("key-15000"));
+        assertTrue(tree.score("key-15000", 7));
+        assertEquals(List.of("key-15000:7", "key-15:5"), topK(tree, "key-15", 2));
+
+        tree.compact();
+        assertEquals(List.of("key-15000:7", "key-15:5"), topK(tree, "key-15", 2));
+        assertFalse(tree.score("missing", 1));
+        assertThrows(IllegalArgumentException.class, () -> tree.topK("key", -1, (_, _, _) -> { }));
+        tree.close();
+    }
+
+    @Test
+    public void removedScores() {
+        final var tree = new RadixTree(64);
+        for (int i = 0; i < 2_000; ++i) {
+            assertTrue(tree.add("pre-" + i));
+            assertTrue(tree.score("pre-" + i, i));
+        }
+        assertTrue(tree.add("other"));
+        assertTrue(tree.score("other", 1));
+        assertEquals(2_001, tree.scoredStrings());
+
+        // the scores go with their strings, a string added again has none
+        for (int i = 0; i < 1_000; ++i) {
+            assertTrue(tree.remove("pre-" + i));
+        }
+        assertEquals(1_001, tree.scoredStrings());
+        assertTrue(tree.removeStrings(4, "pre-".getBytes()));
+        assertEquals(1, tree.scoredStrings());
+        assertTrue(tree.add("pre-1999"));
+        assertEquals(0, tree.score("pre-1999"));
+        assertEquals(List.of("other:1", "pre-1999:0"), topK(tree, "", 2));
+        tree.close();
+    }
+
+    @Test
+    public void scoresFollowMovedSlots() {
+        final var tree = new RadixTree(64);
+        assertTrue(tree.add("abcde"));
+        assertTrue(tree.score("abcde", 5));
+        // splits the node, its string moves to a new node
+        assertTrue(tree.add("abxyz"));
+        assertEquals(5, tree.score("abcde"));
+        // overflows the keys of the node, the last key moves to a new node
+        for (char c = 'd'; c <= 'w'; ++c) {
+            assertTrue(tree.add("ab" + c));
+            assertTrue(tree.score("ab" + c, c - 'a'));
+        }
+        for (char c = 'd'; c <= 'w'; ++c) {
+            assertEquals(c - 'a', tree.score("ab" + c));
+        }
+        assertEquals(List.of("abw:22", "abv:21", "abu:20"), topK(tree, "ab", 3));
+
+        // the last key takes the slot of a removed key
+        assertTrue(tree.remove("abd"));
+        assertTrue(tree.remove("abw"));
+        assertEquals(0, tree.score("abd"));
+        for (char c = 'e'; c <= 'v'; ++c) {
+            assertEquals(c - 'a', tree.score("ab" + c));
+        }
+        tree.compact();
+        assertEquals(List.of("abv:21", "abu:20"), topK(tree, "ab", 2));
+        assertEquals(5, tree.score("abcde"));
+        assertEquals(19, tree.scoredStrings());
+        tree.close();
+    }
+
+    private static List<String> topK(final RadixTree tree, final String prefix, final int k) {
+        final List<String> result = new ArrayList<>();
+        final int visited = tree.topK(prefix, k,
+            (key, length, score) -> result.add(new String(key, 0, length) + ":" + score));
+        assertEquals(result.size(), visited);
+        return result;
+    }
+}
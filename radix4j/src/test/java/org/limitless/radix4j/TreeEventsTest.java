@@ -0,0 +1,67 @@
+package org.limitless.radix4j;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeEventsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void recordEvents() throws IOException {
+        final Path file = directory.resolve("tree.jfr");
+        try (var recording = new Recording()) {
+            for (String name : new String[] { "SegmentAllocation", "BulkRemove", "PrefixScan", "Snapshot", "Compaction" }) {
+                recording.enable("org.limitless.radix4j." + name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+
+            final var tree = new RadixTree(64);
+            for (int i = 0; i < 1_000; ++i) {
+                assertTrue(tree.add("key-" + i));
+            }
+            final int[] nodes = { 0 };
+            tree.forEach(5, "key-1".getBytes(), _ -> ++nodes[0]);
+            assertTrue(tree.removeStrings(5, "key-2".getBytes()));
+            try (var channel = FileChannel.open(directory.resolve("tree.snapshot"), CREATE, WRITE)) {
+                tree.writeSnapshot(channel);
+            }
+            tree.compact();
+            recording.stop();
+            recording.dump(file);
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertTrue(count(events, "SegmentAllocation") >= 2);
+            assertEquals(1, count(events, "BulkRemove"));
+            assertEquals(1, count(events, "Snapshot"));
+            assertEquals(1, count(events, "Compaction"));
+            final RecordedEvent scan = events.stream()
+                .filter(event -> event.getEventType().getName().endsWith("PrefixScan"))
+                .findFirst()
+                .orElseThrow();
+            assertEquals(nodes[0], scan.getInt("visitedNodes"));
+            final RecordedEvent remove = events.stream()
+                .filter(event -> event.getEventType().getName().endsWith("BulkRemove"))
+                .findFirst()
+                .orElseThrow();
+            assertEquals(111, remove.getInt("removedStrings"));
+        }
+    }
+
+    private static long count(final List<RecordedEvent> events, final String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals("org.limitless.radix4j." + name)).count();
+    }
+}
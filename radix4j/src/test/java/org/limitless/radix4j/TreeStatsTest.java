@@ -0,0 +1,95 @@
+package org.limitless.radix4j;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeStatsTest {
+
+    @Test
+    public void histograms() {
+        final var tree = new RadixTree();
+        for (String string : new String[] { "cat", "cats", "cow", "cabbage", "crow", "pig", "pin", "cabs" }) {
+            assertTrue(tree.add(string));
+        }
+        final TreeStats stats = tree.stats();
+        assertEquals(8, stats.strings());
+        assertEquals(tree.allocatedBlocks() - 4, stats.nodes());
+
+        long nodes = 0;
+        for (int i = 0; i <= Node.BLOCK_COUNT; ++i) {
+            nodes += stats.children(i);
+        }
+        assertEquals(stats.nodes(), nodes);
+        nodes = 0;
+        for (int i = 0; i <= Node.STRING_LENGTH; ++i) {
+            nodes += stats.stringLength(i);
+        }
+        assertEquals(stats.nodes(), nodes);
+        nodes = 0;
+        for (int i = 0; i <= stats.maxDepth(); ++i) {
+            nodes += stats.depth(i);
+        }
+        assertEquals(stats.nodes(), nodes);
+        assertEquals(1, stats.depth(0));
+        assertEquals(0, stats.maxChainLength());
+        assertTrue(stats.leafKeyFraction() > 0 && stats.leafKeyFraction() <= 1);
+        assertEquals(1, stats.segmentsLive());
+        assertTrue(stats.bytesPerKey() > 0);
+    }
+
+    @Test
+    public void overflowChains() {
+        final var tree = new RadixTree();
+        final String prefix = "1234567890-";
+        for (char c = 'A'; c <= 'Z'; ++c) {
+            assertTrue(tree.add(prefix + c));
+        }
+        final TreeStats stats = tree.stats(new TreeStats());
+        assertTrue(stats.maxChainLength() >= 2, stats.toString());
+        assertEquals(1, stats.chains(stats.maxChainLength()));
+        assertEquals(1.0, stats.leafKeyFraction());
+    }
+
+    @Test
+    public void reuse() {
+        final var tree = new RadixTree(64);
+        final TreeStats stats = new TreeStats();
+        for (int i = 0; i < 10_000; ++i) {
+            assertTrue(tree.add("key-" + i));
+        }
+        assertSame(stats, tree.stats(stats));
+        final long nodes = stats.nodes();
+        assertTrue(stats.segmentsLive() >= 2);
+        assertTrue(stats.fillFactor() > 0.5);
+
+        assertTrue(tree.removeStrings(5, "key-1".getBytes()));
+        tree.stats(stats);
+        assertTrue(stats.nodes() < nodes);
+        assertEquals(tree.size(), stats.strings());
+        assertTrue(stats.segmentsAllocated() >= stats.segmentsLive());
+
+        tree.close();
+        assertEquals(0, tree.stats(stats).nodes());
+        assertThrows(IllegalArgumentException.class, () -> tree.stats(null));
+    }
+
+    @Test
+    public void sharedStore() {
+        try (var store = new NodeStore(64)) {
+            final var first = new RadixTree(store);
+            final var second = new RadixTree(store);
+            for (int i = 0; i < 5_000; ++i) {
+                assertTrue(first.add("first-" + i));
+            }
+            for (int i = 0; i < 5_000; ++i) {
+                assertTrue(second.add("second-" + i));
+            }
+            // only the segments of the tree count, not the peak of the whole store
+            final TreeStats stats = second.stats();
+            assertEquals(stats.segmentsLive(), stats.segmentsAllocated());
+            assertTrue(stats.segmentsAllocated() < (store.peakNodes() + 63) / 64);
+            assertTrue(stats.fillFactor() > 0.5);
+        }
+    }
+}